@@ -20,7 +20,15 @@ export default async function Page(props: {
   return (
     <div className="max-w-7xl mx-auto px-4">
       <SearchForm searchParams={searchParams} />
-      <SearchResults results={data.results} searchTime={data.time} />
+      <SearchResults
+        results={data.results}
+        totalResults={data.total_results}
+        totalResultsExact={data.total_results_exact}
+        offset={data.offset}
+        limit={data.limit}
+        searchTime={data.time}
+        searchParams={searchParams}
+      />
     </div>
   );
 }
\ No newline at end of file
@@ -1,19 +1,41 @@
-import { SearchResult } from '@/types/search';
+import Link from 'next/link';
+import { SearchParams, SearchResult } from '@/types/search';
 import ClickableKeyword from '@/components/ClickableKeyword';
 
 interface SearchResultsProps {
   results: SearchResult[];
+  totalResults?: number;
+  // false when the backend skipped documents that could not reach the page, totalResults is then a lower bound
+  totalResultsExact?: boolean;
+  offset?: number;
+  limit?: number; // <= 0 when every result is on this page
   searchTime: string;
+  searchParams: SearchParams;
 }
 
-export default function SearchResults({ results, searchTime }: SearchResultsProps) {
+export default function SearchResults({
+  results, totalResults, totalResultsExact = true, offset = 0, limit = 0, searchTime, searchParams
+}: SearchResultsProps) {
   if (!results) return null;
   if (!results.length) return null;
 
+  const total = totalResults ?? offset + results.length;
+  const hasPrevious = limit > 0 && offset > 0;
+  // A lower bound cannot tell whether more follow, a full page may
+  const hasNext = limit > 0 && results.length === limit && (!totalResultsExact || offset + limit < total);
+
+  const pageHref = (pageOffset: number) => {
+    const params = new URLSearchParams(searchParams as Record<string, string>);
+    params.set('offset', String(pageOffset));
+    params.set('limit', String(limit));
+    return `/search?${params.toString()}`;
+  };
+
   return (
     <div className="mt-8">
       <p className="text-sm text-gray-600 mb-4">
-        {results.length} results ({searchTime} seconds)
+        {offset + 1}-{offset + results.length} of {totalResultsExact ? '' : 'at least '}{total} results
+        ({searchTime} seconds)
       </p>
       
       <div className="space-y-8">
@@ -46,6 +68,21 @@ export default function SearchResults({ results, searchTime }: SearchResultsProp
           </div>
         ))}
       </div>
+
+      {(hasPrevious || hasNext) && (
+        <div className="mt-8 flex justify-between text-blue-600">
+          {hasPrevious ? (
+            <Link href={pageHref(Math.max(0, offset - limit))} className="hover:underline">
+              Previous
+            </Link>
+          ) : <span />}
+          {hasNext && (
+            <Link href={pageHref(offset + limit)} className="hover:underline">
+              Next
+            </Link>
+          )}
+        </div>
+      )}
     </div>
   );
 }
\ No newline at end of file
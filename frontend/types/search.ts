@@ -23,4 +23,4 @@ export interface SearchOptions {
     'time-end': string | null;
 }
 
-export type SearchParams = Partial<{ query: string } & SearchOptions>;
\ No newline at end of file
+export type SearchParams = Partial<{ query: string; offset: string; limit: string } & SearchOptions>;
\ No newline at end of file
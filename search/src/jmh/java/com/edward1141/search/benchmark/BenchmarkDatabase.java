@@ -0,0 +1,79 @@
+package com.edward1141.search.benchmark;
+
+import com.edward1141.search.config.StopwordsConfig;
+import com.edward1141.search.index.CorpusGenerator;
+import com.edward1141.search.model.SearchRequest;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.List;
+
+/**
+ * Database and query mix shared by the benchmarks. By default a {@link CorpusGenerator} database of
+ * {@code documents} pages is generated once under target/benchmark-index and reused by later runs,
+ * and the queries are sampled from it.
+ * {@code -p database=<path>} benchmarks an existing database and {@code -p queryLog=<path>} replays a query log
+ * (see {@link QueryMix#load}) instead.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+    private static final long SEED = 42;
+
+    @Param("20000")
+    public int documents;
+
+    @Param("50000")
+    public int vocabulary;
+
+    @Param("synthetic")
+    public String database;
+
+    @Param("sampled")
+    public String queryLog;
+
+    @Param("500")
+    public int queries;
+
+    private Path path;
+    private DataSource dataSource;
+    private List<SearchRequest> requests;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (database.equals("synthetic")) {
+            path = Paths.get("target", "benchmark-index", "synthetic-" + documents + "-" + vocabulary + ".db").toAbsolutePath();
+            if (!Files.exists(path)) {
+                Files.createDirectories(path.getParent());
+                new CorpusGenerator(documents, vocabulary, SEED, new StopwordsConfig().stopwords()).generate(path);
+            }
+        } else {
+            path = Paths.get(database).toAbsolutePath();
+        }
+        dataSource = new DriverManagerDataSource("jdbc:sqlite:" + path);
+
+        if (queryLog.equals("sampled")) {
+            try (Connection connection = dataSource.getConnection()) {
+                requests = QueryMix.sample(connection, queries, SEED);
+            }
+        } else {
+            requests = QueryMix.load(Paths.get(queryLog));
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public List<SearchRequest> getRequests() {
+        return requests;
+    }
+}
@@ -0,0 +1,79 @@
+package com.edward1141.search.benchmark;
+
+import com.edward1141.search.config.StopwordsConfig;
+import com.edward1141.search.index.DocumentStore;
+import com.edward1141.search.index.IndexLoader;
+import com.edward1141.search.index.IndexSnapshot;
+import com.edward1141.search.index.IndexTable;
+import com.edward1141.search.index.PostingList;
+import com.edward1141.search.index.TermDictionary;
+import com.edward1141.search.model.SearchRequest;
+import com.edward1141.search.utils.QueryAnalyzer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * The benchmark database loaded into memory the way search.index.mode=memory serves it,
+ * plus the query analysis of the search service for benchmarks below the service layer.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkIndex {
+    private IndexSnapshot snapshot;
+    private TermDictionary termDictionary;
+    private DocumentStore documentStore;
+    private QueryAnalyzer analyzer;
+    private List<SearchRequest> requests;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase database) {
+        IndexLoader loader = new IndexLoader(new JdbcTemplate(database.getDataSource()));
+        snapshot = loader.load();
+        termDictionary = loader.loadTermDictionary();
+        documentStore = loader.loadDocumentStore();
+        analyzer = new QueryAnalyzer(termDictionary, new StopwordsConfig().stopwords());
+        requests = database.getRequests();
+    }
+
+    public List<SearchRequest> getRequests() {
+        return requests;
+    }
+
+    public DocumentStore getDocumentStore() {
+        return documentStore;
+    }
+
+    public TermDictionary getTermDictionary() {
+        return termDictionary;
+    }
+
+    /**
+     * @return stemmed query words without stopwords, as the search service scores them
+     */
+    public List<String> queryTerms(SearchRequest request) {
+        return analyzer.analyze(request.getQuery()).getTerms();
+    }
+
+    /**
+     * @return stemmed words of the quoted phrase without stopwords, empty if the query has none
+     */
+    public List<String> phraseTerms(SearchRequest request) {
+        List<String> phrase = analyzer.analyze(request.getQuery()).getPhraseTerms();
+        return phrase == null ? List.of() : phrase;
+    }
+
+    /**
+     * @return postings of each word in the table, null where the word has no entry
+     */
+    public PostingList[] postings(List<String> terms, IndexTable table) {
+        PostingList[] postings = new PostingList[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            long wid = termDictionary.getWid(terms.get(i));
+            if (wid != TermDictionary.NOT_FOUND) {
+                postings[i] = snapshot.getPostings(table, wid);
+            }
+        }
+        return postings;
+    }
+}
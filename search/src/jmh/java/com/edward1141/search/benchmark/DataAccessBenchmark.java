@@ -0,0 +1,100 @@
+package com.edward1141.search.benchmark;
+
+import com.edward1141.search.SearchApplication;
+import com.edward1141.search.entity.UrlList;
+import com.edward1141.search.index.IndexTable;
+import com.edward1141.search.repository.SearchReadRepository;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The search read path through {@link SearchReadRepository} on plain JDBC against the Spring Data repositories:
+ * one posting row lookup, and the three queries hydrating a page of results. The links of the page come from the
+ * in-memory link graph, its urls are looked up like the page's own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DataAccessBenchmark {
+    private static final int SAMPLES = 1000;
+
+    @Param({"jdbc", "jpa"})
+    public String dataAccess;
+
+    @Param("50")
+    public int pageSize;
+
+    private ConfigurableApplicationContext context;
+    private SearchReadRepository repository;
+    private long[] wids;
+    private List<List<Long>> pages;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase database) throws Exception {
+        context = new SpringApplicationBuilder(SearchApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--DATABASE_FILE_PATH=" + database.getPath(),
+                        "--search.index.mode=database",
+                        "--search.data-access=" + dataAccess,
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.com.edward1141.search=WARN");
+        repository = context.getBean(SearchReadRepository.class);
+
+        try (Connection connection = database.getDataSource().getConnection()) {
+            wids = sample(connection, "SELECT wid FROM invertedIndex ORDER BY random() LIMIT " + SAMPLES)
+                    .stream().mapToLong(Long::longValue).toArray();
+            List<Long> uids = sample(connection, "SELECT uid FROM urlList ORDER BY random() LIMIT " + SAMPLES * pageSize);
+            pages = new ArrayList<>();
+            for (int from = 0; from + pageSize <= uids.size(); from += pageSize) {
+                pages.add(uids.subList(from, from + pageSize));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public String postingRow() {
+        return repository.findPostingData(IndexTable.BODY, wids[Math.floorMod(next.getAndIncrement(), wids.length)]);
+    }
+
+    @Benchmark
+    public void hydratePage(Blackhole blackhole) {
+        List<Long> page = pages.get(Math.floorMod(next.getAndIncrement(), pages.size()));
+        for (UrlList urlList : repository.findUrlLists(page)) {
+            blackhole.consume(urlList);
+        }
+        blackhole.consume(repository.findUrls(page));
+        blackhole.consume(repository.findForwardIndexHeads(page));
+    }
+
+    private static List<Long> sample(Connection connection, String sql) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        return ids;
+    }
+}
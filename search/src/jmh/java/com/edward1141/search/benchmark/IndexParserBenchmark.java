@@ -0,0 +1,94 @@
+package com.edward1141.search.benchmark;
+
+import com.edward1141.search.index.PostingList;
+import com.edward1141.search.utils.IndexParser;
+import com.edward1141.search.utils.PostingBuffers;
+import com.edward1141.search.utils.PostingDecoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming posting decoder against the tree and map based parsing it replaced,
+ * on a synthetic posting blob of {@code docs} entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexParserBenchmark {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Param({"10", "1000", "20000"})
+    public int docs;
+
+    private String json;
+    private final IndexParser indexParser = new IndexParser();
+    private final PostingBuffers buffers = new PostingBuffers();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder("{");
+        for (int doc = 0; doc < docs; doc++) {
+            int tf = 1 + random.nextInt(8);
+            builder.append(doc == 0 ? "" : ", ").append('"').append(random.nextLong() >>> 8).append("\": [")
+                    .append(tf).append(", ").append(docs).append(", ").append(random.nextDouble()).append(", ")
+                    .append(1 + random.nextDouble()).append(", [");
+            for (int p = 0; p < tf; p++) {
+                builder.append(p == 0 ? "" : ", ").append(random.nextInt(5000));
+            }
+            builder.append("]]");
+        }
+        json = builder.append('}').toString();
+    }
+
+    @Benchmark
+    public Map<String, Object[]> objectMapperMap() throws Exception {
+        return MAPPER.readValue(json, MAPPER.getTypeFactory().constructMapType(Map.class, String.class, Object[].class));
+    }
+
+    @Benchmark
+    public PostingList readTreePostingList() throws Exception {
+        JsonNode root = MAPPER.readTree(json);
+        PostingList.Builder builder = PostingList.builder(true);
+        Iterator<Map.Entry<String, JsonNode>> fields = root.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> entry = fields.next();
+            JsonNode value = entry.getValue();
+            builder.add(Long.parseLong(entry.getKey()), value.get(0).asInt(), value.get(2).asDouble(), value.get(3).asDouble());
+            for (JsonNode position : value.get(value.size() - 1)) {
+                builder.addPosition(position.asInt());
+            }
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public int streamingFull() throws Exception {
+        PostingDecoder.decode(json, buffers, false);
+        return buffers.positionCount();
+    }
+
+    @Benchmark
+    public int streamingPositionsOnly() throws Exception {
+        PostingDecoder.decode(json, buffers, true);
+        return buffers.positionCount();
+    }
+
+    @Benchmark
+    public PostingList streamingPostingList() throws Exception {
+        return indexParser.parsePostingList(json, true);
+    }
+
+    @Benchmark
+    public void streamingPositionsPostingList(Blackhole blackhole) throws Exception {
+        blackhole.consume(indexParser.parsePostingList(json, false));
+    }
+}
@@ -0,0 +1,60 @@
+package com.edward1141.search.benchmark;
+
+import com.edward1141.search.index.IndexTable;
+import com.edward1141.search.index.PhraseMatcher;
+import com.edward1141.search.index.PostingList;
+import com.edward1141.search.model.SearchRequest;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Phrase filtering over the body table for the quoted phrases of the query mix, postings already resolved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhraseMatcherBenchmark {
+    private PostingList[][] phrases;
+    private int[] distances;
+    private int next;
+
+    @Setup
+    public void setUp(BenchmarkIndex index) {
+        List<PostingList[]> resolved = new ArrayList<>();
+        List<Integer> resolvedDistances = new ArrayList<>();
+        for (SearchRequest request : index.getRequests()) {
+            List<String> phrase = index.phraseTerms(request);
+            if (phrase.size() < 2) {
+                continue;
+            }
+            PostingList[] postings = index.postings(phrase, IndexTable.BODY);
+            boolean complete = true;
+            for (PostingList posting : postings) {
+                complete &= posting != null;
+            }
+            // Phrases with an unknown word never reach the matcher
+            if (complete) {
+                resolved.add(postings);
+                resolvedDistances.add(request.getPhraseSearchDistance());
+            }
+        }
+        if (resolved.isEmpty()) {
+            throw new IllegalStateException("The query mix has no phrase of two or more indexed words");
+        }
+        phrases = resolved.toArray(new PostingList[0][]);
+        distances = resolvedDistances.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Benchmark
+    public long[] match() {
+        int i = next;
+        next = next + 1 == phrases.length ? 0 : next + 1;
+        return PhraseMatcher.match(phrases[i], distances[i]);
+    }
+}
@@ -0,0 +1,68 @@
+package com.edward1141.search.benchmark;
+
+import com.edward1141.search.config.StopwordsConfig;
+import com.edward1141.search.model.SearchRequest;
+import com.edward1141.search.utils.QueryAnalyzer;
+import com.edward1141.search.utils.QueryParser;
+import opennlp.tools.stemmer.PorterStemmer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Query analysis over the query mix: the single pass analyzer of the search service against the regex parser
+ * followed by stream based stemming and stopword removal it replaced. Run with -prof gc to compare allocation,
+ * the analyzer only allocates its result once every word of the mix is memoised.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryAnalysisBenchmark {
+    private String[] queries;
+    private int next;
+    private QueryAnalyzer analyzer;
+    private Set<String> stopwords;
+    private final PorterStemmer stemmer = new PorterStemmer();
+
+    @Setup
+    public void setUp(BenchmarkDatabase database, BenchmarkIndex index) {
+        queries = database.getRequests().stream().map(SearchRequest::getQuery).toArray(String[]::new);
+        stopwords = new StopwordsConfig().stopwords();
+        analyzer = new QueryAnalyzer(index.getTermDictionary(), stopwords);
+    }
+
+    @Benchmark
+    public QueryAnalyzer.AnalyzedQuery analyze() {
+        return analyzer.analyze(nextQuery());
+    }
+
+    @Benchmark
+    public void regexParser(Blackhole blackhole) {
+        QueryParser.QueryParseResult parsed = new QueryParser().parse(nextQuery());
+        blackhole.consume(removeStopwords(stem(parsed.getQueryTerms())));
+        if (!parsed.getQuotedTerms().isEmpty()) {
+            blackhole.consume(removeStopwords(stem(parsed.getQuotedTerms())));
+        }
+    }
+
+    private String nextQuery() {
+        String query = queries[next];
+        next = next + 1 == queries.length ? 0 : next + 1;
+        return query;
+    }
+
+    private List<String> stem(List<String> words) {
+        return words.stream().map(stemmer::stem).collect(Collectors.toList());
+    }
+
+    private List<String> removeStopwords(List<String> words) {
+        return words.stream().filter(word -> !stopwords.contains(word)).collect(Collectors.toList());
+    }
+}
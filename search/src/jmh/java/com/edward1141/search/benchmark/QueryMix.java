@@ -0,0 +1,128 @@
+package com.edward1141.search.benchmark;
+
+import com.edward1141.search.model.ScoringAlgorithm;
+import com.edward1141.search.model.SearchRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Search requests replayed by the benchmarks, either read from a query log or sampled from the page bodies.
+ */
+final class QueryMix {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private QueryMix() {
+    }
+
+    /**
+     * Reads a JSON lines log, one request per line keyed by the /api/search parameters, e.g.
+     * {"query": "\"data mining\" course", "phrase-search-options": "1", "page-rank": "on", "limit": "50"}.
+     * Missing parameters take the controller defaults, blank lines are skipped.
+     */
+    static List<SearchRequest> load(Path log) throws IOException {
+        List<SearchRequest> requests = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode entry = MAPPER.readTree(line);
+                String phraseSearchOptions = entry.path("phrase-search-options").asText("0");
+                String scoring = entry.path("scoring").asText(null);
+                requests.add(SearchRequest.builder()
+                        .query(entry.path("query").asText())
+                        .rawMatchPhrase(!phraseSearchOptions.equals("0"))
+                        .stemForRaw(phraseSearchOptions.equals("1"))
+                        .matchInTitle(entry.path("match-in-title").asText("").equals("on"))
+                        .phraseSearchDistance(Integer.parseInt(entry.path("phrase-search-distance").asText("1")))
+                        .withPageRank(entry.path("page-rank").asText("").equals("on"))
+                        .offset(Math.max(0, Integer.parseInt(entry.path("offset").asText("0"))))
+                        .limit(Integer.parseInt(entry.path("limit").asText("50")))
+                        .scoringAlgorithm(scoring == null ? null : ScoringAlgorithm.valueOf(scoring.toUpperCase()))
+                        .build());
+            }
+        }
+        if (requests.isEmpty()) {
+            throw new IOException("No requests in " + log);
+        }
+        return requests;
+    }
+
+    /**
+     * Samples requests from random page bodies so every query word exists in the index:
+     * 40% one word, 30% two words, 15% three or four words and 15% a quoted two or three word phrase,
+     * a fifth of them with PageRank and one in ten asking for the second page.
+     */
+    static List<SearchRequest> sample(Connection connection, int count, long seed) throws SQLException {
+        Random random = new Random(seed);
+        int pages;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM urlBody");
+             ResultSet rs = statement.executeQuery()) {
+            pages = rs.next() ? rs.getInt(1) : 0;
+        }
+        if (pages == 0) {
+            throw new SQLException("urlBody is empty, cannot sample queries");
+        }
+
+        List<SearchRequest> requests = new ArrayList<>(count);
+        try (PreparedStatement statement = connection.prepareStatement("SELECT body FROM urlBody LIMIT 1 OFFSET ?")) {
+            while (requests.size() < count) {
+                statement.setInt(1, random.nextInt(pages));
+                String[] tokens;
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (!rs.next() || rs.getString(1) == null) {
+                        continue;
+                    }
+                    tokens = rs.getString(1).replaceAll("[^\\w\\s]", "").toLowerCase().trim().split("\\s+");
+                }
+                if (tokens.length < 4) {
+                    continue;
+                }
+
+                double shape = random.nextDouble();
+                String query;
+                if (shape < 0.4) {
+                    query = words(tokens, random, 1);
+                } else if (shape < 0.7) {
+                    query = words(tokens, random, 2);
+                } else if (shape < 0.85) {
+                    query = words(tokens, random, 3 + random.nextInt(2));
+                } else {
+                    int length = 2 + random.nextInt(2);
+                    int start = random.nextInt(tokens.length - length + 1);
+                    query = "\"" + String.join(" ", List.of(tokens).subList(start, start + length)) + "\"";
+                }
+                requests.add(SearchRequest.builder()
+                        .query(query)
+                        .phraseSearchDistance(1)
+                        .withPageRank(random.nextDouble() < 0.2)
+                        .offset(random.nextDouble() < 0.1 ? 50 : 0)
+                        .limit(50)
+                        .build());
+            }
+        }
+        return requests;
+    }
+
+    private static String words(String[] tokens, Random random, int count) {
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            query.append(i == 0 ? "" : " ").append(tokens[random.nextInt(tokens.length)]);
+        }
+        return query.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.edward1141.search.benchmark;
+
+import com.edward1141.search.SearchApplication;
+import com.edward1141.search.model.SearchRequest;
+import com.edward1141.search.model.SearchResponse;
+import com.edward1141.search.service.SearchService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end {@link SearchService#search} over the query mix in a full application context, with the result
+ * cache disabled so every request is served. Sample time mode reports the latency percentiles (p50 .. p99.99).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark {
+
+    @Param({"memory", "segment", "database"})
+    public String mode;
+
+    @Param({"exhaustive", "wand"})
+    public String scoring;
+
+    // -p dataAccess=jdbc,jpa compares the read paths end to end
+    @Param("jdbc")
+    public String dataAccess;
+
+    private ConfigurableApplicationContext context;
+    private SearchService searchService;
+    private List<SearchRequest> requests;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase database) {
+        // Command line arguments, application.properties would override default properties
+        context = new SpringApplicationBuilder(SearchApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--DATABASE_FILE_PATH=" + database.getPath(),
+                        "--search.index.mode=" + mode,
+                        "--search.scoring.algorithm=" + scoring,
+                        "--search.data-access=" + dataAccess,
+                        "--search.cache.max-bytes=0",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.com.edward1141.search=WARN");
+        searchService = context.getBean(SearchService.class);
+        requests = database.getRequests();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public SearchResponse search() throws Exception {
+        return searchService.search(requests.get(Math.floorMod(next.getAndIncrement(), requests.size())));
+    }
+}
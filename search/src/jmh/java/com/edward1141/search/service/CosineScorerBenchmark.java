@@ -0,0 +1,58 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.benchmark.BenchmarkIndex;
+import com.edward1141.search.index.IndexTable;
+import com.edward1141.search.index.PostingList;
+import com.edward1141.search.model.ScoringAlgorithm;
+import com.edward1141.search.model.SearchRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cosine scoring and top k selection of the query mix with the postings already resolved,
+ * weights as configured in the search service.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CosineScorerBenchmark {
+
+    @Param({"EXHAUSTIVE", "WAND"})
+    public ScoringAlgorithm algorithm;
+
+    private CosineScorer scorer;
+    private SearchRequest[] requests;
+    private PostingList[][] bodyPostings;
+    private PostingList[][] titlePostings;
+    private int next;
+
+    @Setup
+    public void setUp(BenchmarkIndex index) {
+        scorer = new CosineScorer(index.getDocumentStore(), 1.0, 0.2);
+        List<SearchRequest> mix = index.getRequests();
+        requests = mix.toArray(new SearchRequest[0]);
+        bodyPostings = new PostingList[requests.length][];
+        titlePostings = new PostingList[requests.length][];
+        for (int i = 0; i < requests.length; i++) {
+            List<String> terms = index.queryTerms(requests[i]);
+            bodyPostings[i] = index.postings(terms, IndexTable.BODY);
+            titlePostings[i] = index.postings(terms, IndexTable.TITLE);
+        }
+    }
+
+    // RankedDocuments is package private, the generated benchmark code cannot name it as a return type
+    @Benchmark
+    public void rank(Blackhole blackhole) {
+        int i = next;
+        next = next + 1 == requests.length ? 0 : next + 1;
+        SearchRequest request = requests[i];
+        blackhole.consume(scorer.rank(algorithm, bodyPostings[i], titlePostings[i], null, request.isWithPageRank(),
+                request.getOffset(), request.getLimit()));
+    }
+}
@@ -0,0 +1,41 @@
+package com.edward1141.search.config;
+
+import com.edward1141.search.repository.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@Configuration
+public class DataAccessConfig {
+
+    /**
+     * "jdbc" answers the queries of a search with prepared statements on the connections of the DataSource,
+     * "jpa" goes through the Spring Data repositories. The entities and repositories stay available either way.
+     */
+    @Bean
+    public SearchReadRepository searchReadRepository(
+            @Value("${search.data-access:jdbc}") String dataAccess,
+            JdbcTemplate jdbcTemplate,
+            InvertedIndexRepository invertedIndexRepository,
+            TitleInvertedIndexRepository titleInvertedIndexRepository,
+            RawInvertedIndexRepository rawInvertedIndexRepository,
+            RawTitleInvertedIndexRepository rawTitleInvertedIndexRepository,
+            StemmedRawInvertedIndexRepository stemmedRawInvertedIndexRepository,
+            StemmedRawTitleInvertedIndexRepository stemmedRawTitleInvertedIndexRepository,
+            UrlListRepository urlListRepository,
+            ForwardIndexRepository forwardIndexRepository) {
+        if (dataAccess.equals("jpa")) {
+            return new JpaSearchReadRepository(
+                    invertedIndexRepository,
+                    titleInvertedIndexRepository,
+                    rawInvertedIndexRepository,
+                    rawTitleInvertedIndexRepository,
+                    stemmedRawInvertedIndexRepository,
+                    stemmedRawTitleInvertedIndexRepository,
+                    urlListRepository,
+                    forwardIndexRepository);
+        }
+        return new JdbcSearchReadRepository(jdbcTemplate);
+    }
+}
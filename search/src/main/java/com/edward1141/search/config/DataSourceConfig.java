@@ -0,0 +1,56 @@
+package com.edward1141.search.config;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Read-only connection pool used by the serving profile ({@code search.datasource.read-only=true}),
+ * otherwise Spring Boot's default pool is used.
+ * The database is switched to WAL once at startup, so the crawler writing it neither blocks nor is blocked by
+ * the readers. Pooled connections open the file read-only and keep their prepared statements, so the native
+ * queries of the repositories are compiled once per connection instead of on every call.
+ * Pool sizes come from spring.datasource.dbcp2.*.
+ */
+@Configuration
+@ConditionalOnProperty(name = "search.datasource.read-only", havingValue = "true")
+public class DataSourceConfig {
+    // SQLITE_OPEN_READONLY
+    private static final String OPEN_READ_ONLY = "1";
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceConfig.class);
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.dbcp2")
+    public BasicDataSource dataSource(DataSourceProperties properties) {
+        enableWal(properties.getUrl());
+        BasicDataSource dataSource = properties.initializeDataSourceBuilder().type(BasicDataSource.class).build();
+        dataSource.addConnectionProperty("open_mode", OPEN_READ_ONLY);
+        return dataSource;
+    }
+
+    // The journal mode is stored in the database file, it only needs a writable connection the first time
+    private static void enableWal(String url) {
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("PRAGMA journal_mode=WAL")) {
+            String mode = rs.next() ? rs.getString(1) : null;
+            if (!"wal".equalsIgnoreCase(mode)) {
+                logger.warn("Could not switch {} to WAL, the journal mode is {}", url, mode);
+            }
+        } catch (SQLException e) {
+            // Still serves, readers just wait while the crawler commits
+            logger.warn("Could not switch {} to WAL", url, e);
+        }
+    }
+}
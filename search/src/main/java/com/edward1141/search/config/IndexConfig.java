@@ -0,0 +1,177 @@
+package com.edward1141.search.config;
+
+import com.edward1141.search.index.BodyStore;
+import com.edward1141.search.index.BodyStoreWriter;
+import com.edward1141.search.index.CachingPostingSource;
+import com.edward1141.search.index.DatabasePostingSource;
+import com.edward1141.search.index.IndexGeneration;
+import com.edward1141.search.index.IndexLoader;
+import com.edward1141.search.index.IndexManager;
+import com.edward1141.search.index.IndexSnapshot;
+import com.edward1141.search.index.IndexTable;
+import com.edward1141.search.index.LiveIndex;
+import com.edward1141.search.index.LoadedIndex;
+import com.edward1141.search.index.OverlayPostingSource;
+import com.edward1141.search.index.PostingSource;
+import com.edward1141.search.index.SegmentReader;
+import com.edward1141.search.index.SegmentWriter;
+import com.edward1141.search.index.SnapshotFile;
+import com.edward1141.search.repository.SearchReadRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@Configuration
+public class IndexConfig {
+    private static final Logger logger = LoggerFactory.getLogger(IndexConfig.class);
+
+    private final String mode;
+    private final Path segmentPath;
+    private final Path snapshotPath;
+    private final Path bodyStorePath;
+    private final Path databasePath;
+    private final long cacheMaxBytes;
+    private final int warmUpTerms;
+    private final DataSource dataSource;
+    private final IndexLoader indexLoader;
+    private final SearchReadRepository searchReadRepository;
+
+    /**
+     * @param mode "memory" loads all inverted index tables at startup,
+     *             "segment" serves postings from a memory mapped segment file exported from the database,
+     *             "database" reads and decodes the JSON rows per query.
+     *             The last two keep recently decoded posting lists in a cache bounded by search.index.cache.max-bytes.
+     */
+    public IndexConfig(
+            @Value("${search.index.mode:memory}") String mode,
+            @Value("${search.index.segment-path:${DATABASE_FILE_PATH}.seg}") String segmentPath,
+            @Value("${search.index.snapshot-path:${DATABASE_FILE_PATH}.snapshot}") String snapshotPath,
+            @Value("${search.snippet.body-store-path:${DATABASE_FILE_PATH}.body}") String bodyStorePath,
+            @Value("${DATABASE_FILE_PATH}") String databasePath,
+            @Value("${search.index.cache.max-bytes:268435456}") long cacheMaxBytes,
+            @Value("${search.index.cache.warm-up-terms:0}") int warmUpTerms,
+            DataSource dataSource,
+            IndexLoader indexLoader,
+            SearchReadRepository searchReadRepository) {
+        this.mode = mode;
+        this.segmentPath = Paths.get(segmentPath);
+        this.snapshotPath = snapshotPath.isEmpty() ? null : Paths.get(snapshotPath);
+        this.bodyStorePath = Paths.get(bodyStorePath);
+        this.databasePath = Paths.get(databasePath);
+        this.cacheMaxBytes = cacheMaxBytes;
+        this.warmUpTerms = warmUpTerms;
+        this.dataSource = dataSource;
+        this.indexLoader = indexLoader;
+        this.searchReadRepository = searchReadRepository;
+    }
+
+    /**
+     * Ingested pages, empty unless search.ingest.enabled.
+     */
+    @Bean
+    public LiveIndex liveIndex() {
+        return new LiveIndex();
+    }
+
+    /**
+     * Loads the first index generation at startup and every later one on reload, with the ingested pages merged
+     * so far merged again.
+     */
+    @Bean
+    public IndexManager indexManager(
+            LiveIndex liveIndex,
+            @Value("${search.index.reload.watch-interval-ms:0}") long watchIntervalMs) throws IOException, SQLException {
+        IndexManager indexManager = new IndexManager(
+                (id, previous) -> liveIndex.rebase(loadGeneration(id, previous)), databasePath, watchIntervalMs);
+        indexManager.addListener(liveIndex::published);
+        return indexManager;
+    }
+
+    private IndexGeneration loadGeneration(long id, IndexGeneration previous) throws IOException, SQLException {
+        // Taken before anything is read, a write during the load then makes the next reload export again
+        long fingerprint = SnapshotFile.fingerprint(databasePath);
+        LoadedIndex loadedIndex = loadedIndex();
+        return new IndexGeneration(id, loadedIndex.getTermDictionary(), loadedIndex.getDocumentStore(),
+                loadedIndex.getLinkGraph(), postingSource(loadedIndex, previous, fingerprint), bodyStore(fingerprint));
+    }
+
+    /**
+     * Term dictionary, document store, link graph and in memory mode the inverted index tables, read from the
+     * snapshot file while the database is unchanged since it was written.
+     */
+    private LoadedIndex loadedIndex() {
+        boolean postings = !"database".equals(mode) && !"segment".equals(mode); // memory is the default
+        return indexLoader.load(postings, snapshotPath, databasePath);
+    }
+
+    private PostingSource postingSource(LoadedIndex loadedIndex, IndexGeneration previous, long fingerprint)
+            throws IOException, SQLException {
+        PostingSource source;
+        switch (mode) {
+            case "database":
+                source = new DatabasePostingSource(searchReadRepository);
+                break;
+            case "segment":
+                source = openSegment(fingerprint);
+                break;
+            default:
+                // Already decoded and resident, mapped to document ordinals once instead of per query
+                IndexSnapshot postings = loadedIndex.getPostings();
+                postings.mapOrdinals(loadedIndex.getDocumentStore());
+                return postings;
+        }
+        if (cacheMaxBytes <= 0) {
+            return source;
+        }
+
+        CachingPostingSource cachingSource = new CachingPostingSource(source, cacheMaxBytes);
+        long startTime = System.currentTimeMillis();
+        PostingSource previousSource = previous == null
+                ? null : OverlayPostingSource.unwrap(previous.getPostingSource());
+        if (previousSource instanceof CachingPostingSource) {
+            // A reload keeps the working set of the generation it replaces
+            int words = cachingSource.warmUp((CachingPostingSource) previousSource);
+            logger.info("Warmed up the posting cache with the {} words of the previous generation in {} ms, {} MB",
+                    words, System.currentTimeMillis() - startTime, cachingSource.sizeInBytes() >> 20);
+        } else if (warmUpTerms > 0) {
+            for (IndexTable table : IndexTable.values()) {
+                cachingSource.warmUp(table, indexLoader.loadMostFrequentWids(table, warmUpTerms));
+            }
+            logger.info("Warmed up the posting cache with {} words per table in {} ms, {} MB",
+                    warmUpTerms, System.currentTimeMillis() - startTime, cachingSource.sizeInBytes() >> 20);
+        }
+        return cachingSource;
+    }
+
+    /**
+     * Block compressed page bodies for snippets, exported from the urlBody table again whenever the database
+     * fingerprint differs from the one the store was exported at. Like the snapshot this covers commits that
+     * only reached the write-ahead log.
+     */
+    private BodyStore bodyStore(long fingerprint) throws IOException, SQLException {
+        if (!BodyStore.isCurrent(bodyStorePath, fingerprint)) {
+            try (Connection connection = dataSource.getConnection()) {
+                BodyStoreWriter.export(connection, bodyStorePath, fingerprint);
+            }
+        }
+        return BodyStore.open(bodyStorePath);
+    }
+
+    private SegmentReader openSegment(long fingerprint) throws IOException, SQLException {
+        if (!SegmentReader.isCurrent(segmentPath, fingerprint)) {
+            try (Connection connection = dataSource.getConnection()) {
+                new SegmentWriter().export(connection, segmentPath, fingerprint);
+            }
+        }
+        return SegmentReader.open(segmentPath);
+    }
+}
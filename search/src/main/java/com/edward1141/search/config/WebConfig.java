@@ -1,11 +1,27 @@
 package com.edward1141.search.config;
 
+import com.edward1141.search.controller.ConcurrencyLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
+    private final int maxConcurrentSearches;
+    private final long maxWaitMs;
+    private final MeterRegistry meterRegistry;
+
+    public WebConfig(
+            @Value("${search.overload.max-concurrent:0}") int maxConcurrentSearches,
+            @Value("${search.overload.max-wait-ms:100}") long maxWaitMs,
+            MeterRegistry meterRegistry) {
+        this.maxConcurrentSearches = maxConcurrentSearches;
+        this.maxWaitMs = maxWaitMs;
+        this.meterRegistry = meterRegistry;
+    }
 
     @Override
     public void addCorsMappings(CorsRegistry registry) {
@@ -15,4 +31,12 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowedHeaders("*")
                 .maxAge(3600);
     }
-} 
\ No newline at end of file
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        if (maxConcurrentSearches > 0) {
+            registry.addInterceptor(new ConcurrencyLimiter(maxConcurrentSearches, maxWaitMs, meterRegistry))
+                    .addPathPatterns("/api/search");
+        }
+    }
+}
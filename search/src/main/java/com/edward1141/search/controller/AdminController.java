@@ -0,0 +1,62 @@
+package com.edward1141.search.controller;
+
+import com.edward1141.search.index.IndexManager;
+import com.edward1141.search.service.PageRankService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Maintenance operations, only mapped with {@code search.admin.enabled=true}.
+ */
+@RestController
+@RequestMapping("/api/admin")
+@ConditionalOnProperty(name = "search.admin.enabled", havingValue = "true")
+public class AdminController {
+
+    private final PageRankService pageRankService;
+    private final IndexManager indexManager;
+
+    @Autowired
+    public AdminController(PageRankService pageRankService, IndexManager indexManager) {
+        this.pageRankService = pageRankService;
+        this.indexManager = indexManager;
+    }
+
+    /**
+     * Reloads the index from the database in the background, searches keep running on the current one until
+     * the new one is published. A request during a reload queues another one after it.
+     */
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Object>> reloadIndex() {
+        indexManager.reload();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(indexManager.getStatus());
+    }
+
+    @GetMapping("/index")
+    public ResponseEntity<Map<String, Object>> indexStatus() {
+        return ResponseEntity.ok(indexManager.getStatus());
+    }
+
+    /**
+     * Starts recomputing page_rank_score in the background, 409 while a run is in progress.
+     */
+    @PostMapping("/page-rank")
+    public ResponseEntity<Map<String, Object>> recomputePageRank() {
+        boolean started = pageRankService.start();
+        return ResponseEntity.status(started ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT)
+                .body(pageRankService.getStatus());
+    }
+
+    @GetMapping("/page-rank")
+    public ResponseEntity<Map<String, Object>> pageRankStatus() {
+        return ResponseEntity.ok(pageRankService.getStatus());
+    }
+}
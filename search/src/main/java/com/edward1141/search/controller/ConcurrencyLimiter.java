@@ -0,0 +1,46 @@
+package com.edward1141.search.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of searches executing at once. A request over the limit waits up to maxWaitMs for a slot
+ * and is then answered 503 with Retry-After, so an overloaded server sheds load quickly instead of letting
+ * every request slow down. Rejections are counted in search.overload.rejected.
+ */
+public class ConcurrencyLimiter implements HandlerInterceptor {
+    private final Semaphore permits;
+    private final long maxWaitMs;
+    private final Counter rejected;
+
+    public ConcurrencyLimiter(int maxConcurrent, long maxWaitMs, MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxConcurrent, true);
+        this.maxWaitMs = maxWaitMs;
+        this.rejected = Counter.builder("search.overload.rejected")
+                .description("Search requests rejected because too many were already executing")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+            rejected.increment();
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many concurrent searches");
+            return false;
+        }
+        return true;
+    }
+
+    // Only called when preHandle returned true, i.e. a slot was taken
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        permits.release();
+    }
+}
@@ -0,0 +1,75 @@
+package com.edward1141.search.controller;
+
+import com.edward1141.search.model.IngestPage;
+import com.edward1141.search.service.IngestService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adds, replaces and deletes pages without a crawl and a rebuild, only mapped with
+ * {@code search.ingest.enabled=true}. Changes are searchable after the next refresh, or right away with
+ * {@code refresh=true}.
+ */
+@RestController
+@RequestMapping("/api/ingest")
+@ConditionalOnProperty(name = "search.ingest.enabled", havingValue = "true")
+public class IngestController {
+
+    private final IngestService ingestService;
+
+    @Autowired
+    public IngestController(IngestService ingestService) {
+        this.ingestService = ingestService;
+    }
+
+    /**
+     * Upserts the pages by url, a page replaces any earlier version, ingested or crawled.
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> ingest(
+            @RequestBody List<IngestPage> pages,
+            @RequestParam(value = "refresh", defaultValue = "false") boolean refresh) throws IOException {
+        List<Long> uids;
+        try {
+            uids = ingestService.ingest(pages, refresh);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("ingested", uids.size());
+        body.put("uids", uids);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(body);
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Map<String, Object>> delete(
+            @RequestParam("url") String url,
+            @RequestParam(value = "refresh", defaultValue = "false") boolean refresh) throws IOException {
+        if (url.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "url is required");
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("deleted", ingestService.delete(url, refresh));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(body);
+    }
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> status() {
+        return ResponseEntity.ok(ingestService.getStatus());
+    }
+}
@@ -1,15 +1,23 @@
 package com.edward1141.search.controller;
 
+import com.edward1141.search.model.ScoringAlgorithm;
 import com.edward1141.search.model.SearchRequest;
 import com.edward1141.search.model.SearchResponse;
 import com.edward1141.search.service.SearchService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,11 +27,18 @@ import java.util.Map;
 public class SearchController {
 
     private final SearchService searchService;
+    private final int maxPageSize;
     private final Logger logger = LoggerFactory.getLogger(SearchController.class);
 
+    /**
+     * @param maxPageSize largest limit a request gets, a larger or unlimited (&lt;= 0) limit is clamped to it so
+     *                    only one page is ever hydrated, 0 allows any limit
+     */
     @Autowired
-    public SearchController(SearchService searchService) {
+    public SearchController(SearchService searchService,
+                            @Value("${search.max-page-size:100}") int maxPageSize) {
         this.searchService = searchService;
+        this.maxPageSize = maxPageSize;
     }
 
     @GetMapping("/search")
@@ -38,7 +53,11 @@ public class SearchController {
             @RequestParam(value = "date-start", required = false) String dateStart,
             @RequestParam(value = "time-start", required = false) String timeStart,
             @RequestParam(value = "date-end", required = false) String dateEnd,
-            @RequestParam(value = "time-end", required = false) String timeEnd) throws JsonProcessingException {
+            @RequestParam(value = "time-end", required = false) String timeEnd,
+            @RequestParam(value = "offset", defaultValue = "0") String offset,
+            @RequestParam(value = "limit", defaultValue = "50") String limit,
+            @RequestParam(value = "scoring", required = false) String scoring,
+            @RequestParam(value = "debug", required = false) String debug) throws JsonProcessingException {
 
 
         long startTime = System.currentTimeMillis();
@@ -56,7 +75,12 @@ public class SearchController {
         boolean stemForRaw = false;
         boolean matchInTitleFlag = matchInTitle != null && matchInTitle.equals("on");
         boolean withPageRank = pageRank != null && pageRank.equals("on");
-        int phraseSearchDistanceValue = Integer.parseInt(phraseSearchDistance);
+        int phraseSearchDistanceValue = toInt("phrase-search-distance", phraseSearchDistance);
+        int offsetValue = Math.max(0, toInt("offset", offset));
+        int limitValue = toPageSize(toInt("limit", limit));
+        ScoringAlgorithm scoringAlgorithm = toScoringAlgorithm(scoring);
+        Long modifiedFrom = toEpochSecond(dateStart, timeStart, LocalTime.MIN);
+        Long modifiedTo = toEpochSecond(dateEnd, timeEnd, LocalTime.of(23, 59, 59));
 
         // Set phrase search options based on the parameter
         if (phraseSearchOptions.equals("1")) {
@@ -75,6 +99,13 @@ public class SearchController {
                 .matchInTitle(matchInTitleFlag)
                 .phraseSearchDistance(phraseSearchDistanceValue)
                 .withPageRank(withPageRank)
+                .offset(offsetValue)
+                .limit(limitValue)
+                .scoringAlgorithm(scoringAlgorithm)
+                .debugTiming("timing".equals(debug))
+                .excludeWords(excludeWords)
+                .modifiedFrom(modifiedFrom)
+                .modifiedTo(modifiedTo)
                 .build();
 
         // Perform search
@@ -84,10 +115,18 @@ public class SearchController {
         Map<String, Object> response = new HashMap<>();
         response.put("query", query);
         response.put("results", searchResponse.getResults());
+        response.put("total_results", searchResponse.getTotalResults());
+        response.put("total_results_exact", searchResponse.isTotalResultsExact());
+        response.put("offset", offsetValue);
+        response.put("limit", limitValue);
         response.put("time", String.format("%.4f", (System.currentTimeMillis() - startTime) / 1000.0));
         response.put("options", createOptions(phraseSearchOptions, matchInTitle, pageRank, phraseSearchDistance, 
                 skipHistory, excludeWords, dateStart, timeStart, dateEnd, timeEnd));
         response.put("stemmed_query", searchResponse.getStemmedQuery());
+        response.put("hydration_queries", searchResponse.getHydrationQueries());
+        if (searchResponse.getTimings() != null) {
+            response.put("timing", searchResponse.getTimings());
+        }
 //        response.put("history", new String[0]); // TODO: Implement history
 
         return ResponseEntity.ok(response);
@@ -105,6 +144,11 @@ public class SearchController {
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/cache-stats")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(searchService.getCacheStats());
+    }
+
     @GetMapping("/check-db")
     public ResponseEntity<Map<String, Object>> checkDatabase() {
         Map<String, Object> response = new HashMap<>();
@@ -114,6 +158,7 @@ public class SearchController {
             response.put("success", true);
             response.put("message", "Database connection successful");
             response.put("wordList_count", count);
+            response.put("term_dictionary_bytes", searchService.getTermDictionarySize());
         } catch (Exception e) {
             response.put("success", false);
             response.put("message", "Database error: " + e.getMessage());
@@ -121,6 +166,52 @@ public class SearchController {
         return ResponseEntity.ok(response);
     }
 
+    private static int toInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid " + name + ": " + value);
+        }
+    }
+
+    private int toPageSize(int limit) {
+        if (maxPageSize <= 0) {
+            return limit;
+        }
+        return limit <= 0 ? maxPageSize : Math.min(limit, maxPageSize);
+    }
+
+    /**
+     * @param scoring exhaustive or wand in any case, null or empty uses search.scoring.algorithm
+     */
+    private static ScoringAlgorithm toScoringAlgorithm(String scoring) {
+        if (scoring == null || scoring.isEmpty()) {
+            return null;
+        }
+        try {
+            return ScoringAlgorithm.valueOf(scoring.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid scoring algorithm: " + scoring);
+        }
+    }
+
+    /**
+     * @param date yyyy-MM-dd, null or empty leaves that end of the window open
+     * @param time HH:mm or HH:mm:ss, defaultTime if null or empty
+     * @return the instant in epoch seconds, UTC like the indexed last_modified times
+     */
+    private static Long toEpochSecond(String date, String time, LocalTime defaultTime) {
+        if (date == null || date.isEmpty()) {
+            return null;
+        }
+        try {
+            LocalTime localTime = time == null || time.isEmpty() ? defaultTime : LocalTime.parse(time);
+            return LocalDate.parse(date).atTime(localTime).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid date or time: " + e.getParsedString());
+        }
+    }
+
     private Map<String, Object> createDefaultOptions() {
         Map<String, Object> options = new HashMap<>();
         options.put("phrase-search-options", "0");
@@ -0,0 +1,185 @@
+package com.edward1141.search.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads passages of page bodies from a store written by {@link BodyStoreWriter}.
+ * Only the directory is kept on the heap, a passage reads and inflates just the blocks holding its tokens.
+ */
+public class BodyStore implements Closeable {
+    private final Path path;
+    private final FileChannel channel;
+    private final int blockTokens;
+    private final long[] uids;
+    private final long[] offsets;
+
+    private BodyStore(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+
+        ByteBuffer header = read(0, BodyStoreFormat.HEADER_BYTES);
+        if (header.getInt() != BodyStoreFormat.MAGIC) {
+            throw new IOException("Not a body store: " + path);
+        }
+        int version = header.getInt();
+        if (version != BodyStoreFormat.VERSION) {
+            throw new IOException("Unsupported body store version " + version + ": " + path);
+        }
+        header.getLong(); // Fingerprint, see isCurrent
+        blockTokens = header.getInt();
+        int documentCount = header.getInt();
+        long directoryOffset = header.getLong();
+
+        ByteBuffer directory = read(directoryOffset, documentCount * BodyStoreFormat.DIRECTORY_ENTRY_BYTES);
+        uids = new long[documentCount];
+        offsets = new long[documentCount];
+        for (int i = 0; i < documentCount; i++) {
+            uids[i] = directory.getLong();
+            offsets[i] = directory.getLong();
+        }
+    }
+
+    public static BodyStore open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new BodyStore(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return whether the store exists in this format version and was exported from the database while it had
+     * the fingerprint, like {@link SnapshotFile#read} checks a snapshot
+     */
+    public static boolean isCurrent(Path path, long fingerprint) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4 + 4 + 8);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    return false;
+                }
+            }
+            header.flip();
+            return header.getInt() == BodyStoreFormat.MAGIC && header.getInt() == BodyStoreFormat.VERSION
+                    && header.getLong() == fingerprint;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int size() {
+        return uids.length;
+    }
+
+    public long sizeInBytes() {
+        return 16L * uids.length;
+    }
+
+    /**
+     * Text of tokens [fromToken, fromToken + tokenCount) of the body, clamped to the tokens it has.
+     *
+     * @return the passage, or null if the document has no body
+     */
+    public String passage(long uid, int fromToken, int tokenCount) throws IOException {
+        int idx = Arrays.binarySearch(uids, uid);
+        if (idx < 0) {
+            return null;
+        }
+        long offset = offsets[idx];
+        ByteBuffer documentHeader = read(offset, BodyStoreFormat.DOCUMENT_HEADER_BYTES);
+        int totalTokens = documentHeader.getInt();
+        int blockCount = documentHeader.getInt();
+        if (totalTokens == 0 || tokenCount <= 0) {
+            return "";
+        }
+
+        int from = Math.min(Math.max(0, fromToken), totalTokens - 1);
+        int to = (int) Math.min((long) from + tokenCount, totalTokens);
+        int firstBlock = from / blockTokens;
+        int lastBlock = (to - 1) / blockTokens;
+        int blocks = lastBlock - firstBlock + 1;
+
+        long tables = offset + BodyStoreFormat.DOCUMENT_HEADER_BYTES;
+        ByteBuffer blockOffsets = read(tables + 4L * firstBlock, 4 * (blocks + 1));
+        ByteBuffer blockLengths = read(tables + 4L * (blockCount + 1) + 4L * firstBlock, 4 * blocks);
+        long data = tables + 4L * (2 * blockCount + 1);
+
+        int start = blockOffsets.getInt(0);
+        ByteBuffer compressed = read(data + start, blockOffsets.getInt(4 * blocks) - start);
+        StringBuilder text = new StringBuilder();
+        Inflater inflater = new Inflater(true);
+        try {
+            for (int b = 0; b < blocks; b++) {
+                int compressedStart = blockOffsets.getInt(4 * b) - start;
+                int compressedEnd = blockOffsets.getInt(4 * (b + 1)) - start;
+                byte[] raw = new byte[blockLengths.getInt(4 * b)];
+                inflater.reset();
+                inflater.setInput(compressed.array(), compressedStart, compressedEnd - compressedStart);
+                int length = 0;
+                while (!inflater.finished()) {
+                    int inflated = inflater.inflate(raw, length, raw.length - length);
+                    // Out of input, or more text than the recorded length, before the end of the block
+                    if (inflated == 0 && !inflater.finished()) {
+                        throw new IOException("Truncated body store block: " + path);
+                    }
+                    length += inflated;
+                }
+                if (length != raw.length) {
+                    throw new IOException("Body store block shorter than recorded: " + path);
+                }
+                text.append(new String(raw, StandardCharsets.UTF_8));
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt body store block: " + path, e);
+        } finally {
+            inflater.end();
+        }
+
+        // The inflated text starts at token firstBlock * blockTokens
+        BodyTokenizer tokenizer = new BodyTokenizer(text);
+        int token = firstBlock * blockTokens;
+        int passageStart = 0;
+        int passageEnd = 0;
+        while (token < to && tokenizer.next()) {
+            if (token == from) {
+                passageStart = tokenizer.start();
+            }
+            passageEnd = tokenizer.end();
+            token++;
+        }
+        return text.substring(passageStart, passageEnd);
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated body store: " + path);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
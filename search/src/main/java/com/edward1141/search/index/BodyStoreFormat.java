@@ -0,0 +1,29 @@
+package com.edward1141.search.index;
+
+/**
+ * Layout of the block compressed body store written by {@link BodyStoreWriter}.
+ *
+ * <pre>
+ * header     magic, version, database fingerprint, tokens per block, document count, directory offset
+ * documents  per document: token count, block count, block offsets [block count + 1],
+ *            block text lengths [block count], then the raw deflate compressed blocks
+ * directory  sorted by uid: (uid, document offset)
+ * </pre>
+ * Block k holds the UTF-8 body text from the start of token k * tokens per block, so a passage is read and
+ * inflated from the blocks it covers only. Block offsets are relative to the first block of the document.
+ * The fingerprint is {@link SnapshotFile#fingerprint} of the database the bodies were exported from.
+ * All fixed width values are big endian.
+ */
+final class BodyStoreFormat {
+    static final int MAGIC = 0x53424459; // "SBDY"
+    static final int VERSION = 2;
+
+    static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 8;
+    static final int DIRECTORY_ENTRY_BYTES = 8 + 8;
+    static final int DOCUMENT_HEADER_BYTES = 4 + 4;
+
+    static final int BLOCK_TOKENS = 128;
+
+    private BodyStoreFormat() {
+    }
+}
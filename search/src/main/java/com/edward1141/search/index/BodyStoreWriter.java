@@ -0,0 +1,204 @@
+package com.edward1141.search.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes page bodies into a block compressed body store, see {@link BodyStoreFormat} for the layout.
+ * Documents are appended one at a time, {@link #commit()} writes the directory and moves the file into place.
+ */
+public class BodyStoreWriter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(BodyStoreWriter.class);
+
+    private final Path target;
+    private final long fingerprint;
+    private final Path tmp;
+    private final FileChannel channel;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private byte[] compressed = new byte[1 << 16];
+    private long[] uids = new long[1024];
+    private long[] offsets = new long[1024];
+    private int documentCount;
+    private boolean committed;
+
+    /**
+     * @param fingerprint of the database the bodies come from, see {@link BodyStore#isCurrent}
+     */
+    public BodyStoreWriter(Path target, long fingerprint) throws IOException {
+        this.target = target;
+        this.fingerprint = fingerprint;
+        this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.channel = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE);
+        channel.position(BodyStoreFormat.HEADER_BYTES);
+    }
+
+    public void add(long uid, String body) throws IOException {
+        if (documentCount == uids.length) {
+            uids = Arrays.copyOf(uids, documentCount * 2);
+            offsets = Arrays.copyOf(offsets, documentCount * 2);
+        }
+        uids[documentCount] = uid;
+        offsets[documentCount] = channel.position();
+        documentCount++;
+
+        // Block k starts at token k * BLOCK_TOKENS, block 0 also keeps any leading text
+        int[] blockStarts = new int[16];
+        int blockCount = 1;
+        int tokenCount = 0;
+        BodyTokenizer tokenizer = new BodyTokenizer(body);
+        while (tokenizer.next()) {
+            if (tokenCount > 0 && tokenCount % BodyStoreFormat.BLOCK_TOKENS == 0) {
+                if (blockCount == blockStarts.length) {
+                    blockStarts = Arrays.copyOf(blockStarts, blockCount * 2);
+                }
+                blockStarts[blockCount++] = tokenizer.start();
+            }
+            tokenCount++;
+        }
+
+        ByteBuffer blocks = ByteBuffer.allocate(Math.max(64, body.length() / 2));
+        int[] blockOffsets = new int[blockCount + 1];
+        int[] blockLengths = new int[blockCount];
+        for (int b = 0; b < blockCount; b++) {
+            int end = b + 1 < blockCount ? blockStarts[b + 1] : body.length();
+            byte[] text = body.substring(blockStarts[b], end).getBytes(StandardCharsets.UTF_8);
+            int length = deflate(text);
+            if (blocks.remaining() < length) {
+                blocks = ByteBuffer.allocate(Math.max(blocks.capacity() * 2, blocks.position() + length)).put(blocks.flip());
+            }
+            blocks.put(compressed, 0, length);
+            blockOffsets[b + 1] = blocks.position();
+            blockLengths[b] = text.length;
+        }
+        blocks.flip();
+
+        ByteBuffer header = ByteBuffer.allocate(BodyStoreFormat.DOCUMENT_HEADER_BYTES + 4 * (2 * blockCount + 1));
+        header.putInt(tokenCount).putInt(blockCount);
+        for (int offset : blockOffsets) {
+            header.putInt(offset);
+        }
+        for (int length : blockLengths) {
+            header.putInt(length);
+        }
+        header.flip();
+        writeFully(header);
+        writeFully(blocks);
+    }
+
+    private int deflate(byte[] text) {
+        deflater.reset();
+        deflater.setInput(text);
+        deflater.finish();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        return length;
+    }
+
+    public void commit() throws IOException {
+        // Directory sorted by uid so the reader can binary search it
+        long[] sortedUids = Arrays.copyOf(uids, documentCount);
+        Arrays.sort(sortedUids);
+        long[] sortedOffsets = new long[documentCount];
+        for (int i = 0; i < documentCount; i++) {
+            sortedOffsets[Arrays.binarySearch(sortedUids, uids[i])] = offsets[i];
+        }
+
+        long directoryOffset = channel.position();
+        ByteBuffer directory = ByteBuffer.allocate(documentCount * BodyStoreFormat.DIRECTORY_ENTRY_BYTES);
+        for (int i = 0; i < documentCount; i++) {
+            directory.putLong(sortedUids[i]).putLong(sortedOffsets[i]);
+        }
+        directory.flip();
+        writeFully(directory);
+
+        ByteBuffer header = ByteBuffer.allocate(BodyStoreFormat.HEADER_BYTES);
+        header.putInt(BodyStoreFormat.MAGIC)
+                .putInt(BodyStoreFormat.VERSION)
+                .putLong(fingerprint)
+                .putInt(BodyStoreFormat.BLOCK_TOKENS)
+                .putInt(documentCount)
+                .putLong(directoryOffset);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+        channel.close();
+        Files.move(tmp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        committed = true;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        if (!committed) {
+            channel.close();
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public static void export(Connection connection, Path target, long fingerprint) throws IOException, SQLException {
+        long startTime = System.currentTimeMillis();
+        int documents = 0;
+        try (BodyStoreWriter writer = new BodyStoreWriter(target, fingerprint);
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT uid, body FROM urlBody")) {
+            while (rs.next()) {
+                String body = rs.getString(2);
+                writer.add(rs.getLong(1), body == null ? "" : body);
+                documents++;
+            }
+            writer.commit();
+        }
+        logger.info("Exported {} bodies to {} ({} MB) in {} ms",
+                documents, target, Files.size(target) >> 20, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Usage: BodyStoreWriter &lt;database file&gt; [body store file]
+     */
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length < 1) {
+            System.err.println("Usage: BodyStoreWriter <database file> [body store file]");
+            System.exit(1);
+        }
+        Path target = Paths.get(args.length > 1 ? args[1] : args[0] + ".body");
+        long fingerprint = SnapshotFile.fingerprint(Paths.get(args[0]));
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + args[0])) {
+            export(connection, target, fingerprint);
+        }
+    }
+}
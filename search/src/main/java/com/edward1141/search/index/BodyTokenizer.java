@@ -0,0 +1,56 @@
+package com.edward1141.search.index;
+
+/**
+ * Walks the tokens of a body text the way the Python indexer numbers them: punctuation is removed and the
+ * text is split on whitespace, so a whitespace separated run is a token unless it is only punctuation.
+ * {@link #start()} and {@link #end()} span the whole run, punctuation included, for display.
+ */
+final class BodyTokenizer {
+    private final CharSequence text;
+    private int next;
+    private int start;
+    private int end;
+
+    BodyTokenizer(CharSequence text) {
+        this.text = text;
+    }
+
+    boolean next() {
+        int length = text.length();
+        while (next < length) {
+            while (next < length && isWhitespace(text.charAt(next))) {
+                next++;
+            }
+            int runStart = next;
+            boolean token = false;
+            while (next < length && !isWhitespace(text.charAt(next))) {
+                token |= !isPunctuation(text.charAt(next));
+                next++;
+            }
+            if (token) {
+                start = runStart;
+                end = next;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int start() {
+        return start;
+    }
+
+    int end() {
+        return end;
+    }
+
+    // Python's str.split() also splits on non-breaking spaces
+    static boolean isWhitespace(char c) {
+        return Character.isWhitespace(c) || Character.isSpaceChar(c);
+    }
+
+    // string.punctuation
+    static boolean isPunctuation(char c) {
+        return (c >= '!' && c <= '/') || (c >= ':' && c <= '@') || (c >= '[' && c <= '`') || (c >= '{' && c <= '~');
+    }
+}
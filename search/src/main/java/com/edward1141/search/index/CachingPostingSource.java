@@ -0,0 +1,127 @@
+package com.edward1141.search.index;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Keeps decoded posting lists of a slower source (database rows or the segment file) on the heap,
+ * keyed by (table, wid) and evicted by their decoded size once the budget is reached.
+ * Closing it closes the source.
+ */
+public class CachingPostingSource implements PostingSource, Closeable {
+    // Caffeine does not store nulls, words without an entry are cached as this marker
+    private static final PostingList MISSING = new PostingList(new long[0], null, null, null, new int[1], new int[0]);
+
+    private final PostingSource delegate;
+    private final Cache<Key, PostingList> cache;
+
+    public CachingPostingSource(PostingSource delegate, long maxBytes) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                // The ordinals the first query maps the list to are counted up front, weights are fixed on insert
+                .weigher((Key key, PostingList postings) -> (int) Math.min(Integer.MAX_VALUE,
+                        32 + postings.sizeInBytes() + 4L * postings.size()))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Concurrent misses on the same word wait for one decode instead of each decoding it.
+     */
+    @Override
+    public PostingList getPostings(IndexTable table, long wid) throws JsonProcessingException {
+        PostingList postings;
+        try {
+            postings = cache.get(new Key(table, wid), this::load);
+        } catch (UncheckedIOException e) {
+            throw (JsonProcessingException) e.getCause();
+        }
+        return postings == MISSING ? null : postings;
+    }
+
+    private PostingList load(Key key) {
+        try {
+            PostingList postings = delegate.getPostings(key.table, key.wid);
+            return postings == null ? MISSING : postings;
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e); // Rethrown by getPostings, the cache mapping function cannot throw it
+        }
+    }
+
+    /**
+     * Decodes the given words of a table ahead of the first query, without counting towards the hit rate.
+     */
+    public void warmUp(IndexTable table, long[] wids) throws JsonProcessingException {
+        for (long wid : wids) {
+            PostingList postings = delegate.getPostings(table, wid);
+            cache.put(new Key(table, wid), postings == null ? MISSING : postings);
+        }
+    }
+
+    /**
+     * Decodes from this source the words cached by the source of the previous index generation, so a reload
+     * starts with the same working set instead of a cold cache.
+     *
+     * @return number of words decoded
+     */
+    public int warmUp(CachingPostingSource previous) throws JsonProcessingException {
+        int count = 0;
+        for (Key key : previous.cache.asMap().keySet()) {
+            PostingList postings = delegate.getPostings(key.table, key.wid);
+            cache.put(key, postings == null ? MISSING : postings);
+            count++;
+        }
+        return count;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    public long sizeInBytes() {
+        cache.cleanUp(); // Weights of recent writes are applied asynchronously
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    private static final class Key {
+        private final IndexTable table;
+        private final long wid;
+
+        private Key(IndexTable table, long wid) {
+            this.table = table;
+            this.wid = wid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return table == other.table && wid == other.wid;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * table.ordinal() + Long.hashCode(wid);
+        }
+    }
+}
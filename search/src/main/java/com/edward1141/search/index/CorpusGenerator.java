@@ -0,0 +1,858 @@
+package com.edward1141.search.index;
+
+import opennlp.tools.stemmer.PorterStemmer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Writes a synthetic crawl database with the schema of database/Database.py, for load tests and capacity
+ * planning without crawling: Zipf distributed words, positions in all six index tables, the forward index,
+ * page bodies, a link graph with PageRank and the VSM weights of the Python indexer. The output depends only
+ * on the arguments.
+ * <p>
+ * Memory stays bounded for millions of pages. Pages are generated twice from a per page seed, first to count
+ * document frequencies and then to write rows. Postings are spilled to sorted run files every batch of pages
+ * and merged word by word into the inverted index tables.
+ * Words are pronounceable pseudo words that the Porter stemmer merges now and then like real words. Stopwords are
+ * left out of the vocabulary, so the stemmed tables share the positions of the raw ones.
+ */
+public class CorpusGenerator {
+    public static final String URL_PREFIX = "https://synthetic.example/page/";
+
+    private static final Logger logger = LoggerFactory.getLogger(CorpusGenerator.class);
+    private static final String[] ONSETS = {"b", "d", "k", "l", "m", "n", "p", "r", "s", "t", "v", "z", "br", "st", "tr", "kl"};
+    private static final String[] VOWELS = {"a", "e", "i", "o", "u", "ai", "ou"};
+    private static final double WORD_EXPONENT = 1.05;
+    private static final double LINK_EXPONENT = 0.8;
+    private static final int MAX_CHILDREN = 15;
+    private static final int MAX_BODY_TOKENS = 4000;
+    private static final int FORWARD_INDEX_HEAD_SIZE = 10;
+    private static final int BATCH_PAGES = 20000;
+    private static final int INSERT_BATCH_ROWS = 256;
+    private static final long LINK_SALT = 0x5DEECE66DL;
+    private static final DateTimeFormatter LAST_MODIFIED_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy, HH:mm:ss");
+    private static final LocalDateTime NEWEST_MODIFIED = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    // Order of the run files of a batch
+    private static final int BODY = 0, TITLE = 1, RAW_BODY = 2, RAW_TITLE = 3, STEMMED_RAW_BODY = 4, STEMMED_RAW_TITLE = 5;
+    private static final String[] TABLE_NAMES = {
+            IndexTable.BODY.getTableName(), IndexTable.TITLE.getTableName(),
+            IndexTable.RAW_BODY.getTableName(), IndexTable.RAW_TITLE.getTableName(),
+            IndexTable.STEMMED_RAW_BODY.getTableName(), IndexTable.STEMMED_RAW_TITLE.getTableName()};
+
+    private final int documents;
+    private final int vocabulary;
+    private final long seed;
+
+    private final String[] words;
+    private final int[] stemOf;
+    private final String[] stems;
+    private final Zipf wordSampler;
+
+    // Filled by the counting pass, indexed by stem (body, title) or vocabulary rank (raw body, raw title)
+    private int[] bodyDf;
+    private int[] titleDf;
+    private int[] rawBodyDf;
+    private int[] rawTitleDf;
+    private long[] stemWids;
+    private long[] wordWids;
+    private String[] wordListWords;
+    private long[] wordListWids;
+
+    public CorpusGenerator(int documents, int vocabulary, long seed) {
+        this(documents, vocabulary, seed, Collections.emptySet());
+    }
+
+    /**
+     * @param stopwords words the vocabulary must not contain
+     */
+    public CorpusGenerator(int documents, int vocabulary, long seed, Set<String> stopwords) {
+        if (documents < 1 || vocabulary < 1) {
+            throw new IllegalArgumentException("documents and vocabulary must be positive");
+        }
+        this.documents = documents;
+        this.vocabulary = vocabulary;
+        this.seed = seed;
+
+        this.words = new String[vocabulary];
+        this.stemOf = new int[vocabulary];
+        PorterStemmer stemmer = new PorterStemmer();
+        Map<String, Integer> stemIds = new HashMap<>();
+        List<String> stemList = new ArrayList<>();
+        int spare = vocabulary; // stopwords are replaced by words past the end of the vocabulary
+        for (int rank = 0; rank < vocabulary; rank++) {
+            words[rank] = word(rank);
+            while (stopwords.contains(words[rank])) {
+                words[rank] = word(spare++);
+            }
+            String stem = stemmer.stem(words[rank]);
+            Integer id = stemIds.get(stem);
+            if (id == null) {
+                id = stemList.size();
+                stemIds.put(stem, id);
+                stemList.add(stem);
+            }
+            stemOf[rank] = id;
+        }
+        this.stems = stemList.toArray(new String[0]);
+        this.wordSampler = new Zipf(vocabulary, WORD_EXPONENT);
+    }
+
+    /**
+     * Pseudo word of a vocabulary rank, at least two consonant-vowel syllables.
+     * Every syllable starts with a consonant and ends with a vowel, so distinct ranks never spell the same word.
+     */
+    public static String word(int rank) {
+        int syllables = ONSETS.length * VOWELS.length;
+        StringBuilder word = new StringBuilder();
+        int value = rank;
+        do {
+            int syllable = value % syllables;
+            word.append(ONSETS[syllable / VOWELS.length]).append(VOWELS[syllable % VOWELS.length]);
+            value /= syllables;
+        } while (value > 0 || word.length() < 4);
+        return word.toString();
+    }
+
+    /**
+     * Writes the database to target, replacing it only once it is complete.
+     */
+    public void generate(Path target) throws IOException, SQLException {
+        long startTime = System.currentTimeMillis();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        Path runs = Files.createTempDirectory(target.toAbsolutePath().getParent(), "corpus-runs");
+
+        try {
+            countDocumentFrequencies();
+            long[] uids = assignIds(urls());
+            assignWordIds();
+
+            int[] childOffsets = new int[documents + 1];
+            int[] children = linkGraph(childOffsets);
+            double[] pageRank = pageRank(uids, childOffsets, children);
+
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + tmp)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA journal_mode=OFF");
+                    statement.execute("PRAGMA synchronous=OFF");
+                    createTables(statement);
+                }
+                connection.setAutoCommit(false);
+
+                writeWordList(connection);
+                int batches = writePages(connection, runs, uids, childOffsets, children, pageRank);
+                for (int table = 0; table < TABLE_NAMES.length; table++) {
+                    mergeRuns(connection, runs, batches, table, uids);
+                    logger.info("Wrote {}", TABLE_NAMES[table]);
+                }
+                connection.commit();
+            }
+            Files.move(tmp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+            try (Stream<Path> files = Files.list(runs)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(runs);
+        }
+
+        logger.info("Generated {} pages over {} words into {} ({} MB) in {} s",
+                documents, vocabulary, target, Files.size(target) >> 20, (System.currentTimeMillis() - startTime) / 1000);
+    }
+
+    // First pass, only the number of pages each word occurs in
+    private void countDocumentFrequencies() {
+        bodyDf = new int[stems.length];
+        titleDf = new int[stems.length];
+        rawBodyDf = new int[vocabulary];
+        rawTitleDf = new int[vocabulary];
+
+        Page page = new Page();
+        Groups groups = new Groups();
+        for (int doc = 0; doc < documents; doc++) {
+            page.generate(doc);
+            groups.group(page.body, page.bodyLength, stemOf);
+            countKeys(groups, bodyDf);
+            groups.group(page.body, page.bodyLength, null);
+            countKeys(groups, rawBodyDf);
+            groups.group(page.title, page.titleLength, stemOf);
+            countKeys(groups, titleDf);
+            groups.group(page.title, page.titleLength, null);
+            countKeys(groups, rawTitleDf);
+        }
+    }
+
+    private static void countKeys(Groups groups, int[] df) {
+        for (int g = 0; g < groups.count; g++) {
+            df[groups.keys[g]]++;
+        }
+    }
+
+    private String[] urls() {
+        String[] urls = new String[documents];
+        for (int doc = 0; doc < documents; doc++) {
+            urls[doc] = URL_PREFIX + doc;
+        }
+        return urls;
+    }
+
+    // Every word that occurs somewhere gets a wordList entry, a stem spelled like a word shares its wid
+    private void assignWordIds() {
+        Map<String, Integer> index = new LinkedHashMap<>();
+        for (int stem = 0; stem < stems.length; stem++) {
+            if (bodyDf[stem] > 0 || titleDf[stem] > 0) {
+                index.putIfAbsent(stems[stem], index.size());
+            }
+        }
+        for (int rank = 0; rank < vocabulary; rank++) {
+            if (rawBodyDf[rank] > 0 || rawTitleDf[rank] > 0) {
+                index.putIfAbsent(words[rank], index.size());
+            }
+        }
+        long[] ids = assignIds(index.keySet().toArray(new String[0]));
+
+        stemWids = new long[stems.length];
+        wordWids = new long[vocabulary];
+        Arrays.fill(stemWids, -1);
+        Arrays.fill(wordWids, -1);
+        for (int stem = 0; stem < stems.length; stem++) {
+            Integer i = index.get(stems[stem]);
+            if (i != null) {
+                stemWids[stem] = ids[i];
+            }
+        }
+        for (int rank = 0; rank < vocabulary; rank++) {
+            Integer i = index.get(words[rank]);
+            if (i != null) {
+                wordWids[rank] = ids[i];
+            }
+        }
+        wordListWords = index.keySet().toArray(new String[0]);
+        wordListWids = ids;
+    }
+
+    // Out links of every page as CSR, popular (low numbered) pages are linked more often
+    private int[] linkGraph(int[] childOffsets) {
+        Random random = new Random(seed ^ LINK_SALT);
+        Zipf targets = new Zipf(documents, LINK_EXPONENT);
+        int[] children = new int[documents * 4];
+        int size = 0;
+        for (int doc = 0; doc < documents; doc++) {
+            int degree = random.nextInt(Math.min(MAX_CHILDREN, documents - 1) + 1);
+            if (size + degree > children.length) {
+                children = Arrays.copyOf(children, Math.max(children.length * 2, size + degree));
+            }
+            int start = size;
+            while (size - start < degree) {
+                int target = targets.sample(random);
+                boolean duplicate = target == doc;
+                for (int i = start; i < size && !duplicate; i++) {
+                    duplicate = children[i] == target;
+                }
+                if (!duplicate) {
+                    children[size++] = target;
+                }
+            }
+            childOffsets[doc + 1] = size;
+        }
+        return Arrays.copyOf(children, size);
+    }
+
+    // The iteration of the search service over the generated graph, with the crawler's defaults
+    private double[] pageRank(long[] uids, int[] childOffsets, int[] children) throws IOException {
+        DocumentStore.Builder store = DocumentStore.builder();
+        LinkGraph.Builder links = LinkGraph.builder();
+        for (int doc = 0; doc < documents; doc++) {
+            store.add(uids[doc], Double.NaN, Double.NaN, Double.NaN, 0, DocumentStore.UNKNOWN_TIME);
+            for (int i = childOffsets[doc]; i < childOffsets[doc + 1]; i++) {
+                links.add(uids[doc], uids[children[i]]);
+            }
+        }
+        DocumentStore documentStore = store.build();
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            double[] scores = new PageRank(links.build(), documentStore, PageRank.DAMPING_FACTOR,
+                    PageRank.MAX_ITERATIONS, PageRank.CONVERGENCE_THRESHOLD).compute(pool, threads).scores;
+            double[] pageRank = new double[documents];
+            for (int doc = 0; doc < documents; doc++) {
+                pageRank[doc] = scores[documentStore.ordinal(uids[doc])];
+            }
+            return pageRank;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while computing page rank");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Page rank computation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void createTables(Statement statement) throws SQLException {
+        statement.execute("CREATE TABLE wordList(wid INTEGER PRIMARY KEY, word TEXT)");
+        statement.execute("CREATE TABLE urlList(uid INTEGER PRIMARY KEY, url TEXT, title TEXT, last_modified TEXT, "
+                + "content_length INTEGER, num_child INTEGER, document_weight REAL, title_weight REAL, page_rank_score REAL)");
+        statement.execute("CREATE TABLE parentchild(parentid INTEGER, childid INTEGER, primary key(parentid, childid), "
+                + "foreign key(parentid) references urlList(uid), foreign key(childid) references urlList(uid))");
+        for (String table : TABLE_NAMES) {
+            statement.execute("CREATE TABLE " + table + "(wid INTEGER, count INTEGER, data TEXT, primary key(wid), "
+                    + "foreign key(wid) references wordList(wid))");
+        }
+        statement.execute("CREATE TABLE forwardIndex(uid INTEGER, count INTEGER, data_head TEXT, data TEXT, primary key(uid), "
+                + "foreign key(uid) references urlList(uid))");
+        statement.execute("CREATE TABLE urlBody(uid INTEGER, body TEXT, primary key(uid), "
+                + "foreign key(uid) references urlList(uid))");
+    }
+
+    private void writeWordList(Connection connection) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO wordList(wid, word) VALUES (?, ?)")) {
+            for (int i = 0; i < wordListWords.length; i++) {
+                insert.setLong(1, wordListWids[i]);
+                insert.setString(2, wordListWords[i]);
+                insert.addBatch();
+                if ((i + 1) % INSERT_BATCH_ROWS == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+    }
+
+    /**
+     * Second pass: writes urlList, urlBody, forwardIndex and parentchild and spills the postings of every batch
+     * of pages to one run file per index table.
+     *
+     * @return number of batches
+     */
+    private int writePages(Connection connection, Path runs, long[] uids, int[] childOffsets, int[] children,
+                           double[] pageRank) throws IOException, SQLException {
+        double[] bodyIdf = idf(bodyDf);
+        double[] titleIdf = idf(titleDf);
+        RunBuffer[] buffers = new RunBuffer[TABLE_NAMES.length];
+        for (int table = 0; table < buffers.length; table++) {
+            buffers[table] = new RunBuffer(table == BODY || table == TITLE);
+        }
+        Page page = new Page();
+        Groups bodyStems = new Groups();
+        Groups bodyWords = new Groups();
+        Groups titleStems = new Groups();
+        Groups titleWords = new Groups();
+        StringBuilder text = new StringBuilder();
+        StringBuilder json = new StringBuilder();
+        int batches = 0;
+
+        try (PreparedStatement urlList = connection.prepareStatement("INSERT INTO urlList(uid, url, title, last_modified, "
+                + "content_length, num_child, document_weight, title_weight, page_rank_score) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement urlBody = connection.prepareStatement("INSERT INTO urlBody(uid, body) VALUES (?, ?)");
+             PreparedStatement forwardIndex = connection.prepareStatement(
+                     "INSERT INTO forwardIndex(uid, count, data_head, data) VALUES (?, ?, ?, ?)");
+             PreparedStatement parentChild = connection.prepareStatement(
+                     "INSERT INTO parentchild(parentid, childid) VALUES (?, ?)")) {
+            for (int doc = 0; doc < documents; doc++) {
+                page.generate(doc);
+                bodyStems.group(page.body, page.bodyLength, stemOf);
+                bodyWords.group(page.body, page.bodyLength, null);
+                titleStems.group(page.title, page.titleLength, stemOf);
+                titleWords.group(page.title, page.titleLength, null);
+
+                int bodyMaxTf = bodyStems.maxSize();
+                int titleMaxTf = titleStems.maxSize();
+                double documentWeight = 0;
+                for (int g = 0; g < bodyStems.count; g++) {
+                    double tfNorm = (double) bodyStems.size(g) / bodyMaxTf;
+                    double weight = tfNorm * bodyIdf[bodyStems.keys[g]];
+                    documentWeight += weight * weight;
+                    buffers[BODY].add(bodyStems, g, doc, tfNorm);
+                    buffers[RAW_BODY].add(bodyStems, g, doc, 0);
+                }
+                double titleWeight = 0;
+                for (int g = 0; g < titleStems.count; g++) {
+                    double tfNorm = (double) titleStems.size(g) / titleMaxTf;
+                    double weight = tfNorm * titleIdf[titleStems.keys[g]];
+                    titleWeight += weight * weight;
+                    buffers[TITLE].add(titleStems, g, doc, tfNorm);
+                    buffers[RAW_TITLE].add(titleStems, g, doc, 0);
+                }
+                for (int g = 0; g < bodyWords.count; g++) {
+                    buffers[STEMMED_RAW_BODY].add(bodyWords, g, doc, 0);
+                }
+                for (int g = 0; g < titleWords.count; g++) {
+                    buffers[STEMMED_RAW_TITLE].add(titleWords, g, doc, 0);
+                }
+
+                String body = join(page.body, page.bodyLength, text);
+                urlList.setLong(1, uids[doc]);
+                urlList.setString(2, URL_PREFIX + doc);
+                urlList.setString(3, join(page.title, page.titleLength, text));
+                urlList.setString(4, NEWEST_MODIFIED.minusSeconds(page.age).format(LAST_MODIFIED_FORMAT));
+                urlList.setInt(5, body.getBytes(StandardCharsets.UTF_8).length);
+                urlList.setInt(6, childOffsets[doc + 1] - childOffsets[doc]);
+                urlList.setDouble(7, Math.sqrt(documentWeight));
+                urlList.setDouble(8, Math.sqrt(titleWeight));
+                urlList.setDouble(9, pageRank[doc]);
+                urlList.addBatch();
+
+                urlBody.setLong(1, uids[doc]);
+                urlBody.setString(2, body);
+                urlBody.addBatch();
+
+                forwardIndex.setLong(1, uids[doc]);
+                forwardIndex.setInt(2, bodyStems.count);
+                forwardIndex.setString(3, dataHead(bodyStems, json));
+                forwardIndex.setString(4, forwardData(bodyStems, bodyMaxTf, bodyIdf, json));
+                forwardIndex.addBatch();
+
+                for (int i = childOffsets[doc]; i < childOffsets[doc + 1]; i++) {
+                    parentChild.setLong(1, uids[doc]);
+                    parentChild.setLong(2, uids[children[i]]);
+                    parentChild.addBatch();
+                }
+
+                if ((doc + 1) % INSERT_BATCH_ROWS == 0) {
+                    urlList.executeBatch();
+                    urlBody.executeBatch();
+                    forwardIndex.executeBatch();
+                    parentChild.executeBatch();
+                }
+                if ((doc + 1) % BATCH_PAGES == 0 || doc + 1 == documents) {
+                    for (int table = 0; table < buffers.length; table++) {
+                        buffers[table].writeRun(runFile(runs, batches, table));
+                    }
+                    batches++;
+                    urlList.executeBatch();
+                    urlBody.executeBatch();
+                    forwardIndex.executeBatch();
+                    parentChild.executeBatch();
+                    connection.commit();
+                    logger.info("Generated {} of {} pages", doc + 1, documents);
+                }
+            }
+        }
+        return batches;
+    }
+
+    private double[] idf(int[] df) {
+        double[] idf = new double[df.length];
+        for (int i = 0; i < df.length; i++) {
+            idf[i] = df[i] > 0 ? Math.log((double) documents / df[i]) : 0.0;
+        }
+        return idf;
+    }
+
+    private String join(int[] tokens, int length, StringBuilder text) {
+        text.setLength(0);
+        for (int i = 0; i < length; i++) {
+            text.append(i == 0 ? "" : " ").append(words[tokens[i]]);
+        }
+        return text.toString();
+    }
+
+    // {stem: tf} of the most frequent stemmed body words, ties in stem order
+    private String dataHead(Groups groups, StringBuilder json) {
+        json.setLength(0);
+        json.append('{');
+        boolean[] taken = new boolean[groups.count];
+        for (int n = 0; n < Math.min(FORWARD_INDEX_HEAD_SIZE, groups.count); n++) {
+            int best = -1;
+            for (int g = 0; g < groups.count; g++) {
+                if (!taken[g] && (best < 0 || groups.size(g) > groups.size(best))) {
+                    best = g;
+                }
+            }
+            taken[best] = true;
+            json.append(n == 0 ? "" : ", ").append('"').append(stems[groups.keys[best]]).append("\": ").append(groups.size(best));
+        }
+        return json.append('}').toString();
+    }
+
+    // {wid: [tf, df, tfNorm, idf, [positions]]} of the stemmed body words
+    private String forwardData(Groups groups, int maxTf, double[] idf, StringBuilder json) {
+        json.setLength(0);
+        json.append('{');
+        for (int g = 0; g < groups.count; g++) {
+            int stem = groups.keys[g];
+            json.append(g == 0 ? "" : ", ").append('"').append(stemWids[stem]).append("\": ");
+            appendFullEntry(json, groups.size(g), bodyDf[stem], (double) groups.size(g) / maxTf, idf[stem],
+                    groups.positions, groups.offsets[g], groups.offsets[g + 1]);
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendFullEntry(StringBuilder json, int tf, int df, double tfNorm, double idf,
+                                        int[] positions, int from, int to) {
+        json.append('[').append(tf).append(", ").append(df).append(", ").append(tfNorm).append(", ").append(idf).append(", ");
+        appendPositions(json, positions, from, to);
+        json.append(']');
+    }
+
+    private static void appendPositions(StringBuilder json, int[] positions, int from, int to) {
+        json.append('[');
+        for (int p = from; p < to; p++) {
+            json.append(p == from ? "" : ", ").append(positions[p]);
+        }
+        json.append(']');
+    }
+
+    private static Path runFile(Path runs, int batch, int table) {
+        return runs.resolve(batch + "-" + table + ".run");
+    }
+
+    /**
+     * Writes one inverted index table from the runs of every batch. Runs are read in batch order,
+     * so the postings of a word come out in page order.
+     */
+    private void mergeRuns(Connection connection, Path runs, int batches, int table, long[] uids)
+            throws IOException, SQLException {
+        boolean scoring = table == BODY || table == TITLE;
+        boolean stemmed = table != STEMMED_RAW_BODY && table != STEMMED_RAW_TITLE;
+        int[] df = table == BODY || table == RAW_BODY ? bodyDf
+                : table == TITLE || table == RAW_TITLE ? titleDf
+                : table == STEMMED_RAW_BODY ? rawBodyDf : rawTitleDf;
+        double[] idf = scoring ? idf(df) : null;
+
+        List<RunReader> readers = new ArrayList<>();
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(
+                Comparator.comparingInt((RunReader reader) -> reader.term).thenComparingInt(reader -> reader.batch));
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + TABLE_NAMES[table] + "(wid, count, data) VALUES (?, ?, ?)")) {
+            for (int batch = 0; batch < batches; batch++) {
+                RunReader reader = new RunReader(runFile(runs, batch, table), batch, scoring);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            StringBuilder json = new StringBuilder();
+            int rows = 0;
+            while (!queue.isEmpty()) {
+                int term = queue.peek().term;
+                int count = 0;
+                json.setLength(0);
+                json.append('{');
+                while (!queue.isEmpty() && queue.peek().term == term) {
+                    RunReader reader = queue.poll();
+                    do {
+                        json.append(count++ == 0 ? "" : ", ").append('"').append(uids[reader.doc]).append("\": ");
+                        if (scoring) {
+                            appendFullEntry(json, reader.positionCount, df[term], reader.tfNorm, idf[term],
+                                    reader.positions, 0, reader.positionCount);
+                        } else {
+                            appendPositions(json, reader.positions, 0, reader.positionCount);
+                        }
+                    } while (reader.next() && reader.term == term);
+                    if (!reader.exhausted) {
+                        queue.add(reader);
+                    }
+                }
+                insert.setLong(1, stemmed ? stemWids[term] : wordWids[term]);
+                insert.setInt(2, count);
+                insert.setString(3, json.append('}').toString());
+                insert.addBatch();
+                if (++rows % INSERT_BATCH_ROWS == 0) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+        connection.commit();
+    }
+
+    /**
+     * Ids the way the crawler makes them, the first 7 bytes of the SHA-256 of the text, bumped on collision.
+     */
+    static long[] assignIds(String[] texts) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long[] ids = new long[texts.length];
+        for (int i = 0; i < texts.length; i++) {
+            byte[] digest = sha256.digest(texts[i].getBytes(StandardCharsets.UTF_8));
+            long id = 0;
+            for (int b = 0; b < 7; b++) {
+                id = id << 8 | (digest[b] & 0xff);
+            }
+            ids[i] = id;
+        }
+
+        // Collisions are rare enough that a sorted check is all the common case needs
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                Set<Long> used = new HashSet<>();
+                for (int j = 0; j < ids.length; j++) {
+                    while (!used.add(ids[j])) {
+                        ids[j]++;
+                    }
+                }
+                break;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Tokens of one page, drawn from a random seeded by the page number so both passes see the same page.
+     */
+    private final class Page {
+        int[] body = new int[MAX_BODY_TOKENS];
+        int[] title = new int[8];
+        int bodyLength;
+        int titleLength;
+        long age; // seconds before NEWEST_MODIFIED
+
+        void generate(int doc) {
+            Random random = new Random(seed * 0x9E3779B97F4A7C15L + doc);
+            titleLength = 2 + random.nextInt(7);
+            bodyLength = Math.min(MAX_BODY_TOKENS, 40 + (int) Math.exp(5 + 0.7 * random.nextGaussian()));
+            for (int i = 0; i < titleLength; i++) {
+                title[i] = wordSampler.sample(random);
+            }
+            for (int i = 0; i < bodyLength; i++) {
+                body[i] = wordSampler.sample(random);
+            }
+            age = random.nextInt(5 * 365 * 24 * 3600);
+        }
+    }
+
+    /**
+     * Positions of each distinct key in a token sequence, keys in increasing order.
+     * Group g is keys[g] at positions[offsets[g] .. offsets[g + 1]).
+     */
+    private static final class Groups {
+        int[] keys = new int[64];
+        int[] offsets = new int[65];
+        int[] positions = new int[MAX_BODY_TOKENS];
+        long[] packed = new long[MAX_BODY_TOKENS];
+        int count;
+
+        /**
+         * @param keyOf maps a token to its key, null keys by the token itself
+         */
+        void group(int[] tokens, int length, int[] keyOf) {
+            for (int i = 0; i < length; i++) {
+                int key = keyOf == null ? tokens[i] : keyOf[tokens[i]];
+                packed[i] = (long) key << 32 | i;
+            }
+            Arrays.sort(packed, 0, length);
+
+            count = 0;
+            for (int i = 0; i < length; i++) {
+                int key = (int) (packed[i] >>> 32);
+                if (count == 0 || keys[count - 1] != key) {
+                    if (count == keys.length) {
+                        keys = Arrays.copyOf(keys, count * 2);
+                        offsets = Arrays.copyOf(offsets, count * 2 + 1);
+                    }
+                    keys[count] = key;
+                    offsets[count] = i;
+                    count++;
+                }
+                positions[i] = (int) packed[i];
+            }
+            offsets[count] = length;
+        }
+
+        int size(int g) {
+            return offsets[g + 1] - offsets[g];
+        }
+
+        int maxSize() {
+            int max = 0;
+            for (int g = 0; g < count; g++) {
+                max = Math.max(max, size(g));
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Postings of one batch for one table, written sorted by word and then page as
+     * [record count] then per record [term, doc, (tfNorm), position count, positions...].
+     */
+    private static final class RunBuffer {
+        private final boolean scoring;
+        private int[] terms = new int[1024];
+        private int[] docs = new int[1024];
+        private double[] tfNorms = new double[1024];
+        private int[] positionOffsets = new int[1025];
+        private int[] positions = new int[4096];
+        private int size;
+
+        RunBuffer(boolean scoring) {
+            this.scoring = scoring;
+        }
+
+        void add(Groups groups, int g, int doc, double tfNorm) {
+            if (size == terms.length) {
+                terms = Arrays.copyOf(terms, size * 2);
+                docs = Arrays.copyOf(docs, size * 2);
+                tfNorms = Arrays.copyOf(tfNorms, size * 2);
+                positionOffsets = Arrays.copyOf(positionOffsets, size * 2 + 1);
+            }
+            int start = positionOffsets[size];
+            int length = groups.size(g);
+            if (start + length > positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(positions.length * 2, start + length));
+            }
+            System.arraycopy(groups.positions, groups.offsets[g], positions, start, length);
+            terms[size] = groups.keys[g];
+            docs[size] = doc;
+            tfNorms[size] = tfNorm;
+            positionOffsets[size + 1] = start + length;
+            size++;
+        }
+
+        void writeRun(Path file) throws IOException {
+            // Records were added in page order, sorting on (term, record) keeps it within a term
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = (long) terms[i] << 32 | i;
+            }
+            Arrays.sort(order);
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 20))) {
+                out.writeInt(size);
+                for (long packed : order) {
+                    int i = (int) packed;
+                    out.writeInt(terms[i]);
+                    out.writeInt(docs[i]);
+                    if (scoring) {
+                        out.writeDouble(tfNorms[i]);
+                    }
+                    out.writeInt(positionOffsets[i + 1] - positionOffsets[i]);
+                    for (int p = positionOffsets[i]; p < positionOffsets[i + 1]; p++) {
+                        out.writeInt(positions[p]);
+                    }
+                }
+            }
+            size = 0;
+        }
+    }
+
+    private static final class RunReader implements Closeable {
+        private final DataInputStream in;
+        private final boolean scoring;
+        final int batch;
+        private int remaining;
+        int term;
+        int doc;
+        double tfNorm;
+        int[] positions = new int[64];
+        int positionCount;
+        boolean exhausted;
+
+        RunReader(Path file, int batch, boolean scoring) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 20));
+            this.batch = batch;
+            this.scoring = scoring;
+            this.remaining = in.readInt();
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                exhausted = true;
+                return false;
+            }
+            remaining--;
+            term = in.readInt();
+            doc = in.readInt();
+            tfNorm = scoring ? in.readDouble() : 0.0;
+            positionCount = in.readInt();
+            if (positionCount > positions.length) {
+                positions = new int[Math.max(positionCount, positions.length * 2)];
+            }
+            for (int p = 0; p < positionCount; p++) {
+                positions[p] = in.readInt();
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Samples ranks 0 .. n - 1 with probability proportional to 1 / (rank + 1)^exponent.
+     */
+    static final class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double exponent) {
+            cumulative = new double[n];
+            double sum = 0;
+            for (int rank = 0; rank < n; rank++) {
+                sum += 1.0 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = sum;
+            }
+        }
+
+        int sample(Random random) {
+            double target = random.nextDouble() * cumulative[cumulative.length - 1];
+            int rank = Arrays.binarySearch(cumulative, target);
+            return Math.min(rank < 0 ? -rank - 1 : rank, cumulative.length - 1);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length < 1) {
+            System.err.println("Usage: CorpusGenerator <database file> [documents=1000000] [vocabulary=200000] [seed=42] [stopwords file]");
+            System.exit(1);
+        }
+        int documents = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int vocabulary = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        Set<String> stopwords = new HashSet<>();
+        if (args.length > 4) {
+            for (String word : Files.readString(Paths.get(args[4])).split("\\s+")) {
+                stopwords.add(word.trim().toLowerCase());
+            }
+        }
+        new CorpusGenerator(documents, vocabulary, seed, stopwords).generate(Paths.get(args[0]));
+    }
+}
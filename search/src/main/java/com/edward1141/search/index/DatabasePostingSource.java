@@ -0,0 +1,27 @@
+package com.edward1141.search.index;
+
+import com.edward1141.search.repository.SearchReadRepository;
+import com.edward1141.search.utils.IndexParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Reads and decodes the JSON posting row of a word on every call.
+ * Used when the index is not loaded into memory ({@code search.index.mode=database}).
+ */
+public class DatabasePostingSource implements PostingSource {
+    private final SearchReadRepository searchReadRepository;
+    private final IndexParser indexParser = new IndexParser();
+
+    public DatabasePostingSource(SearchReadRepository searchReadRepository) {
+        this.searchReadRepository = searchReadRepository;
+    }
+
+    @Override
+    public PostingList getPostings(IndexTable table, long wid) throws JsonProcessingException {
+        String data = searchReadRepository.findPostingData(table, wid);
+        if (data == null) {
+            return null;
+        }
+        return indexParser.parsePostingList(data, table.isScoringFields());
+    }
+}
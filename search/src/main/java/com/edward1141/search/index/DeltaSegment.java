@@ -0,0 +1,231 @@
+package com.edward1141.search.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable batch of ingested updates, the unit {@link LiveIndex} publishes, searches and compacts.
+ * Built like a small loaded index: a term dictionary of its words, a document store of its pages and the posting
+ * lists of every table in memory, so a segment is searched with the same code as the main index.
+ * <p>
+ * Scoring fields follow the indexer with the main index counted in: idf is ln(N / df) over the documents of the
+ * generation the segment is built against plus its own, so scores of both are comparable. Like the loaded index
+ * these statistics are not recomputed for later changes, compaction rebuilds them.
+ * Deletes are kept as markers, they hide older versions of their uid in the main index and in older segments.
+ */
+public final class DeltaSegment {
+    private final LiveIndex.Update[] documents; // by document ordinal, i.e. uid order
+    private final LiveIndex.Update[] deletes; // by uid
+    private final TermDictionary termDictionary;
+    private final DocumentStore documentStore;
+    private final IndexSnapshot postings;
+
+    private DeltaSegment(LiveIndex.Update[] documents, LiveIndex.Update[] deletes, TermDictionary termDictionary,
+                         DocumentStore documentStore, IndexSnapshot postings) {
+        this.documents = documents;
+        this.deletes = deletes;
+        this.termDictionary = termDictionary;
+        this.documentStore = documentStore;
+        this.postings = postings;
+    }
+
+    /**
+     * @param updates at most one per uid
+     * @param main    generation to take wids and document frequencies from
+     */
+    static DeltaSegment build(Collection<LiveIndex.Update> updates, IndexGeneration main) throws IOException {
+        List<LiveIndex.Update> pages = new ArrayList<>();
+        List<LiveIndex.Update> deletes = new ArrayList<>();
+        for (LiveIndex.Update update : updates) {
+            (update.page != null ? pages : deletes).add(update);
+        }
+        pages.sort(Comparator.comparingLong(u -> u.uid));
+        deletes.sort(Comparator.comparingLong(u -> u.uid));
+
+        Statistics statistics = new Statistics(main, pages);
+        DocumentStore.Builder documents = DocumentStore.builder();
+        TermDictionary.Builder words = TermDictionary.builder();
+        Map<IndexTable, Map<String, PostingList.Builder>> lists = new EnumMap<>(IndexTable.class);
+        for (LiveIndex.Update update : pages) {
+            IngestedPage page = update.page;
+            documents.add(page.getUid(), statistics.weight(page, IndexTable.BODY),
+                    statistics.weight(page, IndexTable.TITLE), Double.NaN, page.getContentLength(),
+                    page.getLastModified());
+            for (IndexTable table : IndexTable.values()) {
+                Map<String, PostingList.Builder> tableLists = lists.computeIfAbsent(table, t -> new HashMap<>());
+                int maxTf = maxTf(page.terms(table));
+                for (Map.Entry<String, int[]> entry : page.terms(table).entrySet()) {
+                    int[] positions = entry.getValue();
+                    PostingList.Builder list = tableLists.computeIfAbsent(entry.getKey(),
+                            term -> PostingList.builder(table.isScoringFields()));
+                    if (table.isScoringFields()) {
+                        list.add(page.getUid(), positions.length, (double) positions.length / maxTf,
+                                statistics.idf(table, entry.getKey()));
+                    } else {
+                        list.add(page.getUid());
+                    }
+                    for (int position : positions) {
+                        list.addPosition(position);
+                    }
+                }
+            }
+        }
+
+        Map<IndexTable, PostingStore> stores = new EnumMap<>(IndexTable.class);
+        Map<String, Long> wids = new HashMap<>();
+        for (IndexTable table : IndexTable.values()) {
+            PostingStore.Builder store = PostingStore.builder(table);
+            for (Map.Entry<String, PostingList.Builder> entry : lists.getOrDefault(table, Map.of()).entrySet()) {
+                long wid = wids.computeIfAbsent(entry.getKey(), word -> wid(main, word));
+                store.put(wid, entry.getValue().build());
+            }
+            stores.put(table, store.build());
+        }
+        wids.forEach(words::add);
+
+        DocumentStore documentStore = documents.build();
+        IndexSnapshot snapshot = new IndexSnapshot(stores);
+        snapshot.mapOrdinals(documentStore);
+        return new DeltaSegment(pages.toArray(new LiveIndex.Update[0]), deletes.toArray(new LiveIndex.Update[0]),
+                words.build(), documentStore, snapshot);
+    }
+
+    // A word the main index does not know gets the wid the crawler would give it
+    private static long wid(IndexGeneration main, String word) {
+        long wid = main.getTermDictionary().getWid(word);
+        return wid != TermDictionary.NOT_FOUND ? wid : PageAnalyzer.hashId(word);
+    }
+
+    private static int maxTf(Map<String, int[]> terms) {
+        int maxTf = 0;
+        for (int[] positions : terms.values()) {
+            maxTf = Math.max(maxTf, positions.length);
+        }
+        return maxTf;
+    }
+
+    public int size() {
+        return documents.length;
+    }
+
+    public TermDictionary getTermDictionary() {
+        return termDictionary;
+    }
+
+    public DocumentStore getDocumentStore() {
+        return documentStore;
+    }
+
+    public PostingSource getPostings() {
+        return postings;
+    }
+
+    IndexSnapshot getSnapshot() {
+        return postings;
+    }
+
+    /**
+     * @return the page of a document of this segment
+     */
+    public IngestedPage page(int ordinal) {
+        return documents[ordinal].page;
+    }
+
+    LiveIndex.Update update(int ordinal) {
+        return documents[ordinal];
+    }
+
+    LiveIndex.Update[] deletes() {
+        return deletes;
+    }
+
+    // Pages and deletes
+    List<LiveIndex.Update> updates() {
+        List<LiveIndex.Update> updates = new ArrayList<>(Arrays.asList(documents));
+        updates.addAll(Arrays.asList(deletes));
+        return updates;
+    }
+
+    /**
+     * @return the page with the uid, or null if the segment has none
+     */
+    public IngestedPage page(long uid) {
+        int ordinal = documentStore.ordinal(uid);
+        return ordinal == DocumentStore.NOT_FOUND ? null : documents[ordinal].page;
+    }
+
+    public long sizeInBytes() {
+        long bytes = termDictionary.sizeInBytes() + documentStore.sizeInBytes() + postings.sizeInBytes();
+        for (LiveIndex.Update update : documents) {
+            bytes += update.page.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    // Document frequencies of the generation and the segment, and the weights the indexer derives from them
+    private static final class Statistics {
+        private final IndexGeneration main;
+        private final int documents;
+        private final Map<IndexTable, Map<String, Integer>> segmentDf = new EnumMap<>(IndexTable.class);
+        private final Map<IndexTable, Map<String, Double>> idf = new EnumMap<>(IndexTable.class);
+
+        Statistics(IndexGeneration main, List<LiveIndex.Update> pages) {
+            this.main = main;
+            this.documents = main.getDocumentStore().size() + pages.size();
+            for (IndexTable table : new IndexTable[]{IndexTable.BODY, IndexTable.TITLE}) {
+                Map<String, Integer> df = new HashMap<>();
+                for (LiveIndex.Update update : pages) {
+                    for (String term : update.page.terms(table).keySet()) {
+                        df.merge(term, 1, Integer::sum);
+                    }
+                }
+                segmentDf.put(table, df);
+                idf.put(table, new HashMap<>());
+            }
+        }
+
+        double idf(IndexTable table, String term) throws IOException {
+            Double cached = idf.get(table).get(term);
+            if (cached != null) {
+                return cached;
+            }
+            int df = segmentDf.get(table).getOrDefault(term, 0);
+            long wid = main.getTermDictionary().getWid(term);
+            if (wid != TermDictionary.NOT_FOUND) {
+                PostingList postings = main.getPostingSource().getPostings(table, wid);
+                df += postings == null ? 0 : postings.size();
+            }
+            double value = Math.log((double) documents / df);
+            idf.get(table).put(term, value);
+            return value;
+        }
+
+        // sqrt of the sum of (tfNorm * idf)^2 over the terms, NaN for a page without terms like the indexer's NULL
+        double weight(IngestedPage page, IndexTable table) throws IOException {
+            Map<String, int[]> terms = page.terms(table);
+            if (terms.isEmpty()) {
+                return Double.NaN;
+            }
+            int maxTf = maxTf(terms);
+            double sum = 0.0;
+            for (Map.Entry<String, int[]> entry : terms.entrySet()) {
+                double weight = (double) entry.getValue().length / maxTf * idf(table, entry.getKey());
+                sum += weight * weight;
+            }
+            return Math.sqrt(sum);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DeltaSegment(documents=%d, deletes=%d, words=%d)", documents.length, deletes.length,
+                termDictionary.size());
+    }
+}
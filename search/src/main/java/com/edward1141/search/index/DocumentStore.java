@@ -0,0 +1,296 @@
+package com.edward1141.search.index;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.RoaringBitmapWriter;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Column store of the urlList fields used while ranking.
+ * Documents are numbered by a dense ordinal in uid order and every column is a primitive array indexed by it.
+ * Sets of documents are bitmaps of ordinals, see {@link #ordinals(long[])}.
+ * Ordinals are also kept sorted by last modified time, so a date window is two binary searches.
+ * Missing weights are stored as NaN and a missing last modified time as {@link #UNKNOWN_TIME}.
+ */
+public final class DocumentStore {
+    public static final int NOT_FOUND = -1;
+    public static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
+    // Format the crawler writes last_modified in
+    private static final DateTimeFormatter LAST_MODIFIED_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy, HH:mm:ss");
+
+    private final long[] uids;
+    private final double[] documentWeight;
+    private final double[] titleWeight;
+    private final double[] pageRankScore;
+    private final int[] contentLength;
+    private final long[] lastModified; // epoch seconds
+    private final long[] sortedLastModified; // known times in ascending order
+    private final int[] byLastModified; // ordinal of each sortedLastModified entry
+    private final double maxPageRankScore;
+
+    DocumentStore(long[] uids, double[] documentWeight, double[] titleWeight, double[] pageRankScore,
+                  int[] contentLength, long[] lastModified) {
+        this.uids = uids;
+        this.documentWeight = documentWeight;
+        this.titleWeight = titleWeight;
+        this.pageRankScore = pageRankScore;
+        this.contentLength = contentLength;
+        this.lastModified = lastModified;
+
+        double max = 0.0;
+        for (double score : pageRankScore) {
+            if (!Double.isNaN(score)) {
+                max = Math.max(max, score);
+            }
+        }
+        this.maxPageRankScore = max;
+
+        int known = 0;
+        for (long time : lastModified) {
+            if (time != UNKNOWN_TIME) {
+                known++;
+            }
+        }
+        this.sortedLastModified = new long[known];
+        known = 0;
+        for (long time : lastModified) {
+            if (time != UNKNOWN_TIME) {
+                sortedLastModified[known++] = time;
+            }
+        }
+        Arrays.sort(sortedLastModified);
+
+        // Each ordinal goes to the next free slot of its time, equal times stay in ordinal order
+        this.byLastModified = new int[known];
+        int[] filled = new int[known];
+        for (int ordinal = 0; ordinal < lastModified.length; ordinal++) {
+            if (lastModified[ordinal] != UNKNOWN_TIME) {
+                int first = lowerBound(sortedLastModified, lastModified[ordinal]);
+                byLastModified[first + filled[first]++] = ordinal;
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return uids.length;
+    }
+
+    /**
+     * A binary search per call, scoring reads the ordinals of a whole list from {@link PostingList#ordinals}.
+     *
+     * @return dense ordinal of the document, or {@link #NOT_FOUND}
+     */
+    public int ordinal(long uid) {
+        int ordinal = Arrays.binarySearch(uids, uid);
+        return ordinal < 0 ? NOT_FOUND : ordinal;
+    }
+
+    public long uid(int ordinal) {
+        return uids[ordinal];
+    }
+
+    /**
+     * @param sortedUids ascending document ids, e.g. the matches of a posting list scan
+     * @return ordinals of the documents in the store, ids of unknown documents are dropped
+     */
+    public RoaringBitmap ordinals(long[] sortedUids) {
+        RoaringBitmapWriter<RoaringBitmap> writer = RoaringBitmapWriter.writer().get();
+        int from = 0;
+        for (long uid : sortedUids) {
+            // Ordinals ascend with the ids, so each search starts after the previous hit and the writer only appends
+            int idx = Arrays.binarySearch(uids, from, uids.length, uid);
+            if (idx >= 0) {
+                writer.add(idx);
+                from = idx + 1;
+            } else {
+                from = -idx - 1;
+            }
+        }
+        return writer.get();
+    }
+
+    public RoaringBitmap ordinals(PostingList postings) {
+        RoaringBitmapWriter<RoaringBitmap> writer = RoaringBitmapWriter.writer().get();
+        for (int doc : postings.ordinals(this)) {
+            if (doc != NOT_FOUND) {
+                writer.add(doc);
+            }
+        }
+        return writer.get();
+    }
+
+    /**
+     * Maps the postings of a list to ordinals in one walk, see {@link PostingList#ordinals}.
+     *
+     * @return ordinal of the document of each posting, or {@link #NOT_FOUND}
+     */
+    int[] postingOrdinals(PostingList postings) {
+        int[] ordinals = new int[postings.size()];
+        int from = 0;
+        for (int i = 0; i < ordinals.length; i++) {
+            long uid = postings.docId(i);
+            // Ids ascend, gallop from the previous hit so a dense list costs a few comparisons per posting
+            int bound = 1;
+            while (from + bound < uids.length && uids[from + bound] < uid) {
+                bound <<= 1;
+            }
+            int idx = Arrays.binarySearch(uids, from, Math.min(from + bound + 1, uids.length), uid);
+            if (idx >= 0) {
+                ordinals[i] = idx;
+                from = idx + 1;
+            } else {
+                ordinals[i] = NOT_FOUND;
+                from = -idx - 1;
+            }
+        }
+        return ordinals;
+    }
+
+    /**
+     * @return ordinals of the documents last modified within [from, to] epoch seconds, documents without a known
+     * time are never in the window
+     */
+    public RoaringBitmap modifiedBetween(long from, long to) {
+        int start = lowerBound(sortedLastModified, from);
+        int end = to == Long.MAX_VALUE ? sortedLastModified.length : lowerBound(sortedLastModified, to + 1);
+        if (start >= end) {
+            return new RoaringBitmap();
+        }
+        int[] ordinals = Arrays.copyOfRange(byLastModified, start, end);
+        Arrays.sort(ordinals);
+        return RoaringBitmap.bitmapOf(ordinals);
+    }
+
+    /**
+     * @return index of the first value >= key
+     */
+    private static int lowerBound(long[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public double documentWeight(int ordinal) {
+        return documentWeight[ordinal];
+    }
+
+    public double titleWeight(int ordinal) {
+        return titleWeight[ordinal];
+    }
+
+    public double pageRankScore(int ordinal) {
+        return pageRankScore[ordinal];
+    }
+
+    public double maxPageRankScore() {
+        return maxPageRankScore;
+    }
+
+    public int contentLength(int ordinal) {
+        return contentLength[ordinal];
+    }
+
+    public long lastModified(int ordinal) {
+        return lastModified[ordinal];
+    }
+
+    /**
+     * @return last_modified as epoch seconds (the crawler time zone is not stored, UTC is assumed),
+     * or {@link #UNKNOWN_TIME} if it is missing or malformed
+     */
+    public static long parseLastModified(String lastModified) {
+        if (lastModified == null) {
+            return UNKNOWN_TIME;
+        }
+        try {
+            return LocalDateTime.parse(lastModified, LAST_MODIFIED_FORMAT).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            return UNKNOWN_TIME;
+        }
+    }
+
+    /**
+     * @return the epoch seconds as the crawler writes last_modified
+     */
+    public static String formatLastModified(long epochSeconds) {
+        return LocalDateTime.ofEpochSecond(epochSeconds, 0, ZoneOffset.UTC).format(LAST_MODIFIED_FORMAT);
+    }
+
+    public long sizeInBytes() {
+        return 8L * uids.length * 5 + 4L * contentLength.length
+                + 8L * sortedLastModified.length + 4L * byLastModified.length + 8 * 16;
+    }
+
+    public static final class Builder {
+        private long[] uids = new long[1024];
+        private double[] documentWeight = new double[1024];
+        private double[] titleWeight = new double[1024];
+        private double[] pageRankScore = new double[1024];
+        private int[] contentLength = new int[1024];
+        private long[] lastModified = new long[1024];
+        private int size;
+
+        private Builder() {
+        }
+
+        public Builder add(long uid, double documentWeight, double titleWeight, double pageRankScore,
+                           int contentLength, long lastModified) {
+            if (size == uids.length) {
+                int capacity = size * 2;
+                uids = Arrays.copyOf(uids, capacity);
+                this.documentWeight = Arrays.copyOf(this.documentWeight, capacity);
+                this.titleWeight = Arrays.copyOf(this.titleWeight, capacity);
+                this.pageRankScore = Arrays.copyOf(this.pageRankScore, capacity);
+                this.contentLength = Arrays.copyOf(this.contentLength, capacity);
+                this.lastModified = Arrays.copyOf(this.lastModified, capacity);
+            }
+            uids[size] = uid;
+            this.documentWeight[size] = documentWeight;
+            this.titleWeight[size] = titleWeight;
+            this.pageRankScore[size] = pageRankScore;
+            this.contentLength[size] = contentLength;
+            this.lastModified[size] = lastModified;
+            size++;
+            return this;
+        }
+
+        public DocumentStore build() {
+            long[] sortedUids = Arrays.copyOf(uids, size);
+            Arrays.sort(sortedUids);
+
+            double[] sortedDocumentWeight = new double[size];
+            double[] sortedTitleWeight = new double[size];
+            double[] sortedPageRankScore = new double[size];
+            int[] sortedContentLength = new int[size];
+            long[] sortedLastModified = new long[size];
+            for (int i = 0; i < size; i++) {
+                int ordinal = Arrays.binarySearch(sortedUids, uids[i]);
+                sortedDocumentWeight[ordinal] = documentWeight[i];
+                sortedTitleWeight[ordinal] = titleWeight[i];
+                sortedPageRankScore[ordinal] = pageRankScore[i];
+                sortedContentLength[ordinal] = contentLength[i];
+                sortedLastModified[ordinal] = lastModified[i];
+            }
+
+            return new DocumentStore(sortedUids, sortedDocumentWeight, sortedTitleWeight, sortedPageRankScore,
+                    sortedContentLength, sortedLastModified);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.edward1141.search.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One complete version of everything a search reads: term dictionary, document store, link graph, postings
+ * and body store, all loaded from the same state of the database. Published by {@link IndexManager}.
+ * <p>
+ * Reference counted: the manager holds one reference while the generation is current and every query
+ * holds one from {@link IndexManager#acquire()} to {@link #release()}. The files are closed when the last
+ * reference of a replaced generation is released, so queries started on it finish on it.
+ * <p>
+ * A generation derived from another one by merging ingested pages, see {@link LiveIndex}, shares its posting
+ * source and body store. It holds a reference to the generation that owns them instead of closing them itself.
+ */
+public final class IndexGeneration {
+    private static final Logger logger = LoggerFactory.getLogger(IndexGeneration.class);
+
+    private final long id;
+    private final TermDictionary termDictionary;
+    private final DocumentStore documentStore;
+    private final LinkGraph linkGraph;
+    private final PostingSource postingSource;
+    private final BodyStore bodyStore;
+    private final IndexGeneration owner; // generation whose posting source and body store this one shares, or null
+    private final MergedUpdates merged;
+    private final long loadedAt = System.currentTimeMillis();
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    public IndexGeneration(long id, TermDictionary termDictionary, DocumentStore documentStore, LinkGraph linkGraph,
+                           PostingSource postingSource, BodyStore bodyStore) {
+        this(id, termDictionary, documentStore, linkGraph, postingSource, bodyStore, null, MergedUpdates.EMPTY);
+    }
+
+    private IndexGeneration(long id, TermDictionary termDictionary, DocumentStore documentStore, LinkGraph linkGraph,
+                            PostingSource postingSource, BodyStore bodyStore, IndexGeneration owner,
+                            MergedUpdates merged) {
+        this.id = id;
+        this.termDictionary = termDictionary;
+        this.documentStore = documentStore;
+        this.linkGraph = linkGraph;
+        this.postingSource = postingSource;
+        this.bodyStore = bodyStore;
+        this.owner = owner;
+        this.merged = merged;
+    }
+
+    /**
+     * @return a generation with the same link graph and body store, sharing this one's files until it is closed
+     */
+    IndexGeneration derive(long id, TermDictionary termDictionary, DocumentStore documentStore,
+                           PostingSource postingSource, MergedUpdates merged) {
+        IndexGeneration fileOwner = owner != null ? owner : this;
+        if (!fileOwner.tryRetain()) {
+            throw new IllegalStateException("Index generation " + fileOwner.id + " is already closed");
+        }
+        return new IndexGeneration(id, termDictionary, documentStore, linkGraph, postingSource, bodyStore, fileOwner,
+                merged);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public TermDictionary getTermDictionary() {
+        return termDictionary;
+    }
+
+    public DocumentStore getDocumentStore() {
+        return documentStore;
+    }
+
+    public LinkGraph getLinkGraph() {
+        return linkGraph;
+    }
+
+    public PostingSource getPostingSource() {
+        return postingSource;
+    }
+
+    public BodyStore getBodyStore() {
+        return bodyStore;
+    }
+
+    /**
+     * @return the ingested updates merged into this generation
+     */
+    public MergedUpdates getMerged() {
+        return merged;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * @return false if the generation was already closed
+     */
+    boolean tryRetain() {
+        while (true) {
+            int count = references.get();
+            if (count == 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            close();
+        }
+    }
+
+    private void close() {
+        if (owner != null) {
+            owner.release();
+        } else {
+            closeQuietly(postingSource);
+            closeQuietly(bodyStore);
+        }
+        logger.info("Closed index generation {}", id);
+    }
+
+    private static void closeQuietly(Object resource) {
+        if (resource instanceof Closeable) {
+            try {
+                ((Closeable) resource).close();
+            } catch (IOException e) {
+                logger.warn("Could not close {}", resource, e);
+            }
+        }
+    }
+}
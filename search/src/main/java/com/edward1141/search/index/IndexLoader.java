@@ -0,0 +1,168 @@
+package com.edward1141.search.index;
+
+import com.edward1141.search.utils.IndexParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Reads every row of the inverted index tables and builds an {@link IndexSnapshot},
+ * the wordList table into a {@link TermDictionary}, the urlList scoring fields into a {@link DocumentStore}
+ * and the parentchild table into a {@link LinkGraph}.
+ * {@link #load(boolean, Path, Path)} reuses a {@link SnapshotFile} of them while the database is unchanged.
+ */
+@Component
+public class IndexLoader {
+    private final JdbcTemplate jdbcTemplate;
+    private final IndexParser indexParser;
+    private static final Logger logger = LoggerFactory.getLogger(IndexLoader.class);
+
+    @Autowired
+    public IndexLoader(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.indexParser = new IndexParser();
+    }
+
+    /**
+     * Reads the snapshot file if it was written from the database as it is now, otherwise loads from the database
+     * and rewrites the snapshot. A snapshot that cannot be read or written only costs the faster start.
+     *
+     * @param postings whether to load the inverted index tables too
+     * @param snapshot snapshot file, or null to always load from the database
+     */
+    public LoadedIndex load(boolean postings, Path snapshot, Path database) {
+        long fingerprint = 0;
+        if (snapshot != null) {
+            long startTime = System.currentTimeMillis();
+            try {
+                // Taken before loading, a crawl committing meanwhile invalidates the snapshot for the next start
+                fingerprint = SnapshotFile.fingerprint(database);
+                LoadedIndex index = SnapshotFile.read(snapshot, fingerprint, postings);
+                if (index != null) {
+                    logger.info("Loaded index snapshot {} in {} ms", snapshot, System.currentTimeMillis() - startTime);
+                    return index;
+                }
+                logger.info("Index snapshot {} is missing or stale, loading from the database", snapshot);
+            } catch (IOException e) {
+                logger.warn("Could not read index snapshot {}, loading from the database", snapshot, e);
+            }
+        }
+
+        LoadedIndex index = new LoadedIndex(
+                loadTermDictionary(), loadDocumentStore(), loadLinkGraph(), postings ? load() : null);
+        if (snapshot != null) {
+            try {
+                SnapshotFile.write(snapshot, fingerprint, index);
+            } catch (IOException e) {
+                logger.warn("Could not write index snapshot {}", snapshot, e);
+            }
+        }
+        return index;
+    }
+
+    public IndexSnapshot load() {
+        long startTime = System.currentTimeMillis();
+
+        Map<IndexTable, PostingStore> stores = new EnumMap<>(IndexTable.class);
+        for (IndexTable table : IndexTable.values()) {
+            stores.put(table, loadTable(table));
+        }
+        IndexSnapshot snapshot = new IndexSnapshot(stores);
+
+        logger.info("Loaded inverted index in {} ms, ~{} MB of postings",
+                System.currentTimeMillis() - startTime, snapshot.sizeInBytes() >> 20);
+        return snapshot;
+    }
+
+    public TermDictionary loadTermDictionary() {
+        long startTime = System.currentTimeMillis();
+
+        TermDictionary.Builder builder = TermDictionary.builder();
+        jdbcTemplate.query("SELECT wid, word FROM wordList", (RowCallbackHandler) rs -> {
+            String word = rs.getString(2);
+            if (word != null) {
+                builder.add(word, rs.getLong(1));
+            }
+        });
+        TermDictionary dictionary = builder.build();
+
+        logger.info("Loaded {} words into the term dictionary in {} ms, {} KB",
+                dictionary.size(), System.currentTimeMillis() - startTime, dictionary.sizeInBytes() >> 10);
+        return dictionary;
+    }
+
+    public DocumentStore loadDocumentStore() {
+        long startTime = System.currentTimeMillis();
+
+        DocumentStore.Builder builder = DocumentStore.builder();
+        jdbcTemplate.query("SELECT uid, document_weight, title_weight, page_rank_score, content_length, last_modified FROM urlList",
+                (RowCallbackHandler) rs -> builder.add(
+                        rs.getLong(1),
+                        getDouble(rs, 2),
+                        getDouble(rs, 3),
+                        getDouble(rs, 4),
+                        rs.getInt(5),
+                        DocumentStore.parseLastModified(rs.getString(6))));
+        DocumentStore documentStore = builder.build();
+
+        logger.info("Loaded {} documents into the document store in {} ms, {} KB",
+                documentStore.size(), System.currentTimeMillis() - startTime, documentStore.sizeInBytes() >> 10);
+        return documentStore;
+    }
+
+    public LinkGraph loadLinkGraph() {
+        long startTime = System.currentTimeMillis();
+
+        LinkGraph.Builder builder = LinkGraph.builder();
+        jdbcTemplate.query("SELECT parentid, childid FROM parentchild",
+                (RowCallbackHandler) rs -> builder.add(rs.getLong(1), rs.getLong(2)));
+        LinkGraph linkGraph = builder.build();
+
+        logger.info("Loaded {} links between {} pages into the link graph in {} ms, {} KB",
+                linkGraph.linkCount(), linkGraph.size(), System.currentTimeMillis() - startTime,
+                linkGraph.sizeInBytes() >> 10);
+        return linkGraph;
+    }
+
+    /**
+     * @return wids of the words with the most documents in the table, most frequent first
+     */
+    public long[] loadMostFrequentWids(IndexTable table, int limit) {
+        return jdbcTemplate.queryForList("SELECT wid FROM " + table.getTableName() + " ORDER BY count DESC LIMIT ?",
+                        Long.class, limit)
+                .stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    private static double getDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? Double.NaN : value;
+    }
+
+    private PostingStore loadTable(IndexTable table) {
+        PostingStore.Builder builder = PostingStore.builder(table);
+        jdbcTemplate.query("SELECT wid, data FROM " + table.getTableName(), (RowCallbackHandler) rs -> {
+            long wid = rs.getLong(1);
+            try {
+                builder.put(wid, indexParser.parsePostingList(rs.getString(2), table.isScoringFields()));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Invalid posting data in " + table.getTableName() + " for wid " + wid, e);
+            }
+        });
+        PostingStore store = builder.build();
+        logger.info("Loaded {} words from {}", store.size(), table.getTableName());
+        return store;
+    }
+}
@@ -0,0 +1,233 @@
+package com.edward1141.search.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Publishes the current {@link IndexGeneration} and replaces it without downtime. A reload builds a complete new
+ * generation on a background thread while searches keep running on the current one, then publishes it with a
+ * single reference swap. Reloads are requested through {@link #reload()} or, with a watch interval, when the
+ * database fingerprint changed and then stayed the same for one interval, i.e. once a crawl has finished
+ * committing. A request arriving during a reload runs another one right after it.
+ * Generations derived from the current one, see {@link #update}, are published on the same thread.
+ * <p>
+ * The old and the new generation are both on the heap until the queries on the old one finish.
+ */
+public class IndexManager {
+    private static final Logger logger = LoggerFactory.getLogger(IndexManager.class);
+
+    /**
+     * Builds a generation from the database as it is now.
+     */
+    public interface Loader {
+        /**
+         * @param previous the current generation, e.g. to warm caches from, or null for the first load
+         */
+        IndexGeneration load(long id, IndexGeneration previous) throws IOException, SQLException;
+    }
+
+    private final Loader loader;
+    private final Path database;
+    private final AtomicReference<IndexGeneration> current = new AtomicReference<>();
+    private final ExecutorService reloader = Executors.newSingleThreadExecutor(r -> daemon(r, "index-reload"));
+    private final List<Consumer<IndexGeneration>> listeners = new CopyOnWriteArrayList<>();
+
+    // Guarded by this
+    private boolean reloading;
+    private boolean pending;
+    private long loadedFingerprint;
+    private long lastSeenFingerprint;
+    private final Map<String, Object> lastReload = new LinkedHashMap<>();
+
+    /**
+     * Loads the first generation on the calling thread.
+     *
+     * @param watchIntervalMs how often to check the database for changes, 0 only reloads on request
+     */
+    public IndexManager(Loader loader, Path database, long watchIntervalMs) throws IOException, SQLException {
+        this.loader = loader;
+        this.database = database;
+        this.loadedFingerprint = fingerprint();
+        this.lastSeenFingerprint = loadedFingerprint;
+        current.set(loader.load(1, null));
+
+        if (watchIntervalMs > 0) {
+            ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "index-watcher"));
+            watcher.scheduleWithFixedDelay(this::checkForChanges, watchIntervalMs, watchIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * @return the current generation, retained until the caller releases it
+     */
+    public IndexGeneration acquire() {
+        while (true) {
+            IndexGeneration generation = current.get();
+            // Fails only if the generation was replaced and closed since it was read
+            if (generation.tryRetain()) {
+                return generation;
+            }
+        }
+    }
+
+    /**
+     * @return the current generation without retaining it, only for reading its sizes and ids
+     */
+    public IndexGeneration current() {
+        return current.get();
+    }
+
+    /**
+     * Reloads in the background.
+     *
+     * @return false if a reload was already running, another one then follows it
+     */
+    public synchronized boolean reload() {
+        if (reloading) {
+            pending = true;
+            return false;
+        }
+        reloading = true;
+        reloader.execute(this::runReloads);
+        return true;
+    }
+
+    /**
+     * Publishes a generation derived from the current one in the background, after the reloads already queued.
+     *
+     * @param derivation returns the new generation, or null to keep the current one
+     */
+    public void update(Loader derivation) {
+        reloader.execute(() -> {
+            IndexGeneration previous = current.get();
+            try {
+                IndexGeneration next = publish(derivation);
+                if (next != null) {
+                    logger.info("Published index generation {} derived from {}", next.getId(), previous.getId());
+                }
+            } catch (IOException | SQLException | RuntimeException e) {
+                logger.error("Index update failed, still serving generation {}", previous.getId(), e);
+            }
+        });
+    }
+
+    /**
+     * @param listener called on the reload thread with every generation published after the first
+     */
+    public void addListener(Consumer<IndexGeneration> listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        IndexGeneration generation = current.get();
+        status.put("generation", generation.getId());
+        status.put("loaded_at", generation.getLoadedAt());
+        status.put("reloading", reloading);
+        status.put("last_reload", new LinkedHashMap<>(lastReload));
+        return status;
+    }
+
+    private void runReloads() {
+        while (true) {
+            reloadNow();
+            synchronized (this) {
+                if (!pending) {
+                    reloading = false;
+                    return;
+                }
+                pending = false;
+            }
+        }
+    }
+
+    private void reloadNow() {
+        long startTime = System.currentTimeMillis();
+        long previous = current.get().getId();
+        try {
+            // Taken before loading, a crawl committing meanwhile triggers the next reload
+            long fingerprint = fingerprint();
+            IndexGeneration next = publish(loader);
+            synchronized (this) {
+                loadedFingerprint = fingerprint;
+                lastReload.clear();
+                lastReload.put("state", "done");
+                lastReload.put("generation", next.getId());
+                lastReload.put("ms", System.currentTimeMillis() - startTime);
+            }
+            logger.info("Published index generation {} in {} ms", next.getId(), System.currentTimeMillis() - startTime);
+        } catch (IOException | SQLException | RuntimeException e) {
+            logger.error("Index reload failed, still serving generation {}", previous, e);
+            synchronized (this) {
+                lastReload.clear();
+                lastReload.put("state", "failed");
+                lastReload.put("error", String.valueOf(e.getMessage()));
+            }
+        }
+    }
+
+    // Only called on the reload thread
+    private IndexGeneration publish(Loader source) throws IOException, SQLException {
+        IndexGeneration previous = acquire();
+        try {
+            IndexGeneration next = source.load(previous.getId() + 1, previous);
+            if (next == null) {
+                return null;
+            }
+            current.set(next);
+            previous.release(); // The reference held while it was current
+            for (Consumer<IndexGeneration> listener : listeners) {
+                try {
+                    listener.accept(next);
+                } catch (RuntimeException e) {
+                    logger.warn("Listener of index generation {} failed", next.getId(), e);
+                }
+            }
+            return next;
+        } finally {
+            previous.release();
+        }
+    }
+
+    private void checkForChanges() {
+        try {
+            long fingerprint = fingerprint();
+            synchronized (this) {
+                // Wait until the database stopped changing for one interval
+                boolean settled = fingerprint == lastSeenFingerprint;
+                lastSeenFingerprint = fingerprint;
+                if (!settled || fingerprint == loadedFingerprint || reloading) {
+                    return;
+                }
+            }
+            logger.info("Database {} changed, reloading the index", database);
+            reload();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not check {} for changes", database, e);
+        }
+    }
+
+    private long fingerprint() throws IOException {
+        return SnapshotFile.fingerprint(database);
+    }
+}
@@ -0,0 +1,46 @@
+package com.edward1141.search.index;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Immutable in-memory copy of the inverted index tables, loaded once at startup.
+ * Queries served from a snapshot never touch JDBC or Jackson.
+ */
+public final class IndexSnapshot implements PostingSource {
+    private final Map<IndexTable, PostingStore> stores;
+
+    public IndexSnapshot(Map<IndexTable, PostingStore> stores) {
+        this.stores = new EnumMap<>(stores);
+    }
+
+    @Override
+    public PostingList getPostings(IndexTable table, long wid) {
+        PostingStore store = stores.get(table);
+        return store == null ? null : store.get(wid);
+    }
+
+    public PostingStore getStore(IndexTable table) {
+        return stores.get(table);
+    }
+
+    /**
+     * Maps every list to the ordinals of the document store ahead of the first query, see
+     * {@link PostingList#ordinals}.
+     */
+    public void mapOrdinals(DocumentStore documentStore) {
+        for (PostingStore store : stores.values()) {
+            for (int i = 0; i < store.size(); i++) {
+                store.postings(i).ordinals(documentStore);
+            }
+        }
+    }
+
+    public long sizeInBytes() {
+        long bytes = 0;
+        for (PostingStore store : stores.values()) {
+            bytes += store.sizeInBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,39 @@
+package com.edward1141.search.index;
+
+import lombok.Getter;
+
+/**
+ * The six inverted index tables written by the Python indexer.
+ * Only the stemmed body/title tables carry the VSM scoring fields,
+ * the raw tables store positions only.
+ */
+@Getter
+public enum IndexTable {
+    BODY("invertedIndex", true),
+    TITLE("titleInvertedIndex", true),
+    RAW_BODY("rawInvertedIndex", false),
+    RAW_TITLE("rawTitleInvertedIndex", false),
+    STEMMED_RAW_BODY("stemmedRawInvertedIndex", false),
+    STEMMED_RAW_TITLE("stemmedRawTitleInvertedIndex", false);
+
+    private final String tableName;
+    private final boolean scoringFields;
+
+    IndexTable(String tableName, boolean scoringFields) {
+        this.tableName = tableName;
+        this.scoringFields = scoringFields;
+    }
+
+    /**
+     * Table used for phrase matching, same mapping the search service always used:
+     * raw + stemForRaw reads the raw table, raw alone reads the stemmed raw table.
+     */
+    public static IndexTable forPhrase(boolean title, boolean raw, boolean stemForRaw) {
+        if (raw && stemForRaw) {
+            return title ? RAW_TITLE : RAW_BODY;
+        } else if (raw) {
+            return title ? STEMMED_RAW_TITLE : STEMMED_RAW_BODY;
+        }
+        return title ? TITLE : BODY;
+    }
+}
@@ -0,0 +1,118 @@
+package com.edward1141.search.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A page ingested through the API and analyzed by {@link PageAnalyzer}: the urlList fields the crawler would have
+ * stored, the body text for snippets and the positions of every term in each inverted index table.
+ * Immutable, the position arrays are not copied and must not be modified.
+ */
+public final class IngestedPage {
+    private static final int KEYWORDS = 10;
+
+    private final long uid;
+    private final String url;
+    private final String title;
+    private final String body;
+    private final long lastModified; // epoch seconds
+    private final int contentLength;
+    private final List<String> childLinks;
+    private final Map<IndexTable, Map<String, int[]>> terms;
+
+    IngestedPage(long uid, String url, String title, String body, long lastModified, int contentLength,
+                 List<String> childLinks, Map<IndexTable, Map<String, int[]>> terms) {
+        this.uid = uid;
+        this.url = url;
+        this.title = title;
+        this.body = body;
+        this.lastModified = lastModified;
+        this.contentLength = contentLength;
+        this.childLinks = childLinks;
+        this.terms = new EnumMap<>(terms);
+    }
+
+    public long getUid() {
+        return uid;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    public List<String> getChildLinks() {
+        return childLinks;
+    }
+
+    /**
+     * @return term to ascending positions, keyed the way the table is: stems, or words for the stemmed raw tables
+     */
+    public Map<String, int[]> terms(IndexTable table) {
+        return terms.getOrDefault(table, Collections.emptyMap());
+    }
+
+    /**
+     * The most frequent body terms with their counts, like the head of the forwardIndex entry the crawler writes.
+     */
+    public Map<String, Integer> keywords() {
+        List<Map.Entry<String, int[]>> entries = new ArrayList<>(terms(IndexTable.BODY).entrySet());
+        entries.sort((a, b) -> a.getValue().length != b.getValue().length
+                ? Integer.compare(b.getValue().length, a.getValue().length)
+                : a.getKey().compareTo(b.getKey()));
+        Map<String, Integer> keywords = new LinkedHashMap<>();
+        for (Map.Entry<String, int[]> entry : entries.subList(0, Math.min(KEYWORDS, entries.size()))) {
+            keywords.put(entry.getKey(), entry.getValue().length);
+        }
+        return keywords;
+    }
+
+    /**
+     * Text of tokens [fromToken, fromToken + tokenCount) of the body, clamped like {@link BodyStore#passage}.
+     */
+    public String passage(int fromToken, int tokenCount) {
+        if (tokenCount <= 0) {
+            return "";
+        }
+        List<int[]> tokens = new ArrayList<>();
+        BodyTokenizer tokenizer = new BodyTokenizer(body);
+        while (tokenizer.next()) {
+            tokens.add(new int[]{tokenizer.start(), tokenizer.end()});
+        }
+        if (tokens.isEmpty()) {
+            return "";
+        }
+        int from = Math.min(Math.max(0, fromToken), tokens.size() - 1);
+        int to = (int) Math.min((long) from + tokenCount, tokens.size());
+        return body.substring(tokens.get(from)[0], tokens.get(to - 1)[1]);
+    }
+
+    public long sizeInBytes() {
+        long bytes = 64 + 2L * (url.length() + title.length() + body.length());
+        for (Map<String, int[]> table : terms.values()) {
+            for (Map.Entry<String, int[]> entry : table.entrySet()) {
+                bytes += 64 + 2L * entry.getKey().length() + 4L * entry.getValue().length;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,193 @@
+package com.edward1141.search.index;
+
+import java.util.Arrays;
+
+/**
+ * Immutable parent/child link graph of the parentchild table in compressed sparse row form.
+ * Every uid taking part in a link is a node numbered in uid order. The children of node n are
+ * children[childOffsets[n], childOffsets[n + 1]) and its parents the same slice of the reverse arrays,
+ * both sorted by node, so a lookup is a binary search for the node followed by a copy of its row.
+ */
+public final class LinkGraph {
+    public static final int NOT_FOUND = -1;
+    public static final LinkGraph EMPTY = new LinkGraph(new long[0], new int[1], new int[0]);
+
+    private final long[] uids;
+    private final int[] childOffsets;
+    private final int[] children;
+    private final int[] parentOffsets;
+    private final int[] parents;
+
+    LinkGraph(long[] uids, int[] childOffsets, int[] children) {
+        this.uids = uids;
+        this.childOffsets = childOffsets;
+        this.children = children;
+
+        // Reverse rows by counting sort, walking the parents in order keeps every row sorted
+        int size = uids.length;
+        this.parentOffsets = new int[size + 1];
+        for (int child : children) {
+            parentOffsets[child + 1]++;
+        }
+        for (int node = 0; node < size; node++) {
+            parentOffsets[node + 1] += parentOffsets[node];
+        }
+        this.parents = new int[children.length];
+        int[] filled = new int[size];
+        for (int parent = 0; parent < size; parent++) {
+            for (int i = childOffsets[parent]; i < childOffsets[parent + 1]; i++) {
+                int child = children[i];
+                parents[parentOffsets[child] + filled[child]++] = parent;
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return number of nodes
+     */
+    public int size() {
+        return uids.length;
+    }
+
+    public int linkCount() {
+        return children.length;
+    }
+
+    /**
+     * @return node of the uid, or {@link #NOT_FOUND} if it has no links
+     */
+    public int node(long uid) {
+        int node = Arrays.binarySearch(uids, uid);
+        return node >= 0 ? node : NOT_FOUND;
+    }
+
+    public long uid(int node) {
+        return uids[node];
+    }
+
+    public int outDegree(int node) {
+        return childOffsets[node + 1] - childOffsets[node];
+    }
+
+    public int inDegree(int node) {
+        return parentOffsets[node + 1] - parentOffsets[node];
+    }
+
+    /**
+     * @return uids linked from the page, sorted, empty if it has none
+     */
+    public long[] children(long uid) {
+        int node = node(uid);
+        return node == NOT_FOUND ? new long[0] : toUids(children, childOffsets[node], childOffsets[node + 1]);
+    }
+
+    /**
+     * @return uids linking to the page, sorted, empty if it has none
+     */
+    public long[] parents(long uid) {
+        int node = node(uid);
+        return node == NOT_FOUND ? new long[0] : toUids(parents, parentOffsets[node], parentOffsets[node + 1]);
+    }
+
+    /**
+     * Row start of the node's parents, they are {@link #parent(int)} of [parentStart(node), parentStart(node + 1)).
+     */
+    public int parentStart(int node) {
+        return parentOffsets[node];
+    }
+
+    public int parent(int i) {
+        return parents[i];
+    }
+
+    private long[] toUids(int[] nodes, int from, int to) {
+        long[] row = new long[to - from];
+        for (int i = from; i < to; i++) {
+            row[i - from] = uids[nodes[i]];
+        }
+        return row;
+    }
+
+    // Snapshot accessors, not copied
+    long[] uids() {
+        return uids;
+    }
+
+    int[] childOffsets() {
+        return childOffsets;
+    }
+
+    int[] children() {
+        return children;
+    }
+
+    public long sizeInBytes() {
+        return 8L * uids.length + 4L * (childOffsets.length + children.length + parentOffsets.length + parents.length)
+                + 5 * 16;
+    }
+
+    public static final class Builder {
+        private long[] parentIds = new long[1024];
+        private long[] childIds = new long[1024];
+        private int size;
+
+        private Builder() {
+        }
+
+        public Builder add(long parentId, long childId) {
+            if (size == parentIds.length) {
+                parentIds = Arrays.copyOf(parentIds, size * 2);
+                childIds = Arrays.copyOf(childIds, size * 2);
+            }
+            parentIds[size] = parentId;
+            childIds[size] = childId;
+            size++;
+            return this;
+        }
+
+        /**
+         * Duplicate links are kept once.
+         */
+        public LinkGraph build() {
+            long[] all = new long[size * 2];
+            System.arraycopy(parentIds, 0, all, 0, size);
+            System.arraycopy(childIds, 0, all, size, size);
+            Arrays.sort(all);
+            int nodes = 0;
+            for (int i = 0; i < all.length; i++) {
+                if (i == 0 || all[i] != all[i - 1]) {
+                    all[nodes++] = all[i];
+                }
+            }
+            long[] uids = Arrays.copyOf(all, nodes);
+
+            // (parent node, child node) pairs packed so one sort orders the links by row and column
+            long[] links = new long[size];
+            for (int i = 0; i < size; i++) {
+                long parent = Arrays.binarySearch(uids, parentIds[i]);
+                long child = Arrays.binarySearch(uids, childIds[i]);
+                links[i] = parent << 32 | child;
+            }
+            Arrays.sort(links);
+
+            int[] childOffsets = new int[nodes + 1];
+            int[] children = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (i > 0 && links[i] == links[i - 1]) {
+                    continue;
+                }
+                childOffsets[(int) (links[i] >>> 32) + 1]++;
+                children[count++] = (int) links[i];
+            }
+            for (int node = 0; node < nodes; node++) {
+                childOffsets[node + 1] += childOffsets[node];
+            }
+            return new LinkGraph(uids, childOffsets, Arrays.copyOf(children, count));
+        }
+    }
+}
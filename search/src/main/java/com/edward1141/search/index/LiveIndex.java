@@ -0,0 +1,536 @@
+package com.edward1141.search.index;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pages ingested through the API, searchable next to the loaded index within a refresh and merged into it in the
+ * background, log structured:
+ * <ul>
+ *     <li>Every upsert or delete is an {@link Update} with a sequence number, buffered in a mutable memtable.</li>
+ *     <li>{@link #refresh} turns the memtable into an immutable {@link DeltaSegment} and publishes a new
+ *     {@link View} with it, searches see the update from then on.</li>
+ *     <li>{@link #merge} derives the next {@link IndexGeneration} with the updates folded in, the
+ *     {@link IndexManager} publishes it like a reload. {@link #published} then drops the merged updates from the
+ *     segments and rewrites the rest as one segment, {@link #compact} does so when segments pile up between
+ *     merges.</li>
+ * </ul>
+ * The newest update of a uid wins, older versions in the main index and in older segments are hidden when the
+ * view is resolved against a generation, see {@link View#resolve}. A generation loaded from the database does
+ * not have the merged pages, {@link #rebase} merges them again and stages a view for it, installed once it is
+ * published. Searches pick the view of the generation they run on, see {@link #view(IndexGeneration)}.
+ * <p>
+ * A document of the loaded index cannot be merged over: its postings are spread over lists a merge does not
+ * rewrite. A new version of it stays in a segment, with the loaded one hidden, until a reload brings a crawl that
+ * is at least as new. Nothing is written to disk, ingested pages are lost on restart.
+ */
+public class LiveIndex {
+    private static final Logger logger = LoggerFactory.getLogger(LiveIndex.class);
+
+    /**
+     * An upsert or delete of one uid, a newer update has a larger sequence number.
+     */
+    static final class Update {
+        final long seq;
+        final long uid;
+        final IngestedPage page; // null for a delete
+        final long time; // epoch seconds the update arrived
+
+        Update(long seq, long uid, IngestedPage page, long time) {
+            this.seq = seq;
+            this.uid = uid;
+            this.page = page;
+            this.time = time;
+        }
+    }
+
+    // Guarded by this
+    private final Map<Long, Update> memtable = new LinkedHashMap<>();
+    private long nextSeq = 1;
+
+    // Serializes changes of the view, the memtable lock is only held to take its updates
+    private final Object segmentLock = new Object();
+    private volatile View view = new View(0, 0, List.of());
+    // The view before the last compaction against a newer generation, for searches still on an older one
+    private volatile View previous;
+    // The view of a rebased generation not yet published, null if there is none
+    private volatile View staged;
+    // Updates merged into the current generation by uid, the pages of its merged documents
+    private final Map<Long, Update> merged = new ConcurrentHashMap<>();
+
+    /**
+     * @return sequence number of the update
+     */
+    public synchronized long upsert(IngestedPage page) {
+        Update update = new Update(nextSeq++, page.getUid(), page, System.currentTimeMillis() / 1000);
+        memtable.put(update.uid, update);
+        return update.seq;
+    }
+
+    /**
+     * @return sequence number of the update
+     */
+    public synchronized long delete(long uid) {
+        Update update = new Update(nextSeq++, uid, null, System.currentTimeMillis() / 1000);
+        memtable.put(uid, update);
+        return update.seq;
+    }
+
+    /**
+     * @return number of updates not yet refreshed into a segment
+     */
+    public synchronized int pending() {
+        return memtable.size();
+    }
+
+    public View view() {
+        return view;
+    }
+
+    /**
+     * @return the view to search next to the generation: the one staged for it by {@link #rebase} until it is
+     * published, the current view, or the one before the last compaction for a generation that was replaced
+     * meanwhile
+     */
+    public View view(IndexGeneration generation) {
+        View pending = staged;
+        if (pending != null && pending.generation == generation.getId()) {
+            return pending;
+        }
+        View current = view;
+        View older = previous;
+        return current.generation <= generation.getId() || older == null ? current : older;
+    }
+
+    /**
+     * @return number of updates merged into the current generation
+     */
+    public int mergedCount() {
+        return merged.size();
+    }
+
+    /**
+     * @return the page a document of the generation was merged from, or null for a crawled document
+     */
+    public IngestedPage mergedPage(IndexGeneration generation, long uid) {
+        Update update = merged.get(uid);
+        return update != null && update.seq == generation.getMerged().seq(uid) ? update.page : null;
+    }
+
+    /**
+     * Publishes the waiting updates as a new segment.
+     *
+     * @param generation generation to take document frequencies from, usually the current one
+     * @return false if no update was waiting
+     */
+    public boolean refresh(IndexGeneration generation) throws IOException {
+        synchronized (segmentLock) {
+            List<Update> updates;
+            synchronized (this) {
+                if (memtable.isEmpty()) {
+                    return false;
+                }
+                updates = new ArrayList<>(memtable.values());
+                memtable.clear();
+            }
+
+            DeltaSegment segment;
+            try {
+                segment = DeltaSegment.build(updates, generation);
+            } catch (IOException | RuntimeException e) {
+                // Back into the memtable for the next refresh, unless a newer update of the uid arrived meanwhile
+                synchronized (this) {
+                    for (Update update : updates) {
+                        memtable.putIfAbsent(update.uid, update);
+                    }
+                }
+                throw e;
+            }
+            View current = view;
+            List<DeltaSegment> segments = new ArrayList<>(current.segments);
+            segments.add(segment);
+            view = new View(nextVersion(), current.generation, segments);
+            View pending = staged;
+            if (pending != null) {
+                List<DeltaSegment> pendingSegments = new ArrayList<>(pending.segments);
+                pendingSegments.add(segment);
+                staged = new View(nextVersion(), pending.generation, pendingSegments);
+            }
+            logger.debug("Refreshed {} into segment {} of {}", segment, segments.size(), view.version);
+            return true;
+        }
+    }
+
+    /**
+     * Drops the updates the generation has merged from the segments and rewrites the rest as one segment, with the
+     * document frequencies of the generation.
+     *
+     * @return false if the generation is older than the one the segments were compacted against
+     */
+    public boolean compact(IndexGeneration generation) throws IOException {
+        synchronized (segmentLock) {
+            View current = view;
+            if (generation.getId() < current.generation) {
+                return false;
+            }
+            if (generation.getId() > current.generation) {
+                previous = current;
+            }
+            if (current.segments.isEmpty()) {
+                view = new View(current.version, generation.getId(), current.segments);
+                return true;
+            }
+
+            List<Update> live = new ArrayList<>();
+            for (Update update : current.latest()) {
+                if (generation.getMerged().seq(update.uid) != update.seq) {
+                    live.add(update);
+                }
+            }
+            List<DeltaSegment> segments = live.isEmpty() ? List.of() : List.of(DeltaSegment.build(live, generation));
+            view = new View(nextVersion(), generation.getId(), segments);
+            logger.info("Compacted {} segments into {} live updates against generation {}", current.segments.size(),
+                    live.size(), generation.getId());
+            return true;
+        }
+    }
+
+    /**
+     * Derives the next generation with the updates of the segments merged in, as the derivation of
+     * {@link IndexManager#update}.
+     *
+     * @return null if there is no update to merge
+     */
+    public IndexGeneration merge(long id, IndexGeneration previous) throws IOException {
+        List<Update> updates = new ArrayList<>();
+        for (Update update : view.latest()) {
+            if (previous.getMerged().seq(update.uid) < update.seq) {
+                updates.add(update);
+            }
+        }
+        return updates.isEmpty() ? null : derive(id, previous, updates);
+    }
+
+    // Guarded by segmentLock
+    private long nextVersion() {
+        View pending = staged;
+        return Math.max(view.version, pending == null ? 0 : pending.version) + 1;
+    }
+
+    /**
+     * Listener of the {@link IndexManager}: installs the view staged for the new current generation, keeps the
+     * pages it has merged and compacts the segments against it.
+     */
+    public void published(IndexGeneration generation) {
+        MergedUpdates mergedUpdates = generation.getMerged();
+        synchronized (segmentLock) {
+            View pending = staged;
+            if (pending != null && pending.generation == generation.getId()) {
+                previous = view;
+                view = pending;
+                staged = null;
+            } else if (pending != null && pending.generation < generation.getId()) {
+                // Its generation was never published, the next rebase stages the pushed back pages again
+                staged = null;
+            }
+            for (DeltaSegment segment : view.segments) {
+                for (Update update : segment.updates()) {
+                    if (mergedUpdates.seq(update.uid) == update.seq) {
+                        merged.merge(update.uid, update, (a, b) -> a.seq >= b.seq ? a : b);
+                    }
+                }
+            }
+            merged.values().removeIf(update -> mergedUpdates.seq(update.uid) != update.seq);
+        }
+        try {
+            compact(generation);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not compact the ingested segments against generation {}", generation.getId(), e);
+        }
+    }
+
+    /**
+     * Merges the pages merged so far into a generation loaded from the database, as the last step of the
+     * {@link IndexManager}'s loader. Takes over the caller's reference to base.
+     * A page the crawler has since indexed in a version at least as new is dropped, a page it has in an older
+     * version goes back into a segment. A delete is dropped once the crawler has indexed the page again after it.
+     * The segment is staged with the generation, the current view stays in place until {@link #published}.
+     */
+    public IndexGeneration rebase(IndexGeneration base) throws IOException {
+        DocumentStore documents = base.getDocumentStore();
+        List<Update> remerge = new ArrayList<>();
+        List<Update> pushBack = new ArrayList<>();
+        for (Update update : merged.values()) {
+            int doc = documents.ordinal(update.uid);
+            long crawled = doc == DocumentStore.NOT_FOUND ? DocumentStore.UNKNOWN_TIME : documents.lastModified(doc);
+            if (update.page != null && doc == DocumentStore.NOT_FOUND) {
+                remerge.add(update);
+            } else if (update.page != null && crawled < update.page.getLastModified()) {
+                pushBack.add(update);
+            } else if (update.page == null && doc != DocumentStore.NOT_FOUND && crawled <= update.time) {
+                remerge.add(update);
+            }
+        }
+
+        IndexGeneration generation = base;
+        try {
+            if (!remerge.isEmpty()) {
+                IndexGeneration derived = derive(base.getId(), base, remerge);
+                if (derived != null) {
+                    generation = derived;
+                    base.release();
+                }
+            }
+            if (!pushBack.isEmpty()) {
+                synchronized (segmentLock) {
+                    // Older than any update in the segments, newer versions of a uid there keep winning
+                    List<DeltaSegment> segments = new ArrayList<>();
+                    segments.add(DeltaSegment.build(pushBack, generation));
+                    segments.addAll(view.segments);
+                    // Searches on the current generation keep the current view, it has these pages merged
+                    staged = new View(nextVersion(), generation.getId(), segments);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            generation.release();
+            throw e;
+        }
+        logger.info("Rebased generation {}: {} ingested updates merged again, {} back into a segment",
+                base.getId(), remerge.size(), pushBack.size());
+        return generation;
+    }
+
+    private IndexGeneration derive(long id, IndexGeneration previous, List<Update> updates) throws IOException {
+        DocumentStore documents = previous.getDocumentStore();
+        MergedUpdates mergedUpdates = previous.getMerged();
+        List<Update> additions = new ArrayList<>();
+        List<IngestedPage> purged = new ArrayList<>(); // merged pages whose postings go
+        Set<Long> dropped = new HashSet<>(); // documents replaced or deleted
+        Map<Long, Long> seqs = new HashMap<>();
+        List<Long> removed = new ArrayList<>();
+        for (Update update : updates) {
+            long mergedSeq = mergedUpdates.seq(update.uid);
+            Update old = mergedSeq > 0 ? merged.get(update.uid) : null;
+            IngestedPage oldPage = old != null && old.seq == mergedSeq ? old.page : null;
+            boolean loaded = oldPage == null && documents.ordinal(update.uid) != DocumentStore.NOT_FOUND;
+            if (update.page != null && (loaded || mergedUpdates.isRemoved(update.uid))) {
+                continue;
+            }
+
+            if (oldPage != null) {
+                purged.add(oldPage);
+                dropped.add(update.uid);
+            }
+            if (update.page != null) {
+                additions.add(update);
+            } else if (loaded) {
+                dropped.add(update.uid);
+                removed.add(update.uid);
+            }
+            seqs.put(update.uid, update.seq);
+        }
+        if (seqs.isEmpty()) {
+            return null;
+        }
+
+        DeltaSegment segment = DeltaSegment.build(additions, previous);
+        DocumentStore.Builder documentStore = DocumentStore.builder();
+        copyDocuments(documents, dropped, documentStore);
+        copyDocuments(segment.getDocumentStore(), Set.of(), documentStore);
+
+        TermDictionary termDictionary = previous.getTermDictionary();
+        TermDictionary segmentWords = segment.getTermDictionary();
+        for (int word = 0; word < segmentWords.size(); word++) {
+            if (termDictionary.ordinal(segmentWords.word(word)) < 0) {
+                termDictionary = termDictionary.plus(segmentWords);
+                break;
+            }
+        }
+
+        PostingSource postings = previous.getPostingSource();
+        IndexSnapshot overlay = postings instanceof OverlayPostingSource
+                ? ((OverlayPostingSource) postings).getOverlay() : null;
+        Map<IndexTable, PostingStore> stores = new EnumMap<>(IndexTable.class);
+        for (IndexTable table : IndexTable.values()) {
+            PostingStore additionStore = segment.getSnapshot().getStore(table);
+            Set<Long> changed = new HashSet<>();
+            for (int i = 0; i < additionStore.size(); i++) {
+                changed.add(additionStore.wid(i));
+            }
+            for (IngestedPage page : purged) {
+                for (String term : page.terms(table).keySet()) {
+                    long wid = termDictionary.getWid(term);
+                    if (wid != TermDictionary.NOT_FOUND) {
+                        changed.add(wid);
+                    }
+                }
+            }
+
+            PostingStore.Builder store = PostingStore.builder(table);
+            PostingStore previousStore = overlay == null ? null : overlay.getStore(table);
+            for (int i = 0; previousStore != null && i < previousStore.size(); i++) {
+                if (!changed.contains(previousStore.wid(i))) {
+                    store.put(previousStore.wid(i), previousStore.postings(i));
+                }
+            }
+            for (long wid : changed) {
+                store.put(wid, PostingList.merge(postings.getPostings(table, wid), dropped::contains,
+                        additionStore.get(wid)));
+            }
+            stores.put(table, store.build());
+        }
+
+        // The lists of the base source are mapped to the new ordinals on their first query
+        DocumentStore mergedDocuments = documentStore.build();
+        IndexSnapshot mergedPostings = new IndexSnapshot(stores);
+        mergedPostings.mapOrdinals(mergedDocuments);
+        logger.info("Merged {} ingested updates into generation {}: {} pages, {} deletes", seqs.size(), id,
+                additions.size(), seqs.size() - additions.size());
+        return previous.derive(id, termDictionary, mergedDocuments,
+                new OverlayPostingSource(OverlayPostingSource.unwrap(postings), mergedPostings),
+                mergedUpdates.plus(seqs, removed));
+    }
+
+    private static void copyDocuments(DocumentStore from, Set<Long> skipped, DocumentStore.Builder to) {
+        for (int doc = 0; doc < from.size(); doc++) {
+            long uid = from.uid(doc);
+            if (!skipped.contains(uid)) {
+                to.add(uid, from.documentWeight(doc), from.titleWeight(doc), from.pageRankScore(doc),
+                        from.contentLength(doc), from.lastModified(doc));
+            }
+        }
+    }
+
+    /**
+     * The segments searches see, oldest first, and the generation they were last compacted against. Immutable.
+     */
+    public static final class View {
+        private final long version;
+        private final long generation;
+        private final List<DeltaSegment> segments;
+        private volatile Resolution resolution;
+
+        View(long version, long generation, List<DeltaSegment> segments) {
+            this.version = version;
+            this.generation = generation;
+            this.segments = List.copyOf(segments);
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public List<DeltaSegment> getSegments() {
+            return segments;
+        }
+
+        /**
+         * @return the documents of the generation and of the segments newer updates hide, computed once per
+         * generation
+         */
+        public Resolution resolve(IndexGeneration generation) {
+            Resolution resolved = resolution;
+            if (resolved == null || resolved.generation != generation.getId()) {
+                resolved = new Resolution(generation, segments);
+                resolution = resolved;
+            }
+            return resolved;
+        }
+
+        // The newest update of every uid
+        List<Update> latest() {
+            Set<Long> seen = new HashSet<>();
+            List<Update> latest = new ArrayList<>();
+            for (int s = segments.size() - 1; s >= 0; s--) {
+                for (Update update : segments.get(s).updates()) {
+                    if (seen.add(update.uid)) {
+                        latest.add(update);
+                    }
+                }
+            }
+            return latest;
+        }
+    }
+
+    /**
+     * Tombstones of a view against a generation, as bitmaps of document ordinals. A document is hidden if a newer
+     * update of its uid is in a later segment, or is the update the generation merged. A document of the
+     * generation is hidden by the newest update of its uid unless the generation merged that update.
+     */
+    public static final class Resolution {
+        private final long generation;
+        private final RoaringBitmap hidden = new RoaringBitmap();
+        private final RoaringBitmap[] segmentHidden;
+        private int unmerged;
+
+        private Resolution(IndexGeneration generation, List<DeltaSegment> segments) {
+            this.generation = generation.getId();
+            this.segmentHidden = new RoaringBitmap[segments.size()];
+            MergedUpdates mergedUpdates = generation.getMerged();
+            Set<Long> seen = new HashSet<>();
+            for (int s = segments.size() - 1; s >= 0; s--) {
+                DeltaSegment segment = segments.get(s);
+                RoaringBitmap segmentDocs = new RoaringBitmap();
+                for (int doc = 0; doc < segment.size(); doc++) {
+                    Update update = segment.update(doc);
+                    if (!seen.add(update.uid) || mergedUpdates.seq(update.uid) == update.seq) {
+                        segmentDocs.add(doc);
+                    } else {
+                        hide(generation, update.uid);
+                    }
+                }
+                for (Update delete : segment.deletes()) {
+                    if (seen.add(delete.uid) && mergedUpdates.seq(delete.uid) != delete.seq) {
+                        hide(generation, delete.uid);
+                    }
+                }
+                segmentHidden[s] = segmentDocs;
+            }
+        }
+
+        private void hide(IndexGeneration generation, long uid) {
+            unmerged++;
+            int doc = generation.getDocumentStore().ordinal(uid);
+            if (doc != DocumentStore.NOT_FOUND) {
+                hidden.add(doc);
+            }
+        }
+
+        /**
+         * @return hidden ordinals of the generation's document store, not to be modified
+         */
+        public RoaringBitmap hidden() {
+            return hidden;
+        }
+
+        /**
+         * @return hidden ordinals of the segment's document store, not to be modified
+         */
+        public RoaringBitmap hidden(int segment) {
+            return segmentHidden[segment];
+        }
+
+        /**
+         * @return number of uids whose newest update the generation has not merged
+         */
+        public int getUnmerged() {
+            return unmerged;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.edward1141.search.index;
+
+/**
+ * Everything decoded from the database at startup: the term dictionary, the document store, the link graph and,
+ * in memory mode, the inverted index tables.
+ */
+public final class LoadedIndex {
+    private final TermDictionary termDictionary;
+    private final DocumentStore documentStore;
+    private final LinkGraph linkGraph;
+    private final IndexSnapshot postings;
+
+    public LoadedIndex(TermDictionary termDictionary, DocumentStore documentStore, LinkGraph linkGraph,
+                       IndexSnapshot postings) {
+        this.termDictionary = termDictionary;
+        this.documentStore = documentStore;
+        this.linkGraph = linkGraph;
+        this.postings = postings;
+    }
+
+    public TermDictionary getTermDictionary() {
+        return termDictionary;
+    }
+
+    public DocumentStore getDocumentStore() {
+        return documentStore;
+    }
+
+    public LinkGraph getLinkGraph() {
+        return linkGraph;
+    }
+
+    /**
+     * @return the inverted index tables, or null if they were not loaded
+     */
+    public IndexSnapshot getPostings() {
+        return postings;
+    }
+}
@@ -0,0 +1,67 @@
+package com.edward1141.search.index;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Ingested updates an {@link IndexGeneration} has merged, see {@link LiveIndex}: per uid the sequence number of
+ * the update merged last, and the uids of loaded documents a merged delete removed. The postings of a removed
+ * document stay in the read-only posting lists, so its uid is never merged again.
+ * Immutable, uids are kept in sorted primitive arrays.
+ */
+public final class MergedUpdates {
+    public static final MergedUpdates EMPTY = new MergedUpdates(new long[0], new long[0], new long[0]);
+
+    private final long[] uids;
+    private final long[] seqs;
+    private final long[] removed;
+
+    private MergedUpdates(long[] uids, long[] seqs, long[] removed) {
+        this.uids = uids;
+        this.seqs = seqs;
+        this.removed = removed;
+    }
+
+    public int size() {
+        return uids.length;
+    }
+
+    /**
+     * @return sequence number of the update of the uid merged last, or 0 if none was
+     */
+    public long seq(long uid) {
+        int idx = Arrays.binarySearch(uids, uid);
+        return idx < 0 ? 0 : seqs[idx];
+    }
+
+    public boolean isRemoved(long uid) {
+        return Arrays.binarySearch(removed, uid) >= 0;
+    }
+
+    /**
+     * @param merged sequence numbers by uid, replacing the ones recorded before
+     */
+    MergedUpdates plus(Map<Long, Long> merged, Collection<Long> removedUids) {
+        TreeMap<Long, Long> allSeqs = new TreeMap<>(merged);
+        for (int i = 0; i < uids.length; i++) {
+            allSeqs.putIfAbsent(uids[i], seqs[i]);
+        }
+        long[] newUids = new long[allSeqs.size()];
+        long[] newSeqs = new long[allSeqs.size()];
+        int i = 0;
+        for (Map.Entry<Long, Long> entry : allSeqs.entrySet()) {
+            newUids[i] = entry.getKey();
+            newSeqs[i++] = entry.getValue();
+        }
+
+        long[] newRemoved = Arrays.copyOf(removed, removed.length + removedUids.size());
+        int size = removed.length;
+        for (long uid : removedUids) {
+            newRemoved[size++] = uid;
+        }
+        Arrays.sort(newRemoved);
+        return new MergedUpdates(newUids, newSeqs, Arrays.stream(newRemoved).distinct().toArray());
+    }
+}
@@ -0,0 +1,39 @@
+package com.edward1141.search.index;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Posting lists that ingested pages were merged into, see {@link LiveIndex}, in front of the source of the loaded
+ * index. A word with a list in the overlay is read from it alone, the overlay list already holds the postings of
+ * the base list that are still valid.
+ */
+public final class OverlayPostingSource implements PostingSource {
+    private final PostingSource base;
+    private final IndexSnapshot overlay;
+
+    OverlayPostingSource(PostingSource base, IndexSnapshot overlay) {
+        this.base = base;
+        this.overlay = overlay;
+    }
+
+    /**
+     * @return the source of the loaded index underneath any overlays
+     */
+    public static PostingSource unwrap(PostingSource source) {
+        return source instanceof OverlayPostingSource ? ((OverlayPostingSource) source).base : source;
+    }
+
+    @Override
+    public PostingList getPostings(IndexTable table, long wid) throws JsonProcessingException {
+        PostingList postings = overlay.getPostings(table, wid);
+        return postings != null ? postings : base.getPostings(table, wid);
+    }
+
+    PostingSource getBase() {
+        return base;
+    }
+
+    IndexSnapshot getOverlay() {
+        return overlay;
+    }
+}
@@ -0,0 +1,135 @@
+package com.edward1141.search.index;
+
+import opennlp.tools.stemmer.PorterStemmer;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Analyzes a page the way the Python indexer does, so an ingested page gets the postings a crawl would have
+ * written: punctuation is removed, the text lowercased and split on whitespace, stopwords are recognised on the
+ * word before stemming. The body and title tables number the words that are not stopwords and key them by stem,
+ * the raw tables number every word; the indexer writes rawInvertedIndex keyed by stem and
+ * stemmedRawInvertedIndex keyed by word, and so does this. Thread safe.
+ */
+public final class PageAnalyzer {
+    private final Set<String> stopwords;
+
+    public PageAnalyzer(Set<String> stopwords) {
+        this.stopwords = stopwords;
+    }
+
+    /**
+     * @param lastModified epoch seconds
+     */
+    public IngestedPage analyze(String url, String title, String body, long lastModified, int contentLength,
+                                List<String> childLinks) {
+        String pageTitle = title == null ? "" : title;
+        String pageBody = body == null ? "" : body;
+        Analysis analysis = new Analysis();
+        analysis.index(words(pageBody), IndexTable.BODY, IndexTable.RAW_BODY, IndexTable.STEMMED_RAW_BODY);
+        analysis.index(words(pageTitle), IndexTable.TITLE, IndexTable.RAW_TITLE, IndexTable.STEMMED_RAW_TITLE);
+        return new IngestedPage(uid(url), url, pageTitle, pageBody, lastModified, contentLength,
+                childLinks == null ? List.of() : List.copyOf(childLinks), analysis.terms());
+    }
+
+    /**
+     * @return the uid the crawler gives the url
+     */
+    public static long uid(String url) {
+        return hashId(url);
+    }
+
+    /**
+     * Id the way the crawler makes uids and wids, the first 7 bytes of the SHA-256 of the text.
+     * Unlike {@link CorpusGenerator#assignIds} a collision is not detected.
+     */
+    static long hashId(String text) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long id = 0;
+        for (int b = 0; b < 7; b++) {
+            id = id << 8 | (digest[b] & 0xff);
+        }
+        return id;
+    }
+
+    // preprocess_string: punctuation removed, lowercased, split on whitespace
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' '; // A trailing separator flushes the last word
+            if (BodyTokenizer.isWhitespace(c)) {
+                if (word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+            } else if (!BodyTokenizer.isPunctuation(c)) {
+                word.append(Character.toLowerCase(c));
+            }
+        }
+        return words;
+    }
+
+    // The positions of one page, the stemmer keeps state between calls so each page gets its own
+    private final class Analysis {
+        private final PorterStemmer stemmer = new PorterStemmer();
+        private final Map<String, String> stems = new HashMap<>();
+        private final Map<IndexTable, Map<String, Positions>> positions = new EnumMap<>(IndexTable.class);
+
+        void index(List<String> words, IndexTable stemmed, IndexTable raw, IndexTable stemmedRaw) {
+            int position = 0;
+            for (int i = 0; i < words.size(); i++) {
+                String word = words.get(i);
+                String stem = stems.computeIfAbsent(word, stemmer::stem);
+                add(raw, stem, i);
+                add(stemmedRaw, word, i);
+                if (!stopwords.contains(word)) {
+                    add(stemmed, stem, position++);
+                }
+            }
+        }
+
+        private void add(IndexTable table, String term, int position) {
+            positions.computeIfAbsent(table, t -> new LinkedHashMap<>())
+                    .computeIfAbsent(term, t -> new Positions())
+                    .add(position);
+        }
+
+        Map<IndexTable, Map<String, int[]>> terms() {
+            Map<IndexTable, Map<String, int[]>> terms = new EnumMap<>(IndexTable.class);
+            for (Map.Entry<IndexTable, Map<String, Positions>> table : positions.entrySet()) {
+                Map<String, int[]> termPositions = new LinkedHashMap<>();
+                table.getValue().forEach((term, p) -> termPositions.put(term, Arrays.copyOf(p.values, p.size)));
+                terms.put(table.getKey(), termPositions);
+            }
+            return terms;
+        }
+    }
+
+    private static final class Positions {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int position) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = position;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.edward1141.search.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Power iteration PageRank over the documents of the {@link DocumentStore}, the same model as the crawler's
+ * Database.calculate_page_rank_score: score = (1 - d) + d * sum(parent score / parent out-degree), iterated until
+ * the L2 norm of the change drops below the threshold, then scaled to [0, 1].
+ * A parent's out-degree counts all of its links, also those to pages that are not documents.
+ * <p>
+ * Each iteration pulls from the reverse rows of the {@link LinkGraph}, the documents are split into contiguous
+ * chunks scored by the pool. Chunks write disjoint ranges and their partial norms are summed in chunk order,
+ * so the result does not depend on the number of threads.
+ * Used by the PageRankService of a running index and by {@link CorpusGenerator}.
+ */
+public class PageRank {
+    // Defaults of the crawler
+    public static final double DAMPING_FACTOR = 0.85;
+    public static final int MAX_ITERATIONS = 500;
+    public static final double CONVERGENCE_THRESHOLD = 1e-6;
+
+    private static final double INIT_SCORE = 1.0;
+
+    private final LinkGraph linkGraph;
+    private final DocumentStore documentStore;
+    private final double dampingFactor;
+    private final int maxIterations;
+    private final double convergenceThreshold;
+
+    public PageRank(LinkGraph linkGraph, DocumentStore documentStore, double dampingFactor, int maxIterations,
+                    double convergenceThreshold) {
+        this.linkGraph = linkGraph;
+        this.documentStore = documentStore;
+        this.dampingFactor = Math.min(Math.max(dampingFactor, 0), 1);
+        this.maxIterations = maxIterations;
+        this.convergenceThreshold = convergenceThreshold;
+    }
+
+    public static class Result {
+        public final double[] scores; // by document ordinal
+        public final int iterations;
+        public final boolean converged;
+
+        Result(double[] scores, int iterations, boolean converged) {
+            this.scores = scores;
+            this.iterations = iterations;
+            this.converged = converged;
+        }
+    }
+
+    /**
+     * @param chunks number of ranges each iteration is split into, at least one
+     */
+    public Result compute(ExecutorService pool, int chunks) throws InterruptedException, ExecutionException {
+        int size = documentStore.size();
+        int[] node = new int[size];
+        int[] documentOf = new int[linkGraph.size()];
+        Arrays.fill(documentOf, -1);
+        for (int doc = 0; doc < size; doc++) {
+            node[doc] = linkGraph.node(documentStore.uid(doc));
+            if (node[doc] != LinkGraph.NOT_FOUND) {
+                documentOf[node[doc]] = doc;
+            }
+        }
+
+        double[] scores = new double[size];
+        Arrays.fill(scores, INIT_SCORE);
+        double[] next = new double[size];
+        double[] contribution = new double[linkGraph.size()]; // score / out-degree, 0 for pages that are not documents
+        int chunkSize = Math.max(1, (size + chunks - 1) / chunks);
+
+        int iterations = 0;
+        boolean converged = false;
+        while (iterations < maxIterations && !converged) {
+            double[] current = scores;
+            double[] updated = next;
+            run(pool, size, chunkSize, (from, to) -> {
+                for (int doc = from; doc < to; doc++) {
+                    if (node[doc] != LinkGraph.NOT_FOUND && linkGraph.outDegree(node[doc]) > 0) {
+                        contribution[node[doc]] = current[doc] / linkGraph.outDegree(node[doc]);
+                    }
+                }
+                return 0.0;
+            });
+            List<Double> norms = run(pool, size, chunkSize, (from, to) -> {
+                double norm = 0.0;
+                for (int doc = from; doc < to; doc++) {
+                    double sum = 0.0;
+                    int n = node[doc];
+                    if (n != LinkGraph.NOT_FOUND) {
+                        for (int i = linkGraph.parentStart(n); i < linkGraph.parentStart(n + 1); i++) {
+                            sum += contribution[linkGraph.parent(i)];
+                        }
+                    }
+                    updated[doc] = (1 - dampingFactor) + dampingFactor * sum;
+                    double delta = updated[doc] - current[doc];
+                    norm += delta * delta;
+                }
+                return norm;
+            });
+
+            double norm = 0.0;
+            for (double chunkNorm : norms) {
+                norm += chunkNorm;
+            }
+            scores = updated;
+            next = current;
+            iterations++;
+            converged = Math.sqrt(norm) < convergenceThreshold;
+        }
+        return new Result(normalize(scores), iterations, converged);
+    }
+
+    /**
+     * Scales the scores to [0, 1], all zero when every document has the same score.
+     */
+    private static double[] normalize(double[] scores) {
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double score : scores) {
+            min = Math.min(min, score);
+            max = Math.max(max, score);
+        }
+        double range = max - min;
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = range > 0 ? (scores[i] - min) / range : 0.0;
+        }
+        return scores;
+    }
+
+    private interface Chunk {
+        double run(int from, int to);
+    }
+
+    /**
+     * @return the value of each chunk in chunk order, after all of them completed
+     */
+    private static List<Double> run(ExecutorService pool, int size, int chunkSize, Chunk chunk)
+            throws InterruptedException, ExecutionException {
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (int from = 0; from < size; from += chunkSize) {
+            int start = from;
+            int end = Math.min(from + chunkSize, size);
+            tasks.add(() -> chunk.run(start, end));
+        }
+        List<Double> values = new ArrayList<>(tasks.size());
+        for (Future<Double> future : pool.invokeAll(tasks)) {
+            values.add(future.get());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,93 @@
+package com.edward1141.search.index;
+
+import java.util.Arrays;
+
+/**
+ * Phrase and proximity matching on the sorted posting and position arrays.
+ * A document matches when it contains every word and each word has a position 1..distance
+ * after some position of the word before it in the phrase.
+ */
+public final class PhraseMatcher {
+
+    private PhraseMatcher() {
+    }
+
+    /**
+     * @param phrase postings of each phrase word in order, a null entry means the word is missing
+     * @return sorted ids of the matching documents
+     */
+    public static long[] match(PostingList[] phrase, int distance) {
+        if (phrase.length == 0) {
+            return new long[0];
+        }
+        for (PostingList postings : phrase) {
+            if (postings == null || postings.isEmpty()) {
+                return new long[0];
+            }
+        }
+
+        // Drive the intersection from the rarest word, the others are only probed
+        int rarest = 0;
+        for (int w = 1; w < phrase.length; w++) {
+            if (phrase[w].size() < phrase[rarest].size()) {
+                rarest = w;
+            }
+        }
+        PostingList driver = phrase[rarest];
+
+        int[] cursors = new int[phrase.length];
+        long[] matches = new long[driver.size()];
+        int matchCount = 0;
+        candidates:
+        for (int i = 0; i < driver.size(); i++) {
+            long docId = driver.docId(i);
+            for (int w = 0; w < phrase.length; w++) {
+                if (w == rarest) {
+                    cursors[w] = i;
+                    continue;
+                }
+                int cursor = phrase[w].advance(cursors[w], docId);
+                cursors[w] = cursor;
+                if (cursor == phrase[w].size()) {
+                    break candidates; // No later candidate can contain this word either
+                }
+                if (phrase[w].docId(cursor) != docId) {
+                    continue candidates;
+                }
+            }
+
+            boolean matched = true;
+            for (int w = 1; w < phrase.length && matched; w++) {
+                matched = follows(phrase[w - 1], cursors[w - 1], phrase[w], cursors[w], distance);
+            }
+            if (matched) {
+                matches[matchCount++] = docId;
+            }
+        }
+        return Arrays.copyOf(matches, matchCount);
+    }
+
+    /**
+     * Linear merge of two sorted position ranges, true if some next position is 1..distance after a previous one.
+     */
+    static boolean follows(PostingList previous, int previousIdx, PostingList next, int nextIdx, int distance) {
+        int p = previous.positionStart(previousIdx);
+        int pEnd = previous.positionEnd(previousIdx);
+        int q = next.positionStart(nextIdx);
+        int qEnd = next.positionEnd(nextIdx);
+
+        while (p < pEnd && q < qEnd) {
+            long previousPosition = previous.position(p);
+            long nextPosition = next.position(q);
+            if (nextPosition <= previousPosition) {
+                q++;
+            } else if (nextPosition - previousPosition <= distance) {
+                return true;
+            } else {
+                // nextPosition is too far from this previous position, a later previous position may be closer
+                p++;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,350 @@
+package com.edward1141.search.index;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Immutable posting list of one word in one inverted index table.
+ * Postings are sorted by document id and every field lives in a primitive array,
+ * positions of posting i are positions[positionStart(i) .. positionEnd(i)) in ascending order.
+ */
+public final class PostingList {
+    public static final PostingList EMPTY = new PostingList(new long[0], null, null, null, new int[1], new int[0]);
+
+    private final long[] docIds;
+    private final int[] tf;
+    private final double[] tfNorm;
+    private final double[] idf;
+    private final int[] positionOffsets;
+    private final int[] positions;
+
+    private volatile DocumentOrdinals documentOrdinals;
+
+    PostingList(long[] docIds, int[] tf, double[] tfNorm, double[] idf, int[] positionOffsets, int[] positions) {
+        this.docIds = docIds;
+        this.tf = tf;
+        this.tfNorm = tfNorm;
+        this.idf = idf;
+        this.positionOffsets = positionOffsets;
+        this.positions = positions;
+    }
+
+    public static Builder builder(boolean scoringFields) {
+        return new Builder(scoringFields);
+    }
+
+    public int size() {
+        return docIds.length;
+    }
+
+    public boolean isEmpty() {
+        return docIds.length == 0;
+    }
+
+    public boolean hasScoringFields() {
+        return tf != null;
+    }
+
+    public long docId(int i) {
+        return docIds[i];
+    }
+
+    public int tf(int i) {
+        return tf[i];
+    }
+
+    public double tfNorm(int i) {
+        return tfNorm[i];
+    }
+
+    public double idf(int i) {
+        return idf[i];
+    }
+
+    public int positionStart(int i) {
+        return positionOffsets[i];
+    }
+
+    public int positionEnd(int i) {
+        return positionOffsets[i + 1];
+    }
+
+    public int position(int p) {
+        return positions[p];
+    }
+
+    public int[] positions(int i) {
+        return Arrays.copyOfRange(positions, positionOffsets[i], positionOffsets[i + 1]);
+    }
+
+    /**
+     * @return index of the posting for the document, or a negative value if absent
+     */
+    public int indexOf(long docId) {
+        return Arrays.binarySearch(docIds, docId);
+    }
+
+    /**
+     * Galloping search for the first posting at or after {@code from} whose document id is at least {@code target}.
+     *
+     * @return index of that posting, or {@link #size()} if there is none
+     */
+    public int advance(int from, long target) {
+        int size = docIds.length;
+        if (from >= size || docIds[from] >= target) {
+            return from;
+        }
+
+        // docIds[low] < target, grow the window until docIds[high] >= target
+        int low = from;
+        int high = from + 1;
+        int step = 1;
+        while (high < size && docIds[high] < target) {
+            low = high;
+            step <<= 1;
+            high = low + step;
+        }
+        int idx = Arrays.binarySearch(docIds, low + 1, Math.min(high, size), target);
+        return idx >= 0 ? idx : -idx - 1;
+    }
+
+    /**
+     * Ordinal of the document of each posting in the store, so scoring reads the document columns without a
+     * search per posting. Computed once per document store and cached, resident lists are mapped when they are
+     * loaded, see {@link IndexSnapshot#mapOrdinals}.
+     *
+     * @return the ordinals, {@link DocumentStore#NOT_FOUND} for a document the store does not have, not to be
+     * modified
+     */
+    public int[] ordinals(DocumentStore documentStore) {
+        return bind(documentStore).ordinals;
+    }
+
+    /**
+     * Upper bound of tfNorm * idf / document_weight over the postings, the largest contribution this word
+     * can make to a cosine score. Computed once per document store and cached.
+     */
+    public double maxTermWeight(DocumentStore documentStore) {
+        return bind(documentStore).maxTermWeight;
+    }
+
+    private DocumentOrdinals bind(DocumentStore documentStore) {
+        DocumentOrdinals bound = documentOrdinals;
+        if (bound == null || bound.documentStore != documentStore) {
+            int[] ordinals = documentStore.postingOrdinals(this);
+            double max = 0.0;
+            if (hasScoringFields()) {
+                for (int i = 0; i < docIds.length; i++) {
+                    int doc = ordinals[i];
+                    if (doc == DocumentStore.NOT_FOUND || Double.isNaN(documentStore.documentWeight(doc))) {
+                        continue;
+                    }
+                    max = Math.max(max, tfNorm[i] * idf[i] / documentStore.documentWeight(doc));
+                }
+            }
+            bound = new DocumentOrdinals(documentStore, ordinals, max);
+            documentOrdinals = bound;
+        }
+        return bound;
+    }
+
+    /**
+     * Merges the postings of two lists in one linear pass, leaving out the postings of dropped documents of the
+     * first. A document in both keeps the posting of the second. Either list may be null.
+     */
+    static PostingList merge(PostingList base, LongPredicate dropped, PostingList additions) {
+        PostingList first = base == null ? EMPTY : base;
+        PostingList second = additions == null ? EMPTY : additions;
+        boolean scoringFields = first.hasScoringFields() || second.hasScoringFields();
+        int capacity = first.size() + second.size();
+        long[] docIds = new long[capacity];
+        int[] tf = scoringFields ? new int[capacity] : null;
+        double[] tfNorm = scoringFields ? new double[capacity] : null;
+        double[] idf = scoringFields ? new double[capacity] : null;
+        int[] offsets = new int[capacity + 1];
+        int[] positions = new int[first.positionStart(first.size()) + second.positionStart(second.size())];
+
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.size() || j < second.size()) {
+            PostingList from;
+            int k;
+            if (j == second.size() || (i < first.size() && first.docId(i) < second.docId(j))) {
+                from = first;
+                k = i++;
+                if (dropped.test(first.docId(k))) {
+                    continue;
+                }
+            } else {
+                if (i < first.size() && first.docId(i) == second.docId(j)) {
+                    i++;
+                }
+                from = second;
+                k = j++;
+            }
+            docIds[size] = from.docId(k);
+            if (scoringFields) {
+                tf[size] = from.tf(k);
+                tfNorm[size] = from.tfNorm(k);
+                idf[size] = from.idf(k);
+            }
+            int start = from.positionStart(k);
+            int count = from.positionEnd(k) - start;
+            for (int p = 0; p < count; p++) {
+                positions[offsets[size] + p] = from.position(start + p);
+            }
+            offsets[size + 1] = offsets[size] + count;
+            size++;
+        }
+
+        if (size == 0) {
+            return EMPTY;
+        }
+        return new PostingList(Arrays.copyOf(docIds, size),
+                scoringFields ? Arrays.copyOf(tf, size) : null,
+                scoringFields ? Arrays.copyOf(tfNorm, size) : null,
+                scoringFields ? Arrays.copyOf(idf, size) : null,
+                Arrays.copyOf(offsets, size + 1), Arrays.copyOf(positions, offsets[size]));
+    }
+
+    /**
+     * @return heap bytes held by the list, with its ordinals once it was scored
+     */
+    public long sizeInBytes() {
+        long bytes = 16 + 6 * 16L;
+        DocumentOrdinals bound = documentOrdinals;
+        if (bound != null) {
+            bytes += 4L * bound.ordinals.length;
+        }
+        bytes += 8L * docIds.length + 4L * positionOffsets.length + 4L * positions.length;
+        if (tf != null) {
+            bytes += 4L * tf.length + 8L * tfNorm.length + 8L * idf.length;
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PostingList(size=%d, positions=%d)", docIds.length, positions.length);
+    }
+
+    private static final class DocumentOrdinals {
+        private final DocumentStore documentStore;
+        private final int[] ordinals;
+        private final double maxTermWeight;
+
+        private DocumentOrdinals(DocumentStore documentStore, int[] ordinals, double maxTermWeight) {
+            this.documentStore = documentStore;
+            this.ordinals = ordinals;
+            this.maxTermWeight = maxTermWeight;
+        }
+    }
+
+    /**
+     * Collects postings in any order, {@link #build()} sorts them by document id.
+     */
+    public static final class Builder {
+        private final boolean scoringFields;
+        private long[] docIds = new long[8];
+        private int[] tf;
+        private double[] tfNorm;
+        private double[] idf;
+        private int[] positionCounts = new int[8];
+        private int[] positions = new int[32];
+        private int size;
+        private int positionSize;
+
+        private Builder(boolean scoringFields) {
+            this.scoringFields = scoringFields;
+            if (scoringFields) {
+                tf = new int[8];
+                tfNorm = new double[8];
+                idf = new double[8];
+            }
+        }
+
+        public Builder add(long docId, int tf, double tfNorm, double idf) {
+            ensureCapacity();
+            docIds[size] = docId;
+            positionCounts[size] = 0;
+            if (scoringFields) {
+                this.tf[size] = tf;
+                this.tfNorm[size] = tfNorm;
+                this.idf[size] = idf;
+            }
+            size++;
+            return this;
+        }
+
+        public Builder add(long docId) {
+            return add(docId, 0, 0.0, 0.0);
+        }
+
+        /**
+         * Appends a position to the posting added last.
+         */
+        public Builder addPosition(int position) {
+            if (positionSize == positions.length) {
+                positions = Arrays.copyOf(positions, positionSize * 2);
+            }
+            positions[positionSize++] = position;
+            positionCounts[size - 1]++;
+            return this;
+        }
+
+        private void ensureCapacity() {
+            if (size < docIds.length) {
+                return;
+            }
+            int capacity = docIds.length * 2;
+            docIds = Arrays.copyOf(docIds, capacity);
+            positionCounts = Arrays.copyOf(positionCounts, capacity);
+            if (scoringFields) {
+                tf = Arrays.copyOf(tf, capacity);
+                tfNorm = Arrays.copyOf(tfNorm, capacity);
+                idf = Arrays.copyOf(idf, capacity);
+            }
+        }
+
+        public PostingList build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+
+            // Rank of each posting in document id order (document ids are unique within a word)
+            long[] sortedDocIds = Arrays.copyOf(docIds, size);
+            Arrays.sort(sortedDocIds);
+
+            int[] sortedTf = scoringFields ? new int[size] : null;
+            double[] sortedTfNorm = scoringFields ? new double[size] : null;
+            double[] sortedIdf = scoringFields ? new double[size] : null;
+            int[] ranks = new int[size];
+            int[] offsets = new int[size + 1];
+            for (int i = 0; i < size; i++) {
+                int rank = Arrays.binarySearch(sortedDocIds, docIds[i]);
+                ranks[i] = rank;
+                offsets[rank + 1] = positionCounts[i];
+                if (scoringFields) {
+                    sortedTf[rank] = tf[i];
+                    sortedTfNorm[rank] = tfNorm[i];
+                    sortedIdf[rank] = idf[i];
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+
+            int[] sortedPositions = new int[positionSize];
+            int source = 0;
+            for (int i = 0; i < size; i++) {
+                int target = offsets[ranks[i]];
+                System.arraycopy(positions, source, sortedPositions, target, positionCounts[i]);
+                Arrays.sort(sortedPositions, target, target + positionCounts[i]);
+                source += positionCounts[i];
+            }
+
+            return new PostingList(sortedDocIds, sortedTf, sortedTfNorm, sortedIdf, offsets, sortedPositions);
+        }
+    }
+}
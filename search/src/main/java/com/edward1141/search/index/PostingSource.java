@@ -0,0 +1,14 @@
+package com.edward1141.search.index;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Where the search service reads posting lists from.
+ */
+public interface PostingSource {
+
+    /**
+     * @return postings of the word in the table, or null if the word has no entry
+     */
+    PostingList getPostings(IndexTable table, long wid) throws JsonProcessingException;
+}
@@ -0,0 +1,87 @@
+package com.edward1141.search.index;
+
+import java.util.Arrays;
+
+/**
+ * Read-only postings of one inverted index table, keyed by word id.
+ * Word ids are kept in a sorted primitive array so a lookup is a binary search without boxing.
+ */
+public final class PostingStore {
+    private final IndexTable table;
+    private final long[] wids;
+    private final PostingList[] postings;
+
+    PostingStore(IndexTable table, long[] wids, PostingList[] postings) {
+        this.table = table;
+        this.wids = wids;
+        this.postings = postings;
+    }
+
+    public IndexTable getTable() {
+        return table;
+    }
+
+    public int size() {
+        return wids.length;
+    }
+
+    public long wid(int i) {
+        return wids[i];
+    }
+
+    public PostingList postings(int i) {
+        return postings[i];
+    }
+
+    /**
+     * @return postings of the word, or null if the word does not appear in this table
+     */
+    public PostingList get(long wid) {
+        int idx = Arrays.binarySearch(wids, wid);
+        return idx < 0 ? null : postings[idx];
+    }
+
+    public long sizeInBytes() {
+        long bytes = 8L * wids.length + 4L * postings.length;
+        for (PostingList postingList : postings) {
+            bytes += postingList.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    public static Builder builder(IndexTable table) {
+        return new Builder(table);
+    }
+
+    public static final class Builder {
+        private final IndexTable table;
+        private long[] wids = new long[1024];
+        private PostingList[] postings = new PostingList[1024];
+        private int size;
+
+        private Builder(IndexTable table) {
+            this.table = table;
+        }
+
+        public Builder put(long wid, PostingList postingList) {
+            if (size == wids.length) {
+                wids = Arrays.copyOf(wids, size * 2);
+                postings = Arrays.copyOf(postings, size * 2);
+            }
+            wids[size] = wid;
+            postings[size] = postingList;
+            size++;
+            return this;
+        }
+
+        public PostingStore build() {
+            long[] sortedWids = Arrays.copyOf(wids, size);
+            Arrays.sort(sortedWids);
+            PostingList[] sortedPostings = new PostingList[size];
+            for (int i = 0; i < size; i++) {
+                sortedPostings[Arrays.binarySearch(sortedWids, wids[i])] = postings[i];
+            }
+            return new PostingStore(table, sortedWids, sortedPostings);
+        }
+    }
+}
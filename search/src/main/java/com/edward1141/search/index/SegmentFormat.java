@@ -0,0 +1,33 @@
+package com.edward1141.search.index;
+
+/**
+ * Layout of the binary index segment written by {@link SegmentWriter}.
+ *
+ * <pre>
+ * header      magic, version, database fingerprint, chunk bytes, table count, then per table:
+ *             ordinal, term count, dictionary offset, postings offset, postings length
+ * postings    per word: doc count, total position count, flags, [shared idf],
+ *             then per doc: doc id delta, [tf, tfNorm, [idf]], position count, position deltas
+ * dictionary  per table, sorted by wid: (wid, posting offset relative to the postings section)
+ * </pre>
+ * Counts, tf and deltas are varints, tfNorm and idf are raw doubles. All fixed width values are big endian.
+ * The postings section of a table is mapped in chunks of chunk bytes from its start, a list never crosses a chunk
+ * boundary (the writer pads up to the next one instead) and is never larger than a chunk.
+ * The fingerprint is {@link SnapshotFile#fingerprint} of the database the postings were exported from.
+ */
+final class SegmentFormat {
+    static final int MAGIC = 0x53534547; // "SSEG"
+    static final int VERSION = 4;
+
+    static final int TABLE_HEADER_BYTES = 4 + 4 + 8 + 8 + 8;
+    static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + IndexTable.values().length * TABLE_HEADER_BYTES;
+    static final int DICTIONARY_ENTRY_BYTES = 8 + 8;
+    // Chunk of a postings section, one mapping each
+    static final int CHUNK_BYTES = 1 << 30;
+
+    // Posting flags
+    static final int SHARED_IDF = 1;
+
+    private SegmentFormat() {
+    }
+}
@@ -0,0 +1,199 @@
+package com.edward1141.search.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Serves postings straight from a memory mapped segment file written by {@link SegmentWriter}.
+ * Only the header is read eagerly: the dictionary is binary searched in the mapping and a posting list is
+ * decoded on lookup, so the index data stays in the OS page cache instead of the Java heap.
+ */
+public class SegmentReader implements PostingSource, Closeable {
+    private final Path path;
+    private final FileChannel channel;
+    private final int[] termCounts;
+    private final ByteBuffer[] dictionaries;
+    private final ByteBuffer[][] postings; // Chunks of each postings section, see SegmentFormat
+    private final int chunkBytes;
+
+    private SegmentReader(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+
+        ByteBuffer header = ByteBuffer.allocate(SegmentFormat.HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("Truncated index segment: " + path);
+            }
+        }
+        header.flip();
+        if (header.getInt() != SegmentFormat.MAGIC) {
+            throw new IOException("Not an index segment: " + path);
+        }
+        int version = header.getInt();
+        if (version != SegmentFormat.VERSION) {
+            throw new IOException("Unsupported index segment version " + version + ": " + path);
+        }
+        header.getLong(); // Fingerprint, see isCurrent
+        chunkBytes = header.getInt();
+        if (chunkBytes <= 0) {
+            throw new IOException("Invalid index segment chunk size " + chunkBytes + ": " + path);
+        }
+
+        int tableCount = header.getInt();
+        IndexTable[] tables = IndexTable.values();
+        termCounts = new int[tables.length];
+        dictionaries = new ByteBuffer[tables.length];
+        postings = new ByteBuffer[tables.length][];
+        for (int i = 0; i < tableCount; i++) {
+            int ordinal = header.getInt();
+            int termCount = header.getInt();
+            long dictionaryOffset = header.getLong();
+            long postingsOffset = header.getLong();
+            long postingsLength = header.getLong();
+
+            termCounts[ordinal] = termCount;
+            dictionaries[ordinal] = map((long) termCount * SegmentFormat.DICTIONARY_ENTRY_BYTES, dictionaryOffset);
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((postingsLength + chunkBytes - 1) / chunkBytes)];
+            for (int c = 0; c < chunks.length; c++) {
+                long start = (long) c * chunkBytes;
+                chunks[c] = map(Math.min(chunkBytes, postingsLength - start), postingsOffset + start);
+            }
+            postings[ordinal] = chunks;
+        }
+    }
+
+    public static SegmentReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new SegmentReader(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return whether the segment exists in this format version and was exported from the database while it had
+     * the fingerprint, like {@link SnapshotFile#read} checks a snapshot
+     */
+    public static boolean isCurrent(Path path, long fingerprint) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4 + 4 + 8);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    return false;
+                }
+            }
+            header.flip();
+            return header.getInt() == SegmentFormat.MAGIC && header.getInt() == SegmentFormat.VERSION
+                    && header.getLong() == fingerprint;
+        }
+    }
+
+    private MappedByteBuffer map(long length, long offset) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Index segment section larger than 2 GB: " + path);
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int termCount(IndexTable table) {
+        return termCounts[table.ordinal()];
+    }
+
+    @Override
+    public PostingList getPostings(IndexTable table, long wid) {
+        int ordinal = table.ordinal();
+        ByteBuffer dictionary = dictionaries[ordinal];
+        if (dictionary == null) {
+            return null;
+        }
+
+        int low = 0;
+        int high = termCounts[ordinal] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midWid = dictionary.getLong(mid * SegmentFormat.DICTIONARY_ENTRY_BYTES);
+            if (midWid < wid) {
+                low = mid + 1;
+            } else if (midWid > wid) {
+                high = mid - 1;
+            } else {
+                long offset = dictionary.getLong(mid * SegmentFormat.DICTIONARY_ENTRY_BYTES + 8);
+                // Lists never cross a chunk boundary, so the list is read from a single mapping
+                return decode(postings[ordinal][(int) (offset / chunkBytes)], (int) (offset % chunkBytes),
+                        table.isScoringFields());
+            }
+        }
+        return null;
+    }
+
+    static PostingList decode(ByteBuffer source, int offset, boolean scoringFields) {
+        // Independent cursor, the mapping itself is shared by all query threads
+        ByteBuffer buffer = source.duplicate();
+        buffer.position(offset);
+
+        int size = VarInt.readInt(buffer);
+        int positionCount = VarInt.readInt(buffer);
+
+        long[] docIds = new long[size];
+        int[] tf = null;
+        double[] tfNorm = null;
+        double[] idf = null;
+        boolean sharedIdf = false;
+        double idfValue = 0.0;
+        if (scoringFields) {
+            tf = new int[size];
+            tfNorm = new double[size];
+            idf = new double[size];
+            sharedIdf = (buffer.get() & SegmentFormat.SHARED_IDF) != 0;
+            if (sharedIdf) {
+                idfValue = buffer.getDouble();
+            }
+        }
+
+        int[] positionOffsets = new int[size + 1];
+        int[] positions = new int[positionCount];
+        long docId = 0;
+        int p = 0;
+        for (int i = 0; i < size; i++) {
+            docId += VarInt.readLong(buffer);
+            docIds[i] = docId;
+
+            if (scoringFields) {
+                tf[i] = VarInt.readInt(buffer);
+                tfNorm[i] = buffer.getDouble();
+                idf[i] = sharedIdf ? idfValue : buffer.getDouble();
+            }
+
+            int count = VarInt.readInt(buffer);
+            int position = 0;
+            for (int j = 0; j < count; j++) {
+                position += VarInt.readInt(buffer);
+                positions[p++] = position;
+            }
+            positionOffsets[i + 1] = p;
+        }
+
+        return new PostingList(docIds, tf, tfNorm, idf, positionOffsets, positions);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,223 @@
+package com.edward1141.search.index;
+
+import com.edward1141.search.utils.IndexParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Exports the JSON inverted index tables of the crawler database into a binary segment file,
+ * see {@link SegmentFormat} for the layout. The file is written next to the target and moved into place
+ * once complete, so a reader never sees a partial segment.
+ */
+public class SegmentWriter {
+    private final IndexParser indexParser = new IndexParser();
+    private final int chunkBytes;
+    private ByteBuffer scratch = ByteBuffer.allocate(1 << 16);
+    private static final Logger logger = LoggerFactory.getLogger(SegmentWriter.class);
+
+    public SegmentWriter() {
+        this(SegmentFormat.CHUNK_BYTES);
+    }
+
+    // Smaller chunks for tests, the reader maps whatever size the header records
+    SegmentWriter(int chunkBytes) {
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * @param fingerprint of the database, see {@link SegmentReader#isCurrent}
+     */
+    public void export(Connection connection, Path target, long fingerprint) throws IOException, SQLException {
+        long startTime = System.currentTimeMillis();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(SegmentFormat.HEADER_BYTES);
+            header.putInt(SegmentFormat.MAGIC)
+                    .putInt(SegmentFormat.VERSION)
+                    .putLong(fingerprint)
+                    .putInt(chunkBytes)
+                    .putInt(IndexTable.values().length);
+
+            channel.position(SegmentFormat.HEADER_BYTES);
+            for (IndexTable table : IndexTable.values()) {
+                writeTable(connection, channel, table, header);
+            }
+
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        } catch (IOException | SQLException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+
+        logger.info("Exported index segment {} ({} MB) in {} ms",
+                target, Files.size(target) >> 20, System.currentTimeMillis() - startTime);
+    }
+
+    private void writeTable(Connection connection, FileChannel channel, IndexTable table, ByteBuffer header)
+            throws IOException, SQLException {
+        long postingsOffset = channel.position();
+        long[] wids = new long[1024];
+        long[] offsets = new long[1024];
+        int termCount = 0;
+
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT wid, data FROM " + table.getTableName())) {
+            while (rs.next()) {
+                if (termCount == wids.length) {
+                    wids = Arrays.copyOf(wids, termCount * 2);
+                    offsets = Arrays.copyOf(offsets, termCount * 2);
+                }
+                long wid = rs.getLong(1);
+                PostingList postings = indexParser.parsePostingList(rs.getString(2), table.isScoringFields());
+                ByteBuffer encoded = encode(postings, table.isScoringFields());
+                if (encoded.remaining() > chunkBytes) {
+                    throw new IOException("Posting list of word " + wid + " in " + table.getTableName()
+                            + " larger than a segment chunk: " + encoded.remaining() + " bytes");
+                }
+
+                // A list that would cross into the next chunk starts at its boundary, the gap stays unused
+                long offset = channel.position() - postingsOffset;
+                long chunkEnd = (offset / chunkBytes + 1) * chunkBytes;
+                if (offset + encoded.remaining() > chunkEnd) {
+                    offset = chunkEnd;
+                    channel.position(postingsOffset + offset);
+                }
+                if (termCount == Integer.MAX_VALUE / SegmentFormat.DICTIONARY_ENTRY_BYTES) {
+                    throw new IOException("Too many words in " + table.getTableName() + " for a segment dictionary");
+                }
+                wids[termCount] = wid;
+                offsets[termCount] = offset;
+                termCount++;
+                writeFully(channel, encoded);
+            }
+        }
+        long postingsLength = channel.position() - postingsOffset;
+
+        // Dictionary sorted by wid so the reader can binary search it in place
+        long[] sortedWids = Arrays.copyOf(wids, termCount);
+        Arrays.sort(sortedWids);
+        long[] sortedOffsets = new long[termCount];
+        for (int i = 0; i < termCount; i++) {
+            sortedOffsets[Arrays.binarySearch(sortedWids, wids[i])] = offsets[i];
+        }
+
+        long dictionaryOffset = channel.position();
+        ByteBuffer dictionary = ByteBuffer.allocate(termCount * SegmentFormat.DICTIONARY_ENTRY_BYTES);
+        for (int i = 0; i < termCount; i++) {
+            dictionary.putLong(sortedWids[i]).putLong(sortedOffsets[i]);
+        }
+        dictionary.flip();
+        writeFully(channel, dictionary);
+
+        header.putInt(table.ordinal())
+                .putInt(termCount)
+                .putLong(dictionaryOffset)
+                .putLong(postingsOffset)
+                .putLong(postingsLength);
+        logger.info("Exported {} words from {}", termCount, table.getTableName());
+    }
+
+    ByteBuffer encode(PostingList postings, boolean scoringFields) {
+        int size = postings.size();
+        int positionCount = postings.positionStart(size);
+        ensureScratch(32 + size * 36L + positionCount * 5L);
+        ByteBuffer buffer = scratch;
+        buffer.clear();
+
+        VarInt.writeInt(buffer, size);
+        VarInt.writeInt(buffer, positionCount);
+
+        boolean sharedIdf = false;
+        if (scoringFields) {
+            sharedIdf = true;
+            for (int i = 1; i < size && sharedIdf; i++) {
+                sharedIdf = postings.idf(i) == postings.idf(0);
+            }
+            buffer.put((byte) (sharedIdf ? SegmentFormat.SHARED_IDF : 0));
+            if (sharedIdf) {
+                buffer.putDouble(size > 0 ? postings.idf(0) : 0.0);
+            }
+        }
+
+        long lastDocId = 0;
+        for (int i = 0; i < size; i++) {
+            VarInt.writeLong(buffer, postings.docId(i) - lastDocId);
+            lastDocId = postings.docId(i);
+
+            if (scoringFields) {
+                VarInt.writeInt(buffer, postings.tf(i));
+                buffer.putDouble(postings.tfNorm(i));
+                if (!sharedIdf) {
+                    buffer.putDouble(postings.idf(i));
+                }
+            }
+
+            int start = postings.positionStart(i);
+            int end = postings.positionEnd(i);
+            VarInt.writeInt(buffer, end - start);
+            int lastPosition = 0;
+            for (int p = start; p < end; p++) {
+                VarInt.writeInt(buffer, postings.position(p) - lastPosition);
+                lastPosition = postings.position(p);
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private void ensureScratch(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Posting list too large for a segment: " + bytes + " bytes");
+        }
+        if (scratch.capacity() < bytes) {
+            scratch = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, Math.max(bytes, scratch.capacity() * 2L)));
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Usage: SegmentWriter &lt;database file&gt; [segment file]
+     */
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length < 1) {
+            System.err.println("Usage: SegmentWriter <database file> [segment file]");
+            System.exit(1);
+        }
+        Path target = Paths.get(args.length > 1 ? args[1] : args[0] + ".seg");
+        long fingerprint = SnapshotFile.fingerprint(Paths.get(args[0]));
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + args[0])) {
+            new SegmentWriter().export(connection, target, fingerprint);
+        }
+    }
+}
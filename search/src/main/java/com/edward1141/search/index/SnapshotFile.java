@@ -0,0 +1,408 @@
+package com.edward1141.search.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Persists a {@link LoadedIndex} as a binary snapshot, see {@link SnapshotFormat} for the layout.
+ * A snapshot records the fingerprint of the database it was loaded from and is only read back while the
+ * database still has that fingerprint, so a crawl invalidates it. Like segments, the file is written next to
+ * the target and moved into place once complete.
+ */
+public final class SnapshotFile {
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotFile.class);
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Size and modification time of the database and of its write-ahead log, and the file change counter of the
+     * SQLite header. Any committed write changes at least one of them.
+     */
+    public static long fingerprint(Path database) throws IOException {
+        long fingerprint = mix(0, Files.size(database));
+        fingerprint = mix(fingerprint, Files.getLastModifiedTime(database).toMillis());
+
+        ByteBuffer header = ByteBuffer.allocate(28);
+        try (FileChannel channel = FileChannel.open(database, READ)) {
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    break;
+                }
+            }
+        }
+        // Databases shorter than the header are fingerprinted by size and time only
+        fingerprint = mix(fingerprint, header.position() == 28 ? header.getInt(24) : 0);
+
+        Path wal = database.resolveSibling(database.getFileName() + "-wal");
+        if (Files.exists(wal)) {
+            fingerprint = mix(fingerprint, Files.size(wal));
+            fingerprint = mix(fingerprint, Files.getLastModifiedTime(wal).toMillis());
+        }
+        return fingerprint;
+    }
+
+    private static long mix(long hash, long value) {
+        long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    public static void write(Path target, long fingerprint, LoadedIndex index) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tmp, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            Output out = new Output(channel);
+            out.putInt(SnapshotFormat.MAGIC);
+            out.putInt(SnapshotFormat.VERSION);
+            out.putLong(fingerprint);
+            out.putInt(index.getPostings() != null ? SnapshotFormat.POSTINGS : 0);
+
+            writeDictionary(out, index.getTermDictionary());
+            writeDocuments(out, index.getDocumentStore());
+            writeLinks(out, index.getLinkGraph());
+            if (index.getPostings() != null) {
+                for (IndexTable table : IndexTable.values()) {
+                    writeTable(out, table, index.getPostings().getStore(table));
+                }
+            }
+
+            out.putInt(SnapshotFormat.MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+
+        logger.info("Wrote index snapshot {} ({} MB) in {} ms",
+                target, Files.size(target) >> 20, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * @param postings whether the inverted index tables are needed, a snapshot written without them is then unusable
+     * @return the snapshot, or null if it is missing, from another format version or database fingerprint,
+     * or lacks the postings
+     */
+    public static LoadedIndex read(Path file, long fingerprint, boolean postings) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            Input in = new Input(channel);
+            if (in.getInt() != SnapshotFormat.MAGIC) {
+                throw new IOException("Not an index snapshot: " + file);
+            }
+            if (in.getInt() != SnapshotFormat.VERSION || in.getLong() != fingerprint) {
+                return null;
+            }
+            int flags = in.getInt();
+            if (postings && (flags & SnapshotFormat.POSTINGS) == 0) {
+                return null;
+            }
+
+            TermDictionary termDictionary = readDictionary(in);
+            DocumentStore documentStore = readDocuments(in);
+            LinkGraph linkGraph = readLinks(in);
+            if (!postings) {
+                return new LoadedIndex(termDictionary, documentStore, linkGraph, null);
+            }
+
+            Map<IndexTable, PostingStore> stores = new EnumMap<>(IndexTable.class);
+            for (IndexTable table : IndexTable.values()) {
+                stores.put(table, readTable(in, table));
+            }
+            if (in.getInt() != SnapshotFormat.MAGIC) {
+                throw new IOException("Corrupt index snapshot: " + file);
+            }
+            return new LoadedIndex(termDictionary, documentStore, linkGraph, new IndexSnapshot(stores));
+        }
+    }
+
+    private static void writeDictionary(Output out, TermDictionary dictionary) throws IOException {
+        int size = dictionary.size();
+        int[] offsets = dictionary.offsets();
+        char[] chars = dictionary.chars();
+        out.putInt(size);
+        out.putInt(offsets[size]);
+        for (int i = 0; i < size; i++) {
+            out.putLong(dictionary.wid(i));
+        }
+        for (int i = 0; i <= size; i++) {
+            out.putInt(offsets[i]);
+        }
+        for (int i = 0; i < offsets[size]; i++) {
+            out.putChar(chars[i]);
+        }
+    }
+
+    private static TermDictionary readDictionary(Input in) throws IOException {
+        int size = in.getInt();
+        int charCount = in.getInt();
+        long[] wids = in.getLongs(size);
+        int[] offsets = in.getInts(size + 1);
+        char[] chars = in.getChars(charCount);
+        return new TermDictionary(chars, offsets, wids);
+    }
+
+    private static void writeDocuments(Output out, DocumentStore store) throws IOException {
+        int size = store.size();
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.putLong(store.uid(i));
+        }
+        for (int i = 0; i < size; i++) {
+            out.putDouble(store.documentWeight(i));
+        }
+        for (int i = 0; i < size; i++) {
+            out.putDouble(store.titleWeight(i));
+        }
+        for (int i = 0; i < size; i++) {
+            out.putDouble(store.pageRankScore(i));
+        }
+        for (int i = 0; i < size; i++) {
+            out.putInt(store.contentLength(i));
+        }
+        for (int i = 0; i < size; i++) {
+            out.putLong(store.lastModified(i));
+        }
+    }
+
+    private static DocumentStore readDocuments(Input in) throws IOException {
+        int size = in.getInt();
+        return new DocumentStore(in.getLongs(size), in.getDoubles(size), in.getDoubles(size), in.getDoubles(size),
+                in.getInts(size), in.getLongs(size));
+    }
+
+    private static void writeLinks(Output out, LinkGraph graph) throws IOException {
+        long[] uids = graph.uids();
+        int[] childOffsets = graph.childOffsets();
+        int[] children = graph.children();
+        out.putInt(uids.length);
+        out.putInt(children.length);
+        for (long uid : uids) {
+            out.putLong(uid);
+        }
+        for (int offset : childOffsets) {
+            out.putInt(offset);
+        }
+        for (int child : children) {
+            out.putInt(child);
+        }
+    }
+
+    private static LinkGraph readLinks(Input in) throws IOException {
+        int size = in.getInt();
+        int linkCount = in.getInt();
+        return new LinkGraph(in.getLongs(size), in.getInts(size + 1), in.getInts(linkCount));
+    }
+
+    private static void writeTable(Output out, IndexTable table, PostingStore store) throws IOException {
+        int size = store.size();
+        out.putInt(table.ordinal());
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.putLong(store.wid(i));
+        }
+        for (int i = 0; i < size; i++) {
+            writePostings(out, store.postings(i));
+        }
+    }
+
+    private static PostingStore readTable(Input in, IndexTable table) throws IOException {
+        if (in.getInt() != table.ordinal()) {
+            throw new IOException("Index snapshot tables out of order, expected " + table.getTableName());
+        }
+        int size = in.getInt();
+        long[] wids = in.getLongs(size);
+        PostingList[] postings = new PostingList[size];
+        for (int i = 0; i < size; i++) {
+            postings[i] = readPostings(in);
+        }
+        return new PostingStore(table, wids, postings);
+    }
+
+    private static void writePostings(Output out, PostingList postings) throws IOException {
+        int size = postings.size();
+        int positionCount = postings.positionStart(size);
+        boolean scoringFields = postings.hasScoringFields();
+        out.putInt(size);
+        out.putInt(positionCount);
+        out.putInt(scoringFields ? SnapshotFormat.SCORING_FIELDS : 0);
+        if (scoringFields) {
+            for (int i = 0; i < size; i++) {
+                out.putInt(postings.tf(i));
+            }
+            for (int i = 0; i < size; i++) {
+                out.putDouble(postings.tfNorm(i));
+            }
+            for (int i = 0; i < size; i++) {
+                out.putDouble(postings.idf(i));
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            out.putLong(postings.docId(i));
+        }
+        for (int i = 0; i <= size; i++) {
+            out.putInt(postings.positionStart(i));
+        }
+        for (int p = 0; p < positionCount; p++) {
+            out.putInt(postings.position(p));
+        }
+    }
+
+    private static PostingList readPostings(Input in) throws IOException {
+        int size = in.getInt();
+        int positionCount = in.getInt();
+        boolean scoringFields = (in.getInt() & SnapshotFormat.SCORING_FIELDS) != 0;
+        int[] tf = scoringFields ? in.getInts(size) : null;
+        double[] tfNorm = scoringFields ? in.getDoubles(size) : null;
+        double[] idf = scoringFields ? in.getDoubles(size) : null;
+        long[] docIds = in.getLongs(size);
+        int[] positionOffsets = in.getInts(size + 1);
+        int[] positions = in.getInts(positionCount);
+        return size == 0 ? PostingList.EMPTY : new PostingList(docIds, tf, tfNorm, idf, positionOffsets, positions);
+    }
+
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void putChar(char value) throws IOException {
+            ensure(2);
+            buffer.putChar(value);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads arrays through bulk copies out of a buffer refilled from the channel.
+     */
+    private static final class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+
+        private Input(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        int getInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            require(8);
+            return buffer.getLong();
+        }
+
+        long[] getLongs(int n) throws IOException {
+            long[] values = new long[n];
+            for (int i = 0; i < n; ) {
+                require(8);
+                int count = Math.min(n - i, buffer.remaining() / 8);
+                buffer.asLongBuffer().get(values, i, count);
+                buffer.position(buffer.position() + count * 8);
+                i += count;
+            }
+            return values;
+        }
+
+        double[] getDoubles(int n) throws IOException {
+            double[] values = new double[n];
+            for (int i = 0; i < n; ) {
+                require(8);
+                int count = Math.min(n - i, buffer.remaining() / 8);
+                buffer.asDoubleBuffer().get(values, i, count);
+                buffer.position(buffer.position() + count * 8);
+                i += count;
+            }
+            return values;
+        }
+
+        int[] getInts(int n) throws IOException {
+            int[] values = new int[n];
+            for (int i = 0; i < n; ) {
+                require(4);
+                int count = Math.min(n - i, buffer.remaining() / 4);
+                buffer.asIntBuffer().get(values, i, count);
+                buffer.position(buffer.position() + count * 4);
+                i += count;
+            }
+            return values;
+        }
+
+        char[] getChars(int n) throws IOException {
+            char[] values = new char[n];
+            for (int i = 0; i < n; ) {
+                require(2);
+                int count = Math.min(n - i, buffer.remaining() / 2);
+                buffer.asCharBuffer().get(values, i, count);
+                buffer.position(buffer.position() + count * 2);
+                i += count;
+            }
+            return values;
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("Truncated index snapshot");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.edward1141.search.index;
+
+/**
+ * Layout of the index snapshot written by {@link SnapshotFile}, the decoded startup index persisted next to
+ * the database.
+ *
+ * <pre>
+ * header      magic, version, database fingerprint, flags
+ * dictionary  term count, char count, wids, word offsets, word chars (in term ordinal order)
+ * documents   document count, uids, document weights, title weights, page rank scores, content lengths,
+ *             last modified times (in document ordinal order)
+ * links       node count, link count, uids, child offsets, children (in node order)
+ * postings    only with the POSTINGS flag, per table: ordinal, term count, sorted wids, then per word:
+ *             doc count, position count, flags, [tf, tfNorm, idf], doc ids, position offsets, positions
+ * trailer     magic
+ * </pre>
+ * Every section is a run of raw primitive arrays, so loading is a bulk copy with no parsing.
+ * All values are big endian.
+ */
+final class SnapshotFormat {
+    static final int MAGIC = 0x53534e50; // "SSNP"
+    static final int VERSION = 2;
+
+    // Header flags
+    static final int POSTINGS = 1;
+
+    // Posting flags
+    static final int SCORING_FIELDS = 1;
+
+    private SnapshotFormat() {
+    }
+}
@@ -0,0 +1,222 @@
+package com.edward1141.search.index;
+
+import java.util.Arrays;
+
+/**
+ * Immutable word to wid dictionary of the wordList table.
+ * Words are sorted and their characters pooled into one array, the sorted index is the term ordinal.
+ * An open addressing table over the ordinals gives lookups in O(term length) without allocating.
+ */
+public final class TermDictionary {
+    public static final long NOT_FOUND = -1L;
+
+    private final char[] chars;
+    private final int[] offsets;
+    private final long[] wids;
+    private final int[] table; // ordinal + 1, 0 marks an empty slot
+    private final int mask;
+
+    TermDictionary(char[] chars, int[] offsets, long[] wids) {
+        this.chars = chars;
+        this.offsets = offsets;
+        this.wids = wids;
+
+        int capacity = Integer.highestOneBit(Math.max(4, wids.length * 2 - 1)) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int ordinal = 0; ordinal < wids.length; ordinal++) {
+            int slot = hash(chars, offsets[ordinal], offsets[ordinal + 1]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = ordinal + 1;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return wids.length;
+    }
+
+    /**
+     * @return the term ordinal of the word, or -1 if the word is not in the dictionary
+     */
+    public int ordinal(CharSequence term) {
+        int length = term.length();
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + term.charAt(i);
+        }
+
+        int slot = mix(h) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (matches(entry - 1, term, length)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return wid of the word, or {@link #NOT_FOUND}
+     */
+    public long getWid(CharSequence term) {
+        int ordinal = ordinal(term);
+        return ordinal < 0 ? NOT_FOUND : wids[ordinal];
+    }
+
+    public long wid(int ordinal) {
+        return wids[ordinal];
+    }
+
+    public String word(int ordinal) {
+        return new String(chars, offsets[ordinal], offsets[ordinal + 1] - offsets[ordinal]);
+    }
+
+    // Pooled word characters and their offsets, for the index snapshot
+    char[] chars() {
+        return chars;
+    }
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    /**
+     * @return a dictionary with the words of both, in one linear merge of the sorted words; a word in both keeps
+     * the wid it has in this one
+     */
+    TermDictionary plus(TermDictionary other) {
+        int capacity = size() + other.size();
+        char[] mergedChars = new char[chars.length + other.chars.length];
+        int[] mergedOffsets = new int[capacity + 1];
+        long[] mergedWids = new long[capacity];
+
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size() || j < other.size()) {
+            int order = i == size() ? 1 : j == other.size() ? -1 : compare(this, i, other, j);
+            TermDictionary from = order <= 0 ? this : other;
+            int ordinal = order <= 0 ? i++ : j++;
+            if (order == 0) {
+                j++;
+            }
+            int start = from.offsets[ordinal];
+            int length = from.offsets[ordinal + 1] - start;
+            System.arraycopy(from.chars, start, mergedChars, mergedOffsets[size], length);
+            mergedOffsets[size + 1] = mergedOffsets[size] + length;
+            mergedWids[size++] = from.wids[ordinal];
+        }
+        return new TermDictionary(Arrays.copyOf(mergedChars, mergedOffsets[size]),
+                Arrays.copyOf(mergedOffsets, size + 1),
+                Arrays.copyOf(mergedWids, size));
+    }
+
+    // String.compareTo order of two words, the order the builder sorts them in
+    private static int compare(TermDictionary a, int i, TermDictionary b, int j) {
+        int aStart = a.offsets[i];
+        int aLength = a.offsets[i + 1] - aStart;
+        int bStart = b.offsets[j];
+        int bLength = b.offsets[j + 1] - bStart;
+        for (int k = 0; k < Math.min(aLength, bLength); k++) {
+            char x = a.chars[aStart + k];
+            char y = b.chars[bStart + k];
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    public long sizeInBytes() {
+        return 2L * chars.length + 4L * offsets.length + 8L * wids.length + 4L * table.length + 5 * 16;
+    }
+
+    private boolean matches(int ordinal, CharSequence term, int length) {
+        int start = offsets[ordinal];
+        if (offsets[ordinal + 1] - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (chars[start + i] != term.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(char[] chars, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        return mix(h);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    public static final class Builder {
+        private String[] words = new String[1024];
+        private long[] wids = new long[1024];
+        private int size;
+
+        private Builder() {
+        }
+
+        public Builder add(String word, long wid) {
+            if (size == words.length) {
+                words = Arrays.copyOf(words, size * 2);
+                wids = Arrays.copyOf(wids, size * 2);
+            }
+            words[size] = word;
+            wids[size] = wid;
+            size++;
+            return this;
+        }
+
+        public TermDictionary build() {
+            String[] sortedWords = Arrays.copyOf(words, size);
+            Arrays.sort(sortedWords);
+
+            // Drop duplicated words, the first wid read wins like the LIMIT 1 lookup did
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || !sortedWords[i].equals(sortedWords[unique - 1])) {
+                    sortedWords[unique++] = sortedWords[i];
+                }
+            }
+
+            long[] sortedWids = new long[unique];
+            boolean[] assigned = new boolean[unique];
+            for (int i = 0; i < size; i++) {
+                int ordinal = Arrays.binarySearch(sortedWords, 0, unique, words[i]);
+                if (!assigned[ordinal]) {
+                    sortedWids[ordinal] = wids[i];
+                    assigned[ordinal] = true;
+                }
+            }
+
+            int[] offsets = new int[unique + 1];
+            for (int i = 0; i < unique; i++) {
+                offsets[i + 1] = offsets[i] + sortedWords[i].length();
+            }
+            char[] chars = new char[offsets[unique]];
+            for (int i = 0; i < unique; i++) {
+                sortedWords[i].getChars(0, sortedWords[i].length(), chars, offsets[i]);
+            }
+
+            return new TermDictionary(chars, offsets, sortedWids);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.edward1141.search.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestPage {
+    private String url; // required, the uid is derived from it like the crawler does
+    private String title;
+    private String body; // page text, tokenized like the indexer does
+    private Long lastModified; // epoch seconds (UTC), null is the time of ingestion
+    private Integer contentLength; // null is the length of the body
+    private List<String> childLinks;
+}
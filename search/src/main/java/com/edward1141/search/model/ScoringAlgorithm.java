@@ -0,0 +1,12 @@
+package com.edward1141.search.model;
+
+/**
+ * How the cosine scores of the query are computed.
+ * EXHAUSTIVE accumulates every posting term at a time,
+ * WAND walks the postings document at a time and skips documents that cannot reach the current top-K.
+ * Both return the same ranking, WAND only counts the documents it actually scored.
+ */
+public enum ScoringAlgorithm {
+    EXHAUSTIVE,
+    WAND
+}
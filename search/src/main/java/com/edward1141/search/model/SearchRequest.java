@@ -16,4 +16,11 @@ public class SearchRequest {
     private boolean matchInTitle;
     private int phraseSearchDistance;
     private boolean withPageRank;
+    private int offset;
+    private int limit; // <= 0 returns every result
+    private ScoringAlgorithm scoringAlgorithm; // null uses search.scoring.algorithm
+    private boolean debugTiming; // return the time spent per stage, not part of the result cache key
+    private String excludeWords; // documents containing any of these words in the body or title are dropped
+    private Long modifiedFrom; // inclusive window on last_modified in epoch seconds (UTC), null leaves it open
+    private Long modifiedTo;
 } 
\ No newline at end of file
@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
@@ -15,5 +16,8 @@ public class SearchResponse {
     private List<SearchResult> results;
     private List<String> stemmedQuery;
     private int totalResults;
+    private boolean totalResultsExact; // false when WAND skipped documents, totalResults is then a lower bound
     private long searchTimeMs;
+    private int hydrationQueries; // database queries issued to fill the url info, links and keywords of the page
+    private Map<String, Double> timings; // milliseconds per stage plus the total, only when the request asked for them
 } 
\ No newline at end of file
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -13,4 +14,7 @@ public interface ForwardIndexRepository extends JpaRepository<ForwardIndex, Long
     
     @Query(value = "SELECT fi.data_head FROM ForwardIndex fi WHERE fi.uid = :uid LIMIT 1", nativeQuery = true)
     List<String> getForwardIndexHead(@Param("uid") Long uid);
+    
+    @Query(value = "SELECT fi.uid, fi.data_head FROM ForwardIndex fi WHERE fi.uid IN (:uids)", nativeQuery = true)
+    List<Object[]> getForwardIndexHeads(@Param("uids") Collection<Long> uids);
 } 
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.edward1141.search.repository;
+
+import com.edward1141.search.entity.UrlList;
+import com.edward1141.search.index.IndexTable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Read path on plain JDBC ({@code search.data-access=jdbc}), without Hibernate's proxies, query creation and
+ * Object[] results. Runs on the application's DataSource, so one pool and one connection limit govern every
+ * read, and with the pool of the serving profile each statement is prepared once per pooled connection
+ * (see {@link com.edward1141.search.config.DataSourceConfig}). Uid lists are bound as a single JSON array
+ * through json_each, so the text of every statement stays the same whatever the page size.
+ */
+public class JdbcSearchReadRepository implements SearchReadRepository {
+    private static final String URL_LISTS = "SELECT uid, url, title, last_modified, content_length, num_child, "
+            + "document_weight, title_weight, page_rank_score FROM urlList WHERE uid IN (SELECT value FROM json_each(?))";
+    private static final String URLS = "SELECT uid, url FROM urlList WHERE uid IN (SELECT value FROM json_each(?))";
+    private static final String FORWARD_INDEX_HEADS = "SELECT uid, data_head FROM forwardIndex "
+            + "WHERE uid IN (SELECT value FROM json_each(?))";
+    private static final Map<IndexTable, String> POSTINGS = new EnumMap<>(IndexTable.class);
+
+    static {
+        for (IndexTable table : IndexTable.values()) {
+            POSTINGS.put(table, "SELECT data FROM " + table.getTableName() + " WHERE wid = ? LIMIT 1");
+        }
+    }
+
+    private static final RowMapper<UrlList> URL_LIST_MAPPER = (rs, rowNum) -> {
+        UrlList urlList = new UrlList();
+        urlList.setUid(rs.getLong(1));
+        urlList.setUrl(rs.getString(2));
+        urlList.setTitle(rs.getString(3));
+        urlList.setLastModified(rs.getString(4));
+        urlList.setContentLength(getInteger(rs, 5));
+        urlList.setNumChild(getInteger(rs, 6));
+        urlList.setDocumentWeight(getDouble(rs, 7));
+        urlList.setTitleWeight(getDouble(rs, 8));
+        urlList.setPageRankScore(getDouble(rs, 9));
+        return urlList;
+    };
+    private static final RowMapper<Map.Entry<Long, String>> ID_STRING_MAPPER =
+            (rs, rowNum) -> new AbstractMap.SimpleImmutableEntry<>(rs.getLong(1), rs.getString(2));
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcSearchReadRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public String findPostingData(IndexTable table, long wid) {
+        List<String> rows = jdbcTemplate.query(POSTINGS.get(table), (rs, rowNum) -> rs.getString(1), wid);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    @Override
+    public List<UrlList> findUrlLists(List<Long> uids) {
+        return jdbcTemplate.query(URL_LISTS, URL_LIST_MAPPER, toJson(uids));
+    }
+
+    @Override
+    public Map<Long, String> findUrls(List<Long> uids) {
+        return toMap(jdbcTemplate.query(URLS, ID_STRING_MAPPER, toJson(uids)));
+    }
+
+    @Override
+    public Map<Long, String> findForwardIndexHeads(List<Long> uids) {
+        return toMap(jdbcTemplate.query(FORWARD_INDEX_HEADS, ID_STRING_MAPPER, toJson(uids)));
+    }
+
+    private static String toJson(List<Long> uids) {
+        StringBuilder json = new StringBuilder(uids.size() * 18 + 2).append('[');
+        for (int i = 0; i < uids.size(); i++) {
+            json.append(i == 0 ? "" : ",").append(uids.get(i).longValue());
+        }
+        return json.append(']').toString();
+    }
+
+    private static Map<Long, String> toMap(List<Map.Entry<Long, String>> rows) {
+        Map<Long, String> values = new HashMap<>();
+        for (Map.Entry<Long, String> row : rows) {
+            values.putIfAbsent(row.getKey(), row.getValue());
+        }
+        return values;
+    }
+
+    private static Integer getInteger(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Double getDouble(ResultSet rs, int column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+}
@@ -0,0 +1,81 @@
+package com.edward1141.search.repository;
+
+import com.edward1141.search.entity.UrlList;
+import com.edward1141.search.index.IndexTable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read path through the Spring Data native queries ({@code search.data-access=jpa}).
+ */
+public class JpaSearchReadRepository implements SearchReadRepository {
+    private final InvertedIndexRepository invertedIndexRepository;
+    private final TitleInvertedIndexRepository titleInvertedIndexRepository;
+    private final RawInvertedIndexRepository rawInvertedIndexRepository;
+    private final RawTitleInvertedIndexRepository rawTitleInvertedIndexRepository;
+    private final StemmedRawInvertedIndexRepository stemmedRawInvertedIndexRepository;
+    private final StemmedRawTitleInvertedIndexRepository stemmedRawTitleInvertedIndexRepository;
+    private final UrlListRepository urlListRepository;
+    private final ForwardIndexRepository forwardIndexRepository;
+
+    public JpaSearchReadRepository(
+            InvertedIndexRepository invertedIndexRepository,
+            TitleInvertedIndexRepository titleInvertedIndexRepository,
+            RawInvertedIndexRepository rawInvertedIndexRepository,
+            RawTitleInvertedIndexRepository rawTitleInvertedIndexRepository,
+            StemmedRawInvertedIndexRepository stemmedRawInvertedIndexRepository,
+            StemmedRawTitleInvertedIndexRepository stemmedRawTitleInvertedIndexRepository,
+            UrlListRepository urlListRepository,
+            ForwardIndexRepository forwardIndexRepository) {
+        this.invertedIndexRepository = invertedIndexRepository;
+        this.titleInvertedIndexRepository = titleInvertedIndexRepository;
+        this.rawInvertedIndexRepository = rawInvertedIndexRepository;
+        this.rawTitleInvertedIndexRepository = rawTitleInvertedIndexRepository;
+        this.stemmedRawInvertedIndexRepository = stemmedRawInvertedIndexRepository;
+        this.stemmedRawTitleInvertedIndexRepository = stemmedRawTitleInvertedIndexRepository;
+        this.urlListRepository = urlListRepository;
+        this.forwardIndexRepository = forwardIndexRepository;
+    }
+
+    @Override
+    public String findPostingData(IndexTable table, long wid) {
+        List<String> result = switch (table) {
+            case BODY -> invertedIndexRepository.getInvertedIndexFullInfo(wid);
+            case TITLE -> titleInvertedIndexRepository.getInvertedIndexFullInfo(wid);
+            case RAW_BODY -> rawInvertedIndexRepository.getInvertedIndexPosition(wid);
+            case RAW_TITLE -> rawTitleInvertedIndexRepository.getInvertedIndexPosition(wid);
+            case STEMMED_RAW_BODY -> stemmedRawInvertedIndexRepository.getInvertedIndexPosition(wid);
+            case STEMMED_RAW_TITLE -> stemmedRawTitleInvertedIndexRepository.getInvertedIndexPosition(wid);
+        };
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    @Override
+    public List<UrlList> findUrlLists(List<Long> uids) {
+        return urlListRepository.findAllById(uids);
+    }
+
+    @Override
+    public Map<Long, String> findUrls(List<Long> uids) {
+        return toMap(urlListRepository.findUrlsByUids(uids));
+    }
+
+    @Override
+    public Map<Long, String> findForwardIndexHeads(List<Long> uids) {
+        return toMap(forwardIndexRepository.getForwardIndexHeads(uids));
+    }
+
+    private static Map<Long, String> toMap(List<Object[]> rows) {
+        Map<Long, String> values = new HashMap<>();
+        for (Object[] row : rows) {
+            values.putIfAbsent(toLong(row[0]), (String) row[1]);
+        }
+        return values;
+    }
+
+    private static long toLong(Object value) {
+        return ((Number) value).longValue();
+    }
+}
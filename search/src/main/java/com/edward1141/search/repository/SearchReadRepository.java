@@ -0,0 +1,32 @@
+package com.edward1141.search.repository;
+
+import com.edward1141.search.entity.UrlList;
+import com.edward1141.search.index.IndexTable;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queries issued while answering a search: posting rows in database mode and the page hydration lookups.
+ * {@link JdbcSearchReadRepository} serves them from prepared statements, {@link JpaSearchReadRepository}
+ * from the Spring Data repositories. Selected by search.data-access.
+ */
+public interface SearchReadRepository {
+
+    /**
+     * @return the JSON posting data of the word in the table, or null if the word has no row
+     */
+    String findPostingData(IndexTable table, long wid);
+
+    List<UrlList> findUrlLists(List<Long> uids);
+
+    /**
+     * @return url of each uid that exists
+     */
+    Map<Long, String> findUrls(List<Long> uids);
+
+    /**
+     * @return data_head of each uid with a forward index row
+     */
+    Map<Long, String> findForwardIndexHeads(List<Long> uids);
+}
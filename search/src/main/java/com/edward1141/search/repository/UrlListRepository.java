@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -18,6 +19,9 @@ public interface UrlListRepository extends JpaRepository<UrlList, Long> {
     @Query(value = "SELECT u.url FROM UrlList u WHERE u.uid = :uid LIMIT 1", nativeQuery = true)
     String findUrlByUid(@Param("uid") Long uid);
     
+    @Query(value = "SELECT u.uid, u.url FROM UrlList u WHERE u.uid IN (:uids)", nativeQuery = true)
+    List<Object[]> findUrlsByUids(@Param("uids") Collection<Long> uids);
+    
     @Query(value = "SELECT u.title, u.last_modified, u.content_length FROM UrlList u WHERE u.uid = :uid LIMIT 1", nativeQuery = true)
     Object[] getUrlInfo(@Param("uid") Long uid);
     
@@ -0,0 +1,420 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.index.DocumentStore;
+import com.edward1141.search.index.PostingList;
+import com.edward1141.search.model.ScoringAlgorithm;
+import com.edward1141.search.utils.TopKHeap;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Ranks documents by the cosine similarity of the query against the body and title postings,
+ * plus the optional page rank score. postings[i] belongs to query term i and is null if the word has no entry.
+ * Documents are handled by their {@link DocumentStore} ordinal, a filter is a bitmap of ordinals.
+ */
+class CosineScorer {
+    // Slack on the WAND upper bounds so floating point rounding never prunes a document tying the threshold
+    private static final double BOUND_SLACK = 1 + 1e-9;
+
+    private final DocumentStore documentStore;
+    private final double bodyWeight;
+    private final double pageRankWeight;
+    private final QueryExecutor executor;
+
+    CosineScorer(DocumentStore documentStore, double bodyWeight, double pageRankWeight) {
+        this(documentStore, bodyWeight, pageRankWeight, QueryExecutor.INLINE);
+    }
+
+    /**
+     * @param executor runs the body and title passes of the exhaustive path concurrently
+     */
+    CosineScorer(DocumentStore documentStore, double bodyWeight, double pageRankWeight, QueryExecutor executor) {
+        this.documentStore = documentStore;
+        this.bodyWeight = bodyWeight;
+        this.pageRankWeight = pageRankWeight;
+        this.executor = executor;
+    }
+
+    static class RankedDocuments {
+        final TopKHeap topK;
+        final int totalResults;
+        final boolean totalResultsExact;
+
+        RankedDocuments(TopKHeap topK, int totalResults, boolean totalResultsExact) {
+            this.topK = topK;
+            this.totalResults = totalResults;
+            this.totalResultsExact = totalResultsExact;
+        }
+    }
+
+    /**
+     * Cosine scores of one pass, ordered by document ordinal.
+     */
+    static class PassScores {
+        final int[] docs;
+        final double[] scores;
+        final int size;
+
+        PassScores(int[] docs, double[] scores, int size) {
+            this.docs = docs;
+            this.scores = scores;
+            this.size = size;
+        }
+    }
+
+    /**
+     * @param filter ordinals of the documents allowed in the result, null allows all
+     * @param limit  number of documents after offset to rank, <= 0 ranks all of them
+     */
+    RankedDocuments rank(ScoringAlgorithm algorithm, PostingList[] body, PostingList[] title, RoaringBitmap filter,
+                         boolean withPageRank, int offset, int limit) {
+        if (filter != null && filter.isEmpty()) {
+            return new RankedDocuments(new TopKHeap(0), 0, true);
+        }
+        if (algorithm == ScoringAlgorithm.WAND && limit > 0) {
+            // The heap is allocated up front, it never keeps more documents than there are candidates
+            long candidates = QueryExecutor.postingCount(body) + QueryExecutor.postingCount(title);
+            if (filter != null) {
+                candidates = Math.min(candidates, filter.getLongCardinality());
+            }
+            long k = Math.min((long) offset + limit, candidates);
+            return wand(body, title, filter, withPageRank, (int) Math.min(k, Integer.MAX_VALUE));
+        }
+        return exhaustive(body, title, filter, withPageRank, offset, limit);
+    }
+
+    private RankedDocuments exhaustive(PostingList[] bodyPostings, PostingList[] titlePostings, RoaringBitmap filter,
+                                       boolean withPageRank, int offset, int limit) {
+        // The passes share nothing, each fills its own arrays and the merge below runs after both
+        List<Supplier<PassScores>> passes = List.of(
+                () -> cosineSimilarity(bodyPostings, filter),
+                () -> cosineSimilarity(titlePostings, filter));
+        List<PassScores> innerProducts = executor.score(
+                QueryExecutor.postingCount(bodyPostings) + QueryExecutor.postingCount(titlePostings), passes);
+        PassScores body = innerProducts.get(0);
+        PassScores title = innerProducts.get(1);
+
+        // Only the best offset + limit documents are kept, the union has at most body.size + title.size documents
+        int union = body.size + title.size;
+        TopKHeap topK = new TopKHeap(limit > 0 ? (int) Math.min((long) offset + limit, union) : union);
+
+        // Both passes are sorted by ordinal, merge them into their union
+        int totalResults = 0;
+        int b = 0;
+        int t = 0;
+        while (b < body.size || t < title.size) {
+            int bodyDoc = b < body.size ? body.docs[b] : Integer.MAX_VALUE;
+            int titleDoc = t < title.size ? title.docs[t] : Integer.MAX_VALUE;
+            int doc;
+            double score;
+            if (bodyDoc <= titleDoc) {
+                doc = bodyDoc;
+                score = body.scores[b++] * bodyWeight;
+                if (titleDoc == bodyDoc) {
+                    score += title.scores[t++] * bodyWeight;
+                }
+            } else {
+                doc = titleDoc;
+                score = title.scores[t++] * bodyWeight;
+            }
+            topK.offer(documentStore.uid(doc), score + getPageRankScore(doc, withPageRank));
+            totalResults++;
+        }
+
+        return new RankedDocuments(topK.sort(), totalResults, true);
+    }
+
+    /**
+     * Document at a time merge of the query's postings, each document's contributions are summed in query term order.
+     * A filter smaller than the postings drives the merge instead, see {@link #filteredCosineSimilarity}.
+     */
+    PassScores cosineSimilarity(PostingList[] query, RoaringBitmap filter) {
+        long postingCount = QueryExecutor.postingCount(query);
+        if (filter != null && filter.getLongCardinality() < postingCount) {
+            return filteredCosineSimilarity(query, filter);
+        }
+        int capacity = (int) Math.min(postingCount, documentStore.size());
+        int[] docs = new int[capacity];
+        double[] scores = new double[capacity];
+        int size = 0;
+
+        int[] positions = new int[query.length];
+        int[][] ordinals = ordinals(query);
+        while (true) {
+            long docId = Long.MAX_VALUE;
+            int doc = DocumentStore.NOT_FOUND;
+            for (int c = 0; c < query.length; c++) {
+                if (query[c] != null && positions[c] < query[c].size() && query[c].docId(positions[c]) < docId) {
+                    docId = query[c].docId(positions[c]);
+                    doc = ordinals[c][positions[c]];
+                }
+            }
+            if (docId == Long.MAX_VALUE) {
+                break;
+            }
+
+            // Documents without a weight cannot be normalized
+            boolean accepted = doc != DocumentStore.NOT_FOUND && !Double.isNaN(documentStore.documentWeight(doc))
+                    && (filter == null || filter.contains(doc));
+
+            double score = 0.0;
+            for (int c = 0; c < query.length; c++) {
+                PostingList postings = query[c];
+                if (postings == null || positions[c] >= postings.size() || postings.docId(positions[c]) != docId) {
+                    continue;
+                }
+                if (accepted) {
+                    score += getTermWeight(postings.tfNorm(positions[c]), postings.idf(positions[c]))
+                            / documentStore.documentWeight(doc);
+                }
+                positions[c]++;
+            }
+            if (accepted) {
+                docs[size] = doc;
+                scores[size] = score;
+                size++;
+            }
+        }
+        return normalize(query, docs, scores, size);
+    }
+
+    /**
+     * Walks the filter instead of the postings and gallops every cursor to each allowed document, so a restrictive
+     * filter skips the postings of the documents it excludes. Ordinals follow uid order, the result and the
+     * summation order are the same as the merge.
+     */
+    private PassScores filteredCosineSimilarity(PostingList[] query, RoaringBitmap filter) {
+        int capacity = filter.getCardinality();
+        int[] docs = new int[capacity];
+        double[] scores = new double[capacity];
+        int size = 0;
+
+        int[] positions = new int[query.length];
+        int live = 0;
+        for (PostingList postings : query) {
+            if (postings != null && !postings.isEmpty()) {
+                live++;
+            }
+        }
+        IntIterator allowed = filter.getIntIterator();
+        while (live > 0 && allowed.hasNext()) {
+            int doc = allowed.next();
+            if (Double.isNaN(documentStore.documentWeight(doc))) {
+                continue;
+            }
+            long docId = documentStore.uid(doc);
+
+            double score = 0.0;
+            boolean matched = false;
+            for (int c = 0; c < query.length; c++) {
+                PostingList postings = query[c];
+                if (postings == null || positions[c] >= postings.size()) {
+                    continue;
+                }
+                positions[c] = postings.advance(positions[c], docId);
+                if (positions[c] >= postings.size()) {
+                    live--;
+                    continue;
+                }
+                if (postings.docId(positions[c]) == docId) {
+                    score += getTermWeight(postings.tfNorm(positions[c]), postings.idf(positions[c]))
+                            / documentStore.documentWeight(doc);
+                    matched = true;
+                }
+            }
+            if (matched) {
+                docs[size] = doc;
+                scores[size] = score;
+                size++;
+            }
+        }
+        return normalize(query, docs, scores, size);
+    }
+
+    private int[][] ordinals(PostingList[] lists) {
+        int[][] ordinals = new int[lists.length][];
+        for (int c = 0; c < lists.length; c++) {
+            if (lists[c] != null) {
+                ordinals[c] = lists[c].ordinals(documentStore);
+            }
+        }
+        return ordinals;
+    }
+
+    private static PassScores normalize(PostingList[] query, int[] docs, double[] scores, int size) {
+        double queryLength = queryLength(query);
+        if (queryLength > 0) {
+            for (int i = 0; i < size; i++) {
+                scores[i] /= queryLength;
+            }
+        }
+        return new PassScores(docs, scores, size);
+    }
+
+    /**
+     * Document at a time WAND: cursors are kept sorted by their current document, and the first document where
+     * the summed upper bounds can beat the top-K threshold is the pivot. Documents before the pivot are skipped.
+     * Contributions are summed in query term order so the scores are bit identical to the exhaustive path.
+     */
+    private RankedDocuments wand(PostingList[] body, PostingList[] title, RoaringBitmap filter,
+                                 boolean withPageRank, int k) {
+        int cursorCount = body.length + title.length;
+        PostingList[] lists = new PostingList[cursorCount];
+        boolean[] isTitle = new boolean[cursorCount];
+        double[] upperBounds = new double[cursorCount];
+        int[] positions = new int[cursorCount];
+        long[] current = new long[cursorCount];
+
+        double bodyQueryLength = queryLength(body);
+        double titleQueryLength = queryLength(title);
+        for (int c = 0; c < cursorCount; c++) {
+            boolean inTitle = c >= body.length;
+            PostingList postings = inTitle ? title[c - body.length] : body[c];
+            double queryLength = inTitle ? titleQueryLength : bodyQueryLength;
+
+            isTitle[c] = inTitle;
+            lists[c] = postings;
+            if (postings == null || postings.isEmpty()) {
+                current[c] = Long.MAX_VALUE;
+                continue;
+            }
+            double bound = postings.maxTermWeight(documentStore);
+            if (queryLength > 0) {
+                bound /= queryLength;
+            }
+            upperBounds[c] = bound * bodyWeight * BOUND_SLACK;
+            current[c] = postings.docId(0);
+        }
+        int[][] ordinals = ordinals(lists);
+        double pageRankBound = withPageRank ? pageRankWeight * documentStore.maxPageRankScore() * BOUND_SLACK : 0.0;
+
+        // Cursor indexes ordered by current document, exhausted cursors sit at Long.MAX_VALUE
+        int[] order = new int[cursorCount];
+        for (int c = 0; c < cursorCount; c++) {
+            order[c] = c;
+        }
+
+        TopKHeap topK = new TopKHeap(k);
+        int scored = 0;
+        while (true) {
+            sortCursors(order, current);
+            if (cursorCount == 0 || current[order[0]] == Long.MAX_VALUE) {
+                break;
+            }
+
+            double threshold = topK.threshold();
+            double bound = pageRankBound;
+            int pivot = -1;
+            for (int i = 0; i < cursorCount && current[order[i]] != Long.MAX_VALUE; i++) {
+                bound += upperBounds[order[i]];
+                if (bound >= threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                break;
+            }
+            long pivotDoc = current[order[pivot]];
+
+            if (current[order[0]] != pivotDoc) {
+                // No document before the pivot can enter the top-K
+                for (int i = 0; i < pivot; i++) {
+                    int c = order[i];
+                    positions[c] = lists[c].advance(positions[c], pivotDoc);
+                    current[c] = positions[c] < lists[c].size() ? lists[c].docId(positions[c]) : Long.MAX_VALUE;
+                }
+                continue;
+            }
+
+            int doc = ordinals[order[0]][positions[order[0]]];
+            boolean accepted = doc != DocumentStore.NOT_FOUND && !Double.isNaN(documentStore.documentWeight(doc))
+                    && (filter == null || filter.contains(doc));
+
+            double bodySum = 0.0;
+            double titleSum = 0.0;
+            boolean inBody = false;
+            boolean inTitle = false;
+            for (int c = 0; c < cursorCount; c++) {
+                if (current[c] != pivotDoc) {
+                    continue;
+                }
+                if (accepted) {
+                    PostingList postings = lists[c];
+                    double weight = getTermWeight(postings.tfNorm(positions[c]), postings.idf(positions[c]))
+                            / documentStore.documentWeight(doc);
+                    if (isTitle[c]) {
+                        titleSum += weight;
+                        inTitle = true;
+                    } else {
+                        bodySum += weight;
+                        inBody = true;
+                    }
+                }
+                positions[c]++;
+                current[c] = positions[c] < lists[c].size() ? lists[c].docId(positions[c]) : Long.MAX_VALUE;
+            }
+
+            if (accepted) {
+                if (bodyQueryLength > 0) {
+                    bodySum /= bodyQueryLength;
+                }
+                if (titleQueryLength > 0) {
+                    titleSum /= titleQueryLength;
+                }
+                double score;
+                if (inBody) {
+                    score = bodySum * bodyWeight;
+                    if (inTitle) {
+                        score += titleSum * bodyWeight;
+                    }
+                } else {
+                    score = titleSum * bodyWeight;
+                }
+                topK.offer(pivotDoc, score + getPageRankScore(doc, withPageRank));
+                scored++;
+            }
+        }
+
+        return new RankedDocuments(topK.sort(), scored, false);
+    }
+
+    private static void sortCursors(int[] order, long[] current) {
+        // Insertion sort, there are only a handful of cursors and they are nearly sorted between rounds
+        for (int i = 1; i < order.length; i++) {
+            int c = order[i];
+            int j = i - 1;
+            while (j >= 0 && current[order[j]] > current[c]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = c;
+        }
+    }
+
+    private static double queryLength(PostingList[] query) {
+        double queryLength = 0.0;
+        for (PostingList postings : query) {
+            double v = postings == null || postings.isEmpty() ? 0 : postings.idf(0);
+            queryLength += v * v;
+        }
+        return Math.sqrt(queryLength);
+    }
+
+    private double getPageRankScore(int doc, boolean withPageRank) {
+        if (!withPageRank) {
+            return 0.0;
+        }
+        if (Double.isNaN(documentStore.pageRankScore(doc))) {
+            return 0.0;
+        }
+        return pageRankWeight * documentStore.pageRankScore(doc);
+    }
+
+    private static double getTermWeight(double tfNorm, double idf) {
+        return tfNorm * idf;
+    }
+}
@@ -0,0 +1,176 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.index.DeltaSegment;
+import com.edward1141.search.index.IndexGeneration;
+import com.edward1141.search.index.IndexManager;
+import com.edward1141.search.index.IngestedPage;
+import com.edward1141.search.index.LiveIndex;
+import com.edward1141.search.index.PageAnalyzer;
+import com.edward1141.search.model.IngestPage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write path of the {@link LiveIndex}, only created with {@code search.ingest.enabled=true}. Pages are analyzed
+ * on the calling thread and become searchable with the next refresh, every search.ingest.refresh-interval-ms.
+ * The same background thread compacts the segments when there are more than search.ingest.max-segments and
+ * queues a merge into the main index once search.ingest.merge-documents updates are waiting or
+ * search.ingest.merge-interval-ms has passed since the last one.
+ */
+@Service
+@ConditionalOnProperty(name = "search.ingest.enabled", havingValue = "true")
+public class IngestService {
+    private static final Logger logger = LoggerFactory.getLogger(IngestService.class);
+
+    private final LiveIndex liveIndex;
+    private final IndexManager indexManager;
+    private final PageAnalyzer pageAnalyzer;
+    private final int maxSegments;
+    private final int mergeDocuments;
+    private final long mergeIntervalMs;
+    private final AtomicBoolean mergeQueued = new AtomicBoolean();
+    private volatile long lastMergeTime = System.currentTimeMillis();
+    private volatile long lastMergedVersion;
+
+    @Autowired
+    public IngestService(
+            LiveIndex liveIndex,
+            IndexManager indexManager,
+            Set<String> stopwords,
+            @Value("${search.ingest.refresh-interval-ms:1000}") long refreshIntervalMs,
+            @Value("${search.ingest.max-segments:8}") int maxSegments,
+            @Value("${search.ingest.merge-documents:10000}") int mergeDocuments,
+            @Value("${search.ingest.merge-interval-ms:300000}") long mergeIntervalMs) {
+        this.liveIndex = liveIndex;
+        this.indexManager = indexManager;
+        this.pageAnalyzer = new PageAnalyzer(stopwords);
+        this.maxSegments = maxSegments;
+        this.mergeDocuments = mergeDocuments;
+        this.mergeIntervalMs = mergeIntervalMs;
+
+        ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ingest-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::maintain, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param refresh publish the pages before returning instead of with the next refresh
+     * @return uid of each page
+     * @throws IllegalArgumentException if a page has no url
+     */
+    public List<Long> ingest(List<IngestPage> pages, boolean refresh) throws IOException {
+        for (IngestPage page : pages) {
+            if (page.getUrl() == null || page.getUrl().isBlank()) {
+                throw new IllegalArgumentException("Every page needs a url");
+            }
+        }
+        List<Long> uids = new ArrayList<>();
+        long now = System.currentTimeMillis() / 1000;
+        for (IngestPage page : pages) {
+            String body = page.getBody() == null ? "" : page.getBody();
+            IngestedPage analyzed = pageAnalyzer.analyze(
+                    page.getUrl(),
+                    page.getTitle(),
+                    body,
+                    page.getLastModified() != null ? page.getLastModified() : now,
+                    page.getContentLength() != null ? page.getContentLength() : body.length(),
+                    page.getChildLinks());
+            liveIndex.upsert(analyzed);
+            uids.add(analyzed.getUid());
+        }
+        if (refresh) {
+            refresh();
+        }
+        return uids;
+    }
+
+    /**
+     * Hides the page from searches, whether it was ingested or crawled.
+     *
+     * @return uid of the page
+     */
+    public long delete(String url, boolean refresh) throws IOException {
+        long uid = PageAnalyzer.uid(url);
+        liveIndex.delete(uid);
+        if (refresh) {
+            refresh();
+        }
+        return uid;
+    }
+
+    public Map<String, Object> getStatus() {
+        IndexGeneration generation = indexManager.acquire();
+        try {
+            LiveIndex.View view = liveIndex.view(generation);
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("pending", liveIndex.pending());
+            status.put("segments", view.getSegments().size());
+            status.put("segment_documents", view.getSegments().stream().mapToInt(DeltaSegment::size).sum());
+            status.put("segment_bytes", view.getSegments().stream().mapToLong(DeltaSegment::sizeInBytes).sum());
+            status.put("unmerged", view.resolve(generation).getUnmerged());
+            status.put("merged", liveIndex.mergedCount());
+            status.put("generation", generation.getId());
+            status.put("merge_queued", mergeQueued.get());
+            return status;
+        } finally {
+            generation.release();
+        }
+    }
+
+    private void refresh() throws IOException {
+        IndexGeneration generation = indexManager.acquire();
+        try {
+            liveIndex.refresh(generation);
+        } finally {
+            generation.release();
+        }
+    }
+
+    private void maintain() {
+        IndexGeneration generation = indexManager.acquire();
+        try {
+            liveIndex.refresh(generation);
+            LiveIndex.View view = liveIndex.view();
+            if (view.getSegments().size() > maxSegments) {
+                liveIndex.compact(generation);
+                view = liveIndex.view();
+            }
+            if (view.getGeneration() > generation.getId() || view.getVersion() == lastMergedVersion) {
+                return; // About to be published, or nothing new since the last merge
+            }
+            int unmerged = view.resolve(generation).getUnmerged();
+            boolean due = unmerged >= mergeDocuments
+                    || (unmerged > 0 && System.currentTimeMillis() - lastMergeTime >= mergeIntervalMs);
+            if (due && mergeQueued.compareAndSet(false, true)) {
+                lastMergedVersion = view.getVersion();
+                indexManager.update((id, previous) -> {
+                    mergeQueued.set(false);
+                    lastMergeTime = System.currentTimeMillis();
+                    return liveIndex.merge(id, previous);
+                });
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not refresh the ingested pages", e);
+        } finally {
+            generation.release();
+        }
+    }
+}
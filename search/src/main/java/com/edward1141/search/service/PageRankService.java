@@ -0,0 +1,147 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.index.DocumentStore;
+import com.edward1141.search.index.IndexGeneration;
+import com.edward1141.search.index.IndexManager;
+import com.edward1141.search.index.LinkGraph;
+import com.edward1141.search.index.PageRank;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Recomputes page_rank_score over the in memory {@link LinkGraph} on request and writes it to urlList.
+ * One run at a time executes on a background thread with its own pool and its own writable connection, so
+ * searches keep being answered from the loaded index while it runs. Once the scores are written the index is
+ * reloaded, so ranking picks them up without a restart.
+ */
+@Service
+public class PageRankService {
+    private static final int BATCH_SIZE = 10000;
+    private static final Logger logger = LoggerFactory.getLogger(PageRankService.class);
+
+    private final IndexManager indexManager;
+    private final String url;
+    private final double dampingFactor;
+    private final int maxIterations;
+    private final double convergenceThreshold;
+    private final int threads;
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "page-rank");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Object> status = new LinkedHashMap<>();
+    private boolean running;
+
+    @Autowired
+    public PageRankService(
+            IndexManager indexManager,
+            @Value("${spring.datasource.url}") String url,
+            @Value("${search.page-rank.damping-factor:0.85}") double dampingFactor,
+            @Value("${search.page-rank.max-iterations:500}") int maxIterations,
+            @Value("${search.page-rank.convergence-threshold:1e-6}") double convergenceThreshold,
+            @Value("${search.page-rank.threads:-1}") int threads) {
+        this.indexManager = indexManager;
+        this.url = url;
+        this.dampingFactor = dampingFactor;
+        this.maxIterations = maxIterations;
+        this.convergenceThreshold = convergenceThreshold;
+        this.threads = threads < 0 ? Runtime.getRuntime().availableProcessors() : Math.max(1, threads);
+        status.put("state", "idle");
+    }
+
+    /**
+     * @return false if a run is already in progress
+     */
+    public synchronized boolean start() {
+        if (running) {
+            return false;
+        }
+        running = true;
+        IndexGeneration generation = indexManager.acquire();
+        status.clear();
+        status.put("state", "running");
+        status.put("started_at", System.currentTimeMillis());
+        status.put("generation", generation.getId());
+        status.put("documents", generation.getDocumentStore().size());
+        status.put("links", generation.getLinkGraph().linkCount());
+        runner.execute(() -> run(generation));
+        return true;
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        return new LinkedHashMap<>(status);
+    }
+
+    private void run(IndexGeneration generation) {
+        long startTime = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            DocumentStore documentStore = generation.getDocumentStore();
+            PageRank.Result result = new PageRank(generation.getLinkGraph(), documentStore, dampingFactor,
+                    maxIterations, convergenceThreshold).compute(pool, threads);
+            long computeMillis = System.currentTimeMillis() - startTime;
+            write(documentStore, result.scores);
+            indexManager.reload();
+            logger.info("Computed page rank of {} documents in {} iterations ({}) in {} ms, written in {} ms",
+                    result.scores.length, result.iterations, result.converged ? "converged" : "not converged",
+                    computeMillis, System.currentTimeMillis() - startTime - computeMillis);
+            finish("done", Map.of(
+                    "iterations", result.iterations,
+                    "converged", result.converged,
+                    "compute_ms", computeMillis,
+                    "total_ms", System.currentTimeMillis() - startTime));
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error("Page rank computation failed", e);
+            finish("failed", Map.of("error", String.valueOf(e.getMessage())));
+        } finally {
+            pool.shutdownNow();
+            generation.release();
+        }
+    }
+
+    private synchronized void finish(String state, Map<String, Object> details) {
+        status.put("state", state);
+        status.putAll(details);
+        running = false;
+    }
+
+    // One transaction, readers of a WAL database keep seeing the old scores until it commits
+    private void write(DocumentStore documentStore, double[] scores) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE urlList SET page_rank_score = ? WHERE uid = ?")) {
+                for (int doc = 0; doc < scores.length; doc++) {
+                    statement.setDouble(1, scores[doc]);
+                    statement.setLong(2, documentStore.uid(doc));
+                    statement.addBatch();
+                    if ((doc + 1) % BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                    }
+                }
+                statement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.index.PostingList;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the independent parts of one query concurrently: posting fetches on a pool sized for blocking database
+ * reads, phrase scans and scoring passes on a pool sized to the cores. The pools have no queue, a task that finds
+ * every thread busy runs on the calling thread, so a burst of queries degrades to the sequential path instead of
+ * waiting on each other. Results come back in submission order, whichever task finishes first.
+ */
+class QueryExecutor {
+    static final QueryExecutor INLINE = new QueryExecutor(0, 0, Integer.MAX_VALUE);
+
+    private final ExecutorService fetchPool;
+    private final ExecutorService scorePool;
+    private final long minParallelPostings;
+
+    interface Fetch<T> {
+        T call() throws JsonProcessingException;
+    }
+
+    /**
+     * @param fetchThreads        threads for posting fetches, 0 fetches on the calling thread
+     * @param scoreThreads        threads for phrase scans and scoring passes, 0 runs them on the calling thread
+     * @param minParallelPostings fewest postings worth splitting a scan or scoring pass across threads
+     */
+    QueryExecutor(int fetchThreads, int scoreThreads, long minParallelPostings) {
+        this.fetchPool = fetchThreads > 0 ? newPool("search-fetch", fetchThreads) : null;
+        this.scorePool = scoreThreads > 0 ? newPool("search-score", scoreThreads) : null;
+        this.minParallelPostings = minParallelPostings;
+    }
+
+    private static ExecutorService newPool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    <T> List<T> fetch(List<Fetch<T>> fetches) throws JsonProcessingException {
+        List<Callable<T>> tasks = new ArrayList<>(fetches.size());
+        for (Fetch<T> fetch : fetches) {
+            tasks.add(fetch::call);
+        }
+        try {
+            return invokeAll(fetchPool, tasks);
+        } catch (JsonProcessingException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param postings number of postings the tasks walk in total, small queries stay on the calling thread
+     */
+    <T> List<T> score(long postings, List<Supplier<T>> passes) {
+        List<Callable<T>> tasks = new ArrayList<>(passes.size());
+        for (Supplier<T> pass : passes) {
+            tasks.add(pass::get);
+        }
+        try {
+            return invokeAll(postings >= minParallelPostings ? scorePool : null, tasks);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static long postingCount(PostingList... lists) {
+        long count = 0;
+        for (PostingList postings : lists) {
+            if (postings != null) {
+                count += postings.size();
+            }
+        }
+        return count;
+    }
+
+    private static <T> List<T> invokeAll(ExecutorService pool, List<Callable<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (pool == null || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        // The calling thread takes the first task instead of idling until the others finish
+        List<Future<T>> futures = new ArrayList<>(tasks.size() - 1);
+        for (int i = 1; i < tasks.size(); i++) {
+            futures.add(pool.submit(tasks.get(i)));
+        }
+        try {
+            results.add(tasks.get(0).call());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw (Error) e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,139 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.model.ScoringAlgorithm;
+import com.edward1141.search.model.SearchResponse;
+import com.edward1141.search.model.SearchResult;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of search responses keyed on the normalized request, evicted by estimated size (Caffeine's
+ * W-TinyLFU). The key carries the index generation and the version of the ingested segments a response was
+ * computed on, everything is dropped once a query runs on newer ones.
+ */
+class ResultCache {
+    private final Cache<Key, SearchResponse> cache;
+
+    /**
+     * @param maxBytes estimated heap budget of the cached responses, 0 disables the cache
+     */
+    ResultCache(long maxBytes) {
+        this.cache = maxBytes > 0
+                ? Caffeine.newBuilder()
+                        .maximumWeight(maxBytes)
+                        .weigher((Key key, SearchResponse response) -> weigh(response))
+                        .recordStats()
+                        .build()
+                : null;
+    }
+
+    /**
+     * Normalized request: stemmed and stopword filtered terms plus every option that changes the response.
+     */
+    @Data
+    @AllArgsConstructor
+    static class Key {
+        private List<String> queryTerms;
+        private List<String> phraseTerms;
+        private boolean rawMatchPhrase;
+        private boolean stemForRaw;
+        private boolean matchInTitle;
+        private int phraseSearchDistance;
+        private boolean withPageRank;
+        private int offset;
+        private int limit;
+        private ScoringAlgorithm scoringAlgorithm;
+        private List<String> excludedTerms;
+        private Long modifiedFrom;
+        private Long modifiedTo;
+        private long generation; // index generation the response was computed on
+        private long segments; // version of the ingested segments it was computed with
+    }
+
+    SearchResponse get(Key key) {
+        if (cache == null) {
+            return null;
+        }
+        return cache.getIfPresent(key);
+    }
+
+    void put(Key key, SearchResponse response) {
+        if (cache != null) {
+            cache.put(key, response);
+        }
+    }
+
+    void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    boolean isEnabled() {
+        return cache != null;
+    }
+
+    CacheStats stats() {
+        return cache != null ? cache.stats() : CacheStats.empty();
+    }
+
+    long estimatedSize() {
+        return cache != null ? cache.estimatedSize() : 0;
+    }
+
+    long weightedSize() {
+        if (cache == null) {
+            return 0;
+        }
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    // Rough heap size of a response, strings count two bytes per char
+    static int weigh(SearchResponse response) {
+        long bytes = 64;
+        if (response.getResults() != null) {
+            for (SearchResult result : response.getResults()) {
+                bytes += 128 + chars(result.getTitle()) + chars(result.getUrl()) + chars(result.getLastModified())
+                        + chars(result.getBody());
+                bytes += weighWordPos(result.getWordPos()) + weighWordPos(result.getTitleWordPos());
+                bytes += weighLinks(result.getParentLinks()) + weighLinks(result.getChildLinks());
+                if (result.getKeywords() != null) {
+                    for (String keyword : result.getKeywords().keySet()) {
+                        bytes += 48 + chars(keyword);
+                    }
+                }
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static long weighWordPos(Map<String, List<Integer>> wordPos) {
+        long bytes = 0;
+        if (wordPos != null) {
+            for (Map.Entry<String, List<Integer>> entry : wordPos.entrySet()) {
+                bytes += 64 + chars(entry.getKey()) + 20L * entry.getValue().size();
+            }
+        }
+        return bytes;
+    }
+
+    private static long weighLinks(List<String> links) {
+        long bytes = 0;
+        if (links != null) {
+            for (String link : links) {
+                bytes += 48 + chars(link);
+            }
+        }
+        return bytes;
+    }
+
+    private static long chars(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+}
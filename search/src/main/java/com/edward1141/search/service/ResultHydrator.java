@@ -0,0 +1,155 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.entity.UrlList;
+import com.edward1141.search.index.DocumentStore;
+import com.edward1141.search.index.IngestedPage;
+import com.edward1141.search.index.LinkGraph;
+import com.edward1141.search.model.SearchResult;
+import com.edward1141.search.repository.SearchReadRepository;
+import com.edward1141.search.utils.IndexParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Fills url info, parent/child links and keywords of a result page with a fixed number of IN queries
+ * instead of a handful of queries per result and one per link. The links themselves come from the in memory
+ * {@link LinkGraph}, only their urls are queried. Ingested pages are not in the database, they are filled from
+ * the page itself and only their parent links are queried.
+ */
+class ResultHydrator {
+    // Stay below the SQLite host parameter limit of older versions (999)
+    private static final int BATCH_SIZE = 500;
+
+    private final SearchReadRepository searchReadRepository;
+    private final LinkGraph linkGraph;
+    private final IndexParser indexParser;
+
+    ResultHydrator(SearchReadRepository searchReadRepository, LinkGraph linkGraph) {
+        this.searchReadRepository = searchReadRepository;
+        this.linkGraph = linkGraph;
+        this.indexParser = new IndexParser();
+    }
+
+    /**
+     * @param urlIds urlIds[i] is the document of results.get(i)
+     * @return number of database queries issued
+     */
+    int hydrate(List<SearchResult> results, long[] urlIds) throws JsonProcessingException {
+        return hydrate(results, urlIds, new IngestedPage[urlIds.length]);
+    }
+
+    /**
+     * @param pages pages[i] is the ingested page of results.get(i), null for a crawled document
+     * @return number of database queries issued
+     */
+    int hydrate(List<SearchResult> results, long[] urlIds, IngestedPage[] pages) throws JsonProcessingException {
+        if (results.isEmpty()) {
+            return 0;
+        }
+        QueryCounter queries = new QueryCounter();
+        Set<Long> uids = new LinkedHashSet<>();
+        Set<Long> ingested = new LinkedHashSet<>();
+        for (int i = 0; i < urlIds.length; i++) {
+            (pages[i] == null ? uids : ingested).add(urlIds[i]);
+        }
+
+        Map<Long, UrlList> urlLists = new HashMap<>();
+        queries.inBatches(uids, searchReadRepository::findUrlLists)
+                .forEach(urlList -> urlLists.put(urlList.getUid(), urlList));
+
+        // Links and keywords are only shown for documents that still exist
+        Set<Long> found = new LinkedHashSet<>(uids);
+        found.retainAll(urlLists.keySet());
+
+        Map<Long, long[]> childIds = new HashMap<>();
+        Map<Long, long[]> parentIds = new HashMap<>();
+        Set<Long> linkIds = new LinkedHashSet<>();
+        for (Long uid : ingested) {
+            long[] parents = linkGraph.parents(uid);
+            parentIds.put(uid, parents);
+            for (long parent : parents) {
+                linkIds.add(parent);
+            }
+        }
+        for (Long uid : found) {
+            long[] children = linkGraph.children(uid);
+            long[] parents = linkGraph.parents(uid);
+            childIds.put(uid, children);
+            parentIds.put(uid, parents);
+            for (long child : children) {
+                linkIds.add(child);
+            }
+            for (long parent : parents) {
+                linkIds.add(parent);
+            }
+        }
+        Map<Long, String> linkUrls = new HashMap<>();
+        queries.inMapBatches(linkIds, searchReadRepository::findUrls).forEach(linkUrls::putAll);
+
+        Map<Long, String> forwardIndexHeads = new HashMap<>();
+        queries.inMapBatches(found, searchReadRepository::findForwardIndexHeads).forEach(forwardIndexHeads::putAll);
+
+        for (int i = 0; i < results.size(); i++) {
+            SearchResult result = results.get(i);
+            long urlId = urlIds[i];
+            if (pages[i] != null) {
+                IngestedPage page = pages[i];
+                result.setUrl(page.getUrl());
+                result.setTitle(page.getTitle());
+                result.setLastModified(DocumentStore.formatLastModified(page.getLastModified()));
+                result.setSize(page.getContentLength());
+                result.setParentLinks(toUrls(parentIds.get(urlId), linkUrls));
+                result.setChildLinks(new ArrayList<>(page.getChildLinks()));
+                result.setKeywords(page.keywords());
+                continue;
+            }
+            UrlList urlList = urlLists.get(urlId);
+            if (urlList == null) {
+                continue; // URL not found
+            }
+
+            result.setUrl(urlList.getUrl());
+            result.setTitle(urlList.getTitle());
+            result.setLastModified(urlList.getLastModified());
+            result.setSize(urlList.getContentLength());
+            result.setParentLinks(toUrls(parentIds.get(urlId), linkUrls));
+            result.setChildLinks(toUrls(childIds.get(urlId), linkUrls));
+
+            String forwardIndexHead = forwardIndexHeads.get(urlId);
+            if (forwardIndexHead != null) {
+                result.setKeywords(indexParser.parseForwardIndexHeader(forwardIndexHead));
+            }
+        }
+        return queries.count;
+    }
+
+    private static List<String> toUrls(long[] uids, Map<Long, String> urls) {
+        List<String> links = new ArrayList<>();
+        if (uids != null) {
+            for (long uid : uids) {
+                links.add(urls.get(uid));
+            }
+        }
+        return links;
+    }
+
+    private static class QueryCounter {
+        private int count;
+
+        <T> List<T> inBatches(Collection<Long> uids, Function<List<Long>, List<T>> query) {
+            List<T> rows = new ArrayList<>();
+            List<Long> all = new ArrayList<>(uids);
+            for (int from = 0; from < all.size(); from += BATCH_SIZE) {
+                rows.addAll(query.apply(all.subList(from, Math.min(from + BATCH_SIZE, all.size()))));
+                count++;
+            }
+            return rows;
+        }
+
+        <V> List<Map<Long, V>> inMapBatches(Collection<Long> uids, Function<List<Long>, Map<Long, V>> query) {
+            return inBatches(uids, batch -> List.of(query.apply(batch)));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.edward1141.search.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Micrometer timers of the search pipeline: search.stage tagged with the stage and search.request tagged with
+ * the result cache outcome. Both publish percentile histograms, so p99 per stage can be read from /actuator/prometheus.
+ * search.startup.first-query is the time from JVM start to the first search served, next to Spring Boot's
+ * application.ready.time.
+ */
+class SearchMetrics {
+    // Term lookups take microseconds, cold database queries seconds
+    private static final Duration MIN_EXPECTED = Duration.ofNanos(1_000);
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(10);
+
+    enum Stage {
+        ANALYZE, // tokenizing, stemming, stopword removal and term lookups
+        CACHE,   // result cache lookup
+        FETCH,   // posting list fetch and decode
+        FILTER,  // excluded words and date window
+        PHRASE,  // phrase position matching
+        SCORE,   // cosine scoring, page rank merge and top-K selection
+        HYDRATE, // url info, links and keywords of the page
+        SNIPPET; // body snippets
+
+        final String tag = name().toLowerCase();
+    }
+
+    private final Timer[] stageTimers = new Timer[Stage.values().length];
+    private final Timer hitTimer;
+    private final Timer missTimer;
+    private final AtomicLong firstQueryMillis = new AtomicLong(-1);
+    private static final Logger logger = LoggerFactory.getLogger(SearchMetrics.class);
+
+    SearchMetrics(MeterRegistry registry) {
+        for (Stage stage : Stage.values()) {
+            stageTimers[stage.ordinal()] = timer("search.stage", "Time spent in one stage of a search request")
+                    .tag("stage", stage.tag)
+                    .register(registry);
+        }
+        hitTimer = timer("search.request", "Search requests").tag("cache", "hit").register(registry);
+        missTimer = timer("search.request", "Search requests").tag("cache", "miss").register(registry);
+        TimeGauge.builder("search.startup.first-query", firstQueryMillis, TimeUnit.MILLISECONDS,
+                        millis -> millis.get() < 0 ? Double.NaN : millis.get())
+                .description("Time from JVM start until the first search was served")
+                .register(registry);
+    }
+
+    private static Timer.Builder timer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED);
+    }
+
+    /**
+     * Stage times of one request, accumulated across repeated calls (e.g. one fetch per query word).
+     * The query's worker threads record into the same instance, so stages that ran concurrently can add up
+     * to more than the total.
+     */
+    static class Timings {
+        private final long startNanos = System.nanoTime();
+        private final AtomicLongArray nanos = new AtomicLongArray(Stage.values().length);
+        private final AtomicIntegerArray calls = new AtomicIntegerArray(Stage.values().length);
+
+        /**
+         * Adds the time since start to the stage.
+         *
+         * @return the current time, to start the next stage from
+         */
+        long record(Stage stage, long start) {
+            long now = System.nanoTime();
+            nanos.addAndGet(stage.ordinal(), now - start);
+            calls.incrementAndGet(stage.ordinal());
+            return now;
+        }
+
+        long elapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+
+        /**
+         * @return milliseconds per stage that ran in pipeline order, followed by the total
+         */
+        Map<String, Double> toMillis() {
+            Map<String, Double> millis = new LinkedHashMap<>();
+            for (Stage stage : Stage.values()) {
+                if (calls.get(stage.ordinal()) > 0) {
+                    millis.put(stage.tag, nanos.get(stage.ordinal()) / 1e6);
+                }
+            }
+            millis.put("total", elapsedNanos() / 1e6);
+            return millis;
+        }
+    }
+
+    void record(Timings timings, boolean cacheHit) {
+        for (Stage stage : Stage.values()) {
+            if (timings.calls.get(stage.ordinal()) > 0) {
+                stageTimers[stage.ordinal()].record(timings.nanos.get(stage.ordinal()), TimeUnit.NANOSECONDS);
+            }
+        }
+        (cacheHit ? hitTimer : missTimer).record(timings.elapsedNanos(), TimeUnit.NANOSECONDS);
+
+        if (firstQueryMillis.get() < 0) {
+            long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+            if (firstQueryMillis.compareAndSet(-1, uptime)) {
+                logger.info("First search served {} ms after JVM start", uptime);
+            }
+        }
+    }
+
+    /**
+     * @return milliseconds from JVM start to the first search served, or -1 before it
+     */
+    long firstQueryMillis() {
+        return firstQueryMillis.get();
+    }
+}
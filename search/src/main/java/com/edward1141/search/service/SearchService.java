@@ -1,24 +1,42 @@
 package com.edward1141.search.service;
 
-import com.edward1141.search.entity.UrlList;
+import com.edward1141.search.index.CachingPostingSource;
+import com.edward1141.search.index.DeltaSegment;
+import com.edward1141.search.index.DocumentStore;
+import com.edward1141.search.index.IndexGeneration;
+import com.edward1141.search.index.IndexManager;
+import com.edward1141.search.index.IndexSnapshot;
+import com.edward1141.search.index.IndexTable;
+import com.edward1141.search.index.IngestedPage;
+import com.edward1141.search.index.LiveIndex;
+import com.edward1141.search.index.OverlayPostingSource;
+import com.edward1141.search.index.PhraseMatcher;
+import com.edward1141.search.index.PostingList;
+import com.edward1141.search.index.PostingSource;
+import com.edward1141.search.index.TermDictionary;
+import com.edward1141.search.model.ScoringAlgorithm;
 import com.edward1141.search.model.SearchRequest;
 import com.edward1141.search.model.SearchResponse;
 import com.edward1141.search.model.SearchResult;
 import com.edward1141.search.repository.*;
-import com.edward1141.search.utils.IndexParser;
-import com.edward1141.search.utils.IndexParser.*;
-import com.edward1141.search.utils.QueryParser;
-import com.edward1141.search.utils.QueryParser.QueryParseResult;
-import com.edward1141.search.utils.SimilarityRetrieval;
+import com.edward1141.search.service.SearchMetrics.Stage;
+import com.edward1141.search.service.SearchMetrics.Timings;
+import com.edward1141.search.utils.QueryAnalyzer;
+import com.edward1141.search.utils.QueryAnalyzer.AnalyzedQuery;
+import com.edward1141.search.utils.TopKHeap;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import opennlp.tools.stemmer.PorterStemmer;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.roaringbitmap.RoaringBitmap;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 // (If I have time :D)
 // TODO: helper class for the repositorys, or combine the table, or whatever method to make the code more readable
@@ -29,50 +47,39 @@ import java.util.stream.Collectors;
 @Service
 public class SearchService {
     private final WordListRepository wordListRepository;
-    private final UrlListRepository urlListRepository;
-    private final ParentChildRepository parentChildRepository;
-    private final InvertedIndexRepository invertedIndexRepository;
-    private final TitleInvertedIndexRepository titleInvertedIndexRepository;
-    private final RawInvertedIndexRepository rawInvertedIndexRepository;
-    private final RawTitleInvertedIndexRepository rawTitleInvertedIndexRepository;
-    private final StemmedRawInvertedIndexRepository stemmedRawInvertedIndexRepository;
-    private final StemmedRawTitleInvertedIndexRepository stemmedRawTitleInvertedIndexRepository;
-    private final ForwardIndexRepository forwardIndexRepository;
-    private final UrlBodyRepository urlBodyRepository;
-    
+    private final SearchReadRepository searchReadRepository;
+    private final IndexManager indexManager;
+    private final LiveIndex liveIndex;
     private final Set<String> stopwords;
+    private final ResultCache resultCache;
+    
     private final double titleWeight;
     private final double bodyWeight;
     private final double pageRankWeight;
-    private final PorterStemmer stemmer;
-    private final IndexParser indexParser;
+    private final ScoringAlgorithm defaultScoringAlgorithm;
+    private final SearchMetrics metrics;
+    private volatile Searcher searcher;
+    private volatile Segments segments;
+    private final QueryExecutor executor;
     private static final Logger logger = LoggerFactory.getLogger(SearchService.class);
     
     @Autowired
     public SearchService(
             WordListRepository wordListRepository,
-            UrlListRepository urlListRepository,
-            ParentChildRepository parentChildRepository,
-            InvertedIndexRepository invertedIndexRepository,
-            TitleInvertedIndexRepository titleInvertedIndexRepository,
-            RawInvertedIndexRepository rawInvertedIndexRepository,
-            RawTitleInvertedIndexRepository rawTitleInvertedIndexRepository,
-            StemmedRawInvertedIndexRepository stemmedRawInvertedIndexRepository,
-            StemmedRawTitleInvertedIndexRepository stemmedRawTitleInvertedIndexRepository,
-            ForwardIndexRepository forwardIndexRepository,
-            UrlBodyRepository urlBodyRepository,
-            Set<String> stopwords) {
+            SearchReadRepository searchReadRepository,
+            IndexManager indexManager,
+            LiveIndex liveIndex,
+            Set<String> stopwords,
+            MeterRegistry meterRegistry,
+            @Value("${search.scoring.algorithm:exhaustive}") String scoringAlgorithm,
+            @Value("${search.cache.max-bytes:67108864}") long cacheMaxBytes,
+            @Value("${search.parallel.fetch-threads:16}") int fetchThreads,
+            @Value("${search.parallel.score-threads:-1}") int scoreThreads,
+            @Value("${search.parallel.min-postings:20000}") long minParallelPostings) {
         this.wordListRepository = wordListRepository;
-        this.urlListRepository = urlListRepository;
-        this.parentChildRepository = parentChildRepository;
-        this.invertedIndexRepository = invertedIndexRepository;
-        this.titleInvertedIndexRepository = titleInvertedIndexRepository;
-        this.rawInvertedIndexRepository = rawInvertedIndexRepository;
-        this.rawTitleInvertedIndexRepository = rawTitleInvertedIndexRepository;
-        this.stemmedRawInvertedIndexRepository = stemmedRawInvertedIndexRepository;
-        this.stemmedRawTitleInvertedIndexRepository = stemmedRawTitleInvertedIndexRepository;
-        this.forwardIndexRepository = forwardIndexRepository;
-        this.urlBodyRepository = urlBodyRepository;
+        this.searchReadRepository = searchReadRepository;
+        this.indexManager = indexManager;
+        this.liveIndex = liveIndex;
         this.stopwords = stopwords;
         
         // FIXME: Magic Default values
@@ -80,336 +87,528 @@ public class SearchService {
         this.bodyWeight = 1.0;
         this.pageRankWeight = 0.2;
         
-        // Initialize the stemmer once
-        this.stemmer = new PorterStemmer();
-        this.indexParser = new IndexParser();
+        this.defaultScoringAlgorithm = ScoringAlgorithm.valueOf(scoringAlgorithm.toUpperCase());
+        // Resident postings are a map lookup, cheaper than handing them to another thread
+        this.executor = new QueryExecutor(
+                OverlayPostingSource.unwrap(indexManager.current().getPostingSource()) instanceof IndexSnapshot
+                        ? 0 : fetchThreads,
+                scoreThreads < 0 ? Runtime.getRuntime().availableProcessors() : scoreThreads,
+                minParallelPostings);
+        this.resultCache = new ResultCache(cacheMaxBytes);
+        this.metrics = new SearchMetrics(meterRegistry);
+        this.searcher = new Searcher(indexManager.current());
+    }
+
+    /**
+     * What a search reads from one {@link IndexGeneration}, rebuilt when a reload publishes a new one,
+     * or from one segment of ingested pages searched next to it.
+     */
+    private final class Searcher {
+        private final IndexGeneration generation;
+        private final DeltaSegment segment; // null for the generation itself
+        private final PostingSource postingSource;
+        private final TermDictionary termDictionary;
+        private final DocumentStore documentStore;
+        private final QueryAnalyzer analyzer;
+        private final CosineScorer scorer;
+        private final ResultHydrator resultHydrator;
+        private final SnippetGenerator snippetGenerator;
+
+        private Searcher(IndexGeneration generation) {
+            this(generation, null);
+        }
+
+        private Searcher(IndexGeneration generation, DeltaSegment segment) {
+            this.generation = generation;
+            this.segment = segment;
+            this.postingSource = segment == null ? generation.getPostingSource() : segment.getPostings();
+            this.termDictionary = segment == null ? generation.getTermDictionary() : segment.getTermDictionary();
+            this.documentStore = segment == null ? generation.getDocumentStore() : segment.getDocumentStore();
+            this.analyzer = new QueryAnalyzer(termDictionary, stopwords);
+            this.scorer = new CosineScorer(documentStore, bodyWeight, pageRankWeight, executor);
+            this.resultHydrator = new ResultHydrator(searchReadRepository, generation.getLinkGraph());
+            this.snippetGenerator = new SnippetGenerator(generation.getBodyStore());
+        }
+    }
+
+    private Searcher searcher(IndexGeneration generation) {
+        Searcher current = searcher;
+        if (current.generation == generation) {
+            return current;
+        }
+        Searcher next = new Searcher(generation);
+        // A query still finishing on an older generation does not take the newer one's place
+        if (generation.getId() > current.generation.getId()) {
+            searcher = next;
+            resultCache.invalidateAll();
+        }
+        return next;
+    }
+
+    /**
+     * Searchers of the ingested segments of one {@link LiveIndex.View}, with the documents newer updates hide in
+     * them and in the generation.
+     */
+    private final class Segments {
+        private final IndexGeneration generation;
+        private final LiveIndex.View view;
+        private final LiveIndex.Resolution resolution;
+        private final List<Searcher> searchers = new ArrayList<>();
+
+        private Segments(IndexGeneration generation, LiveIndex.View view) {
+            this.generation = generation;
+            this.view = view;
+            this.resolution = view.resolve(generation);
+            for (DeltaSegment segment : view.getSegments()) {
+                searchers.add(new Searcher(generation, segment));
+            }
+        }
+    }
+
+    private Segments segments(IndexGeneration generation, LiveIndex.View view) {
+        Segments current = segments;
+        if (current != null && current.generation == generation && current.view == view) {
+            return current;
+        }
+        Segments next = new Segments(generation, view);
+        if (current == null || view.getVersion() >= current.view.getVersion()) {
+            segments = next;
+            if (current != null && view.getVersion() > current.view.getVersion()) {
+                resultCache.invalidateAll();
+            }
+        }
+        return next;
     }
 
     public SearchResponse search(SearchRequest request) throws JsonProcessingException {
-        logger.info("Search request: {}", request);
-        long startTime = System.currentTimeMillis();
-
-        QueryParseResult queryParseResult = new QueryParser().parse(request.getQuery());
-        List<String> queryTerms;
-        List<String> phraseTerms = null;
-        queryTerms = removeStopwords(stem(queryParseResult.getQueryTerms()));
-        if (!queryParseResult.getQuotedTerms().isEmpty()) {
-            phraseTerms = removeStopwords(stem(queryParseResult.getQuotedTerms()));
+        IndexGeneration generation = indexManager.acquire();
+        try {
+            return search(request, searcher(generation), segments(generation, liveIndex.view(generation)));
+        } finally {
+            generation.release();
         }
+    }
+
+    private SearchResponse search(SearchRequest request, Searcher searcher, Segments segments)
+            throws JsonProcessingException {
+        logger.info("Search request: {}", request);
+        Timings timings = new Timings();
+        long start = System.nanoTime();
+
+        QueryAnalyzer analyzer = searcher.analyzer;
+        AnalyzedQuery query = analyzer.analyze(request.getQuery());
+        start = timings.record(Stage.ANALYZE, start);
+        List<String> queryTerms = query.getTerms();
+        List<String> phraseTerms = query.getPhraseTerms();
+        String excludeWords = request.getExcludeWords();
+        AnalyzedQuery excluded = analyzer.analyze(excludeWords == null ? "" : excludeWords);
 
-        List<SearchResult> results = _search(
+        ResultCache.Key key = new ResultCache.Key(
                 queryTerms,
                 phraseTerms,
                 request.isRawMatchPhrase(),
                 request.isStemForRaw(),
                 request.isMatchInTitle(),
                 request.getPhraseSearchDistance(),
-                request.isWithPageRank()
+                request.isWithPageRank(),
+                Math.max(0, request.getOffset()),
+                request.getLimit(),
+                request.getScoringAlgorithm() != null ? request.getScoringAlgorithm() : defaultScoringAlgorithm,
+                excluded.getTerms(),
+                request.getModifiedFrom(),
+                request.getModifiedTo(),
+                searcher.generation.getId(),
+                segments.view.getVersion()
         );
-        
-        long endTime = System.currentTimeMillis();
-        
-        return SearchResponse.builder()
-                .results(results)
+        SearchResponse cached = resultCache.get(key);
+        timings.record(Stage.CACHE, start);
+        boolean cacheHit = cached != null;
+        int hydrationQueries = 0;
+        if (cached == null) {
+            cached = _search(
+                    passes(searcher, segments, query, excluded.getTermIds(), request.getQuery(), excludeWords),
+                    key.isRawMatchPhrase(),
+                    key.isStemForRaw(),
+                    key.isMatchInTitle(),
+                    key.getPhraseSearchDistance(),
+                    key.isWithPageRank(),
+                    key.getOffset(),
+                    key.getLimit(),
+                    key.getScoringAlgorithm(),
+                    key.getModifiedFrom(),
+                    key.getModifiedTo(),
+                    timings
+            );
+            hydrationQueries = cached.getHydrationQueries();
+            resultCache.put(key, cached);
+        }
+        metrics.record(timings, cacheHit);
+
+        // The cached response is shared, the per request fields go on a copy
+        SearchResponse response = SearchResponse.builder()
+                .results(cached.getResults())
+                .totalResults(cached.getTotalResults())
+                .totalResultsExact(cached.isTotalResultsExact())
+                .hydrationQueries(hydrationQueries)
                 .stemmedQuery(queryTerms)
-                .totalResults(results.size())
-                .searchTimeMs(endTime - startTime)
+                .searchTimeMs(timings.elapsedNanos() / 1_000_000)
+                .timings(request.isDebugTiming() ? timings.toMillis() : null)
                 .build();
+        logger.debug("Search took {} ms with {} hydration queries", response.getSearchTimeMs(), response.getHydrationQueries());
+        return response;
     }
     
-    private List<String> stem(List<String> words) {
-        return words.stream()
-                .map(stemmer::stem)
-                .collect(Collectors.toList());
-    }
-    
-    private List<String> removeStopwords(List<String> words) {
-        return words.stream()
-                .filter(word -> !stopwords.contains(word))
-                .collect(Collectors.toList());
-    }
-    
-    private boolean isContainPhrase(Set<Integer> lastWordPositions, Set<Integer> nextWordPositions, int distance) {
-        for (int i = 1; i <= distance; i++) {
-            for (Integer lastPos : lastWordPositions) {
-                if (nextWordPositions.contains(lastPos + i)) {
-                    return true;
-                }
-            }
+    /**
+     * @param phrasePostings postings of the phrase words in each phrase table
+     * @return ordinals of the documents matching the phrase in any of the tables, the tables are scanned concurrently
+     */
+    private RoaringBitmap filterPhrase(Searcher searcher, PostingList[][] phrasePostings, int phraseSearchDistance, Timings timings) {
+        long start = System.nanoTime();
+        List<Supplier<RoaringBitmap>> scans = new ArrayList<>();
+        long postings = 0;
+        for (PostingList[] table : phrasePostings) {
+            scans.add(() -> searcher.documentStore.ordinals(PhraseMatcher.match(table, phraseSearchDistance)));
+            postings += QueryExecutor.postingCount(table);
+        }
+
+        RoaringBitmap matches = new RoaringBitmap();
+        for (RoaringBitmap tableMatches : executor.score(postings, scans)) {
+            matches.or(tableMatches);
         }
-        return false;
+        timings.record(Stage.PHRASE, start);
+        return matches;
     }
 
-    private Set<Long> filterPhraseInTable(List<String> phrase, boolean raw, String table, int phraseSearchDistance, boolean stemForRaw) throws JsonProcessingException {
-        Map<Long, List<Set<Integer>>> uidPositionList = new HashMap<>();
-        
-        for (int idx = 0; idx < phrase.size(); idx++) {
-            String word = phrase.get(idx);
-            Long wid = wordListRepository.findWidByWord(word);
-            
-            if (wid == null) {
-                return new HashSet<>(); // No URL contains the phrase
+    /**
+     * Narrows the filter to the documents last modified within the window and drops the documents containing an
+     * excluded word or hidden by a newer ingested version, before anything is scored.
+     *
+     * @param excludedPostings postings of the excluded words in each table they are matched against
+     * @param hidden           ordinals of the documents newer updates hide, or null
+     * @return the narrowed filter, null if nothing restricts the result
+     */
+    private RoaringBitmap restrict(Searcher searcher, RoaringBitmap filter, PostingList[][] excludedPostings,
+                                   RoaringBitmap hidden, Long modifiedFrom, Long modifiedTo, Timings timings) {
+        long start = System.nanoTime();
+        DocumentStore documentStore = searcher.documentStore;
+        if (modifiedFrom != null || modifiedTo != null) {
+            RoaringBitmap window = documentStore.modifiedBetween(
+                    modifiedFrom != null ? modifiedFrom : Long.MIN_VALUE,
+                    modifiedTo != null ? modifiedTo : Long.MAX_VALUE);
+            if (filter == null) {
+                filter = window;
+            } else {
+                filter.and(window);
             }
+        }
 
-            List<String> result;
-            if (table.equals("body")) {
-                if (raw && stemForRaw) {
-                    result = rawInvertedIndexRepository.getInvertedIndexPosition(wid);
-                } else if (raw) {
-                    result = stemmedRawInvertedIndexRepository.getInvertedIndexPosition(wid);
-                } else {
-                    result = invertedIndexRepository.getInvertedIndexPosition(wid);
-                }
-            } else { // table == "title"
-                if (raw && stemForRaw) {
-                    result = rawTitleInvertedIndexRepository.getInvertedIndexPosition(wid);
-                } else if (raw) {
-                    result = stemmedRawTitleInvertedIndexRepository.getInvertedIndexPosition(wid);
-                } else {
-                    result = titleInvertedIndexRepository.getInvertedIndexPosition(wid);
+        RoaringBitmap excluded = null;
+        for (PostingList[] table : excludedPostings) {
+            for (PostingList postings : table) {
+                if (postings == null) {
+                    continue;
                 }
-            }
-            
-            if (result.isEmpty()) {
-                return new HashSet<>();
-            }
-            Map<Long, Set<Integer>> bodyQuery = indexParser.parsePostionsInfo(result.get(0));
-            
-            if (idx != 0) {
-                // Filter URLs that contain all words in the phrase
-                uidPositionList.keySet().removeIf(urlId -> !bodyQuery.containsKey(urlId));
-            }
-            
-            for (Map.Entry<Long, Set<Integer>> entry : bodyQuery.entrySet()) {
-                Long urlId = entry.getKey();
-                Set<Integer> wordPositions = entry.getValue();
-                
-                if (idx == 0 || (uidPositionList.containsKey(urlId) && 
-                        isContainPhrase(uidPositionList.get(urlId).get(idx-1), wordPositions, phraseSearchDistance))) {
-                    uidPositionList.computeIfAbsent(urlId, k -> new ArrayList<>()).add(wordPositions);
+                if (excluded == null) {
+                    excluded = documentStore.ordinals(postings);
                 } else {
-                    uidPositionList.remove(urlId);
+                    excluded.or(documentStore.ordinals(postings));
                 }
             }
         }
-        
-        return new HashSet<Long>(uidPositionList.keySet());
-    }
-    
-    private Set<Long> filterPhrase(List<String> phrase, boolean matchInTitle, boolean raw, boolean stemForRaw, int phraseSearchDistance) throws JsonProcessingException {
-        if (!raw) {
-            phrase = stem(phrase);
+        if (excluded != null) {
+            if (filter == null) {
+                filter = RoaringBitmap.bitmapOfRange(0, documentStore.size());
+            }
+            filter.andNot(excluded);
         }
-        
-        if (matchInTitle) {
-            return filterPhraseInTable(phrase, raw, "title", phraseSearchDistance, stemForRaw);
-        } else {
-            Set<Long> titleResults = filterPhraseInTable(phrase, raw, "title", phraseSearchDistance, stemForRaw);
-            Set<Long> bodyResults = filterPhraseInTable(phrase, raw, "body", phraseSearchDistance, stemForRaw);
-            
-            Set<Long> combinedResults = new HashSet<>(titleResults);
-            combinedResults.addAll(bodyResults);
-            return combinedResults;
+        if (hidden != null) {
+            if (filter == null) {
+                filter = RoaringBitmap.bitmapOfRange(0, documentStore.size());
+            }
+            filter.andNot(hidden);
         }
+        timings.record(Stage.FILTER, start);
+        return filter;
     }
 
-    private Map<Long, SimilarityRetrieval> _cosineSimilarity(List<String> query, String invertedIndexTable, Set<Long> filteredUrl) throws JsonProcessingException {
-        Map<Long, SimilarityRetrieval> similarityRetrievals = new HashMap<>(); // urlId -> (score, wordPositions)
-        double[] queryVector = new double[query.size()];
-
-        for (int idx = 0; idx < query.size(); idx++) {
-            String keyWord = query.get(idx);
-            Long wid = wordListRepository.findWidByWord(keyWord);
-            if (wid == null) {
-                continue;
+    /**
+     * Fetches the postings of every term in every table as one concurrent batch.
+     *
+     * @return result[t][i] is the posting list of termIds.get(t)[i] in tables.get(t), null where the term has no entry
+     */
+    private PostingList[][] resolvePostings(Searcher searcher, List<int[]> termIds, List<IndexTable> tables, Timings timings) throws JsonProcessingException {
+        List<QueryExecutor.Fetch<PostingList>> fetches = new ArrayList<>();
+        for (int t = 0; t < tables.size(); t++) {
+            IndexTable table = tables.get(t);
+            for (int termId : termIds.get(t)) {
+                fetches.add(() -> fetchPostings(searcher, table, termId, timings));
             }
+        }
+        List<PostingList> fetched = executor.fetch(fetches);
 
-            // Get the inverted index for the word
-            List<String> result;
-            if (invertedIndexTable.equals("invertedIndex")) {
-                result = invertedIndexRepository.getInvertedIndexFullInfo(wid);
-            } else { // titleInvertedIndex
-                result = titleInvertedIndexRepository.getInvertedIndexFullInfo(wid);
-            }
-            if (result.isEmpty()) {
-                continue;
+        PostingList[][] postings = new PostingList[tables.size()][];
+        int next = 0;
+        for (int t = 0; t < tables.size(); t++) {
+            postings[t] = new PostingList[termIds.get(t).length];
+            for (int idx = 0; idx < postings[t].length; idx++) {
+                postings[t][idx] = fetched.get(next++);
             }
+        }
+        return postings;
+    }
 
-            Map<Long, FullIndex> bodyQuery = indexParser.parseFullIndex(result.get(0));
+    private PostingList fetchPostings(Searcher searcher, IndexTable table, int termId, Timings timings) throws JsonProcessingException {
+        if (termId < 0) {
+            return null;
+        }
+        long start = System.nanoTime();
+        PostingList postings = searcher.postingSource.getPostings(table, searcher.termDictionary.wid(termId));
+        timings.record(Stage.FETCH, start);
+        return postings;
+    }
+    
+    /**
+     * The query analyzed against the generation and each segment, term ids are ordinals of their own dictionaries.
+     */
+    private List<Pass> passes(Searcher searcher, Segments segments, AnalyzedQuery query, int[] excludedIds,
+                              String queryText, String excludeWords) {
+        List<Pass> passes = new ArrayList<>();
+        passes.add(new Pass(searcher, query, excludedIds, nonEmpty(segments.resolution.hidden())));
+        for (int s = 0; s < segments.searchers.size(); s++) {
+            Searcher segment = segments.searchers.get(s);
+            passes.add(new Pass(segment, segment.analyzer.analyze(queryText),
+                    segment.analyzer.analyze(excludeWords == null ? "" : excludeWords).getTermIds(),
+                    nonEmpty(segments.resolution.hidden(s))));
+        }
+        return passes;
+    }
 
-            // Set query vector value
-            queryVector[idx] = bodyQuery.isEmpty() ? 0 : bodyQuery.values().iterator().next().idf;
+    private static RoaringBitmap nonEmpty(RoaringBitmap bitmap) {
+        return bitmap.isEmpty() ? null : bitmap;
+    }
 
-            for (Map.Entry<Long, FullIndex> entry : bodyQuery.entrySet()) {
-                Long urlId = entry.getKey();
-                
-                // Filter out URLs not in the filtered set
-                if (filteredUrl != null && !filteredUrl.contains(urlId)) {
-                    continue;
-                }
+    private static final class Pass {
+        private final Searcher searcher;
+        private final AnalyzedQuery query;
+        private final int[] excludedIds;
+        private final RoaringBitmap hidden;
 
-                FullIndex values = entry.getValue();
+        private Pass(Searcher searcher, AnalyzedQuery query, int[] excludedIds, RoaringBitmap hidden) {
+            this.searcher = searcher;
+            this.query = query;
+            this.excludedIds = excludedIds;
+            this.hidden = hidden;
+        }
+    }
 
-                Double documentWeight = urlListRepository.getDocumentWeight(urlId);
+    /**
+     * Postings and best documents of one pass.
+     */
+    private static final class Ranked {
+        private final Pass pass;
+        private final PostingList[] bodyPostings;
+        private final PostingList[] titlePostings;
+        private final PostingList[] rawBodyPostings;
+        private final CosineScorer.RankedDocuments documents;
 
-                SimilarityRetrieval similarityRetrieval = similarityRetrievals.computeIfAbsent(urlId, k -> new SimilarityRetrieval());
-                similarityRetrieval.setSimilarityScore(
-                        similarityRetrieval.getSimilarityScore() + (getTermWeight(values.tfNorm, values.idf) / documentWeight)
-                );
-                similarityRetrieval.getWordPositions().computeIfAbsent(keyWord, k -> new HashSet<>()).addAll(values.positions);
-            }
+        private Ranked(Pass pass, PostingList[] bodyPostings, PostingList[] titlePostings,
+                       PostingList[] rawBodyPostings, CosineScorer.RankedDocuments documents) {
+            this.pass = pass;
+            this.bodyPostings = bodyPostings;
+            this.titlePostings = titlePostings;
+            this.rawBodyPostings = rawBodyPostings;
+            this.documents = documents;
         }
-        
-        // Normalize query vector
-        double queryLength = 0.0;
-        for (double v : queryVector) {
-            queryLength += v * v;
-        }
-        queryLength = Math.sqrt(queryLength);
+    }
 
-        // Normalize scores
-        for (SimilarityRetrieval similarityRetrieval: similarityRetrievals.values()) {
-            double score = similarityRetrieval.getSimilarityScore();
-            if (queryLength > 0) {
-                score /= queryLength;
+    private Ranked rank(Pass pass, boolean rawMatchPhrase, boolean stemForRaw, boolean matchInTitle,
+                        int phraseSearchDistance, boolean withPageRank, int offset, int limit,
+                        ScoringAlgorithm scoringAlgorithm, Long modifiedFrom, Long modifiedTo,
+                        Timings timings) throws JsonProcessingException {
+        Searcher searcher = pass.searcher;
+        AnalyzedQuery analyzed = pass.query;
+        int[] excludedIds = pass.excludedIds;
+        int[] phrase = analyzed.getPhraseTermIds();
+        List<IndexTable> tables = new ArrayList<>();
+        List<int[]> termIds = new ArrayList<>();
+        if (phrase != null && phrase.length > 0) {
+            tables.add(IndexTable.forPhrase(true, rawMatchPhrase, stemForRaw));
+            termIds.add(phrase);
+            if (!matchInTitle) {
+                tables.add(IndexTable.forPhrase(false, rawMatchPhrase, stemForRaw));
+                termIds.add(phrase);
             }
-            similarityRetrieval.setSimilarityScore(score);
         }
-        
-        return similarityRetrievals;
-    }
-    
-    private double getTermWeight(double tfNorm, double idf) {
-        return tfNorm * idf;
-    }
-    
-    private void populateUrlInfo(SearchResult result, Long urlId) throws JsonProcessingException {
-        if (result.getUrl() != null) {
-            return; // URL info already populated
+        int phraseTables = tables.size();
+
+        // No posting list depends on another, fetch the phrase tables, body, title, the raw body positions
+        // for the snippets and the body and title of the excluded words together
+        tables.addAll(List.of(IndexTable.BODY, IndexTable.TITLE, IndexTable.RAW_BODY));
+        int[] queryIds = analyzed.getTermIds();
+        termIds.addAll(List.of(queryIds, queryIds, queryIds));
+        if (excludedIds.length > 0) {
+            tables.addAll(List.of(IndexTable.BODY, IndexTable.TITLE));
+            termIds.addAll(List.of(excludedIds, excludedIds));
+        }
+        PostingList[][] postings = resolvePostings(searcher, termIds, tables, timings);
+        PostingList[] bodyPostings = postings[phraseTables];
+        PostingList[] titlePostings = postings[phraseTables + 1];
+        PostingList[] rawBodyPostings = postings[phraseTables + 2];
+
+        RoaringBitmap filter = null;
+        if (phraseTables > 0) {
+            filter = filterPhrase(searcher, Arrays.copyOf(postings, phraseTables), phraseSearchDistance, timings);
         }
-        UrlList urlList = urlListRepository.findById(urlId).orElse(null);
-        if (urlList == null) {
-            return; // URL not found
+        if (excludedIds.length > 0 || modifiedFrom != null || modifiedTo != null || pass.hidden != null) {
+            filter = restrict(searcher, filter, Arrays.copyOfRange(postings, phraseTables + 3, postings.length),
+                    pass.hidden, modifiedFrom, modifiedTo, timings);
         }
 
-        result.setUrl(urlList.getUrl());
-        result.setTitle(urlList.getTitle());
-        result.setLastModified(urlList.getLastModified());
-        result.setSize(urlList.getContentLength());
-        
-        // Get parent and child links
-        List<Long> parentIds = parentChildRepository.findParentIdsByChildId(urlId);
-        List<Long> childIds = parentChildRepository.findChildIdsByParentId(urlId);
-        
-        result.setParentLinks(parentIds.stream()
-                .map(urlListRepository::findUrlByUid)
-                .collect(Collectors.toList()));
-        
-        result.setChildLinks(childIds.stream()
-                .map(urlListRepository::findUrlByUid)
-                .collect(Collectors.toList()));
-        
-        // Get keywords
-        String forwardIndexHead = forwardIndexRepository.getForwardIndexHead(urlId).get(0);
-        Map<String, Integer> keywords = indexParser.parseForwardIndexHeader((String) forwardIndexHead);
-        result.setKeywords(keywords);
+        long start = System.nanoTime();
+        CosineScorer.RankedDocuments ranked = searcher.scorer.rank(
+                scoringAlgorithm, bodyPostings, titlePostings, filter, withPageRank, offset, limit);
+        timings.record(Stage.SCORE, start);
+        return new Ranked(pass, bodyPostings, titlePostings, rawBodyPostings, ranked);
     }
-    
-    private List<SearchResult> _search(List<String> query, List<String> phrase, boolean rawMatchPhrase, 
-                                      boolean stemForRaw, boolean matchInTitle, int phraseSearchDistance, 
-                                      boolean withPageRank) throws JsonProcessingException {
-        Map<Long, SearchResult> results = new HashMap<>();
-        
-        Set<Long> filteredUrl = null;
-        if (phrase != null && !phrase.isEmpty()) {
-            filteredUrl = filterPhrase(phrase, matchInTitle, rawMatchPhrase, stemForRaw, phraseSearchDistance);
+
+    private SearchResponse _search(List<Pass> passes, boolean rawMatchPhrase, boolean stemForRaw,
+                                   boolean matchInTitle, int phraseSearchDistance, boolean withPageRank, int offset,
+                                   int limit, ScoringAlgorithm scoringAlgorithm, Long modifiedFrom, Long modifiedTo,
+                                   Timings timings) throws JsonProcessingException {
+        List<Ranked> passResults = new ArrayList<>();
+        for (Pass pass : passes) {
+            passResults.add(rank(pass, rawMatchPhrase, stemForRaw, matchInTitle, phraseSearchDistance, withPageRank,
+                    offset, limit, scoringAlgorithm, modifiedFrom, modifiedTo, timings));
         }
-        
-        Map<Long, SimilarityRetrieval> bodyInnerProducts = _cosineSimilarity(query, "invertedIndex", filteredUrl);
-        Map<Long, SimilarityRetrieval> titleInnerProducts = _cosineSimilarity(query, "titleInvertedIndex", filteredUrl);
-
-        // Process body results
-        for (Map.Entry<Long, SimilarityRetrieval> entry : bodyInnerProducts.entrySet()) {
-            Long urlId = entry.getKey();
-            SimilarityRetrieval similarityRetrieval = entry.getValue();
-            double score = similarityRetrieval.getSimilarityScore() * bodyWeight;
-            
-            SearchResult result = results.computeIfAbsent(urlId, k -> new SearchResult());
-            result.setScore(result.getScore() + score);
-            result.setWordPos(new HashMap<>());
-            for (Map.Entry<String, Set<Integer>> wordPos : similarityRetrieval.getWordPositions().entrySet()) {
-                result.getWordPos().put(wordPos.getKey(), new ArrayList<>(wordPos.getValue()));
+        Searcher searcher = passes.get(0).searcher;
+        List<String> query = passes.get(0).query.getTerms();
+
+        // Every pass kept its best offset + limit, the best of those across passes are the page
+        long start = System.nanoTime();
+        TopKHeap topK = passResults.get(0).documents.topK;
+        int totalResults = passResults.get(0).documents.totalResults;
+        boolean totalResultsExact = passResults.get(0).documents.totalResultsExact;
+        Map<Long, Ranked> owners = new HashMap<>();
+        if (passResults.size() > 1) {
+            int kept = 0;
+            for (Ranked ranked : passResults) {
+                kept += ranked.documents.topK.size();
             }
-            
-            // Get URL info
-            populateUrlInfo(result, urlId);
-        }
-        
-        // Process title results
-        for (Map.Entry<Long, SimilarityRetrieval> entry : titleInnerProducts.entrySet()) {
-            Long urlId = entry.getKey();
-            SimilarityRetrieval similarityRetrieval = entry.getValue();
-            double score = similarityRetrieval.getSimilarityScore() * bodyWeight;
-
-            SearchResult result = results.computeIfAbsent(urlId, k -> new SearchResult());
-            result.setScore(result.getScore() + score);
-            result.setTitleWordPos(new HashMap<>());
-            for (Map.Entry<String, Set<Integer>> wordPos : similarityRetrieval.getWordPositions().entrySet()) {
-                result.getTitleWordPos().put(wordPos.getKey(), new ArrayList<>(wordPos.getValue()));
+            // Same capacity rule as CosineScorer.rank, a limit <= 0 keeps everything
+            topK = new TopKHeap(limit > 0 ? (int) Math.min((long) offset + limit, kept) : kept);
+            totalResults = 0;
+            for (Ranked ranked : passResults) {
+                TopKHeap passTopK = ranked.documents.topK;
+                for (int rank = 0; rank < passTopK.size(); rank++) {
+                    topK.offer(passTopK.docId(rank), passTopK.score(rank));
+                    owners.put(passTopK.docId(rank), ranked);
+                }
+                totalResults += ranked.documents.totalResults;
+                totalResultsExact &= ranked.documents.totalResultsExact;
             }
+            topK.sort();
+            start = timings.record(Stage.SCORE, start);
+        }
 
-            // Get URL info if not already set
-            populateUrlInfo(result, urlId);
+        // Hydrate only the returned page
+        List<SearchResult> results = new ArrayList<>();
+        long[] urlIds = new long[Math.max(0, topK.size() - offset)];
+        Ranked[] owner = new Ranked[urlIds.length];
+        IngestedPage[] pages = new IngestedPage[urlIds.length];
+        for (int rank = offset; rank < topK.size(); rank++) {
+            int i = rank - offset;
+            long urlId = topK.docId(rank);
+            urlIds[i] = urlId;
+            owner[i] = owners.getOrDefault(urlId, passResults.get(0));
+            DeltaSegment segment = owner[i].pass.searcher.segment;
+            pages[i] = segment != null ? segment.page(urlId) : liveIndex.mergedPage(searcher.generation, urlId);
+            SearchResult result = new SearchResult();
+            result.setScore(topK.score(rank));
+            result.setWordPos(toWordPos(query, owner[i].bodyPostings, urlId));
+            result.setTitleWordPos(toWordPos(query, owner[i].titlePostings, urlId));
+            results.add(result);
         }
+        int queries = searcher.resultHydrator.hydrate(results, urlIds, pages);
+        start = timings.record(Stage.HYDRATE, start);
         
-        // Add page rank score
-        if (withPageRank) {
-            for (SearchResult result : results.values()) {
-                Long urlId = urlListRepository.findUidByUrl(result.getUrl());
-                if (urlId != null) {
-                    Double pageRankScore = urlListRepository.getPageRankScore(urlId);
-                    if (pageRankScore != null) {
-                        result.setScore(result.getScore() + pageRankWeight * pageRankScore);
-                    }
-                }
+        // Add body snippets around the best passage of each result
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                results.get(i).setBody(
+                        searcher.snippetGenerator.snippet(urlIds[i], owner[i].rawBodyPostings, pages[i]));
+            } catch (IOException e) {
+                logger.warn("Failed to read the snippet of {}", urlIds[i], e);
             }
         }
+        timings.record(Stage.SNIPPET, start);
         
-        // Sort results by score
-        List<SearchResult> sortedResults = new ArrayList<>(results.values());
-        sortedResults.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
-        
-        // Add body snippets for top 5 results
-        for (int i = 0; i < Math.min(5, sortedResults.size()); i++) {
-            SearchResult result = sortedResults.get(i);
-            Long urlId = urlListRepository.findUidByUrl(result.getUrl());
-            if (urlId != null) {
-                String body = urlBodyRepository.getUrlBody(urlId).get(0);
-                if (result.getWordPos() != null && !result.getWordPos().isEmpty()) {
-                    // Find the earliest position of any query word
-                    int minIndex = Integer.MAX_VALUE;
-                    for (String queryWord : result.getWordPos().keySet()) {
-                        int startIndex = body.toLowerCase().indexOf(queryWord.toLowerCase());
-                        if (startIndex >= 0 && startIndex < minIndex) {
-                            minIndex = startIndex;
-                        }
-                    }
-                    
-                    // Extract a snippet
-                    if (minIndex < Integer.MAX_VALUE) {
-                        int endIndex = Math.min(minIndex + 200, body.length());
-                        result.setBody(body.substring(minIndex, endIndex));
-                    } else {
-                        result.setBody(body.substring(0, Math.min(200, body.length())));
-                    }
-                }
+        return SearchResponse.builder()
+                .results(results)
+                .totalResults(totalResults)
+                .totalResultsExact(totalResultsExact)
+                .hydrationQueries(queries)
+                .build();
+    }
+
+    /**
+     * @return positions of each query word in the document, or null if none of them occurs in it
+     */
+    private Map<String, List<Integer>> toWordPos(List<String> query, PostingList[] postings, long urlId) {
+        Map<String, List<Integer>> wordPos = new HashMap<>();
+        for (int idx = 0; idx < query.size(); idx++) {
+            if (postings[idx] == null || wordPos.containsKey(query.get(idx))) {
+                continue;
             }
+            int i = postings[idx].indexOf(urlId);
+            if (i < 0) {
+                continue;
+            }
+            List<Integer> positions = new ArrayList<>();
+            for (int p = postings[idx].positionStart(i); p < postings[idx].positionEnd(i); p++) {
+                positions.add(postings[idx].position(p));
+            }
+            wordPos.put(query.get(idx), positions);
         }
-        
-        return sortedResults;
+        return wordPos.isEmpty() ? null : wordPos;
+    }
+
+    public Map<String, Object> getCacheStats() {
+        CacheStats stats = resultCache.stats();
+        Map<String, Object> results = new HashMap<>();
+        results.put("enabled", resultCache.isEnabled());
+        results.put("hit_count", stats.hitCount());
+        results.put("miss_count", stats.missCount());
+        results.put("hit_rate", stats.hitRate());
+        results.put("eviction_count", stats.evictionCount());
+        results.put("eviction_weight", stats.evictionWeight());
+        results.put("entries", resultCache.estimatedSize());
+        results.put("weighted_bytes", resultCache.weightedSize());
+
+        PostingSource postingSource = OverlayPostingSource.unwrap(indexManager.current().getPostingSource());
+        Map<String, Object> postings = new HashMap<>();
+        postings.put("enabled", postingSource instanceof CachingPostingSource);
+        if (postingSource instanceof CachingPostingSource) {
+            CachingPostingSource cachingSource = (CachingPostingSource) postingSource;
+            CacheStats postingStats = cachingSource.stats();
+            postings.put("hit_count", postingStats.hitCount());
+            postings.put("miss_count", postingStats.missCount());
+            postings.put("hit_rate", postingStats.hitRate());
+            postings.put("eviction_count", postingStats.evictionCount());
+            postings.put("entries", cachingSource.size());
+            postings.put("bytes", cachingSource.sizeInBytes());
+        }
+
+        Map<String, Object> cacheStats = new HashMap<>();
+        cacheStats.put("results", results);
+        cacheStats.put("postings", postings);
+        return cacheStats;
     }
 
     public long getWordListCount() {
         return wordListRepository.count();
     }
+
+    public long getTermDictionarySize() {
+        return indexManager.current().getTermDictionary().sizeInBytes();
+    }
 }
@@ -0,0 +1,101 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.index.BodyStore;
+import com.edward1141.search.index.IngestedPage;
+import com.edward1141.search.index.PostingList;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Picks the body passage with the most query words from the positional postings of the page,
+ * then reads only that passage from the body store.
+ */
+class SnippetGenerator {
+    private static final int WINDOW_TOKENS = 30;
+    private static final int LEADING_TOKENS = 4;
+    private static final int MAX_SNIPPET_CHARS = 300;
+
+    private final BodyStore bodyStore;
+
+    SnippetGenerator(BodyStore bodyStore) {
+        this.bodyStore = bodyStore;
+    }
+
+    /**
+     * @param postings positions of each query word over the raw body tokens, null where the word has no entry
+     * @return the snippet, or null if the document has no body
+     */
+    String snippet(long urlId, PostingList[] postings) throws IOException {
+        return snippet(urlId, postings, null);
+    }
+
+    /**
+     * @param page the ingested page of the document to take the passage from, null to read the body store
+     */
+    String snippet(long urlId, PostingList[] postings, IngestedPage page) throws IOException {
+        int start = Math.max(0, bestWindow(urlId, postings) - LEADING_TOKENS);
+        String passage = page != null
+                ? page.passage(start, LEADING_TOKENS + WINDOW_TOKENS)
+                : bodyStore.passage(urlId, start, LEADING_TOKENS + WINDOW_TOKENS);
+        if (passage == null || passage.length() <= MAX_SNIPPET_CHARS) {
+            return passage;
+        }
+        return passage.substring(0, MAX_SNIPPET_CHARS);
+    }
+
+    /**
+     * @return first token of the window covering the most distinct query words (then the most hits,
+     * then the earliest), 0 if no query word occurs in the body
+     */
+    static int bestWindow(long urlId, PostingList[] postings) {
+        // Positions of all query words in the document tagged with the word, packed as position << 32 | word
+        long[] hits = new long[16];
+        int hitCount = 0;
+        for (int word = 0; word < postings.length; word++) {
+            if (postings[word] == null) {
+                continue;
+            }
+            int i = postings[word].indexOf(urlId);
+            if (i < 0) {
+                continue;
+            }
+            for (int p = postings[word].positionStart(i); p < postings[word].positionEnd(i); p++) {
+                if (hitCount == hits.length) {
+                    hits = Arrays.copyOf(hits, hitCount * 2);
+                }
+                hits[hitCount++] = (long) postings[word].position(p) << 32 | word;
+            }
+        }
+        if (hitCount == 0) {
+            return 0;
+        }
+        Arrays.sort(hits, 0, hitCount);
+
+        // Sliding window over the sorted hits, counting the occurrences of each word inside it
+        int[] counts = new int[postings.length];
+        int distinct = 0;
+        int bestDistinct = 0;
+        int bestHits = 0;
+        int bestStart = 0;
+        int left = 0;
+        for (int right = 0; right < hitCount; right++) {
+            if (counts[(int) hits[right]]++ == 0) {
+                distinct++;
+            }
+            while ((hits[right] >>> 32) - (hits[left] >>> 32) >= WINDOW_TOKENS) {
+                if (--counts[(int) hits[left]] == 0) {
+                    distinct--;
+                }
+                left++;
+            }
+            int windowHits = right - left + 1;
+            if (distinct > bestDistinct || (distinct == bestDistinct && windowHits > bestHits)) {
+                bestDistinct = distinct;
+                bestHits = windowHits;
+                bestStart = (int) (hits[left] >>> 32);
+            }
+        }
+        return bestStart;
+    }
+}
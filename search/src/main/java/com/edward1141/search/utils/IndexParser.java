@@ -1,12 +1,19 @@
 package com.edward1141.search.utils;
 
+import com.edward1141.search.index.PostingList;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.*;
 
 //TODO: fix duplicate
 
 public class IndexParser {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JavaType FORWARD_INDEX_HEADER_TYPE =
+            MAPPER.getTypeFactory().constructMapType(Map.class, String.class, Integer.class);
+    // Decoding scratch space, reused by every parse on the same thread
+    private static final ThreadLocal<PostingBuffers> BUFFERS = ThreadLocal.withInitial(PostingBuffers::new);
 
     public static class FullIndex {
         public int tf;
@@ -24,73 +31,62 @@ public class IndexParser {
 
 
     public Map<Long, FullIndex> parseFullIndex(String jsonInput) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-
-        // Parse the JSON into a Map of Long keys to Object arrays
-        Map<String, Object[]> rawMap = mapper.readValue(
-                jsonInput,
-                mapper.getTypeFactory().constructMapType(
-                        Map.class, String.class, Object[].class
-                )
-        );
+        PostingBuffers buffers = BUFFERS.get();
+        PostingDecoder.decode(jsonInput, buffers, false);
 
         Map<Long, FullIndex> result = new HashMap<>();
-
-        rawMap.forEach((key, array) -> {
+        for (int i = 0; i < buffers.size; i++) {
             FullIndex tuple = new FullIndex();
-            tuple.tf = ((Number) array[0]).intValue();
-            tuple.df = ((Number) array[1]).intValue();
-            tuple.tfNorm = ((Number) array[2]).doubleValue();
-            tuple.idf = ((Number) array[3]).doubleValue();
-
-            // Convert the array of numbers to Set<Integer>
-            for (Integer num: (List<Integer>) array[4]){
-                tuple.positions.add(((Number) num).intValue());
+            tuple.tf = buffers.tf[i];
+            tuple.df = buffers.df[i];
+            tuple.tfNorm = buffers.tfNorm[i];
+            tuple.idf = buffers.idf[i];
+            for (int p = buffers.positionOffsets[i]; p < buffers.positionOffsets[i + 1]; p++) {
+                tuple.positions.add(buffers.positions[p]);
             }
-
-            result.put(Long.parseLong(key), tuple);
-        });
+            result.put(buffers.docIds[i], tuple);
+        }
 
         return result;
     }
 
     public Map<Long, Set<Integer>> parsePostionsInfo(String jsonInput) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-
-        // Parse the JSON into a Map of Long keys to Object arrays
-        Map<String, Object[]> rawMap = mapper.readValue(
-                jsonInput,
-                mapper.getTypeFactory().constructMapType(
-                        Map.class, String.class, Object[].class
-                )
-        );
+        PostingBuffers buffers = BUFFERS.get();
+        PostingDecoder.decode(jsonInput, buffers, true);
 
         Map<Long, Set<Integer>> result = new HashMap<>();
-
-        rawMap.forEach((key, array) -> {
+        for (int i = 0; i < buffers.size; i++) {
             Set<Integer> positions = new HashSet<Integer>();
-            int idx = array.length - 1;
-
-            // Convert the array of numbers to Set<Integer>
-            for (Integer num: (List<Integer>) array[idx]){
-                positions.add(((Number) num).intValue());
+            for (int p = buffers.positionOffsets[i]; p < buffers.positionOffsets[i + 1]; p++) {
+                positions.add(buffers.positions[p]);
             }
-
-            result.put(Long.parseLong(key), positions);
-        });
+            result.put(buffers.docIds[i], positions);
+        }
 
         return result;
     }
 
+    public PostingList parsePostingList(String jsonInput, boolean scoringFields) throws JsonProcessingException {
+        PostingBuffers buffers = BUFFERS.get();
+        PostingDecoder.decode(jsonInput, buffers, !scoringFields);
+
+        PostingList.Builder builder = PostingList.builder(scoringFields);
+        for (int i = 0; i < buffers.size; i++) {
+            if (scoringFields) {
+                builder.add(buffers.docIds[i], buffers.tf[i], buffers.tfNorm[i], buffers.idf[i]);
+            } else {
+                builder.add(buffers.docIds[i]);
+            }
+            for (int p = buffers.positionOffsets[i]; p < buffers.positionOffsets[i + 1]; p++) {
+                builder.addPosition(buffers.positions[p]);
+            }
+        }
+
+        return builder.build();
+    }
+
     public Map<String, Integer> parseForwardIndexHeader(String jsonInput) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-
-        return mapper.readValue(
-                jsonInput,
-                mapper.getTypeFactory().constructMapType(
-                        Map.class, String.class, Integer.class
-                )
-        );
+        return MAPPER.readValue(jsonInput, FORWARD_INDEX_HEADER_TYPE);
     }
 
     public static void main(String[] args) throws JsonProcessingException {
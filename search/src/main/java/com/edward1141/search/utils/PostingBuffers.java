@@ -0,0 +1,47 @@
+package com.edward1141.search.utils;
+
+import java.util.Arrays;
+
+/**
+ * Reusable primitive buffers filled by {@link PostingDecoder}, one slot per posting in JSON order.
+ * Positions of posting i are positions[positionOffsets[i] .. positionOffsets[i + 1]).
+ * The scoring fields are left untouched when decoding positions only.
+ */
+public class PostingBuffers {
+    public long[] docIds = new long[16];
+    public int[] tf = new int[16];
+    public int[] df = new int[16];
+    public double[] tfNorm = new double[16];
+    public double[] idf = new double[16];
+    public int[] positionOffsets = new int[17];
+    public int[] positions = new int[64];
+    public int size;
+
+    public void clear() {
+        size = 0;
+        positionOffsets[0] = 0;
+    }
+
+    public int positionCount() {
+        return positionOffsets[size];
+    }
+
+    void ensurePostingCapacity() {
+        if (size < docIds.length) {
+            return;
+        }
+        int capacity = docIds.length * 2;
+        docIds = Arrays.copyOf(docIds, capacity);
+        tf = Arrays.copyOf(tf, capacity);
+        df = Arrays.copyOf(df, capacity);
+        tfNorm = Arrays.copyOf(tfNorm, capacity);
+        idf = Arrays.copyOf(idf, capacity);
+        positionOffsets = Arrays.copyOf(positionOffsets, capacity + 1);
+    }
+
+    void ensurePositionCapacity(int count) {
+        if (count > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(count, positions.length * 2));
+        }
+    }
+}
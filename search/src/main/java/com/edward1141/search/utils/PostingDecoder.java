@@ -0,0 +1,131 @@
+package com.edward1141.search.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Streaming decoder for the posting JSON written by the Python indexer, straight into {@link PostingBuffers}
+ * without building maps, boxed numbers or a tree. Full entries are {uid: [tf, df, tfNorm, idf, [positions]]},
+ * raw entries are {uid: [positions]}, both shapes are accepted by every mode.
+ */
+public final class PostingDecoder {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private PostingDecoder() {
+    }
+
+    /**
+     * Replaces the content of the buffers with the postings of the JSON object.
+     *
+     * @param positionsOnly skip tf, df, tfNorm and idf without converting them
+     */
+    public static void decode(String json, PostingBuffers buffers, boolean positionsOnly) throws JsonProcessingException {
+        buffers.clear();
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            expect(parser, next(parser), JsonToken.START_OBJECT);
+            double[] scalars = new double[4];
+
+            for (JsonToken token = next(parser); token != JsonToken.END_OBJECT; token = next(parser)) {
+                expect(parser, token, JsonToken.FIELD_NAME);
+                buffers.ensurePostingCapacity();
+                int i = buffers.size;
+                buffers.docIds[i] = parseDocId(parser);
+                expect(parser, next(parser), JsonToken.START_ARRAY);
+
+                // Numbers before a nested array are taken as positions of a raw entry until the nested array shows up
+                int start = buffers.positionOffsets[i];
+                int count = 0;
+                int scalarCount = 0;
+                boolean fullEntry = false;
+                for (token = next(parser); token != JsonToken.END_ARRAY; token = next(parser)) {
+                    if (token == JsonToken.START_ARRAY) {
+                        fullEntry = true;
+                        count = 0;
+                        for (token = next(parser); token != JsonToken.END_ARRAY; token = next(parser)) {
+                            buffers.ensurePositionCapacity(start + count + 1);
+                            buffers.positions[start + count++] = parser.getIntValue();
+                        }
+                    } else if (!fullEntry) {
+                        if (!positionsOnly && scalarCount < scalars.length) {
+                            scalars[scalarCount] = parser.getDoubleValue();
+                        }
+                        scalarCount++;
+                        // A float is never a position, leave it unconverted
+                        if (token == JsonToken.VALUE_NUMBER_INT) {
+                            buffers.ensurePositionCapacity(start + count + 1);
+                            buffers.positions[start + count++] = parser.getIntValue();
+                        }
+                    }
+                }
+
+                if (!positionsOnly) {
+                    boolean hasScores = fullEntry && scalarCount >= 4;
+                    buffers.tf[i] = hasScores ? (int) scalars[0] : 0;
+                    buffers.df[i] = hasScores ? (int) scalars[1] : 0;
+                    buffers.tfNorm[i] = hasScores ? scalars[2] : 0.0;
+                    buffers.idf[i] = hasScores ? scalars[3] : 0.0;
+                }
+                buffers.positionOffsets[i + 1] = start + count;
+                buffers.size++;
+            }
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            // Only reachable through malformed input, the source is an in-memory string
+            throw new JsonParseException(null, "Invalid posting data: " + e.getMessage());
+        }
+    }
+
+    private static JsonToken next(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            throw new JsonParseException(parser, "Unexpected end of posting data");
+        }
+        return token;
+    }
+
+    private static long parseDocId(JsonParser parser) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        if (length == 0 || length > 18) {
+            return parseDocIdText(parser);
+        }
+        int i = offset;
+        boolean negative = chars[i] == '-';
+        if (negative) {
+            if (length == 1) {
+                return parseDocIdText(parser);
+            }
+            i++;
+        }
+        long value = 0;
+        for (; i < offset + length; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return parseDocIdText(parser);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static long parseDocIdText(JsonParser parser) throws IOException {
+        try {
+            return Long.parseLong(parser.getText());
+        } catch (NumberFormatException e) {
+            throw new JsonParseException(parser, "Invalid document id: " + parser.getText());
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.edward1141.search.utils;
+
+import com.edward1141.search.index.TermDictionary;
+import opennlp.tools.stemmer.PorterStemmer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Single pass query analysis: tokenizes, lowercases, strips punctuation, stems, drops stopwords and resolves
+ * term ordinals while walking the query once. Produces the same terms as {@link QueryParser} followed by
+ * stemming and stopword removal: characters other than ASCII letters, digits, '_' and whitespace are removed
+ * (so "don't" is one word), every word is a query term and the words between the first pair of double quotes
+ * also form the phrase.
+ * <p>
+ * Words are memoised with their stem, term ordinal and stopword flag in a fixed size direct mapped table,
+ * so a repeated word costs a hash and a compare, and the returned term strings are shared between queries.
+ * Only a miss allocates and runs the Porter stemmer. Thread safe.
+ */
+public final class QueryAnalyzer {
+    private static final int MEMO_SIZE = 1 << 14;
+
+    private final TermDictionary termDictionary;
+    private final Set<String> stopwords;
+    private final PorterStemmer stemmer = new PorterStemmer();
+    private final Term[] memo = new Term[MEMO_SIZE];
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public QueryAnalyzer(TermDictionary termDictionary, Set<String> stopwords) {
+        this.termDictionary = termDictionary;
+        this.stopwords = stopwords;
+    }
+
+    public AnalyzedQuery analyze(CharSequence query) {
+        Scratch s = scratch.get();
+        s.reset();
+        int quote = 0; // 0 before the first quote, 1 inside the first quoted phrase, 2 after it
+        int phraseStart = 0;
+
+        int length = query.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? query.charAt(i) : ' '; // A trailing separator flushes the last word
+            if (isWordChar(c)) {
+                s.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            } else if (isWhitespace(c)) {
+                if (quote == 1) {
+                    s.addPhrase(term(s.chars, phraseStart, s.length));
+                }
+                s.addQuery(term(s.chars, 0, s.length));
+                s.length = 0;
+                phraseStart = 0;
+            } else if (c == '"' && quote == 0) {
+                // Removed like any punctuation, the word around the quote stays one query term
+                phraseStart = s.length;
+                quote = 1;
+            } else if (c == '"' && quote == 1) {
+                s.addPhrase(term(s.chars, phraseStart, s.length));
+                quote = 2;
+            }
+        }
+
+        // An unclosed quote is not a phrase
+        boolean phrase = quote == 2 && s.phraseWords > 0;
+        return new AnalyzedQuery(s.terms, s.termCount, phrase ? s.phrase : null, s.phraseCount);
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B';
+    }
+
+    /**
+     * @return the memoised analysis of chars[start, end), or null for an empty word
+     */
+    private Term term(char[] chars, int start, int end) {
+        if (start == end) {
+            return null;
+        }
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + chars[i];
+        }
+        int slot = (h ^ (h >>> 16)) & (MEMO_SIZE - 1);
+
+        // Terms are immutable, a racing writer can only replace the slot with another complete term
+        Term term = memo[slot];
+        if (term == null || !term.matches(chars, start, end)) {
+            term = newTerm(Arrays.copyOfRange(chars, start, end));
+            memo[slot] = term;
+        }
+        return term;
+    }
+
+    private Term newTerm(char[] word) {
+        String stem;
+        // The stemmer keeps its buffer between calls
+        synchronized (stemmer) {
+            stem = stemmer.stem(new String(word));
+        }
+        return new Term(word, stem, termDictionary.ordinal(stem), stopwords.contains(stem));
+    }
+
+    private static final class Term {
+        private final char[] word;
+        private final String stem;
+        private final int ordinal;
+        private final boolean stopword;
+
+        private Term(char[] word, String stem, int ordinal, boolean stopword) {
+            this.word = word;
+            this.stem = stem;
+            this.ordinal = ordinal;
+            this.stopword = stopword;
+        }
+
+        private boolean matches(char[] chars, int start, int end) {
+            return Arrays.equals(word, 0, word.length, chars, start, end);
+        }
+    }
+
+    /**
+     * Per thread buffers reused across queries.
+     */
+    private static final class Scratch {
+        private char[] chars = new char[64];
+        private int length;
+        private Term[] terms = new Term[16];
+        private int termCount;
+        private Term[] phrase = new Term[16];
+        private int phraseCount;
+        private int phraseWords; // including stopwords
+
+        private void reset() {
+            length = 0;
+            termCount = 0;
+            phraseCount = 0;
+            phraseWords = 0;
+        }
+
+        private void append(char c) {
+            if (length == chars.length) {
+                chars = Arrays.copyOf(chars, length * 2);
+            }
+            chars[length++] = c;
+        }
+
+        private void addQuery(Term term) {
+            if (term == null || term.stopword) {
+                return;
+            }
+            if (termCount == terms.length) {
+                terms = Arrays.copyOf(terms, termCount * 2);
+            }
+            terms[termCount++] = term;
+        }
+
+        private void addPhrase(Term term) {
+            if (term == null) {
+                return;
+            }
+            phraseWords++;
+            if (term.stopword) {
+                return;
+            }
+            if (phraseCount == phrase.length) {
+                phrase = Arrays.copyOf(phrase, phraseCount * 2);
+            }
+            phrase[phraseCount++] = term;
+        }
+    }
+
+    /**
+     * Stemmed terms without stopwords in query order, each with its ordinal in the {@link TermDictionary}
+     * or -1 if the index does not contain it.
+     */
+    public static final class AnalyzedQuery {
+        private final List<String> terms;
+        private final int[] termIds;
+        private final List<String> phraseTerms;
+        private final int[] phraseTermIds;
+
+        private AnalyzedQuery(Term[] terms, int termCount, Term[] phrase, int phraseCount) {
+            String[] termStrings = new String[termCount];
+            this.termIds = new int[termCount];
+            for (int i = 0; i < termCount; i++) {
+                termStrings[i] = terms[i].stem;
+                termIds[i] = terms[i].ordinal;
+            }
+            this.terms = Arrays.asList(termStrings);
+
+            if (phrase == null) {
+                this.phraseTerms = null;
+                this.phraseTermIds = null;
+                return;
+            }
+            String[] phraseStrings = new String[phraseCount];
+            this.phraseTermIds = new int[phraseCount];
+            for (int i = 0; i < phraseCount; i++) {
+                phraseStrings[i] = phrase[i].stem;
+                phraseTermIds[i] = phrase[i].ordinal;
+            }
+            this.phraseTerms = Arrays.asList(phraseStrings);
+        }
+
+        public List<String> getTerms() {
+            return terms;
+        }
+
+        public int[] getTermIds() {
+            return termIds;
+        }
+
+        /**
+         * @return terms of the quoted phrase, empty if it only has stopwords, null if the query has no phrase
+         */
+        public List<String> getPhraseTerms() {
+            return phraseTerms;
+        }
+
+        public int[] getPhraseTermIds() {
+            return phraseTermIds;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.edward1141.search.utils;
+
+/**
+ * Bounded min-heap over (docId, score) pairs in primitive arrays, keeps the best k documents seen.
+ * Higher scores rank first, ties are broken by the smaller document id so rankings are deterministic.
+ */
+public final class TopKHeap {
+    private final int capacity;
+    private final long[] docIds;
+    private final double[] scores;
+    private int size;
+    private boolean sorted;
+
+    public TopKHeap(int capacity) {
+        this.capacity = capacity;
+        this.docIds = new long[capacity];
+        this.scores = new double[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * @return score a new document has to beat to enter the heap
+     */
+    public double threshold() {
+        return isFull() && capacity > 0 ? scores[0] : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * @return true if the document is kept
+     */
+    public boolean offer(long docId, double score) {
+        if (sorted) {
+            throw new IllegalStateException("Heap already sorted");
+        }
+        if (size < capacity) {
+            docIds[size] = docId;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (capacity == 0 || !better(score, docId, scores[0], docIds[0])) {
+            return false;
+        }
+        docIds[0] = docId;
+        scores[0] = score;
+        siftDown(0, size);
+        return true;
+    }
+
+    /**
+     * Sorts the kept documents best first, after this {@link #docId(int)} and {@link #score(int)} are ranks.
+     */
+    public TopKHeap sort() {
+        if (!sorted) {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            sorted = true;
+        }
+        return this;
+    }
+
+    public long docId(int rank) {
+        return docIds[rank];
+    }
+
+    public double score(int rank) {
+        return scores[rank];
+    }
+
+    private static boolean better(double score, long docId, double otherScore, long otherDocId) {
+        return score > otherScore || (score == otherScore && docId < otherDocId);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(scores[parent], docIds[parent], scores[i], docIds[i])) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int end) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < end && better(scores[worst], docIds[worst], scores[left], docIds[left])) {
+                worst = left;
+            }
+            if (right < end && better(scores[worst], docIds[worst], scores[right], docIds[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long docId = docIds[i];
+        docIds[i] = docIds[j];
+        docIds[j] = docId;
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+}
@@ -0,0 +1,47 @@
+package com.edward1141.search.controller;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyLimiterTest {
+
+    @Test
+    void testRejectsOverTheLimitUntilASlotIsReleased() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 10, new SimpleMeterRegistry());
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/search");
+
+        assertTrue(limiter.preHandle(request, new MockHttpServletResponse(), null));
+        assertTrue(limiter.preHandle(request, new MockHttpServletResponse(), null));
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        assertFalse(limiter.preHandle(request, rejected, null));
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+
+        limiter.afterCompletion(request, new MockHttpServletResponse(), null, null);
+        assertTrue(limiter.preHandle(request, new MockHttpServletResponse(), null));
+    }
+
+    @Test
+    void testWaitingRequestGetsTheReleasedSlot() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 5000, new SimpleMeterRegistry());
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/search");
+        assertTrue(limiter.preHandle(request, new MockHttpServletResponse(), null));
+
+        Thread release = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                limiter.afterCompletion(request, new MockHttpServletResponse(), null, null);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        release.start();
+        assertTrue(limiter.preHandle(request, new MockHttpServletResponse(), null));
+        release.join();
+    }
+}
@@ -31,4 +31,54 @@ public class SearchControllerTest {
                 .param("query", ""))
                 .andExpect(status().isOk());
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testSearchWithScoringAlgorithm() throws Exception {
+        mockMvc.perform(get("/api/search")
+                .param("query", "test query")
+                .param("scoring", "wand"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void testSearchWithUnknownScoringAlgorithm() throws Exception {
+        mockMvc.perform(get("/api/search")
+                .param("query", "test query")
+                .param("scoring", "bm25"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testSearchWithInvalidDate() throws Exception {
+        mockMvc.perform(get("/api/search")
+                .param("query", "test query")
+                .param("date-start", "2024-13-01"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testSearchWithInvalidPaging() throws Exception {
+        mockMvc.perform(get("/api/search")
+                .param("query", "test query")
+                .param("offset", "ten"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/search")
+                .param("query", "test query")
+                .param("limit", "99999999999"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testSearchLimitIsClamped() throws Exception {
+        mockMvc.perform(get("/api/search")
+                .param("query", "test query")
+                .param("limit", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.limit").value(100));
+        mockMvc.perform(get("/api/search")
+                .param("query", "test query")
+                .param("limit", "100000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.limit").value(100));
+    }
+}
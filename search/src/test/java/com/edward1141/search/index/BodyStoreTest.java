@@ -0,0 +1,95 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BodyStoreTest {
+
+    private Path write(long[] uids, String[] bodies) throws IOException {
+        Path path = Files.createTempFile("body-store", ".body");
+        try (BodyStoreWriter writer = new BodyStoreWriter(path, 42L)) {
+            for (int i = 0; i < uids.length; i++) {
+                writer.add(uids[i], bodies[i]);
+            }
+            writer.commit();
+        }
+        return path;
+    }
+
+    @Test
+    void testPassageSkipsPunctuationOnlyRuns() throws IOException {
+        Path path = write(new long[]{42L, 7L}, new String[]{"  Hello, world - this\u00a0is (a) test.", ""});
+        try (BodyStore bodyStore = BodyStore.open(path)) {
+            assertEquals(2, bodyStore.size());
+            // Tokens: hello world this is a test, "-" is not a token and the non-breaking space splits
+            assertEquals("Hello, world", bodyStore.passage(42L, 0, 2));
+            assertEquals("world - this", bodyStore.passage(42L, 1, 2));
+            assertEquals("(a) test.", bodyStore.passage(42L, 4, 10));
+            assertEquals("test.", bodyStore.passage(42L, 100, 3));
+            assertEquals("", bodyStore.passage(7L, 0, 5));
+            assertNull(bodyStore.passage(8L, 0, 5));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testIsCurrentComparesTheDatabaseFingerprint() throws IOException {
+        Path path = write(new long[]{1L}, new String[]{"body"});
+        try {
+            assertTrue(BodyStore.isCurrent(path, 42L));
+            assertFalse(BodyStore.isCurrent(path, 43L));
+            assertFalse(BodyStore.isCurrent(path.resolveSibling(path.getFileName() + ".missing"), 42L));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testPassageAcrossBlocks() throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            body.append("w").append(i).append(i % 7 == 0 ? ".\n" : " ");
+        }
+        Path path = write(new long[]{1L}, new String[]{body.toString()});
+        try (BodyStore bodyStore = BodyStore.open(path)) {
+            int boundary = BodyStoreFormat.BLOCK_TOKENS;
+            assertEquals("w" + (boundary - 2) + ".\nw" + (boundary - 1) + " w" + boundary + " w" + (boundary + 1),
+                    bodyStore.passage(1L, boundary - 2, 4));
+            assertEquals("w999", bodyStore.passage(1L, 999, 1));
+            assertEquals("w0.", bodyStore.passage(1L, 0, 1));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testTruncatedBlockFailsTheRead() throws IOException {
+        Path path = write(new long[]{1L}, new String[]{"Hello, world - this is (a) test."});
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(BodyStoreFormat.HEADER_BYTES);
+            channel.read(header, 0);
+            long directoryOffset = header.getLong(BodyStoreFormat.HEADER_BYTES - 8);
+            ByteBuffer entry = ByteBuffer.allocate(BodyStoreFormat.DIRECTORY_ENTRY_BYTES);
+            channel.read(entry, directoryOffset);
+            // End offset of the only block, one byte earlier
+            long endOffset = entry.getLong(8) + BodyStoreFormat.DOCUMENT_HEADER_BYTES + 4;
+            ByteBuffer end = ByteBuffer.allocate(4);
+            channel.read(end, endOffset);
+            channel.write(ByteBuffer.allocate(4).putInt(0, end.getInt(0) - 1), endOffset);
+        }
+        try (BodyStore bodyStore = BodyStore.open(path)) {
+            assertThrows(IOException.class, () -> bodyStore.passage(1L, 0, 2));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
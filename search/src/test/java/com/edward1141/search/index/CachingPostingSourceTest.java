@@ -0,0 +1,110 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingPostingSourceTest {
+
+    private static class CountingSource implements PostingSource {
+        private final Map<Long, PostingList> postings = new HashMap<>();
+        private int lookups;
+
+        @Override
+        public PostingList getPostings(IndexTable table, long wid) {
+            lookups++;
+            return table == IndexTable.BODY ? postings.get(wid) : null;
+        }
+    }
+
+    @Test
+    void testDecodesOncePerWord() throws Exception {
+        CountingSource source = new CountingSource();
+        source.postings.put(1L, PostingList.builder(true).add(10L, 1, 0.5, 2.0).addPosition(3).build());
+        CachingPostingSource cachingSource = new CachingPostingSource(source, 1 << 20);
+
+        PostingList first = cachingSource.getPostings(IndexTable.BODY, 1L);
+        assertSame(first, cachingSource.getPostings(IndexTable.BODY, 1L));
+        assertEquals(1, source.lookups);
+
+        // Missing words are cached too, and the table is part of the key
+        assertNull(cachingSource.getPostings(IndexTable.TITLE, 1L));
+        assertNull(cachingSource.getPostings(IndexTable.TITLE, 1L));
+        assertEquals(2, source.lookups);
+
+        assertEquals(2, cachingSource.stats().hitCount());
+        assertEquals(2, cachingSource.stats().missCount());
+        assertTrue(cachingSource.sizeInBytes() >= first.sizeInBytes());
+    }
+
+    @Test
+    void testConcurrentMissesDecodeOnce() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        PostingList postings = PostingList.builder(true).add(10L, 1, 0.5, 2.0).build();
+        CachingPostingSource cachingSource = new CachingPostingSource((table, wid) -> {
+            lookups.incrementAndGet();
+            try {
+                Thread.sleep(100); // A slow decode the other threads miss on
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return postings;
+        }, 1 << 20);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<PostingList>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> cachingSource.getPostings(IndexTable.BODY, 1L)));
+            }
+            for (Future<PostingList> result : results) {
+                assertSame(postings, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    void testWarmUp() throws Exception {
+        CountingSource source = new CountingSource();
+        source.postings.put(1L, PostingList.builder(true).add(10L, 1, 0.5, 2.0).build());
+        CachingPostingSource cachingSource = new CachingPostingSource(source, 1 << 20);
+
+        cachingSource.warmUp(IndexTable.BODY, new long[]{1L, 2L});
+        assertNotNull(cachingSource.getPostings(IndexTable.BODY, 1L));
+        assertNull(cachingSource.getPostings(IndexTable.BODY, 2L));
+        assertEquals(2, source.lookups);
+        assertEquals(2, cachingSource.size());
+    }
+
+    @Test
+    void testWarmUpFromPreviousGeneration() throws Exception {
+        CountingSource oldSource = new CountingSource();
+        oldSource.postings.put(1L, PostingList.builder(true).add(10L, 1, 0.5, 2.0).addPosition(3).build());
+        CachingPostingSource previous = new CachingPostingSource(oldSource, 1 << 20);
+        previous.getPostings(IndexTable.BODY, 1L);
+        previous.getPostings(IndexTable.TITLE, 1L);
+
+        CountingSource newSource = new CountingSource();
+        newSource.postings.put(1L, PostingList.builder(true).add(11L, 1, 0.5, 2.0).addPosition(3).build());
+        CachingPostingSource next = new CachingPostingSource(newSource, 1 << 20);
+        assertEquals(2, next.warmUp(previous));
+        assertEquals(2, newSource.lookups);
+
+        // Served from the new source, without decoding again
+        assertEquals(11L, next.getPostings(IndexTable.BODY, 1L).docId(0));
+        assertNull(next.getPostings(IndexTable.TITLE, 1L));
+        assertEquals(2, newSource.lookups);
+    }
+}
@@ -0,0 +1,145 @@
+package com.edward1141.search.index;
+
+import com.edward1141.search.utils.IndexParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CorpusGeneratorTest {
+
+    @Test
+    void testWordsAreDistinct() {
+        Set<String> words = new HashSet<>();
+        for (int rank = 0; rank < 50000; rank++) {
+            String word = CorpusGenerator.word(rank);
+            assertTrue(word.length() >= 4);
+            assertTrue(words.add(word), word);
+        }
+    }
+
+    @Test
+    void testAssignIdsIsStableAndUnique() {
+        String[] texts = {"https://example.com", "data", "mine", "data"};
+        long[] ids = CorpusGenerator.assignIds(texts);
+
+        assertArrayEquals(ids, CorpusGenerator.assignIds(texts));
+        assertTrue(ids[0] >= 0 && ids[0] < 1L << 56);
+        assertEquals(4, Arrays.stream(ids).distinct().count());
+        assertEquals(ids[1] + 1, ids[3]);
+    }
+
+    @Test
+    void testGeneratedDatabaseIsConsistent() throws Exception {
+        Path directory = Files.createTempDirectory("corpus");
+        Path database = directory.resolve("corpus.db");
+        try {
+            new CorpusGenerator(300, 2000, 7, Set.of("made")).generate(database);
+
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database);
+                 Statement statement = connection.createStatement()) {
+                assertEquals(300, count(statement, "urlList"));
+                assertEquals(300, count(statement, "urlBody"));
+                assertEquals(300, count(statement, "forwardIndex"));
+
+                Map<Long, String> words = new HashMap<>();
+                try (ResultSet rs = statement.executeQuery("SELECT wid, word FROM wordList")) {
+                    while (rs.next()) {
+                        words.put(rs.getLong(1), rs.getString(2));
+                    }
+                }
+                assertFalse(words.containsValue("made"));
+                Map<Long, String[]> bodies = new HashMap<>();
+                try (ResultSet rs = statement.executeQuery("SELECT uid, body FROM urlBody")) {
+                    while (rs.next()) {
+                        bodies.put(rs.getLong(1), rs.getString(2).split(" "));
+                    }
+                }
+
+                // Positions of the words as written point at that word in the body
+                IndexParser parser = new IndexParser();
+                int checked = 0;
+                try (ResultSet rs = statement.executeQuery("SELECT wid, count, data FROM stemmedRawInvertedIndex LIMIT 50")) {
+                    while (rs.next()) {
+                        String word = words.get(rs.getLong(1));
+                        PostingList postings = parser.parsePostingList(rs.getString(3), false);
+                        assertEquals(rs.getInt(2), postings.size());
+                        for (int i = 0; i < postings.size(); i++) {
+                            String[] body = bodies.get(postings.docId(i));
+                            for (int position : postings.positions(i)) {
+                                assertEquals(word, body[position]);
+                                checked++;
+                            }
+                        }
+                    }
+                }
+                assertTrue(checked > 0);
+
+                // Scoring fields follow the Python indexer: df is the posting count, idf = log(N / df)
+                try (ResultSet rs = statement.executeQuery("SELECT count, data FROM invertedIndex ORDER BY count DESC LIMIT 1")) {
+                    assertTrue(rs.next());
+                    Map<Long, IndexParser.FullIndex> entries = parser.parseFullIndex(rs.getString(2));
+                    assertEquals(rs.getInt(1), entries.size());
+                    for (IndexParser.FullIndex entry : entries.values()) {
+                        assertEquals(entries.size(), entry.df);
+                        assertEquals(Math.log(300.0 / entry.df), entry.idf, 1e-12);
+                        assertEquals(entry.tf, entry.positions.size());
+                        assertTrue(entry.tfNorm > 0 && entry.tfNorm <= 1);
+                    }
+                }
+
+                try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM parentchild "
+                        + "WHERE childid NOT IN (SELECT uid FROM urlList) OR parentid = childid")) {
+                    assertTrue(rs.next());
+                    assertEquals(0, rs.getInt(1));
+                }
+
+                // page_rank_score is what the service's PageRank computes over the written links
+                LinkGraph.Builder links = LinkGraph.builder();
+                try (ResultSet rs = statement.executeQuery("SELECT parentid, childid FROM parentchild")) {
+                    while (rs.next()) {
+                        links.add(rs.getLong(1), rs.getLong(2));
+                    }
+                }
+                DocumentStore.Builder documents = DocumentStore.builder();
+                Map<Long, Double> written = new HashMap<>();
+                try (ResultSet rs = statement.executeQuery("SELECT uid, page_rank_score FROM urlList")) {
+                    while (rs.next()) {
+                        documents.add(rs.getLong(1), 1.0, 1.0, Double.NaN, 0, DocumentStore.UNKNOWN_TIME);
+                        written.put(rs.getLong(1), rs.getDouble(2));
+                    }
+                }
+                DocumentStore documentStore = documents.build();
+                ExecutorService pool = Executors.newSingleThreadExecutor();
+                try {
+                    double[] scores = new PageRank(links.build(), documentStore, PageRank.DAMPING_FACTOR,
+                            PageRank.MAX_ITERATIONS, PageRank.CONVERGENCE_THRESHOLD).compute(pool, 1).scores;
+                    for (int doc = 0; doc < documentStore.size(); doc++) {
+                        assertEquals(scores[doc], written.get(documentStore.uid(doc)).doubleValue());
+                    }
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        } finally {
+            Files.deleteIfExists(database);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static int count(Statement statement, String table) throws Exception {
+        try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DocumentStoreTest {
+
+    @Test
+    void testOrdinalsFollowUidOrder() {
+        DocumentStore store = DocumentStore.builder()
+                .add(60585594248379076L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .add(7L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .add(35206069257871717L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .build();
+
+        assertEquals(0, store.ordinal(7L));
+        assertEquals(1, store.ordinal(35206069257871717L));
+        assertEquals(2, store.ordinal(60585594248379076L));
+        assertEquals(DocumentStore.NOT_FOUND, store.ordinal(8L));
+    }
+
+    @Test
+    void testOrdinalsOfSortedUidsSkipUnknownDocuments() {
+        DocumentStore store = DocumentStore.builder()
+                .add(10L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .add(20L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .add(30L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .add(40L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .build();
+
+        assertEquals(RoaringBitmap.bitmapOf(0, 2, 3), store.ordinals(new long[]{5L, 10L, 25L, 30L, 40L, 50L}));
+        assertTrue(store.ordinals(new long[0]).isEmpty());
+    }
+
+    @Test
+    void testPostingOrdinalsAreMappedOncePerStore() {
+        DocumentStore store = DocumentStore.builder()
+                .add(10L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .add(20L, 2.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .add(30L, Double.NaN, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .add(40L, 4.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .build();
+        PostingList postings = PostingList.builder(true)
+                .add(5L, 1, 1.0, 1.0)
+                .add(20L, 1, 1.0, 1.0)
+                .add(30L, 1, 1.0, 1.0)
+                .add(35L, 1, 1.0, 1.0)
+                .add(40L, 1, 1.0, 1.0)
+                .add(90L, 1, 1.0, 1.0)
+                .build();
+
+        int[] ordinals = postings.ordinals(store);
+        assertArrayEquals(new int[]{DocumentStore.NOT_FOUND, 1, 2, DocumentStore.NOT_FOUND, 3,
+                DocumentStore.NOT_FOUND}, ordinals);
+        assertSame(ordinals, postings.ordinals(store));
+        assertEquals(RoaringBitmap.bitmapOf(1, 2, 3), store.ordinals(postings));
+        // Unknown documents and documents without a weight do not bound the score
+        assertEquals(0.5, postings.maxTermWeight(store), 1e-12);
+
+        DocumentStore other = DocumentStore.builder()
+                .add(40L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .build();
+        assertArrayEquals(new int[]{DocumentStore.NOT_FOUND, DocumentStore.NOT_FOUND, DocumentStore.NOT_FOUND,
+                DocumentStore.NOT_FOUND, 0, DocumentStore.NOT_FOUND}, postings.ordinals(other));
+    }
+
+    @Test
+    void testModifiedBetweenIsInclusive() {
+        DocumentStore store = DocumentStore.builder()
+                .add(10L, 1.0, 1.0, 0.5, 10, 300L)
+                .add(20L, 1.0, 1.0, 0.5, 10, 100L)
+                .add(30L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .add(40L, 1.0, 1.0, 0.5, 10, 200L)
+                .add(50L, 1.0, 1.0, 0.5, 10, 200L)
+                .build();
+
+        assertEquals(RoaringBitmap.bitmapOf(1, 3, 4), store.modifiedBetween(100L, 200L));
+        assertEquals(RoaringBitmap.bitmapOf(0, 3, 4), store.modifiedBetween(150L, Long.MAX_VALUE));
+        assertEquals(RoaringBitmap.bitmapOf(0, 1, 3, 4), store.modifiedBetween(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertTrue(store.modifiedBetween(201L, 299L).isEmpty());
+        assertTrue(store.modifiedBetween(300L, 100L).isEmpty());
+    }
+}
@@ -0,0 +1,166 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexManagerTest {
+
+    private static class ClosingSource implements PostingSource, Closeable {
+        private boolean closed;
+
+        @Override
+        public PostingList getPostings(IndexTable table, long wid) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private Path database;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        database = Files.createTempFile("index-manager", ".db");
+        database.toFile().deleteOnExit();
+    }
+
+    private static IndexGeneration generation(long id) {
+        return new IndexGeneration(id, null, null, LinkGraph.EMPTY, new ClosingSource(), null);
+    }
+
+    private static boolean isClosed(IndexGeneration generation) {
+        return ((ClosingSource) generation.getPostingSource()).closed;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitIdle(IndexManager manager) throws InterruptedException {
+        await(() -> !(Boolean) manager.getStatus().get("reloading"));
+    }
+
+    @Test
+    void testReloadPublishesNewGeneration() throws Exception {
+        IndexManager manager = new IndexManager((id, previous) -> generation(id), database, 0);
+        assertEquals(1, manager.current().getId());
+
+        assertTrue(manager.reload());
+        awaitIdle(manager);
+        assertEquals(2, manager.current().getId());
+        assertEquals("done", ((Map<?, ?>) manager.getStatus().get("last_reload")).get("state"));
+    }
+
+    @Test
+    void testReplacedGenerationClosesAfterLastRelease() throws Exception {
+        IndexManager manager = new IndexManager((id, previous) -> generation(id), database, 0);
+        IndexGeneration first = manager.acquire();
+
+        manager.reload();
+        awaitIdle(manager);
+        assertNotSame(first, manager.current());
+        // Still in use by the query holding it
+        assertFalse(isClosed(first));
+
+        first.release();
+        assertTrue(isClosed(first));
+        assertFalse(isClosed(manager.current()));
+    }
+
+    @Test
+    void testReloadDuringReloadIsCoalesced() throws Exception {
+        CountDownLatch unblock = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        IndexManager manager = new IndexManager((id, previous) -> {
+            loads.incrementAndGet();
+            if (id == 2) {
+                try {
+                    unblock.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return generation(id);
+        }, database, 0);
+
+        assertTrue(manager.reload());
+        assertFalse(manager.reload());
+        assertFalse(manager.reload());
+        unblock.countDown();
+        awaitIdle(manager);
+
+        // The two requests during the first reload ran as one more
+        assertEquals(3, loads.get());
+        assertEquals(3, manager.current().getId());
+    }
+
+    @Test
+    void testFailedReloadKeepsCurrentGeneration() throws Exception {
+        IndexManager manager = new IndexManager((id, previous) -> {
+            if (id > 1) {
+                throw new IOException("disk full");
+            }
+            return generation(id);
+        }, database, 0);
+        IndexGeneration first = manager.current();
+
+        manager.reload();
+        awaitIdle(manager);
+        assertSame(first, manager.current());
+        assertFalse(isClosed(first));
+        Map<?, ?> lastReload = (Map<?, ?>) manager.getStatus().get("last_reload");
+        assertEquals("failed", lastReload.get("state"));
+        assertEquals("disk full", lastReload.get("error"));
+    }
+
+    @Test
+    void testUpdatePublishesDerivedGeneration() throws Exception {
+        IndexManager manager = new IndexManager((id, previous) -> generation(id), database, 0);
+        List<Long> published = new CopyOnWriteArrayList<>();
+        manager.addListener(generation -> published.add(generation.getId()));
+        IndexGeneration first = manager.current();
+
+        manager.update((id, previous) -> null);
+        manager.update((id, previous) -> generation(id));
+        await(() -> manager.current().getId() == 2);
+        await(() -> published.size() == 1);
+        assertEquals(List.of(2L), published);
+        assertTrue(isClosed(first));
+    }
+
+    @Test
+    void testWatcherReloadsOnceTheDatabaseSettles() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        IndexManager manager = new IndexManager((id, previous) -> {
+            loads.incrementAndGet();
+            return generation(id);
+        }, database, 20);
+
+        Files.write(database, new byte[]{1, 2, 3});
+        await(() -> manager.current().getId() == 2);
+        awaitIdle(manager);
+        Thread.sleep(100);
+        // Unchanged since, no further reloads
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,43 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinkGraphTest {
+
+    @Test
+    void testChildrenAndParents() {
+        LinkGraph graph = LinkGraph.builder()
+                .add(30L, 10L)
+                .add(10L, 20L)
+                .add(10L, 30L)
+                .add(20L, 30L)
+                .add(10L, 20L) // Duplicate
+                .add(30L, 40L)
+                .build();
+
+        assertEquals(4, graph.size());
+        assertEquals(5, graph.linkCount());
+        assertArrayEquals(new long[]{20L, 30L}, graph.children(10L));
+        assertArrayEquals(new long[]{10L, 40L}, graph.children(30L));
+        assertArrayEquals(new long[0], graph.children(40L));
+        assertArrayEquals(new long[]{10L, 20L}, graph.parents(30L));
+        assertArrayEquals(new long[]{30L}, graph.parents(10L));
+        assertArrayEquals(new long[0], graph.children(99L));
+        assertEquals(LinkGraph.NOT_FOUND, graph.node(99L));
+
+        int node = graph.node(30L);
+        assertEquals(2, graph.outDegree(node));
+        assertEquals(2, graph.inDegree(node));
+        assertEquals(20L, graph.uid(graph.parent(graph.parentStart(node) + 1)));
+    }
+
+    @Test
+    void testEmptyGraph() {
+        LinkGraph graph = LinkGraph.builder().build();
+        assertEquals(0, graph.size());
+        assertArrayEquals(new long[0], graph.parents(1L));
+        assertEquals(0, LinkGraph.EMPTY.linkCount());
+    }
+}
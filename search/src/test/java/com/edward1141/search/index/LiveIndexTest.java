@@ -0,0 +1,211 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LiveIndexTest {
+
+    private static final IndexGeneration EMPTY = new IndexGeneration(0, TermDictionary.builder().build(),
+            DocumentStore.builder().build(), LinkGraph.EMPTY, new IndexSnapshot(new EnumMap<>(IndexTable.class)), null);
+
+    private final PageAnalyzer analyzer = new PageAnalyzer(Set.of("the"));
+    private LiveIndex liveIndex;
+    private IndexGeneration crawled;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        liveIndex = new LiveIndex();
+        crawled = crawl(1, page("a", "the cat", 100));
+    }
+
+    private IngestedPage page(String url, String body, long lastModified) {
+        return analyzer.analyze(url, "", body, lastModified, body.length(), List.of());
+    }
+
+    private static long uid(String url) {
+        return PageAnalyzer.uid(url);
+    }
+
+    // A generation loaded from the database with these pages
+    private static IndexGeneration crawl(long id, IngestedPage... pages) throws IOException {
+        List<LiveIndex.Update> updates = new ArrayList<>();
+        for (IngestedPage page : pages) {
+            updates.add(new LiveIndex.Update(0, page.getUid(), page, 0));
+        }
+        DeltaSegment segment = DeltaSegment.build(updates, EMPTY);
+        return new IndexGeneration(id, segment.getTermDictionary(), segment.getDocumentStore(), LinkGraph.EMPTY,
+                segment.getSnapshot(), null);
+    }
+
+    // Uids of the documents a search for the body term finds, like the search service filters them
+    private Set<Long> find(IndexGeneration generation, String term) throws IOException {
+        LiveIndex.View view = liveIndex.view(generation);
+        LiveIndex.Resolution resolution = view.resolve(generation);
+        Set<Long> uids = new HashSet<>();
+        collect(generation.getTermDictionary(), generation.getDocumentStore(), generation.getPostingSource(),
+                resolution.hidden(), term, uids);
+        for (int s = 0; s < view.getSegments().size(); s++) {
+            DeltaSegment segment = view.getSegments().get(s);
+            collect(segment.getTermDictionary(), segment.getDocumentStore(), segment.getPostings(),
+                    resolution.hidden(s), term, uids);
+        }
+        return uids;
+    }
+
+    private static void collect(TermDictionary dictionary, DocumentStore documents, PostingSource source,
+                                RoaringBitmap hidden, String term, Set<Long> uids) throws IOException {
+        long wid = dictionary.getWid(term);
+        PostingList postings = wid == TermDictionary.NOT_FOUND ? null : source.getPostings(IndexTable.BODY, wid);
+        for (int i = 0; postings != null && i < postings.size(); i++) {
+            int doc = documents.ordinal(postings.docId(i));
+            if (doc != DocumentStore.NOT_FOUND && !hidden.contains(doc)) {
+                uids.add(postings.docId(i));
+            }
+        }
+    }
+
+    @Test
+    void testRefreshMakesUpdatesVisible() throws IOException {
+        liveIndex.upsert(page("b", "cat dog", 200));
+        assertEquals(Set.of(uid("a")), find(crawled, "cat"));
+        assertEquals(1, liveIndex.pending());
+
+        assertTrue(liveIndex.refresh(crawled));
+        assertFalse(liveIndex.refresh(crawled));
+        assertEquals(Set.of(uid("a"), uid("b")), find(crawled, "cat"));
+        assertEquals(Set.of(uid("b")), find(crawled, "dog"));
+        assertEquals(0, liveIndex.pending());
+
+        // Scored like the crawler would, with the loaded documents counted in
+        DeltaSegment segment = liveIndex.view().getSegments().get(0);
+        PostingList dog = segment.getPostings().getPostings(IndexTable.BODY, segment.getTermDictionary().getWid("dog"));
+        assertEquals(Math.log(2.0), dog.idf(0), 1e-9);
+        assertEquals(1.0, dog.tfNorm(0), 1e-9);
+    }
+
+    @Test
+    void testNewestUpdateWins() throws IOException {
+        liveIndex.upsert(page("b", "cat", 200));
+        liveIndex.refresh(crawled);
+        liveIndex.upsert(page("a", "dog", 300));
+        liveIndex.delete(uid("b"));
+        liveIndex.refresh(crawled);
+
+        // The new version of the crawled page hides the loaded one, the delete hides the ingested page
+        assertEquals(Set.of(), find(crawled, "cat"));
+        assertEquals(Set.of(uid("a")), find(crawled, "dog"));
+        assertEquals(2, liveIndex.view().resolve(crawled).getUnmerged());
+    }
+
+    @Test
+    void testCompactKeepsTheNewestUpdates() throws IOException {
+        liveIndex.upsert(page("b", "cat", 200));
+        liveIndex.refresh(crawled);
+        liveIndex.upsert(page("b", "fox", 300));
+        liveIndex.refresh(crawled);
+        liveIndex.upsert(page("c", "fox", 300));
+        liveIndex.refresh(crawled);
+        assertEquals(3, liveIndex.view().getSegments().size());
+
+        assertTrue(liveIndex.compact(crawled));
+        assertEquals(1, liveIndex.view().getSegments().size());
+        assertEquals(2, liveIndex.view().getSegments().get(0).size());
+        assertEquals(Set.of(uid("a")), find(crawled, "cat"));
+        assertEquals(Set.of(uid("b"), uid("c")), find(crawled, "fox"));
+    }
+
+    @Test
+    void testMergeFoldsIngestedPagesIntoTheGeneration() throws IOException {
+        liveIndex.upsert(page("b", "cat dog", 200));
+        liveIndex.upsert(page("a", "fox", 300));
+        liveIndex.refresh(crawled);
+
+        IndexGeneration merged = liveIndex.merge(2, crawled);
+        liveIndex.published(merged);
+        assertEquals(2, merged.getDocumentStore().size());
+        assertTrue(merged.getMerged().seq(uid("b")) > 0);
+        assertNotNull(liveIndex.mergedPage(merged, uid("b")));
+        // The crawled page cannot be merged over, its new version stays in a segment
+        assertEquals(0, merged.getMerged().seq(uid("a")));
+        assertEquals(1, liveIndex.view().getSegments().size());
+        assertEquals(Set.of(uid("b")), find(merged, "cat"));
+        assertEquals(Set.of(uid("a")), find(merged, "fox"));
+        assertEquals(2L, liveIndex.view().getGeneration());
+
+        // Replacing a merged page rewrites its postings
+        liveIndex.upsert(page("b", "dog", 400));
+        liveIndex.refresh(merged);
+        IndexGeneration replaced = liveIndex.merge(3, merged);
+        liveIndex.published(replaced);
+        assertEquals(Set.of(), find(replaced, "cat"));
+        assertEquals(Set.of(uid("b")), find(replaced, "dog"));
+        PostingList cat = replaced.getPostingSource().getPostings(IndexTable.BODY,
+                replaced.getTermDictionary().getWid("cat"));
+        assertEquals(1, cat.size());
+        assertEquals(uid("a"), cat.docId(0));
+
+        // Nothing left to merge
+        assertNull(liveIndex.merge(4, replaced));
+    }
+
+    @Test
+    void testRebaseMergesIngestedPagesAgain() throws IOException {
+        liveIndex.upsert(page("b", "cat", 200));
+        liveIndex.upsert(page("c", "dog", 200));
+        liveIndex.upsert(page("d", "fox", 200));
+        liveIndex.refresh(crawled);
+        IndexGeneration merged = liveIndex.merge(2, crawled);
+        liveIndex.published(merged);
+        assertEquals(3, liveIndex.mergedCount());
+
+        // The crawler has since indexed c in an older and d in a newer version
+        IndexGeneration reloaded = liveIndex.rebase(crawl(3, page("a", "cat", 100), page("c", "cat", 100),
+                page("d", "cat", 500)));
+        liveIndex.published(reloaded);
+        assertEquals(3L, reloaded.getId());
+        assertEquals(4, reloaded.getDocumentStore().size());
+        assertEquals(1, liveIndex.mergedCount());
+        assertEquals(Set.of(uid("a"), uid("b"), uid("d")), find(reloaded, "cat"));
+        assertEquals(Set.of(uid("c")), find(reloaded, "dog"));
+        assertEquals(Set.of(), find(reloaded, "fox"));
+    }
+
+    @Test
+    void testRebasedViewWaitsForItsGeneration() throws IOException {
+        liveIndex.upsert(page("b", "cat", 200));
+        liveIndex.refresh(crawled);
+        IndexGeneration merged = liveIndex.merge(2, crawled);
+        liveIndex.published(merged);
+
+        // The crawler has b in an older version, it goes back into a segment only the reloaded generation sees
+        IndexGeneration reloaded = liveIndex.rebase(crawl(3, page("a", "cat", 100), page("b", "dog", 100)));
+        assertEquals(2L, liveIndex.view().getGeneration());
+        assertEquals(Set.of(uid("a"), uid("b")), find(merged, "cat"));
+        assertEquals(Set.of(uid("a"), uid("b")), find(reloaded, "cat"));
+        assertEquals(Set.of(), find(reloaded, "dog"));
+
+        // A refresh reaches both views
+        liveIndex.upsert(page("c", "fox", 300));
+        liveIndex.refresh(merged);
+        assertEquals(Set.of(uid("c")), find(merged, "fox"));
+        assertEquals(Set.of(uid("c")), find(reloaded, "fox"));
+
+        // Never published, a later generation drops the staged view
+        IndexGeneration next = liveIndex.merge(4, merged);
+        liveIndex.published(next);
+        assertEquals(4L, liveIndex.view().getGeneration());
+        assertEquals(Set.of(uid("a"), uid("b")), find(next, "cat"));
+        assertEquals(Set.of(uid("c")), find(next, "fox"));
+        reloaded.release();
+    }
+}
@@ -0,0 +1,52 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageAnalyzerTest {
+
+    private final PageAnalyzer analyzer = new PageAnalyzer(Set.of("the", "is"));
+
+    @Test
+    void testPositionsFollowTheIndexer() {
+        IngestedPage page = analyzer.analyze("https://example.com/a", "The Cat", "The cat, the dog. Is it?!", 0, 25,
+                List.of("https://example.com/b"));
+
+        // Stopwords are skipped in the stemmed tables, numbered in the raw ones
+        Map<String, int[]> body = page.terms(IndexTable.BODY);
+        assertEquals(Set.of("cat", "dog", "it"), body.keySet());
+        assertArrayEquals(new int[]{0}, body.get("cat"));
+        assertArrayEquals(new int[]{2}, body.get("it"));
+        Map<String, int[]> raw = page.terms(IndexTable.RAW_BODY);
+        assertArrayEquals(new int[]{0, 2}, raw.get("the"));
+        assertArrayEquals(new int[]{5}, raw.get("it"));
+        assertArrayEquals(new int[]{3}, page.terms(IndexTable.STEMMED_RAW_BODY).get("dog"));
+        assertArrayEquals(new int[]{0}, page.terms(IndexTable.TITLE).get("cat"));
+        assertArrayEquals(new int[]{1}, page.terms(IndexTable.RAW_TITLE).get("cat"));
+        assertEquals(List.of("https://example.com/b"), page.getChildLinks());
+    }
+
+    @Test
+    void testUidIsTheCrawlerId() {
+        String url = "https://example.com/a";
+        assertEquals(CorpusGenerator.assignIds(new String[]{url})[0], PageAnalyzer.uid(url));
+        assertEquals(PageAnalyzer.uid(url), analyzer.analyze(url, null, null, 0, 0, null).getUid());
+    }
+
+    @Test
+    void testPassageAndKeywords() {
+        IngestedPage page = analyzer.analyze("https://example.com/a", "", "cat dog -- cat fox cat dog", 0, 26, null);
+
+        // The punctuation only run is not a token
+        assertEquals("dog -- cat", page.passage(1, 2));
+        assertEquals("dog", page.passage(10, 5));
+        assertEquals("", page.passage(0, 0));
+        assertEquals(List.of("cat", "dog", "fox"), List.copyOf(page.keywords().keySet()));
+        assertEquals(3, page.keywords().get("cat").intValue());
+    }
+}
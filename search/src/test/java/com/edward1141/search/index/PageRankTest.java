@@ -0,0 +1,103 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PageRankTest {
+    private static final int DOCUMENTS = 300;
+
+    @Test
+    void testMatchesDenseIteration() throws Exception {
+        Random random = new Random(7);
+        DocumentStore.Builder documents = DocumentStore.builder();
+        for (long uid = 0; uid < DOCUMENTS; uid++) {
+            documents.add(uid * 31, 1.0, 1.0, Double.NaN, 100, DocumentStore.UNKNOWN_TIME);
+        }
+        DocumentStore documentStore = documents.build();
+
+        // Links to pages outside the store count towards the out-degree only
+        boolean[][] links = new boolean[DOCUMENTS][DOCUMENTS];
+        int[] outDegree = new int[DOCUMENTS];
+        LinkGraph.Builder graph = LinkGraph.builder();
+        for (int parent = 0; parent < DOCUMENTS; parent++) {
+            int count = random.nextInt(8);
+            for (int i = 0; i < count; i++) {
+                int child = random.nextInt(DOCUMENTS);
+                if (!links[parent][child]) {
+                    links[parent][child] = true;
+                    outDegree[parent]++;
+                    graph.add(parent * 31L, child * 31L);
+                }
+            }
+            if (random.nextInt(5) == 0) {
+                outDegree[parent]++;
+                graph.add(parent * 31L, 1_000_000L + parent);
+            }
+        }
+        LinkGraph linkGraph = graph.build();
+
+        // Reference: the crawler's dense matrix iteration
+        double[] expected = new double[DOCUMENTS];
+        Arrays.fill(expected, 1.0);
+        int iterations = 0;
+        while (iterations < 500) {
+            double[] next = new double[DOCUMENTS];
+            double norm = 0.0;
+            for (int doc = 0; doc < DOCUMENTS; doc++) {
+                double sum = 0.0;
+                for (int parent = 0; parent < DOCUMENTS; parent++) {
+                    if (links[parent][doc]) {
+                        sum += expected[parent] / outDegree[parent];
+                    }
+                }
+                next[doc] = 0.15 + 0.85 * sum;
+                norm += (next[doc] - expected[doc]) * (next[doc] - expected[doc]);
+            }
+            expected = next;
+            iterations++;
+            if (Math.sqrt(norm) < 1e-6) {
+                break;
+            }
+        }
+        double min = Arrays.stream(expected).min().orElse(0);
+        double max = Arrays.stream(expected).max().orElse(0);
+
+        PageRank pageRank = new PageRank(linkGraph, documentStore, 0.85, 500, 1e-6);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            PageRank.Result single = pageRank.compute(pool, 1);
+            PageRank.Result parallel = pageRank.compute(pool, 7);
+
+            assertTrue(single.converged);
+            assertEquals(iterations, single.iterations);
+            assertArrayEquals(single.scores, parallel.scores);
+            for (int doc = 0; doc < DOCUMENTS; doc++) {
+                assertEquals((expected[doc] - min) / (max - min), single.scores[documentStore.ordinal(doc * 31L)], 1e-9);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testWithoutLinksEveryScoreIsZero() throws Exception {
+        DocumentStore documentStore = DocumentStore.builder()
+                .add(1L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .add(2L, 1.0, 1.0, 0.5, 10, DocumentStore.UNKNOWN_TIME)
+                .build();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            PageRank.Result result = new PageRank(LinkGraph.EMPTY, documentStore, 0.85, 500, 1e-6).compute(pool, 2);
+            assertArrayEquals(new double[]{0.0, 0.0}, result.scores);
+            assertTrue(result.converged);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PhraseMatcherTest {
+
+    private PostingList postings(long[] docIds, int[][] positions) {
+        PostingList.Builder builder = PostingList.builder(false);
+        for (int i = 0; i < docIds.length; i++) {
+            builder.add(docIds[i]);
+            for (int position : positions[i]) {
+                builder.addPosition(position);
+            }
+        }
+        return builder.build();
+    }
+
+    @Test
+    void testAdjacentWords() {
+        PostingList hong = postings(new long[]{1, 2, 3}, new int[][]{{0, 10}, {5}, {7}});
+        PostingList kong = postings(new long[]{1, 3, 4}, new int[][]{{11}, {9}, {1}});
+
+        assertArrayEquals(new long[]{1}, PhraseMatcher.match(new PostingList[]{hong, kong}, 1));
+        assertArrayEquals(new long[]{1, 3}, PhraseMatcher.match(new PostingList[]{hong, kong}, 2));
+        // Order matters
+        assertArrayEquals(new long[0], PhraseMatcher.match(new PostingList[]{kong, hong}, 5));
+    }
+
+    @Test
+    void testMissingWord() {
+        PostingList word = postings(new long[]{1}, new int[][]{{0}});
+
+        assertArrayEquals(new long[0], PhraseMatcher.match(new PostingList[]{word, null}, 1));
+        assertArrayEquals(new long[0], PhraseMatcher.match(new PostingList[]{word, PostingList.EMPTY}, 1));
+        assertArrayEquals(new long[0], PhraseMatcher.match(new PostingList[0], 1));
+        assertArrayEquals(new long[]{1}, PhraseMatcher.match(new PostingList[]{word}, 1));
+    }
+
+    @Test
+    void testMatchesPairwiseScan() {
+        Random random = new Random(11);
+        for (int round = 0; round < 200; round++) {
+            int words = 1 + random.nextInt(4);
+            PostingList[] phrase = new PostingList[words];
+            for (int w = 0; w < words; w++) {
+                int size = 1 + random.nextInt(random.nextBoolean() ? 5 : 60);
+                long[] docIds = random.longs(size, 0, 80).distinct().toArray();
+                int[][] positions = new int[docIds.length][];
+                for (int i = 0; i < docIds.length; i++) {
+                    positions[i] = random.ints(random.nextInt(6), 0, 40).toArray();
+                }
+                phrase[w] = postings(docIds, positions);
+            }
+            int distance = random.nextInt(8);
+
+            assertArrayEquals(pairwiseScan(phrase, distance), PhraseMatcher.match(phrase, distance));
+        }
+    }
+
+    // The previous HashSet based check: every position of the previous word against each distance
+    private long[] pairwiseScan(PostingList[] phrase, int distance) {
+        List<Long> matches = new ArrayList<>();
+        for (int i = 0; i < phrase[0].size(); i++) {
+            long docId = phrase[0].docId(i);
+            boolean matched = true;
+            for (int w = 1; w < phrase.length && matched; w++) {
+                int previous = phrase[w - 1].indexOf(docId);
+                int next = phrase[w].indexOf(docId);
+                matched = false;
+                if (previous >= 0 && next >= 0) {
+                    int[] nextPositions = phrase[w].positions(next);
+                    for (int d = 1; d <= distance && !matched; d++) {
+                        for (int position : phrase[w - 1].positions(previous)) {
+                            if (Arrays.binarySearch(nextPositions, position + d) >= 0) {
+                                matched = true;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            if (matched) {
+                matches.add(docId);
+            }
+        }
+        return matches.stream().mapToLong(Long::longValue).toArray();
+    }
+}
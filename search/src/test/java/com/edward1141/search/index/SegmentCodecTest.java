@@ -0,0 +1,121 @@
+package com.edward1141.search.index;
+
+import com.edward1141.search.utils.IndexParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentCodecTest {
+
+    @Test
+    void testFullPostingRoundTrip() {
+        PostingList postings = PostingList.builder(true)
+                .add(60585594248379076L, 1, 0.06666666666666667, 1.3217558399823195).addPosition(160)
+                .add(35206069257871717L, 2, 0.3333333333333333, 1.3217558399823195).addPosition(85).addPosition(47)
+                .build();
+
+        PostingList decoded = roundTrip(postings, true);
+
+        assertEquals(2, decoded.size());
+        assertEquals(35206069257871717L, decoded.docId(0));
+        assertEquals(60585594248379076L, decoded.docId(1));
+        assertEquals(2, decoded.tf(0));
+        assertEquals(0.3333333333333333, decoded.tfNorm(0));
+        assertEquals(1.3217558399823195, decoded.idf(1));
+        assertArrayEquals(new int[]{47, 85}, decoded.positions(0));
+        assertArrayEquals(new int[]{160}, decoded.positions(1));
+    }
+
+    @Test
+    void testPositionOnlyRoundTrip() {
+        PostingList postings = PostingList.builder(false)
+                .add(7L).addPosition(3).addPosition(1_000_000)
+                .add(Long.MAX_VALUE >> 8)
+                .build();
+
+        PostingList decoded = roundTrip(postings, false);
+
+        assertFalse(decoded.hasScoringFields());
+        assertEquals(Long.MAX_VALUE >> 8, decoded.docId(1));
+        assertArrayEquals(new int[]{3, 1_000_000}, decoded.positions(0));
+        assertEquals(0, decoded.positions(1).length);
+    }
+
+    private PostingList roundTrip(PostingList postings, boolean scoringFields) {
+        ByteBuffer encoded = new SegmentWriter().encode(postings, scoringFields);
+        ByteBuffer copy = ByteBuffer.allocate(encoded.remaining() + 3);
+        copy.position(3);
+        copy.put(encoded);
+        return SegmentReader.decode(copy, 3, scoringFields);
+    }
+
+    @Test
+    void testListsStayWithinTheirChunk() throws Exception {
+        Path directory = Files.createTempDirectory("segment");
+        Path database = directory.resolve("corpus.db");
+        Path segment = directory.resolve("corpus.seg");
+        try {
+            new CorpusGenerator(200, 1000, 3, Set.of()).generate(database);
+            IndexParser parser = new IndexParser();
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database)) {
+                // Small chunks, so most tables span several mappings and lists get moved to a boundary
+                new SegmentWriter(1 << 15).export(connection, segment, 1L);
+
+                try (SegmentReader reader = SegmentReader.open(segment);
+                     Statement statement = connection.createStatement()) {
+                    for (IndexTable table : IndexTable.values()) {
+                        int words = 0;
+                        try (ResultSet rs = statement.executeQuery("SELECT wid, data FROM " + table.getTableName())) {
+                            while (rs.next()) {
+                                PostingList expected = parser.parsePostingList(rs.getString(2), table.isScoringFields());
+                                PostingList actual = reader.getPostings(table, rs.getLong(1));
+                                assertEquals(expected.size(), actual.size());
+                                for (int i = 0; i < expected.size(); i++) {
+                                    assertEquals(expected.docId(i), actual.docId(i));
+                                    assertArrayEquals(expected.positions(i), actual.positions(i));
+                                    if (table.isScoringFields()) {
+                                        assertEquals(expected.tfNorm(i), actual.tfNorm(i));
+                                        assertEquals(expected.idf(i), actual.idf(i));
+                                    }
+                                }
+                                words++;
+                            }
+                        }
+                        assertEquals(words, reader.termCount(table));
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(segment);
+            Files.deleteIfExists(database);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    void testListLargerThanAChunkFailsTheExport() throws Exception {
+        Path directory = Files.createTempDirectory("segment");
+        Path database = directory.resolve("corpus.db");
+        Path segment = directory.resolve("corpus.seg");
+        try {
+            new CorpusGenerator(200, 1000, 3, Set.of()).generate(database);
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database)) {
+                assertThrows(IOException.class, () -> new SegmentWriter(16).export(connection, segment, 1L));
+            }
+            assertFalse(Files.exists(segment));
+        } finally {
+            Files.deleteIfExists(database);
+            Files.deleteIfExists(directory);
+        }
+    }
+}
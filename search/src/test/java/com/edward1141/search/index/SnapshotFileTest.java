@@ -0,0 +1,132 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotFileTest {
+
+    @Test
+    void testRoundTrip() throws Exception {
+        Path path = Files.createTempFile("index", ".snapshot");
+        try {
+            SnapshotFile.write(path, 42L, index(true));
+            LoadedIndex loaded = SnapshotFile.read(path, 42L, true);
+
+            assertNotNull(loaded);
+            TermDictionary dictionary = loaded.getTermDictionary();
+            assertEquals(3, dictionary.size());
+            assertEquals(11L, dictionary.getWid("comput"));
+            assertEquals(13L, dictionary.getWid("hong"));
+            assertEquals(TermDictionary.NOT_FOUND, dictionary.getWid("kong"));
+
+            DocumentStore documents = loaded.getDocumentStore();
+            assertEquals(2, documents.size());
+            int doc = documents.ordinal(60585594248379076L);
+            assertEquals(2.5, documents.documentWeight(doc));
+            assertTrue(Double.isNaN(documents.titleWeight(doc)));
+            assertEquals(1200, documents.contentLength(doc));
+            assertEquals(DocumentStore.UNKNOWN_TIME, documents.lastModified(documents.ordinal(7L)));
+            assertEquals(0.75, documents.maxPageRankScore());
+
+            LinkGraph links = loaded.getLinkGraph();
+            assertEquals(2, links.linkCount());
+            assertArrayEquals(new long[]{7L, 99L}, links.children(60585594248379076L));
+            assertArrayEquals(new long[]{60585594248379076L}, links.parents(7L));
+
+            PostingList body = loaded.getPostings().getPostings(IndexTable.BODY, 11L);
+            assertEquals(2, body.size());
+            assertEquals(7L, body.docId(0));
+            assertEquals(2, body.tf(0));
+            assertEquals(0.3333333333333333, body.tfNorm(0));
+            assertEquals(1.3217558399823195, body.idf(1));
+            assertArrayEquals(new int[]{47, 85}, body.positions(0));
+            assertArrayEquals(new int[]{160}, body.positions(1));
+
+            PostingList raw = loaded.getPostings().getPostings(IndexTable.RAW_BODY, 13L);
+            assertFalse(raw.hasScoringFields());
+            assertArrayEquals(new int[]{3, 1_000_000}, raw.positions(0));
+            assertSame(PostingList.EMPTY, loaded.getPostings().getPostings(IndexTable.TITLE, 12L));
+            assertNull(loaded.getPostings().getPostings(IndexTable.TITLE, 11L));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testStaleOrIncompleteSnapshotIsNotRead() throws Exception {
+        Path path = Files.createTempFile("index", ".snapshot");
+        try {
+            SnapshotFile.write(path, 42L, index(false));
+
+            assertNull(SnapshotFile.read(path, 43L, false));
+            assertNull(SnapshotFile.read(path, 42L, true));
+            LoadedIndex loaded = SnapshotFile.read(path, 42L, false);
+            assertNotNull(loaded);
+            assertNull(loaded.getPostings());
+            assertEquals(12L, loaded.getTermDictionary().getWid("engin"));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+        assertNull(SnapshotFile.read(path, 42L, false));
+    }
+
+    @Test
+    void testFingerprintChangesWithDatabase() throws Exception {
+        Path database = Files.createTempFile("search", ".db");
+        try {
+            Files.write(database, new byte[100]);
+            long fingerprint = SnapshotFile.fingerprint(database);
+            assertEquals(fingerprint, SnapshotFile.fingerprint(database));
+
+            byte[] bytes = new byte[100];
+            bytes[27] = 1; // file change counter
+            Files.write(database, bytes);
+            assertNotEquals(fingerprint, SnapshotFile.fingerprint(database));
+        } finally {
+            Files.deleteIfExists(database);
+        }
+    }
+
+    private static LoadedIndex index(boolean postings) {
+        TermDictionary dictionary = TermDictionary.builder()
+                .add("hong", 13L)
+                .add("comput", 11L)
+                .add("engin", 12L)
+                .build();
+        DocumentStore documents = DocumentStore.builder()
+                .add(60585594248379076L, 2.5, Double.NaN, 0.75, 1200, 1_700_000_000L)
+                .add(7L, 1.0, 1.0, Double.NaN, 0, DocumentStore.UNKNOWN_TIME)
+                .build();
+        LinkGraph links = LinkGraph.builder()
+                .add(60585594248379076L, 99L)
+                .add(60585594248379076L, 7L)
+                .build();
+        if (!postings) {
+            return new LoadedIndex(dictionary, documents, links, null);
+        }
+
+        Map<IndexTable, PostingStore> stores = new EnumMap<>(IndexTable.class);
+        for (IndexTable table : IndexTable.values()) {
+            stores.put(table, PostingStore.builder(table).build());
+        }
+        stores.put(IndexTable.BODY, PostingStore.builder(IndexTable.BODY)
+                .put(11L, PostingList.builder(true)
+                        .add(60585594248379076L, 1, 0.06666666666666667, 1.3217558399823195).addPosition(160)
+                        .add(7L, 2, 0.3333333333333333, 1.3217558399823195).addPosition(85).addPosition(47)
+                        .build())
+                .build());
+        stores.put(IndexTable.TITLE, PostingStore.builder(IndexTable.TITLE)
+                .put(12L, PostingList.EMPTY)
+                .build());
+        stores.put(IndexTable.RAW_BODY, PostingStore.builder(IndexTable.RAW_BODY)
+                .put(13L, PostingList.builder(false).add(7L).addPosition(3).addPosition(1_000_000).build())
+                .build());
+        return new LoadedIndex(dictionary, documents, links, new IndexSnapshot(stores));
+    }
+}
@@ -0,0 +1,58 @@
+package com.edward1141.search.index;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TermDictionaryTest {
+
+    @Test
+    void testLookup() {
+        TermDictionary dictionary = TermDictionary.builder()
+                .add("search", 15L)
+                .add("movi", 7L)
+                .add("charact", 39L)
+                .add("movi", 8L)
+                .build();
+
+        assertEquals(3, dictionary.size());
+        assertEquals(15L, dictionary.getWid("search"));
+        assertEquals(7L, dictionary.getWid("movi"));
+        assertEquals(39L, dictionary.getWid(new StringBuilder("charact")));
+        assertEquals(TermDictionary.NOT_FOUND, dictionary.getWid("charac"));
+        assertEquals(TermDictionary.NOT_FOUND, dictionary.getWid(""));
+
+        int ordinal = dictionary.ordinal("movi");
+        assertEquals("movi", dictionary.word(ordinal));
+        assertEquals(7L, dictionary.wid(ordinal));
+        assertTrue(dictionary.sizeInBytes() > 0);
+    }
+
+    @Test
+    void testPlus() {
+        TermDictionary base = TermDictionary.builder().add("cat", 1L).add("fox", 3L).build();
+        TermDictionary other = TermDictionary.builder().add("dog", 2L).add("cat", 9L).add("zebra", 4L).build();
+
+        TermDictionary merged = base.plus(other);
+        assertEquals(4, merged.size());
+        assertEquals(1L, merged.getWid("cat"));
+        assertEquals(2L, merged.getWid("dog"));
+        assertEquals(3L, merged.getWid("fox"));
+        assertEquals(4L, merged.getWid("zebra"));
+        assertEquals("dog", merged.word(1));
+    }
+
+    @Test
+    void testManyTerms() {
+        TermDictionary.Builder builder = TermDictionary.builder();
+        for (int i = 0; i < 5000; i++) {
+            builder.add("term" + i, i * 31L);
+        }
+        TermDictionary dictionary = builder.build();
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i * 31L, dictionary.getWid("term" + i));
+        }
+        assertEquals(TermDictionary.NOT_FOUND, dictionary.getWid("term5000"));
+    }
+}
@@ -0,0 +1,66 @@
+package com.edward1141.search.repository;
+
+import com.edward1141.search.entity.UrlList;
+import com.edward1141.search.index.IndexTable;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JdbcSearchReadRepositoryTest {
+
+    @Test
+    void testReadsTypedRows() throws Exception {
+        Path database = Files.createTempFile("search", ".db");
+        try {
+            String url = "jdbc:sqlite:" + database;
+            try (Connection connection = DriverManager.getConnection(url);
+                 Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE urlList (uid INTEGER PRIMARY KEY, url TEXT, title TEXT, last_modified TEXT, "
+                        + "content_length INTEGER, num_child INTEGER, document_weight REAL, title_weight REAL, page_rank_score REAL)");
+                statement.execute("CREATE TABLE forwardIndex (uid INTEGER PRIMARY KEY, data_head TEXT, data TEXT)");
+                statement.execute("CREATE TABLE invertedIndex (wid INTEGER PRIMARY KEY, count INTEGER, data TEXT)");
+                statement.execute("INSERT INTO urlList VALUES (72057594037927935, 'https://a', 'A', '01/01/2024, 00:00:00', 10, 1, 2.5, NULL, 0.5)");
+                statement.execute("INSERT INTO urlList VALUES (2, 'https://b', 'B', NULL, NULL, 0, 1.0, 1.0, NULL)");
+                statement.execute("INSERT INTO forwardIndex VALUES (2, '{\"b\": 1}', '{}')");
+                statement.execute("INSERT INTO invertedIndex VALUES (7, 1, '{\"2\": [1, 1, 1.0, 0.0, [0]]}')");
+            }
+
+            // Pooled with prepared statement caching like the serving profile
+            try (BasicDataSource dataSource = new BasicDataSource()) {
+                dataSource.setUrl(url);
+                dataSource.setMaxTotal(2);
+                dataSource.setPoolPreparedStatements(true);
+                JdbcSearchReadRepository repository = new JdbcSearchReadRepository(new JdbcTemplate(dataSource));
+                long a = 72057594037927935L;
+                Map<Long, UrlList> urlLists = repository.findUrlLists(List.of(a, 2L, 3L)).stream()
+                        .collect(Collectors.toMap(UrlList::getUid, urlList -> urlList));
+                assertEquals(2, urlLists.size());
+                assertEquals("https://a", urlLists.get(a).getUrl());
+                assertEquals(Integer.valueOf(10), urlLists.get(a).getContentLength());
+                assertNull(urlLists.get(a).getTitleWeight());
+                assertNull(urlLists.get(2L).getContentLength());
+
+                assertEquals(Map.of(a, "https://a"), repository.findUrls(List.of(a)));
+                assertEquals(Map.of(2L, "{\"b\": 1}"), repository.findForwardIndexHeads(List.of(a, 2L)));
+                assertTrue(repository.findUrls(List.of()).isEmpty());
+
+                assertEquals("{\"2\": [1, 1, 1.0, 0.0, [0]]}", repository.findPostingData(IndexTable.BODY, 7));
+                assertNull(repository.findPostingData(IndexTable.BODY, 8));
+                assertEquals(0, dataSource.getNumActive());
+            }
+        } finally {
+            Files.deleteIfExists(database);
+        }
+    }
+}
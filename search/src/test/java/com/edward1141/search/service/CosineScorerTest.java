@@ -0,0 +1,265 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.index.DocumentStore;
+import com.edward1141.search.index.PostingList;
+import com.edward1141.search.model.ScoringAlgorithm;
+import com.edward1141.search.utils.TopKHeap;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CosineScorerTest {
+    private static final int DOCUMENTS = 2000;
+
+    private DocumentStore documentStore(Random random) {
+        DocumentStore.Builder builder = DocumentStore.builder();
+        for (long uid = 0; uid < DOCUMENTS; uid++) {
+            double documentWeight = random.nextInt(50) == 0 ? Double.NaN : 1 + random.nextDouble() * 10;
+            double pageRank = random.nextInt(10) == 0 ? Double.NaN : random.nextDouble();
+            builder.add(uid * 7919, documentWeight, 1.0, pageRank, 100, DocumentStore.UNKNOWN_TIME);
+        }
+        return builder.build();
+    }
+
+    private PostingList postings(Random random, int size) {
+        PostingList.Builder builder = PostingList.builder(true);
+        double idf = 0.1 + random.nextDouble() * 5;
+        Set<Long> seen = new HashSet<>();
+        while (seen.size() < size) {
+            // A few documents outside the store must be skipped as well
+            long uid = random.nextInt(DOCUMENTS + 50) * 7919L;
+            if (seen.add(uid)) {
+                int tf = 1 + random.nextInt(5);
+                builder.add(uid, tf, random.nextDouble(), idf);
+                builder.addPosition(random.nextInt(1000));
+            }
+        }
+        return builder.build();
+    }
+
+    private PostingList[] query(Random random, int terms) {
+        PostingList[] query = new PostingList[terms];
+        for (int i = 0; i < terms; i++) {
+            // Missing words stay null, common and rare words are mixed
+            if (random.nextInt(6) != 0) {
+                query[i] = postings(random, random.nextBoolean() ? 1 + random.nextInt(20) : 200 + random.nextInt(800));
+            }
+        }
+        if (terms > 1 && random.nextBoolean()) {
+            query[terms - 1] = query[0]; // Repeated query word
+        }
+        return query;
+    }
+
+    private void assertSameRanking(TopKHeap expected, TopKHeap actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int rank = 0; rank < expected.size(); rank++) {
+            assertEquals(expected.docId(rank), actual.docId(rank));
+            assertEquals(expected.score(rank), actual.score(rank));
+        }
+    }
+
+    @Test
+    void testWandMatchesExhaustive() {
+        Random random = new Random(42);
+        DocumentStore documentStore = documentStore(random);
+        CosineScorer scorer = new CosineScorer(documentStore, 1.0, 0.2);
+
+        for (int round = 0; round < 50; round++) {
+            PostingList[] body = query(random, 1 + random.nextInt(4));
+            PostingList[] title = query(random, body.length);
+            RoaringBitmap filter = null;
+            if (random.nextInt(4) == 0) {
+                filter = new RoaringBitmap();
+                for (int i = 0; i < DOCUMENTS / 2; i++) {
+                    filter.add(documentStore.ordinal(random.nextInt(DOCUMENTS) * 7919L));
+                }
+            }
+            boolean withPageRank = random.nextBoolean();
+            int offset = random.nextInt(20);
+            int limit = 1 + random.nextInt(50);
+
+            CosineScorer.RankedDocuments exhaustive = scorer.rank(
+                    ScoringAlgorithm.EXHAUSTIVE, body, title, filter, withPageRank, offset, limit);
+            CosineScorer.RankedDocuments wand = scorer.rank(
+                    ScoringAlgorithm.WAND, body, title, filter, withPageRank, offset, limit);
+
+            assertSameRanking(exhaustive.topK, wand.topK);
+            assertTrue(exhaustive.totalResultsExact);
+            assertFalse(wand.totalResultsExact);
+            assertTrue(wand.totalResults <= exhaustive.totalResults);
+            assertTrue(wand.totalResults >= wand.topK.size());
+        }
+    }
+
+    @Test
+    void testExhaustiveMatchesPerTermAccumulation() {
+        Random random = new Random(3);
+        DocumentStore documentStore = documentStore(random);
+        CosineScorer scorer = new CosineScorer(documentStore, 1.0, 0.0);
+
+        for (int round = 0; round < 20; round++) {
+            PostingList[] body = query(random, 1 + random.nextInt(4));
+            PostingList[] title = query(random, body.length);
+
+            // Term at a time reference: contributions summed per document in query term order
+            Map<Long, Double> bodyScores = accumulate(documentStore, body);
+            Map<Long, Double> titleScores = accumulate(documentStore, title);
+            Map<Long, Double> expected = new HashMap<>(bodyScores);
+            titleScores.forEach((uid, score) -> expected.merge(uid, score, Double::sum));
+
+            CosineScorer.RankedDocuments ranked = scorer.rank(
+                    ScoringAlgorithm.EXHAUSTIVE, body, title, null, false, 0, 0);
+            assertEquals(expected.size(), ranked.totalResults);
+            assertEquals(expected.size(), ranked.topK.size());
+            for (int rank = 0; rank < ranked.topK.size(); rank++) {
+                assertEquals(expected.get(ranked.topK.docId(rank)).doubleValue(), ranked.topK.score(rank));
+            }
+        }
+    }
+
+    @Test
+    void testSmallFilterDrivesTheMerge() {
+        Random random = new Random(11);
+        DocumentStore documentStore = documentStore(random);
+        CosineScorer scorer = new CosineScorer(documentStore, 1.0, 0.2);
+
+        for (int round = 0; round < 20; round++) {
+            PostingList[] body = query(random, 1 + random.nextInt(4));
+            PostingList[] title = query(random, body.length);
+            // Fewer documents than postings, so each pass walks the filter
+            RoaringBitmap filter = new RoaringBitmap();
+            for (int i = 0; i < 10; i++) {
+                filter.add(random.nextInt(DOCUMENTS));
+            }
+
+            CosineScorer.RankedDocuments all = scorer.rank(
+                    ScoringAlgorithm.EXHAUSTIVE, body, title, null, true, 0, 0);
+            Map<Long, Double> expected = new HashMap<>();
+            for (int rank = 0; rank < all.topK.size(); rank++) {
+                if (filter.contains(documentStore.ordinal(all.topK.docId(rank)))) {
+                    expected.put(all.topK.docId(rank), all.topK.score(rank));
+                }
+            }
+
+            CosineScorer.RankedDocuments filtered = scorer.rank(
+                    ScoringAlgorithm.EXHAUSTIVE, body, title, filter, true, 0, 0);
+            assertEquals(expected.size(), filtered.totalResults);
+            for (int rank = 0; rank < filtered.topK.size(); rank++) {
+                assertEquals(expected.get(filtered.topK.docId(rank)).doubleValue(), filtered.topK.score(rank));
+            }
+        }
+    }
+
+    @Test
+    void testEmptyFilterScoresNothing() {
+        Random random = new Random(5);
+        CosineScorer scorer = new CosineScorer(documentStore(random), 1.0, 0.2);
+        PostingList[] body = query(random, 2);
+        PostingList[] title = query(random, 2);
+
+        for (ScoringAlgorithm algorithm : ScoringAlgorithm.values()) {
+            CosineScorer.RankedDocuments ranked = scorer.rank(algorithm, body, title, new RoaringBitmap(), true, 0, 10);
+            assertEquals(0, ranked.totalResults);
+            assertEquals(0, ranked.topK.size());
+        }
+    }
+
+    private Map<Long, Double> accumulate(DocumentStore documentStore, PostingList[] query) {
+        Map<Long, Double> scores = new HashMap<>();
+        double queryLength = 0.0;
+        for (PostingList postings : query) {
+            double idf = postings == null || postings.isEmpty() ? 0 : postings.idf(0);
+            queryLength += idf * idf;
+            if (postings == null) {
+                continue;
+            }
+            for (int i = 0; i < postings.size(); i++) {
+                int doc = documentStore.ordinal(postings.docId(i));
+                if (doc != DocumentStore.NOT_FOUND && !Double.isNaN(documentStore.documentWeight(doc))) {
+                    scores.merge(postings.docId(i), postings.tfNorm(i) * postings.idf(i) / documentStore.documentWeight(doc),
+                            Double::sum);
+                }
+            }
+        }
+        double length = Math.sqrt(queryLength);
+        if (length > 0) {
+            scores.replaceAll((uid, score) -> score / length);
+        }
+        return scores;
+    }
+
+    @Test
+    void testUnlimitedFallsBackToExhaustive() {
+        Random random = new Random(7);
+        DocumentStore documentStore = documentStore(random);
+        CosineScorer scorer = new CosineScorer(documentStore, 1.0, 0.2);
+        PostingList[] body = {postings(random, 300), postings(random, 10)};
+        PostingList[] title = {postings(random, 50), null};
+
+        CosineScorer.RankedDocuments exhaustive = scorer.rank(
+                ScoringAlgorithm.EXHAUSTIVE, body, title, null, true, 0, 0);
+        CosineScorer.RankedDocuments wand = scorer.rank(
+                ScoringAlgorithm.WAND, body, title, null, true, 0, 0);
+
+        assertSameRanking(exhaustive.topK, wand.topK);
+        assertTrue(wand.totalResultsExact);
+        assertEquals(exhaustive.totalResults, exhaustive.topK.size());
+    }
+
+    @Test
+    void testOffsetBeyondTheResults() {
+        Random random = new Random(13);
+        DocumentStore documentStore = documentStore(random);
+        CosineScorer scorer = new CosineScorer(documentStore, 1.0, 0.2);
+        PostingList[] body = {postings(random, 300), postings(random, 10)};
+        PostingList[] title = {postings(random, 50), null};
+        int offset = Integer.MAX_VALUE - 10;
+
+        // Sized by the candidates, not by offset + limit
+        CosineScorer.RankedDocuments exhaustive = scorer.rank(
+                ScoringAlgorithm.EXHAUSTIVE, body, title, null, true, offset, 10);
+        CosineScorer.RankedDocuments wand = scorer.rank(
+                ScoringAlgorithm.WAND, body, title, null, true, offset, 10);
+
+        assertSameRanking(exhaustive.topK, wand.topK);
+        assertEquals(exhaustive.totalResults, wand.topK.size());
+    }
+
+    @Test
+    void testParallelPassesMatchSequential() {
+        Random random = new Random(11);
+        DocumentStore documentStore = documentStore(random);
+        CosineScorer sequential = new CosineScorer(documentStore, 1.0, 0.2);
+        // Every query is split across threads
+        CosineScorer parallel = new CosineScorer(documentStore, 1.0, 0.2, new QueryExecutor(0, 2, 0));
+
+        for (int round = 0; round < 20; round++) {
+            PostingList[] body = query(random, 1 + random.nextInt(4));
+            PostingList[] title = query(random, body.length);
+            CosineScorer.RankedDocuments expected = sequential.rank(
+                    ScoringAlgorithm.EXHAUSTIVE, body, title, null, true, 0, 50);
+            CosineScorer.RankedDocuments actual = parallel.rank(
+                    ScoringAlgorithm.EXHAUSTIVE, body, title, null, true, 0, 50);
+
+            assertSameRanking(expected.topK, actual.topK);
+            assertEquals(expected.totalResults, actual.totalResults);
+        }
+    }
+
+    @Test
+    void testNoPostings() {
+        CosineScorer scorer = new CosineScorer(documentStore(new Random(1)), 1.0, 0.2);
+        PostingList[] none = {null, null};
+
+        assertEquals(0, scorer.rank(ScoringAlgorithm.WAND, none, none, null, true, 0, 10).topK.size());
+        assertEquals(0, scorer.rank(ScoringAlgorithm.EXHAUSTIVE, none, none, null, true, 0, 10).totalResults);
+    }
+}
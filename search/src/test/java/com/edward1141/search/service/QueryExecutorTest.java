@@ -0,0 +1,91 @@
+package com.edward1141.search.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryExecutorTest {
+
+    @Test
+    void testResultsKeepSubmissionOrder() throws Exception {
+        QueryExecutor executor = new QueryExecutor(4, 0, 0);
+        List<QueryExecutor.Fetch<Integer>> fetches = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            int value = i;
+            fetches.add(() -> {
+                sleep(8 - value); // Later tasks finish first
+                return value;
+            });
+        }
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7), executor.fetch(fetches));
+    }
+
+    @Test
+    void testFetchExceptionIsRethrown() {
+        QueryExecutor executor = new QueryExecutor(2, 0, 0);
+        List<QueryExecutor.Fetch<Integer>> fetches = List.of(
+                () -> 1,
+                () -> {
+                    throw new JsonParseException(null, "bad posting row");
+                });
+        JsonProcessingException e = assertThrows(JsonProcessingException.class, () -> executor.fetch(fetches));
+        assertTrue(e.getMessage().contains("bad posting row"));
+    }
+
+    @Test
+    void testSaturatedPoolRunsOnCallingThread() throws Exception {
+        QueryExecutor executor = new QueryExecutor(0, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread caller = Thread.currentThread();
+        Supplier<Thread> blocked = () -> {
+            await(release);
+            return Thread.currentThread();
+        };
+        List<Supplier<Thread>> passes = List.of(
+                blocked,
+                blocked,
+                () -> {
+                    release.countDown();
+                    return Thread.currentThread();
+                });
+
+        // The only pool thread waits in the second pass, the third must run on the caller instead of queueing
+        List<Thread> threads = executor.score(1, passes);
+        assertEquals(caller, threads.get(0));
+        assertNotEquals(caller, threads.get(1));
+        assertEquals(caller, threads.get(2));
+    }
+
+    @Test
+    void testSmallQueriesStayOnCallingThread() {
+        QueryExecutor executor = new QueryExecutor(0, 4, 1000);
+        Thread caller = Thread.currentThread();
+        List<Supplier<Thread>> passes = List.of(Thread::currentThread, Thread::currentThread);
+
+        assertEquals(List.of(caller, caller), executor.score(999, passes));
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
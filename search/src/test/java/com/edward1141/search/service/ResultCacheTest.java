@@ -0,0 +1,68 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.model.ScoringAlgorithm;
+import com.edward1141.search.model.SearchResponse;
+import com.edward1141.search.model.SearchResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultCacheTest {
+
+    private ResultCache.Key key(String... terms) {
+        return key(1, terms);
+    }
+
+    private ResultCache.Key key(long generation, String... terms) {
+        return new ResultCache.Key(List.of(terms), null, false, false, false, 1, true, 0, 50, ScoringAlgorithm.EXHAUSTIVE,
+                List.of(), null, null, generation, 0L);
+    }
+
+    private SearchResponse response(String title) {
+        SearchResult result = new SearchResult();
+        result.setTitle(title);
+        return SearchResponse.builder().results(List.of(result)).totalResults(1).build();
+    }
+
+    @Test
+    void testHitAndMiss() {
+        ResultCache cache = new ResultCache(1 << 20);
+        SearchResponse response = response("Hong Kong");
+
+        assertNull(cache.get(key("hong", "kong")));
+        cache.put(key("hong", "kong"), response);
+        assertSame(response, cache.get(key("hong", "kong")));
+        assertNull(cache.get(key("kong", "hong")));
+
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(2, cache.stats().missCount());
+    }
+
+    @Test
+    void testNewGenerationMisses() {
+        ResultCache cache = new ResultCache(1 << 20);
+        cache.put(key(1, "hong"), response("Hong Kong"));
+
+        assertNotNull(cache.get(key(1, "hong")));
+        assertNull(cache.get(key(2, "hong")));
+    }
+
+    @Test
+    void testDisabled() {
+        ResultCache cache = new ResultCache(0);
+        cache.put(key("hong"), response("Hong Kong"));
+
+        assertFalse(cache.isEnabled());
+        assertNull(cache.get(key("hong")));
+    }
+
+    @Test
+    void testWeightGrowsWithResults() {
+        SearchResponse small = response("a");
+        SearchResponse large = response("a".repeat(1000));
+
+        assertTrue(ResultCache.weigh(large) > ResultCache.weigh(small) + 1000);
+    }
+}
@@ -0,0 +1,63 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.service.SearchMetrics.Stage;
+import com.edward1141.search.service.SearchMetrics.Timings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchMetricsTest {
+
+    @Test
+    void testTimingsAccumulatePerStage() {
+        Timings timings = new Timings();
+        long start = System.nanoTime() - 2_000_000;
+        start = timings.record(Stage.ANALYZE, start);
+        timings.record(Stage.FETCH, start);
+        timings.record(Stage.ANALYZE, System.nanoTime() - 1_000_000);
+
+        Map<String, Double> millis = timings.toMillis();
+        assertEquals(List.of("analyze", "fetch", "total"), List.copyOf(millis.keySet()));
+        assertTrue(millis.get("analyze") >= 3.0);
+        assertTrue(millis.get("fetch") >= 0.0);
+    }
+
+    @Test
+    void testRecordOnlyPublishesStagesThatRan() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        SearchMetrics metrics = new SearchMetrics(registry);
+
+        Timings miss = new Timings();
+        miss.record(Stage.SCORE, System.nanoTime() - 5_000_000);
+        metrics.record(miss, false);
+        metrics.record(new Timings(), true);
+
+        Timer score = registry.find("search.stage").tag("stage", "score").timer();
+        assertNotNull(score);
+        assertEquals(1, score.count());
+        assertTrue(score.totalTime(TimeUnit.MILLISECONDS) >= 5.0);
+        assertEquals(0, registry.find("search.stage").tag("stage", "fetch").timer().count());
+        assertEquals(1, registry.find("search.request").tag("cache", "miss").timer().count());
+        assertEquals(1, registry.find("search.request").tag("cache", "hit").timer().count());
+    }
+
+    @Test
+    void testFirstQueryIsRecordedOnce() {
+        SearchMetrics metrics = new SearchMetrics(new SimpleMeterRegistry());
+        assertEquals(-1, metrics.firstQueryMillis());
+
+        metrics.record(new Timings(), false);
+        long firstQueryMillis = metrics.firstQueryMillis();
+        assertTrue(firstQueryMillis >= 0);
+
+        metrics.record(new Timings(), true);
+        assertEquals(firstQueryMillis, metrics.firstQueryMillis());
+    }
+}
@@ -0,0 +1,127 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.entity.UrlList;
+import com.edward1141.search.index.DocumentStore;
+import com.edward1141.search.index.IndexGeneration;
+import com.edward1141.search.index.IndexManager;
+import com.edward1141.search.index.IndexSnapshot;
+import com.edward1141.search.index.IndexTable;
+import com.edward1141.search.index.LinkGraph;
+import com.edward1141.search.index.LiveIndex;
+import com.edward1141.search.index.PageAnalyzer;
+import com.edward1141.search.index.TermDictionary;
+import com.edward1141.search.model.SearchRequest;
+import com.edward1141.search.model.SearchResponse;
+import com.edward1141.search.repository.SearchReadRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchServiceTest {
+
+    // Pages only come from the ingested segments, nothing is hydrated from the database
+    private static class EmptyRepository implements SearchReadRepository {
+        @Override
+        public String findPostingData(IndexTable table, long wid) {
+            return null;
+        }
+
+        @Override
+        public List<UrlList> findUrlLists(List<Long> uids) {
+            return List.of();
+        }
+
+        @Override
+        public Map<Long, String> findUrls(List<Long> uids) {
+            return Map.of();
+        }
+
+        @Override
+        public Map<Long, String> findForwardIndexHeads(List<Long> uids) {
+            return Map.of();
+        }
+    }
+
+    private final PageAnalyzer analyzer = new PageAnalyzer(Set.of());
+    private IndexManager indexManager;
+    private LiveIndex liveIndex;
+    private SearchService searchService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path database = Files.createTempFile("search-service", ".db");
+        database.toFile().deleteOnExit();
+        indexManager = new IndexManager((id, previous) -> new IndexGeneration(id,
+                TermDictionary.builder().build(), DocumentStore.builder().build(), LinkGraph.EMPTY,
+                new IndexSnapshot(new EnumMap<>(IndexTable.class)), null), database, 0);
+
+        liveIndex = new LiveIndex();
+        // One body word more per page, so each scores lower than the one before
+        for (String body : List.of("cat", "cat dog", "cat dog fox")) {
+            liveIndex.upsert(analyzer.analyze("https://example.com/" + body.length(), "", body, 100, body.length(),
+                    List.of()));
+        }
+        IndexGeneration generation = indexManager.acquire();
+        try {
+            liveIndex.refresh(generation);
+        } finally {
+            generation.release();
+        }
+
+        searchService = new SearchService(null, new EmptyRepository(), indexManager, liveIndex, Set.of(),
+                new SimpleMeterRegistry(), "exhaustive", 0, 0, 0, 20000);
+    }
+
+    private SearchResponse search(int offset, int limit) throws Exception {
+        return searchService.search(SearchRequest.builder().query("cat").offset(offset).limit(limit).build());
+    }
+
+    @Test
+    void testUnboundedLimitWithSegments() throws Exception {
+        assertEquals(3, search(0, 0).getResults().size());
+        assertEquals(3, search(0, -1).getResults().size());
+        assertEquals(2, search(1, 0).getResults().size());
+        assertEquals(3, search(0, 0).getTotalResults());
+    }
+
+    @Test
+    void testPageWithSegments() throws Exception {
+        SearchResponse page = search(1, 1);
+        assertEquals(1, page.getResults().size());
+        assertEquals(3, page.getTotalResults());
+        assertEquals("https://example.com/7", page.getResults().get(0).getUrl());
+    }
+
+    @Test
+    void testSearchWhileARebasedGenerationIsNeverPublished() throws Exception {
+        IndexGeneration generation = indexManager.acquire();
+        try {
+            // Compacts the segments against a generation the manager never publishes
+            liveIndex.published(liveIndex.merge(2, generation));
+
+            // A reload has the first page in an older version, it goes into a segment staged with the generation
+            LiveIndex crawler = new LiveIndex();
+            crawler.upsert(analyzer.analyze("https://example.com/3", "", "cat", 50, 3, List.of()));
+            crawler.refresh(generation);
+            IndexGeneration reloaded = liveIndex.rebase(crawler.merge(3, generation));
+            assertNotSame(liveIndex.view(), liveIndex.view(reloaded));
+            // Discarded by the loader
+            reloaded.release();
+        } finally {
+            generation.release();
+        }
+
+        SearchResponse response = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> search(0, 0));
+        assertEquals(3, response.getTotalResults());
+    }
+}
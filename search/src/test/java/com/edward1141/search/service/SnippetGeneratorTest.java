@@ -0,0 +1,40 @@
+package com.edward1141.search.service;
+
+import com.edward1141.search.index.PostingList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnippetGeneratorTest {
+
+    private PostingList postings(long docId, int... positions) {
+        PostingList.Builder builder = PostingList.builder(false).add(docId);
+        for (int position : positions) {
+            builder.addPosition(position);
+        }
+        return builder.build();
+    }
+
+    @Test
+    void testPrefersWindowWithMostDistinctWords() {
+        PostingList hong = postings(1L, 3, 4, 5, 500);
+        PostingList kong = postings(1L, 510);
+
+        assertEquals(500, SnippetGenerator.bestWindow(1L, new PostingList[]{hong, kong}));
+    }
+
+    @Test
+    void testPrefersWindowWithMostHits() {
+        PostingList hong = postings(1L, 3, 200, 205, 210);
+
+        assertEquals(200, SnippetGenerator.bestWindow(1L, new PostingList[]{hong, null}));
+    }
+
+    @Test
+    void testNoHitsStartsAtTheBeginning() {
+        PostingList hong = postings(2L, 50);
+
+        assertEquals(0, SnippetGenerator.bestWindow(1L, new PostingList[]{hong}));
+        assertEquals(0, SnippetGenerator.bestWindow(1L, new PostingList[0]));
+    }
+}
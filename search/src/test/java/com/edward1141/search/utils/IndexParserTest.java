@@ -0,0 +1,39 @@
+package com.edward1141.search.utils;
+
+import com.edward1141.search.index.PostingList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexParserTest {
+
+    private final IndexParser indexParser = new IndexParser();
+
+    @Test
+    void testParseFullPostingList() throws Exception {
+        String jsonInput = "{\"35206069257871717\": [2, 4, 0.3333333333333333, 1.3217558399823195, [85, 47]], " +
+                "\"4534138179106058\": [1, 4, 0.02564102564102564, 1.3217558399823195, [264]]}";
+
+        PostingList postings = indexParser.parsePostingList(jsonInput, true);
+
+        assertEquals(2, postings.size());
+        assertEquals(4534138179106058L, postings.docId(0));
+        assertEquals(35206069257871717L, postings.docId(1));
+        assertEquals(2, postings.tf(1));
+        assertEquals(0.3333333333333333, postings.tfNorm(1));
+        assertEquals(1.3217558399823195, postings.idf(1));
+        assertArrayEquals(new int[]{47, 85}, postings.positions(1));
+        assertEquals(1, postings.indexOf(35206069257871717L));
+        assertTrue(postings.indexOf(1L) < 0);
+    }
+
+    @Test
+    void testParseRawPostingList() throws Exception {
+        PostingList postings = indexParser.parsePostingList("{\"5\": [9, 1, 4], \"2\": [7]}", false);
+
+        assertFalse(postings.hasScoringFields());
+        assertEquals(2L, postings.docId(0));
+        assertArrayEquals(new int[]{7}, postings.positions(0));
+        assertArrayEquals(new int[]{1, 4, 9}, postings.positions(1));
+    }
+}
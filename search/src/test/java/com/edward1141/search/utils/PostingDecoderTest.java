@@ -0,0 +1,109 @@
+package com.edward1141.search.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PostingDecoderTest {
+
+    private static final String FULL = "{\"35206069257871717\": [2, 4, 0.3333333333333333, 1.3217558399823195, [85, 47]], " +
+            "\"4534138179106058\": [1, 4, 0.02564102564102564, 1.3217558399823195, [264]]}";
+
+    @Test
+    void testDecodeFullEntries() throws Exception {
+        PostingBuffers buffers = new PostingBuffers();
+        PostingDecoder.decode(FULL, buffers, false);
+
+        assertEquals(2, buffers.size);
+        assertEquals(35206069257871717L, buffers.docIds[0]);
+        assertEquals(2, buffers.tf[0]);
+        assertEquals(4, buffers.df[0]);
+        assertEquals(0.3333333333333333, buffers.tfNorm[0]);
+        assertEquals(1.3217558399823195, buffers.idf[0]);
+        assertArrayEquals(new int[]{85, 47}, positions(buffers, 0));
+        assertEquals(4534138179106058L, buffers.docIds[1]);
+        assertArrayEquals(new int[]{264}, positions(buffers, 1));
+        assertEquals(3, buffers.positionCount());
+    }
+
+    @Test
+    void testDecodeRawEntries() throws Exception {
+        PostingBuffers buffers = new PostingBuffers();
+        PostingDecoder.decode("{\"5\": [9, 1, 4], \"2\": [7], \"3\": []}", buffers, false);
+
+        assertEquals(3, buffers.size);
+        assertArrayEquals(new int[]{9, 1, 4}, positions(buffers, 0));
+        assertEquals(0, buffers.tf[0]);
+        assertArrayEquals(new int[]{7}, positions(buffers, 1));
+        assertArrayEquals(new int[0], positions(buffers, 2));
+    }
+
+    @Test
+    void testPositionsOnlySkipsScoringFields() throws Exception {
+        PostingBuffers buffers = new PostingBuffers();
+        buffers.tf[0] = -1;
+        PostingDecoder.decode(FULL, buffers, true);
+
+        assertEquals(2, buffers.size);
+        assertEquals(-1, buffers.tf[0]);
+        assertArrayEquals(new int[]{85, 47}, positions(buffers, 0));
+        assertArrayEquals(new int[]{264}, positions(buffers, 1));
+    }
+
+    @Test
+    void testBuffersAreReusedAndGrown() throws Exception {
+        PostingBuffers buffers = new PostingBuffers();
+        StringBuilder json = new StringBuilder("{");
+        for (int doc = 0; doc < 100; doc++) {
+            json.append(doc == 0 ? "" : ", ").append('"').append(doc).append("\": [1, 100, 0.5, 2.0, [");
+            for (int p = 0; p < 10; p++) {
+                json.append(p == 0 ? "" : ", ").append(doc + p);
+            }
+            json.append("]]");
+        }
+        PostingDecoder.decode(json.append('}').toString(), buffers, false);
+
+        assertEquals(100, buffers.size);
+        assertEquals(1000, buffers.positionCount());
+        assertArrayEquals(new int[]{99, 100, 101, 102, 103, 104, 105, 106, 107, 108}, positions(buffers, 99));
+
+        PostingDecoder.decode("{\"8\": [3]}", buffers, false);
+        assertEquals(1, buffers.size);
+        assertEquals(8L, buffers.docIds[0]);
+        assertArrayEquals(new int[]{3}, positions(buffers, 0));
+    }
+
+    @Test
+    void testRejectsMalformedInput() {
+        PostingBuffers buffers = new PostingBuffers();
+        assertThrows(JsonProcessingException.class, () -> PostingDecoder.decode("{\"1\": [1, 2", buffers, false));
+        assertThrows(JsonProcessingException.class, () -> PostingDecoder.decode("[1, 2]", buffers, false));
+        assertThrows(JsonProcessingException.class, () -> PostingDecoder.decode("{\"x\": [1]}", buffers, false));
+    }
+
+    @Test
+    void testIndexParserMapsMatchDecodedEntries() throws Exception {
+        IndexParser parser = new IndexParser();
+
+        Map<Long, IndexParser.FullIndex> full = parser.parseFullIndex(FULL);
+        assertEquals(2, full.size());
+        IndexParser.FullIndex entry = full.get(35206069257871717L);
+        assertEquals(2, entry.tf);
+        assertEquals(4, entry.df);
+        assertEquals(0.3333333333333333, entry.tfNorm);
+        assertEquals(Set.of(47, 85), entry.positions);
+
+        Map<Long, Set<Integer>> positions = parser.parsePostionsInfo(FULL);
+        assertEquals(Set.of(264), positions.get(4534138179106058L));
+        assertEquals(Set.of(1, 4), parser.parsePostionsInfo("{\"5\": [4, 1]}").get(5L));
+    }
+
+    private static int[] positions(PostingBuffers buffers, int i) {
+        return Arrays.copyOfRange(buffers.positions, buffers.positionOffsets[i], buffers.positionOffsets[i + 1]);
+    }
+}
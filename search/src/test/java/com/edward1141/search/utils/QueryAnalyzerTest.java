@@ -0,0 +1,93 @@
+package com.edward1141.search.utils;
+
+import com.edward1141.search.index.TermDictionary;
+import com.edward1141.search.utils.QueryAnalyzer.AnalyzedQuery;
+import opennlp.tools.stemmer.PorterStemmer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryAnalyzerTest {
+    private static final Set<String> STOPWORDS = Set.of("the", "of", "a");
+
+    private final PorterStemmer stemmer = new PorterStemmer();
+
+    @Test
+    void testMatchesRegexParser() {
+        QueryAnalyzer analyzer = new QueryAnalyzer(dictionary(), STOPWORDS);
+        String[] queries = {
+                "Hong Kong University of Science",
+                "\"hong kong\" university",
+                "the \"computer science\" department \"second phrase\"",
+                "don't stop-words, e.g. THE Movies!",
+                "foo\"bar baz\" qux",
+                "unclosed \"quote here",
+                "\"the of a\" engineering",
+                "\"\" empty phrase",
+                "  tabs\tand\nnewlines  ",
+                "na\u00efve caf\u00e9 2024_results",
+                "",
+                "\"",
+        };
+        for (String query : queries) {
+            QueryParser.QueryParseResult parsed = new QueryParser().parse(query);
+            AnalyzedQuery analyzed = analyzer.analyze(query);
+
+            assertEquals(analyze(parsed.getQueryTerms()), analyzed.getTerms(), query);
+            if (parsed.getQuotedTerms().isEmpty()) {
+                assertNull(analyzed.getPhraseTerms(), query);
+            } else {
+                assertEquals(analyze(parsed.getQuotedTerms()), analyzed.getPhraseTerms(), query);
+            }
+        }
+    }
+
+    @Test
+    void testResolvesTermIds() {
+        TermDictionary dictionary = dictionary();
+        QueryAnalyzer analyzer = new QueryAnalyzer(dictionary, STOPWORDS);
+
+        AnalyzedQuery analyzed = analyzer.analyze("\"Hong Kong\" unknown");
+
+        assertEquals(3, analyzed.getTermIds().length);
+        assertEquals(11L, dictionary.wid(analyzed.getTermIds()[0]));
+        assertEquals(12L, dictionary.wid(analyzed.getTermIds()[1]));
+        assertEquals(-1, analyzed.getTermIds()[2]);
+        assertArrayEquals(new int[]{analyzed.getTermIds()[0], analyzed.getTermIds()[1]}, analyzed.getPhraseTermIds());
+    }
+
+    @Test
+    void testRepeatedWordsShareTerms() {
+        QueryAnalyzer analyzer = new QueryAnalyzer(dictionary(), STOPWORDS);
+
+        AnalyzedQuery first = analyzer.analyze("hong kong");
+        AnalyzedQuery second = analyzer.analyze("HONG \"kong\"");
+
+        assertSame(first.getTerms().get(0), second.getTerms().get(0));
+        assertSame(first.getTerms().get(1), second.getTerms().get(1));
+        assertSame(first.getTerms().get(1), second.getPhraseTerms().get(0));
+    }
+
+    private List<String> analyze(List<String> words) {
+        List<String> terms = new ArrayList<>();
+        for (String word : words) {
+            String term = stemmer.stem(word);
+            if (!STOPWORDS.contains(term)) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private TermDictionary dictionary() {
+        return TermDictionary.builder()
+                .add(stemmer.stem("hong"), 11L)
+                .add(stemmer.stem("kong"), 12L)
+                .add(stemmer.stem("university"), 13L)
+                .build();
+    }
+}
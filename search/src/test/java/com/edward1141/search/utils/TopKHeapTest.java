@@ -0,0 +1,60 @@
+package com.edward1141.search.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TopKHeapTest {
+
+    @Test
+    void testKeepsBestDocuments() {
+        TopKHeap topK = new TopKHeap(3);
+        topK.offer(1L, 0.5);
+        topK.offer(2L, 0.9);
+        topK.offer(3L, 0.1);
+        assertEquals(0.1, topK.threshold());
+        assertTrue(topK.offer(4L, 0.7));
+        assertFalse(topK.offer(5L, 0.05));
+        topK.sort();
+
+        assertEquals(3, topK.size());
+        assertEquals(2L, topK.docId(0));
+        assertEquals(4L, topK.docId(1));
+        assertEquals(1L, topK.docId(2));
+    }
+
+    @Test
+    void testTiesPreferSmallerDocId() {
+        TopKHeap topK = new TopKHeap(2);
+        topK.offer(9L, 1.0);
+        topK.offer(3L, 1.0);
+        topK.offer(5L, 1.0);
+        topK.sort();
+
+        assertEquals(3L, topK.docId(0));
+        assertEquals(5L, topK.docId(1));
+    }
+
+    @Test
+    void testMatchesFullSort() {
+        Random random = new Random(42);
+        double[] scores = new double[1000];
+        TopKHeap topK = new TopKHeap(10);
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextInt(100) / 10.0;
+            topK.offer(i, scores[i]);
+        }
+        topK.sort();
+
+        double[] sorted = scores.clone();
+        java.util.Arrays.sort(sorted);
+        for (int rank = 0; rank < 10; rank++) {
+            assertEquals(sorted[sorted.length - 1 - rank], topK.score(rank));
+            if (rank > 0 && topK.score(rank) == topK.score(rank - 1)) {
+                assertTrue(topK.docId(rank) > topK.docId(rank - 1));
+            }
+        }
+    }
+}